@@ -0,0 +1,31 @@
+package in.neolab.configurable.cache.benchmarks;
+
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Position of the benchmark thread in the access sequence. Threads start at different positions,
+ * so they don't access the same keys at the same time
+ * @author Nikita Parygin
+ */
+@State(Scope.Thread)
+public class AccessCursor {
+
+    /**
+     * Number of started threads
+     */
+    private static final AtomicInteger THREADS = new AtomicInteger();
+
+    private int position = THREADS.getAndIncrement() * 7919;
+
+    /**
+     * Returns next key index of the sequence
+     * @param sequence access sequence of {@link BenchmarkData#SEQUENCE_LENGTH} key indexes
+     * @return key index
+     */
+    int next(int[] sequence) {
+        return sequence[position++ & (BenchmarkData.SEQUENCE_LENGTH - 1)];
+    }
+}
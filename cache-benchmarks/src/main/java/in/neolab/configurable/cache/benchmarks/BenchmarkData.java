@@ -0,0 +1,110 @@
+package in.neolab.configurable.cache.benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Random;
+import java.util.stream.Stream;
+
+/**
+ * Generator of keys, values and access sequences shared by the benchmarks.<br>
+ * Data is generated with fixed seeds, so every run of the benchmark reads the same keys in the same order
+ * @author Nikita Parygin
+ */
+final class BenchmarkData {
+
+    /**
+     * Length of the access sequence. Power of two, so threads wrap around it by a mask
+     */
+    static final int SEQUENCE_LENGTH = 1 << 16;
+
+    /**
+     * Skew of the Zipf distribution of the accesses
+     */
+    private static final double ZIPF_EXPONENT = 1.0;
+
+    private BenchmarkData() {
+    }
+
+    /**
+     * Creates keys of the benchmark
+     * @param count number of keys
+     * @return array of keys
+     */
+    static String[] keys(int count) {
+        String[] keys = new String[count];
+        for (int i = 0; i < count; i++) {
+            keys[i] = "key-" + i;
+        }
+        return keys;
+    }
+
+    /**
+     * Creates value of the specified size
+     * @param size number of characters
+     * @param seed seed of the characters
+     * @return value
+     */
+    static String value(int size, long seed) {
+        Random random = new Random(seed);
+        char[] chars = new char[size];
+        for (int i = 0; i < size; i++) {
+            chars[i] = (char) ('a' + random.nextInt(26));
+        }
+        return new String(chars);
+    }
+
+    /**
+     * Creates sequence of key indexes. Few keys are accessed often and most keys are accessed rarely,
+     * as in the Zipf distribution
+     * @param keyCount number of keys
+     * @param seed seed of the sequence
+     * @return array of {@link #SEQUENCE_LENGTH} key indexes
+     */
+    static int[] zipfSequence(int keyCount, long seed) {
+        double[] cumulative = new double[keyCount];
+        double sum = 0;
+        for (int i = 0; i < keyCount; i++) {
+            sum += 1 / Math.pow(i + 1, ZIPF_EXPONENT);
+            cumulative[i] = sum;
+        }
+        Random random = new Random(seed);
+        // Популярные ключи разбрасываем по всему набору, чтобы они не оказались в одном уровне при заполнении
+        int[] keyOfRank = new int[keyCount];
+        for (int i = 0; i < keyCount; i++) {
+            int j = random.nextInt(i + 1);
+            keyOfRank[i] = keyOfRank[j];
+            keyOfRank[j] = i;
+        }
+        int[] sequence = new int[SEQUENCE_LENGTH];
+        for (int i = 0; i < SEQUENCE_LENGTH; i++) {
+            int index = Arrays.binarySearch(cumulative, random.nextDouble() * sum);
+            int rank = index >= 0 ? index : Math.min(-index - 1, keyCount - 1);
+            sequence[i] = keyOfRank[rank];
+        }
+        return sequence;
+    }
+
+    /**
+     * Creates temporary directory for the file system cache
+     * @return directory
+     * @throws IOException if the directory can't be created
+     */
+    static File createDirectory() throws IOException {
+        return Files.createTempDirectory("cache-benchmark-").toFile();
+    }
+
+    /**
+     * Deletes directory with its content
+     * @param directory directory
+     * @throws IOException if any file can't be deleted
+     */
+    static void deleteDirectory(File directory) throws IOException {
+        try (Stream<Path> paths = Files.walk(directory.toPath())) {
+            paths.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+        }
+    }
+}
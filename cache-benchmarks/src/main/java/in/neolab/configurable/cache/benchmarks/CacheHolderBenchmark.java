@@ -0,0 +1,116 @@
+package in.neolab.configurable.cache.benchmarks;
+
+import in.neolab.configurable.cache.CacheHolder;
+import in.neolab.configurable.cache.FIleSystemCacheImpl;
+import in.neolab.configurable.cache.MemoryCacheImpl;
+import in.neolab.configurable.cache.processor.CacheProcessor;
+import in.neolab.configurable.cache.processor.CacheStrategiesSelector;
+import in.neolab.configurable.cache.storage.SegmentLogStorage;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Reads and writes of the {@link CacheHolder} with both tiers.<br>
+ * The memory cache holds a tenth of the keys and the file system cache holds a half of them,
+ * so reads hit both tiers and miss, and writes of new keys replace the rarest used ones.
+ * Writes of keys that were never cached measure contention of threads placing new objects
+ * @author Nikita Parygin
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CacheHolderBenchmark {
+
+    @Param({"1000", "100000"})
+    public int keyCount;
+
+    @Param({"100", "10000"})
+    public int valueSize;
+
+    @Param({"LRU", "LFU"})
+    public String strategy;
+
+    private CacheHolder<String, String> cache;
+    private File directory;
+    private String[] keys;
+    private String value;
+    private int[] sequence;
+    private final AtomicLong newKeys = new AtomicLong();
+
+    @Setup
+    public void setUp() throws Exception {
+        directory = BenchmarkData.createDirectory();
+        cache = CacheHolder.CacheBuilder.get()
+                .addMemoryCacheHolder(new MemoryCacheImpl(keyCount / 10))
+                .addFileSystemCacheHolder(new FIleSystemCacheImpl(keyCount / 2, directory, SegmentLogStorage.DEFAULT_SEGMENT_SIZE))
+                .addCacheProcessor(new CacheProcessor(new CacheStrategiesSelector<>(strategy)))
+                .build();
+        keys = BenchmarkData.keys(keyCount);
+        value = BenchmarkData.value(valueSize, 1);
+        sequence = BenchmarkData.zipfSequence(keyCount, 2);
+        for (int index : sequence) {
+            cache.put(keys[index], value);
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        cache.close();
+        BenchmarkData.deleteDirectory(directory);
+    }
+
+    @Benchmark
+    @Threads(1)
+    public String get(AccessCursor cursor) throws Exception {
+        return cache.get(keys[cursor.next(sequence)]);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public String getContended(AccessCursor cursor) throws Exception {
+        return cache.get(keys[cursor.next(sequence)]);
+    }
+
+    @Benchmark
+    @Threads(1)
+    public void put(AccessCursor cursor) throws Exception {
+        cache.put(keys[cursor.next(sequence)], value);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public void putContended(AccessCursor cursor) throws Exception {
+        cache.put(keys[cursor.next(sequence)], value);
+    }
+
+    @Benchmark
+    @Threads(1)
+    public void putNew() throws Exception {
+        cache.put("New" + newKeys.incrementAndGet(), value);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public void putNewContended() throws Exception {
+        cache.put("New" + newKeys.incrementAndGet(), value);
+    }
+}
@@ -0,0 +1,92 @@
+package in.neolab.configurable.cache.benchmarks;
+
+import in.neolab.configurable.cache.processor.CacheProcessor;
+import in.neolab.configurable.cache.processor.CacheStrategiesSelector;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Priority updates and victim selection of the {@link CacheProcessor} with all keys of the cache
+ * @author Nikita Parygin
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CacheProcessorBenchmark {
+
+    @Param({"1000", "100000"})
+    public int size;
+
+    @Param({"LRU", "LFU", "TINY_LFU"})
+    public String strategy;
+
+    private CacheProcessor<String> processor;
+    private String[] keys;
+    private int[] sequence;
+
+    @Setup
+    public void setUp() {
+        processor = new CacheProcessor(new CacheStrategiesSelector<>(strategy));
+        keys = BenchmarkData.keys(size);
+        sequence = BenchmarkData.zipfSequence(size, 2);
+        for (String key : keys) {
+            processor.put(key);
+        }
+        for (int index : sequence) {
+            processor.put(keys[index]);
+        }
+    }
+
+    @Benchmark
+    @Threads(1)
+    public void put(AccessCursor cursor) {
+        processor.put(keys[cursor.next(sequence)]);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public void putContended(AccessCursor cursor) {
+        processor.put(keys[cursor.next(sequence)]);
+    }
+
+    /**
+     * Victim selection followed by access to a key, as when a new key replaces the rarest used one
+     */
+    @Benchmark
+    @Threads(1)
+    public String getKeyForReplace(AccessCursor cursor) {
+        String victim = processor.getKeyForReplace();
+        processor.put(keys[cursor.next(sequence)]);
+        return victim;
+    }
+
+    @Benchmark
+    @Threads(1)
+    public Set<String> getRarelyUsed() {
+        return processor.getRarelyUsed();
+    }
+
+    @Benchmark
+    @Threads(1)
+    public String getRarelyUsedFiltered(AccessCursor cursor) {
+        int skipped = cursor.next(sequence);
+        return processor.getRarelyUsed(key -> !key.equals(keys[skipped]));
+    }
+}
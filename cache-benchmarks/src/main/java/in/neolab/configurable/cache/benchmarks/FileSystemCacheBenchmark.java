@@ -0,0 +1,89 @@
+package in.neolab.configurable.cache.benchmarks;
+
+import in.neolab.configurable.cache.FIleSystemCacheImpl;
+import in.neolab.configurable.cache.storage.SegmentLogStorage;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reads and updates of the {@link FIleSystemCacheImpl} filled up to its size.
+ * Every trial uses new temporary directory
+ * @author Nikita Parygin
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FileSystemCacheBenchmark {
+
+    @Param({"1000", "100000"})
+    public int size;
+
+    @Param({"100", "10000"})
+    public int valueSize;
+
+    private FIleSystemCacheImpl<String, String> cache;
+    private File directory;
+    private String[] keys;
+    private String value;
+    private int[] sequence;
+
+    @Setup
+    public void setUp() throws Exception {
+        directory = BenchmarkData.createDirectory();
+        cache = new FIleSystemCacheImpl<>(size, directory, SegmentLogStorage.DEFAULT_SEGMENT_SIZE);
+        keys = BenchmarkData.keys(size);
+        value = BenchmarkData.value(valueSize, 1);
+        sequence = BenchmarkData.zipfSequence(size, 2);
+        for (String key : keys) {
+            cache.put(key, value);
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        cache.close();
+        BenchmarkData.deleteDirectory(directory);
+    }
+
+    @Benchmark
+    @Threads(1)
+    public String get(AccessCursor cursor) throws Exception {
+        return cache.get(keys[cursor.next(sequence)]);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public String getContended(AccessCursor cursor) throws Exception {
+        return cache.get(keys[cursor.next(sequence)]);
+    }
+
+    @Benchmark
+    @Threads(1)
+    public void put(AccessCursor cursor) throws Exception {
+        cache.put(keys[cursor.next(sequence)], value);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public void putContended(AccessCursor cursor) throws Exception {
+        cache.put(keys[cursor.next(sequence)], value);
+    }
+}
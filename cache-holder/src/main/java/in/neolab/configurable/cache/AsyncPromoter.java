@@ -0,0 +1,138 @@
+package in.neolab.configurable.cache;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Background promoter of objects from the file system cache to the memory cache.<br>
+ * Readers only submit keys of the file system cache hits and don't wait for the promotion.
+ * The promoter takes keys by batches and passes every batch to the promotion function.
+ * The number of promoted keys per second is limited, so promotions don't take the disk away from readers.
+ * A key is queued only once until it is taken. Keys submitted while the queue is full are dropped:
+ * the key will be submitted again on the next hit
+ * @param <K> Type of the key object
+ * @author Nikita Parygin
+ */
+class AsyncPromoter<K> implements Closeable {
+
+    /**
+     * Logger
+     */
+    private static Logger LOGGER = LoggerFactory.getLogger(AsyncPromoter.class);
+
+    /**
+     * Maximum number of keys promoted at once
+     */
+    private static final int BATCH_SIZE = 32;
+
+    /**
+     * Promotion function
+     */
+    private final Consumer<List<K>> promotion;
+
+    /**
+     * Keys waiting for the promotion
+     */
+    private final BlockingQueue<K> queue;
+
+    /**
+     * Keys that are in the queue
+     */
+    private final Set<K> queued = ConcurrentHashMap.newKeySet();
+
+    /**
+     * Time between two promotions permitted by the rate limit
+     */
+    private final long intervalNanos;
+
+    /**
+     * Time when the next promotion is permitted
+     */
+    private long nextPermitNanos = System.nanoTime();
+
+    /**
+     * Promotion thread
+     */
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "cache-promoter");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * The Constructor
+     * @param promotion promotion function
+     * @param queueSize maximum number of keys waiting for the promotion
+     * @param promotionsPerSecond maximum number of promoted keys per second
+     */
+    AsyncPromoter(Consumer<List<K>> promotion, int queueSize, double promotionsPerSecond) {
+        this.promotion = promotion;
+        this.queue = new ArrayBlockingQueue<>(queueSize);
+        this.intervalNanos = (long) (TimeUnit.SECONDS.toNanos(1) / promotionsPerSecond);
+        executor.execute(this::promote);
+    }
+
+    /**
+     * Submits key for the promotion. Doesn't wait
+     * @param key key of the file system cache object
+     */
+    void submit(K key) {
+        if (queued.add(key) && !queue.offer(key)) {
+            queued.remove(key);
+        }
+    }
+
+    @Override
+    public void close() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Loop of the promotion thread
+     */
+    private void promote() {
+        List<K> batch = new ArrayList<>(BATCH_SIZE);
+        while (!Thread.currentThread().isInterrupted()) {
+            try {
+                batch.add(queue.take());
+                queue.drainTo(batch, BATCH_SIZE - 1);
+                for (K key : batch) {
+                    queued.remove(key);
+                }
+                acquire(batch.size());
+                promotion.accept(batch);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (Exception e) {
+                LOGGER.error("Failed to promote {} objects to memory cache", batch.size(), e);
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    /**
+     * Waits until the rate limit permits the specified number of promotions
+     */
+    private void acquire(int permits) throws InterruptedException {
+        long now = System.nanoTime();
+        long wait = nextPermitNanos - now;
+        if (wait > 0) {
+            TimeUnit.NANOSECONDS.sleep(wait);
+        }
+        // Неиспользованные разрешения не копятся, поэтому после простоя нет всплеска переносов
+        nextPermitNanos = Math.max(now, nextPermitNanos) + permits * intervalNanos;
+    }
+}
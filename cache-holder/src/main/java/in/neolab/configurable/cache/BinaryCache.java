@@ -0,0 +1,28 @@
+package in.neolab.configurable.cache;
+
+import java.nio.channels.FileChannel;
+
+/**
+ * Cache that stores binary values as raw bytes and streams them without materializing on the heap
+ * @param <K> Type of the key object
+ * @author Nikita Parygin
+ */
+public interface BinaryCache<K> {
+
+    /**
+     * Adding binary item to the cache. The value is copied from the file, so it doesn't pass through the heap
+     * @param key item key used for searching elements in cache
+     * @param source file with the value. Shouldn't change until the method returns
+     * @param length length of the value
+     * @throws Exception if any error is occurred
+     */
+    void putBinary(K key, FileChannel source, long length) throws Exception;
+
+    /**
+     * Retrieving binary item from the cache by key
+     * @param key item key used for searching elements in cache
+     * @return {@link BinaryValue} object or <code>null</code> if there is no such item or its value is not a byte array
+     * @throws Exception if any error is occurred
+     */
+    BinaryValue getBinary(K key) throws Exception;
+}
@@ -0,0 +1,57 @@
+package in.neolab.configurable.cache;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * Binary value of the cache that can be written to a channel without deserialization.<br>
+ * Values of the file system cache are transferred from their records, values of the memory cache
+ * are written from their byte arrays
+ * @author Nikita Parygin
+ */
+public interface BinaryValue {
+
+    /**
+     * Returns length of the value
+     * @return number of bytes
+     */
+    long length();
+
+    /**
+     * Writes part of the value to the channel
+     * @param position position in the value to start from
+     * @param count maximum number of bytes to write
+     * @param target target channel
+     * @return number of written bytes
+     * @throws IOException if any input or output error is occurred
+     */
+    long transferTo(long position, long count, WritableByteChannel target) throws IOException;
+
+    /**
+     * Creates binary value of the byte array
+     * @param bytes value
+     * @return {@link BinaryValue} object
+     */
+    static BinaryValue of(byte[] bytes) {
+        return new BinaryValue() {
+            @Override
+            public long length() {
+                return bytes.length;
+            }
+
+            @Override
+            public long transferTo(long position, long count, WritableByteChannel target) throws IOException {
+                if (position >= bytes.length) {
+                    return 0;
+                }
+                ByteBuffer buffer = ByteBuffer.wrap(bytes, (int) position, (int) Math.min(count, bytes.length - position));
+                int written = buffer.remaining();
+                while (buffer.hasRemaining()) {
+                    target.write(buffer);
+                }
+                return written;
+            }
+        };
+    }
+}
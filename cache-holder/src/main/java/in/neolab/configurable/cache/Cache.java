@@ -1,6 +1,9 @@
 package in.neolab.configurable.cache;
 
 import java.io.Serializable;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
 
 /**
  * Cache interface. provides functionality for
@@ -34,6 +37,47 @@ public interface  Cache<K, V> {
      */
     void remove(K key) throws Exception;
 
+    /**
+     * Retrieving several items from the cache
+     * @param keys item keys used for searching elements in cache
+     * @return key-value pairs of the items found in the cache. Missing keys are absent from the map
+     * @throws Exception if any error is occurred
+     */
+    default Map<K, V> getAll(Collection<? extends K> keys) throws Exception {
+        Map<K, V> values = new HashMap<>(keys.size() * 4 / 3 + 1);
+        for (K key : keys) {
+            V value = get(key);
+            if (value != null) {
+                values.put(key, value);
+            }
+        }
+        return values;
+    }
+
+    /**
+     * Adding several items to the cache
+     * @param values key-value pairs
+     * @throws Exception if any error is occurred
+     */
+    default void putAll(Map<? extends K, ? extends V> values) throws Exception {
+        for (Map.Entry<? extends K, ? extends V> entry : values.entrySet()) {
+            put(entry.getKey(), entry.getValue());
+        }
+    }
+
+    /**
+     * Removing several items from the cache. Keys that are not in the cache are skipped
+     * @param keys item keys used for searching elements in cache
+     * @throws Exception if any error is occurred
+     */
+    default void removeAll(Collection<? extends K> keys) throws Exception {
+        for (K key : keys) {
+            if (containsKey(key)) {
+                remove(key);
+            }
+        }
+    }
+
     /**
      * Searches for an item in the cache that matches the specified key
      * @param key key by which the item is searched in the cache
@@ -59,4 +103,44 @@ public interface  Cache<K, V> {
      *          <code>false</code> - otherwise
      */
     boolean isNotFull();
+
+    /**
+     * Search for free space left in the cache besides the space reserved for elements that are being added
+     * @param reserved number of elements that are being added and are not counted by the cache yet
+     * @return  <code>true</code> - if there is free space left in the cache<br>
+     *          <code>false</code> - otherwise
+     */
+    default boolean isNotFull(int reserved) {
+        // Емкость кэша неизвестна - считаем, что зарезервированные элементы занимают все свободное место
+        return reserved == 0 && isNotFull();
+    }
+
+    /**
+     * Shows whether elements of the cache exceed its byte budget, so some of them should be evicted
+     * @return  <code>true</code> - if the cache exceeds its byte budget<br>
+     *          <code>false</code> - otherwise or if the cache is limited by count of elements only
+     */
+    default boolean isOverweight() {
+        return false;
+    }
+
+    /**
+     * Shows whether elements of the cache would exceed its byte budget if their total weight changed by the delta,
+     * e.g. after changes that are not written yet
+     * @param delta change of the total weight, may be negative
+     * @return  <code>true</code> - if the cache would exceed its byte budget<br>
+     *          <code>false</code> - otherwise or if the cache is limited by count of elements only
+     */
+    default boolean isOverweight(long delta) {
+        return isOverweight();
+    }
+
+    /**
+     * Returns weight of the element
+     * @param key item key used for searching elements in cache
+     * @return weight or zero if there is no such item or the cache is limited by count of elements only
+     */
+    default long weightOf(K key) {
+        return 0;
+    }
 }
@@ -0,0 +1,19 @@
+package in.neolab.configurable.cache;
+
+import java.io.IOException;
+
+/**
+ * Thrown by the cache that has no room for the object, though it has free space for smaller ones.
+ * The object can be placed into another tier or after eviction of other objects
+ * @author Nikita Parygin
+ */
+public class CacheFullException extends IOException {
+
+    /**
+     * The Constructor
+     * @param message detail message
+     */
+    public CacheFullException(String message) {
+        super(message);
+    }
+}
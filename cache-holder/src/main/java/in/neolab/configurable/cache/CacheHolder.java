@@ -8,18 +8,83 @@ import in.neolab.configurable.cache.processor.CacheStrategiesSelector;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import in.neolab.configurable.cache.compression.Codec;
+import in.neolab.configurable.cache.compression.Codecs;
+import in.neolab.configurable.cache.compression.CompressingSerializer;
+import in.neolab.configurable.cache.expiry.TimerWheel;
+import in.neolab.configurable.cache.lock.StripedLock;
+import in.neolab.configurable.cache.offheap.SlabAllocator;
+import in.neolab.configurable.cache.serialization.CompactSerializer;
+import in.neolab.configurable.cache.serialization.JavaSerializer;
+import in.neolab.configurable.cache.serialization.Serializer;
+import in.neolab.configurable.cache.stats.CacheStats;
+import in.neolab.configurable.cache.storage.SegmentLogStorage;
+import in.neolab.configurable.cache.weigher.HeapSizeEstimator;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.File;
 import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
 import java.io.Serializable;
-import java.util.HashSet;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
 
 /**
- * Cache holder class
+ * Cache holder class.<br>
+ * The holder is safe for use by multiple threads. Operations on a single existing key are guarded by
+ * the key stripe lock only, so they run in parallel for different keys. Operations that change the set of keys
+ * stored in the tiers (adding a new key, replacement and transfer between tiers) additionally take
+ * the placement lock and acquire the stripes of all keys involved while holding it. The placement lock only covers
+ * the choice of the tier: a new object going to the file system cache gets a reserved slot and is written after
+ * the lock is released, and a read decides whether the object is worth promoting before taking the lock.
+ * Bulk operations take the locks of all their keys and access every tier once per operation.<br>
+ * Objects of the file system cache that are requested more often than objects of the memory cache are moved
+ * to the memory cache by the reader or, in asynchronous promotion mode, by the background promoter.<br>
+ * If the {@link CacheLoader} is set, missing objects are loaded and put into the cache on read,
+ * a single load of the key serves all concurrent readers. Frequently read objects may be refreshed ahead:
+ * after the specified time since they were put, a read returns the current object and reloads it in the background.<br>
+ * Objects may expire after the specified time since they were put or since the last access. Expired objects
+ * are never returned and are removed from the tiers in the background.<br>
+ * Byte array values may be put and read as streams, see {@link #putBinary(Serializable, ReadableByteChannel)}
+ * and {@link #getBinary(Serializable)}.<br>
+ * Hits, misses, evictions, transfers between tiers and latencies of the tiers are counted, see {@link #getStats()}.<br>
+ * If the file system cache is persistent, its objects and their priorities are restored after restart.
+ * Objects of the memory cache are not persisted.
  * @param <K> Type of the key object should implement {@link Serializable} interface
  * @param <V> Type of the value object should implement {@link Serializable} interface
  * @author Nikita Parygin
  */
-public class CacheHolder<K extends Serializable, V extends Serializable> implements Cache<K, V> {
+public class CacheHolder<K extends Serializable, V extends Serializable> implements Cache<K, V>, BinaryCache<K>, Closeable {
     /**
      * Logger
      */
@@ -40,6 +105,136 @@ public class CacheHolder<K extends Serializable, V extends Serializable> impleme
      */
     private CacheProcessor<K> cacheProcessor;
 
+    /**
+     * Locks guarding single keys
+     */
+    private StripedLock keyLocks = new StripedLock(StripedLock.DEFAULT_CONCURRENCY_LEVEL);
+
+    /**
+     * Lock guarding placement of keys between tiers. Should be taken before any of the {@link #keyLocks} stripes
+     */
+    private final ReentrantLock placementLock = new ReentrantLock();
+
+    /**
+     * Number of file system cache slots reserved for new objects that are written after the placement lock is released
+     */
+    private final AtomicInteger reservedFileSystemSlots = new AtomicInteger();
+
+    /**
+     * Period of the background removal of expired objects
+     */
+    private static final long EXPIRATION_PERIOD_MILLIS = 1000;
+
+    /**
+     * Maximum time to live of the object. Longer times are treated as this one, so expiration time doesn't overflow
+     */
+    private static final long MAX_EXPIRATION_NANOS = Long.MAX_VALUE >> 1;
+
+    /**
+     * Default maximum number of keys waiting for the background promotion
+     */
+    private static final int DEFAULT_PROMOTION_QUEUE_SIZE = 1024;
+
+    /**
+     * Default maximum number of objects promoted in the background per second
+     */
+    private static final double DEFAULT_PROMOTION_RATE = 1000;
+
+    /**
+     * Number of the rarest used keys checked while looking for a memory cache object to replace by the promoted one.
+     * Promotion is checked on every file system cache hit, so it doesn't walk through all keys
+     */
+    public static final int PROMOTION_CANDIDATES = 8;
+
+    /**
+     * Default minimum number of recent accesses of the object that is worth refreshing
+     */
+    private static final int DEFAULT_REFRESH_MIN_FREQUENCY = 2;
+
+    /**
+     * Maximum number of keys waiting for the background refresh. Keys are not queued when the queue is full,
+     * they are refreshed on one of the next reads
+     */
+    private static final int REFRESH_QUEUE_SIZE = 1024;
+
+    /**
+     * Maximum number of bytes spooled from the source of binary value at once
+     */
+    private static final long SPOOL_CHUNK_SIZE = 1024 * 1024;
+
+    /**
+     * Expiration times of the objects
+     */
+    private final TimerWheel<K> timerWheel = new TimerWheel<>(System.nanoTime());
+
+    /**
+     * Time to live of the objects put without explicit time to live, zero if they don't expire
+     */
+    private long expireAfterWriteNanos;
+
+    /**
+     * Time after the last access when the object expires, zero if objects don't expire after access
+     */
+    private long expireAfterAccessNanos;
+
+    /**
+     * Shows whether any object has expiration time. Until then the timer wheel isn't touched
+     */
+    private volatile boolean expirationUsed;
+
+    /**
+     * Background promoter, <code>null</code> if objects are promoted by readers
+     */
+    private AsyncPromoter<K> promoter;
+
+    /**
+     * Source of missing objects, <code>null</code> if the cache is not read-through
+     */
+    private CacheLoader<K, V> loader;
+
+    /**
+     * Loads in progress. Concurrent misses of the same key wait for the single load
+     */
+    private final Map<K, CompletableFuture<V>> loads = new ConcurrentHashMap<>();
+
+    /**
+     * Time since the object was put when it is reloaded on read, zero if objects are not refreshed
+     */
+    private long refreshAfterWriteNanos;
+
+    /**
+     * Minimum number of recent accesses of the object that is worth refreshing
+     */
+    private int refreshMinFrequency = DEFAULT_REFRESH_MIN_FREQUENCY;
+
+    /**
+     * Number of threads reloading objects in the background
+     */
+    private int refreshThreads = 1;
+
+    /**
+     * Writes of the objects. Kept only if objects are refreshed
+     */
+    private final Map<K, Write> writes = new ConcurrentHashMap<>();
+
+    /**
+     * Background reloads of objects. Started on the first refresh
+     */
+    private ExecutorService refreshExecutor;
+
+    /**
+     * Statistics of the tiers
+     */
+    private final CacheStats stats = new CacheStats(
+            () -> fileSystemStorage() != null ? fileSystemStorage().getBytesRead() : 0,
+            () -> fileSystemStorage() != null ? fileSystemStorage().getBytesWritten() : 0
+    );
+
+    /**
+     * Background removal of expired objects. Started when the first object with expiration time is put
+     */
+    private ScheduledExecutorService expirationExecutor;
+
     /**
      * The constructor
      * @param memoryCache memory cache object. Should implement {@link Cache} interface
@@ -71,23 +266,62 @@ public class CacheHolder<K extends Serializable, V extends Serializable> impleme
         return cacheProcessor;
     }
 
+    /**
+     * Returns statistics of the tiers. Statistics are updated by the cache, the returned object is live
+     * @return {@link CacheStats} object
+     */
+    public CacheStats getStats() {
+        return stats;
+    }
+
     @Override
     public void put(K key, V value) throws Exception {
+        put(key, value, expireAfterWriteNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Adding an item to the cache for the limited time
+     * @param key item key used for searching elements in cache
+     * @param value item value
+     * @param timeToLive time since now when the item expires. Zero means the item doesn't expire
+     *                   (unless the cache expires items after access)
+     * @param unit time unit of the time to live
+     * @throws Exception if any error is occurred
+     */
+    public void put(K key, V value, long timeToLive, TimeUnit unit) throws Exception {
+        long timeToLiveNanos = Math.min(unit.toNanos(timeToLive), MAX_EXPIRATION_NANOS);
         try {
-            // Если есть место в  кэше оперативной памяти или объект с таким ключом уже существует то пихаем объект в кэш оперативной памяти
-            if (memoryCache.containsKey(key) || memoryCache.isNotFull()) {
-                memoryCache.put(key, value);
-                // Иначе если есть место в кэше файловой системы или объект с таким ключом уже есть там - пихаем туда
-            } else if (fileSystemCache.containsKey(key) || fileSystemCache.isNotFull()) {
-                fileSystemCache.put(key, value);
-            } else {
-                // Если места нет ни там ни там - заменяем, в соответствии с выбранной стратегией
-                recache(key, value);
-            }
-            if (!cacheProcessor.containsKey(key)) {
-                // Также добавляем новый ключ в систему приоритетов кэш-процессора
-                cacheProcessor.put(key);
+            // Если объект с таким ключом уже есть в одном из уровней - просто обновляем его там же,
+            // для этого достаточно блокировки самого ключа
+            if (!replaceIfPresent(key, value, timeToLiveNanos)) {
+                placementLock.lock();
+                boolean placementLocked = true;
+                try {
+                    Lock keyLock = keyLocks.get(key);
+                    keyLock.lock();
+                    try {
+                        // Пока ждали блокировку, ключ мог быть добавлен другим потоком
+                        if (!replaceIfPresent(key, value, timeToLiveNanos)) {
+                            if (reserve(key, value)) {
+                                // Место в файловой системе уже занято за ключом, поэтому сериализация и запись на диск
+                                // идут без общей блокировки - другие потоки тем временем размещают свои ключи
+                                placementLock.unlock();
+                                placementLocked = false;
+                                writeReserved(key, value);
+                            }
+                            register(key, timeToLiveNanos);
+                        }
+                    } finally {
+                        keyLock.unlock();
+                    }
+                } finally {
+                    if (placementLocked) {
+                        placementLock.unlock();
+                    }
+                }
             }
+            // Вес нового объекта становится известен только при записи, поэтому лишнее вытесняем уже после нее
+            evictIfOverweight(key);
             LOGGER.info("Object {} was successfully cached with key: {}", value.toString(), key.toString());
         } catch (Exception e) {
             LOGGER.error(
@@ -101,49 +335,61 @@ public class CacheHolder<K extends Serializable, V extends Serializable> impleme
 
     }
 
+    /**
+     * Retrieving an item from the cache by key. If the item is missing and the {@link CacheLoader} is set,
+     * the item is loaded and put into the cache
+     * @param key item key used for searching elements in cache
+     * @return item value received from cache or loaded
+     * @throws Exception if any error is occurred
+     */
     @Override
     public V get(K key) throws Exception {
+        V object = getIfPresent(key);
+        if (object == null && loader != null) {
+            object = load(key);
+        }
+        return object;
+    }
+
+    /**
+     * Retrieving an item from the cache by key. Missing items are never loaded
+     * @param key item key used for searching elements in cache
+     * @return item value received from cache or <code>null</code> if there is no such item
+     * @throws Exception if any error is occurred
+     */
+    public V getIfPresent(K key) throws Exception {
         V object = null;
-        // Сперва ищем объект в оперативной памяти
-        if (memoryCache.containsKey(key)) {
-            object = memoryCache.get(key);
-            // Каждый раз когда запрашиваем объект из кэша - увеличиваем/обновляем приоритет запрашиваемого ключа
-            cacheProcessor.put(key);
-            // Если не нашили в оперативной памяти - ищем в файловой системе
-        } else if (fileSystemCache.containsKey(key)) {
-            object = fileSystemCache.get(key);
-            cacheProcessor.put(key);
-            // Если объекты из файловой системы запрашиваются слишком часто - имеет смысл переместить их в оперативную память
-            // Для этого сравниваем приоритет текущего ключа из файловой системы с наименьшим из оперативной памяти
-            Long priority = cacheProcessor.getPriority(key);
-            K memoryKey = getRarelyUsedFromMemoryCache().stream().findFirst().orElse(null);
-            if (memoryKey == null) {
-                return object;
+        boolean fromFileSystem = false;
+        Lock keyLock = keyLocks.get(key);
+        keyLock.lock();
+        try {
+            long now = System.nanoTime();
+            // Устаревший объект не возвращаем, а сразу удаляем, не дожидаясь фоновой очистки
+            if (expirationUsed && timerWheel.removeIfExpired(key, now)) {
+                dropExpired(key);
+                // Сперва ищем объект в оперативной памяти
+            } else if (memoryCache.containsKey(key)) {
+                object = getFromMemory(key);
+                // Каждый раз когда запрашиваем объект из кэша - увеличиваем/обновляем приоритет запрашиваемого ключа
+                cacheProcessor.put(key);
+                // Если не нашили в оперативной памяти - ищем в файловой системе
+            } else if (fileSystemCache.containsKey(key)) {
+                object = getFromFileSystem(key);
+                cacheProcessor.put(key);
+                fromFileSystem = true;
             }
-            Long memoryKeyPriority = cacheProcessor.getPriority(memoryKey);
-            // Если приоритет ключа из файловой системы выше - меням его местами с любым ключом из списка ключей
-            // с низким приоритетом из оперативной памяти.
-            if (priority > memoryKeyPriority) {
-                try {
-                    swap(memoryKey, key);
-                    LOGGER.info(
-                            "Object with key {} was transferred from file system cache to memory cache. " +
-                                    "It replaced object with key {}",
-                            key.toString(),
-                            memoryKey.toString()
-                    );
-                } catch (Exception e) {
-                    LOGGER.error(
-                            "Failed to transfer object with key {} from file system cache to memory cache",
-                            key.toString(),
-                            e
-                    );
-                    throw e;
-                }
-
+            if (object != null && expireAfterAccessNanos > 0) {
+                timerWheel.extend(key, now + expireAfterAccessNanos);
             }
+        } finally {
+            keyLock.unlock();
+        }
+        recordLookup(object != null, fromFileSystem);
+        if (fromFileSystem) {
+            promoteHit(key);
         }
         if (object != null) {
+            refreshIfStale(key, object);
             LOGGER.info("Object {} with key {} was successfully requested", object.toString(), key.toString());
         } else {
             LOGGER.warn("Could not find object by key {} in cache", key.toString());
@@ -152,8 +398,75 @@ public class CacheHolder<K extends Serializable, V extends Serializable> impleme
         return object;
     }
 
+    /**
+     * Retrieving an item from the cache without waiting for the file system.
+     * Memory cache hits complete on the calling thread, other requests (including expired items, misses
+     * and reads of the keys locked by writers) are executed by the executor
+     * @param key item key used for searching elements in cache
+     * @param executor executor of the file system cache reads
+     * @return future of the item value. Completes with <code>null</code> if there is no such item
+     * @throws java.util.concurrent.RejectedExecutionException if the executor doesn't accept the read
+     */
+    public CompletableFuture<V> getAsync(K key, Executor executor) {
+        try {
+            V object = getFromMemoryNow(key);
+            if (object != null) {
+                return CompletableFuture.completedFuture(object);
+            }
+        } catch (Exception e) {
+            CompletableFuture<V> future = new CompletableFuture<>();
+            future.completeExceptionally(e);
+            return future;
+        }
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return get(key);
+            } catch (Exception e) {
+                throw new CompletionException(e);
+            }
+        }, executor);
+    }
+
+    /**
+     * Retrieving an item from the memory cache without waiting. Unlike {@link #getIfPresent(Serializable)}
+     * never touches the file system: expired items are left for the regular read
+     * @param key item key used for searching elements in cache
+     * @return item value or <code>null</code> if the memory cache has no live item or the key is locked by another thread
+     * @throws Exception if any error is occurred
+     */
+    private V getFromMemoryNow(K key) throws Exception {
+        Lock keyLock = keyLocks.get(key);
+        // Блокировку ключа держат писатели, которые могут ждать диск - в этом случае чтение уходит в пул
+        if (!keyLock.tryLock()) {
+            return null;
+        }
+        V object;
+        try {
+            long now = System.nanoTime();
+            if (!memoryCache.containsKey(key) || (expirationUsed && timerWheel.isExpired(key, now))) {
+                return null;
+            }
+            object = getFromMemory(key);
+            if (object == null) {
+                return null;
+            }
+            cacheProcessor.put(key);
+            if (expireAfterAccessNanos > 0) {
+                timerWheel.extend(key, now + expireAfterAccessNanos);
+            }
+        } finally {
+            keyLock.unlock();
+        }
+        recordLookup(true, false);
+        refreshIfStale(key, object);
+        LOGGER.info("Object {} with key {} was successfully requested", object.toString(), key.toString());
+        return object;
+    }
+
     @Override
     public void remove(K key) throws Exception {
+        Lock keyLock = keyLocks.get(key);
+        keyLock.lock();
         try {
             // Удаляем из оперативной памяти (если он там есть)
             if (memoryCache.containsKey(key)) {
@@ -164,14 +477,294 @@ public class CacheHolder<K extends Serializable, V extends Serializable> impleme
                 fileSystemCache.remove(key);
             }
             // Из таблицы приоритетов кэш-процессора
-            cacheProcessor.remove(key);
+            forget(key);
         } catch (Exception e) {
             LOGGER.error("Failed to remove element with key {} from cache", key.toString(), e);
             throw e;
+        } finally {
+            keyLock.unlock();
         }
         LOGGER.info("Object with key {} was successfully removed from cache", key.toString());
     }
 
+    /**
+     * Adding binary item to the cache. The value is spooled to a temporary file first, so slow source
+     * doesn't hold any lock, and then is placed into the file system cache
+     * @param key item key used for searching elements in cache
+     * @param source channel with the value. Is read to the end
+     * @throws Exception if any error is occurred
+     */
+    public void putBinary(K key, ReadableByteChannel source) throws Exception {
+        Path spool = Files.createTempFile("cache-", ".spool");
+        try (FileChannel channel = FileChannel.open(spool, StandardOpenOption.READ, StandardOpenOption.WRITE,
+                StandardOpenOption.DELETE_ON_CLOSE)) {
+            long length = 0;
+            long transferred;
+            while ((transferred = channel.transferFrom(source, length, SPOOL_CHUNK_SIZE)) > 0) {
+                length += transferred;
+            }
+            putBinary(key, channel, length);
+        }
+    }
+
+    /**
+     * Adding binary item to the cache. Binary items are always placed into the file system cache,
+     * the previous value of the key is removed from the memory cache
+     * @param key item key used for searching elements in cache
+     * @param source file with the value
+     * @param length length of the value
+     * @throws Exception if any error is occurred
+     */
+    @Override
+    public void putBinary(K key, FileChannel source, long length) throws Exception {
+        if (!(fileSystemCache instanceof BinaryCache)) {
+            throw new UnsupportedOperationException("File system cache doesn't support binary values");
+        }
+        placementLock.lock();
+        try {
+            Lock keyLock = keyLocks.get(key);
+            keyLock.lock();
+            try {
+                if (memoryCache.containsKey(key)) {
+                    memoryCache.remove(key);
+                }
+                if (!fileSystemCache.containsKey(key)) {
+                    while (!fileSystemHasRoom() && evictRarelyUsed(fileSystemCache, key)) {
+                        // Освобождаем место в кэше файловой системы
+                    }
+                }
+                ((BinaryCache<K>) fileSystemCache).putBinary(key, source, length);
+                cacheProcessor.put(key);
+                scheduleExpiration(key, expireAfterWriteNanos);
+                recordWrite(key, expireAfterWriteNanos);
+                evictOverweight(key);
+            } finally {
+                keyLock.unlock();
+            }
+            LOGGER.info("Binary object of {} bytes was successfully cached with key: {}", length, key.toString());
+        } catch (Exception e) {
+            LOGGER.error("Failed to put binary element with key: {} into the cache", key.toString(), e);
+            throw e;
+        } finally {
+            placementLock.unlock();
+        }
+    }
+
+    /**
+     * Retrieving binary item from the cache by key. Values of the file system cache are transferred from the disk
+     * when the returned value is written, they are not read to the heap
+     * @param key item key used for searching elements in cache
+     * @return {@link BinaryValue} object or <code>null</code> if there is no such item or its value is not a byte array
+     * @throws Exception if any error is occurred
+     */
+    @Override
+    public BinaryValue getBinary(K key) throws Exception {
+        BinaryValue value = null;
+        boolean fromFileSystem = false;
+        Lock keyLock = keyLocks.get(key);
+        keyLock.lock();
+        try {
+            long now = System.nanoTime();
+            if (expirationUsed && timerWheel.removeIfExpired(key, now)) {
+                dropExpired(key);
+            } else if (memoryCache.containsKey(key)) {
+                V object = memoryCache.get(key);
+                value = object instanceof byte[] ? BinaryValue.of((byte[]) object) : null;
+                cacheProcessor.put(key);
+            } else if (fileSystemCache.containsKey(key)) {
+                if (fileSystemCache instanceof BinaryCache) {
+                    value = ((BinaryCache<K>) fileSystemCache).getBinary(key);
+                } else {
+                    V object = fileSystemCache.get(key);
+                    value = object instanceof byte[] ? BinaryValue.of((byte[]) object) : null;
+                }
+                cacheProcessor.put(key);
+                fromFileSystem = true;
+            }
+            if (value != null && expireAfterAccessNanos > 0) {
+                timerWheel.extend(key, now + expireAfterAccessNanos);
+            }
+        } finally {
+            keyLock.unlock();
+        }
+        recordLookup(value != null, fromFileSystem);
+        if (fromFileSystem) {
+            promoteHit(key);
+        }
+        return value;
+    }
+
+    /**
+     * Retrieving several items from the cache. Keys are grouped by tier, so every tier is read once
+     * and priorities of all found keys are updated in one pass. Objects found in the file system cache
+     * are then promoted as by {@link #get(Serializable)}
+     * @param keys item keys used for searching elements in cache
+     * @return key-value pairs of the items found in the cache
+     * @throws Exception if any error is occurred
+     */
+    @Override
+    public Map<K, V> getAll(Collection<? extends K> keys) throws Exception {
+        Set<K> requested = new LinkedHashSet<>(keys);
+        Map<K, V> objects = new HashMap<>(requested.size() * 4 / 3 + 1);
+        Set<K> fromFileSystem;
+        List<Lock> locks = lockAll(requested);
+        try {
+            long now = System.nanoTime();
+            List<K> memoryKeys = new ArrayList<>();
+            List<K> fileSystemKeys = new ArrayList<>();
+            for (K key : requested) {
+                if (expirationUsed && timerWheel.removeIfExpired(key, now)) {
+                    dropExpired(key);
+                } else if (memoryCache.containsKey(key)) {
+                    memoryKeys.add(key);
+                } else if (fileSystemCache.containsKey(key)) {
+                    fileSystemKeys.add(key);
+                }
+            }
+            objects.putAll(memoryCache.getAll(memoryKeys));
+            Map<K, V> fileSystemObjects = fileSystemCache.getAll(fileSystemKeys);
+            stats.recordMemoryHits(objects.size());
+            stats.recordMemoryMisses(requested.size() - objects.size());
+            stats.recordFileSystemHits(fileSystemObjects.size());
+            stats.recordFileSystemMisses(requested.size() - objects.size() - fileSystemObjects.size());
+            objects.putAll(fileSystemObjects);
+            fromFileSystem = fileSystemObjects.keySet();
+            cacheProcessor.putAll(objects.keySet());
+            if (expireAfterAccessNanos > 0) {
+                for (K key : objects.keySet()) {
+                    timerWheel.extend(key, now + expireAfterAccessNanos);
+                }
+            }
+        } catch (Exception e) {
+            LOGGER.error("Failed to get {} elements from cache", requested.size(), e);
+            throw e;
+        } finally {
+            unlockAll(locks);
+        }
+        if (!fromFileSystem.isEmpty()) {
+            if (promoter != null) {
+                for (K key : fromFileSystem) {
+                    promoter.submit(key);
+                }
+            } else {
+                promoteAll(new ArrayList<>(fromFileSystem));
+            }
+        }
+        LOGGER.info("{} of {} requested objects were found in cache", objects.size(), requested.size());
+        for (Map.Entry<K, V> entry : objects.entrySet()) {
+            refreshIfStale(entry.getKey(), entry.getValue());
+        }
+        if (loader != null) {
+            for (K key : requested) {
+                if (!objects.containsKey(key)) {
+                    V object = load(key);
+                    if (object != null) {
+                        objects.put(key, object);
+                    }
+                }
+            }
+        }
+        return objects;
+    }
+
+    /**
+     * Adding several items to the cache. Keys that are already stored are updated in their tiers
+     * by one write per tier and their priorities are updated in one pass. New keys are placed as by
+     * {@link #put(Serializable, Serializable)}
+     * @param values key-value pairs
+     * @throws Exception if any error is occurred
+     */
+    @Override
+    public void putAll(Map<? extends K, ? extends V> values) throws Exception {
+        List<Lock> locks = lockAll(values.keySet());
+        try {
+            Map<K, V> memoryValues = new HashMap<>();
+            Map<K, V> fileSystemValues = new HashMap<>();
+            Map<K, V> newValues = new LinkedHashMap<>();
+            for (Map.Entry<? extends K, ? extends V> entry : values.entrySet()) {
+                if (memoryCache.containsKey(entry.getKey())) {
+                    memoryValues.put(entry.getKey(), entry.getValue());
+                } else if (fileSystemCache.containsKey(entry.getKey())) {
+                    fileSystemValues.put(entry.getKey(), entry.getValue());
+                } else {
+                    newValues.put(entry.getKey(), entry.getValue());
+                }
+            }
+            try {
+                memoryCache.putAll(memoryValues);
+            } catch (CacheFullException e) {
+                // Часть новых значений не помещается в память - такие ключи размещаются заново, как новые
+                Iterator<Map.Entry<K, V>> entries = memoryValues.entrySet().iterator();
+                while (entries.hasNext()) {
+                    Map.Entry<K, V> entry = entries.next();
+                    if (!tryPutToMemory(entry.getKey(), entry.getValue())) {
+                        memoryCache.remove(entry.getKey());
+                        forget(entry.getKey());
+                        newValues.put(entry.getKey(), entry.getValue());
+                        entries.remove();
+                    }
+                }
+            }
+            fileSystemCache.putAll(fileSystemValues);
+            List<K> replaced = new ArrayList<>(memoryValues.size() + fileSystemValues.size());
+            replaced.addAll(memoryValues.keySet());
+            replaced.addAll(fileSystemValues.keySet());
+            cacheProcessor.putAll(replaced);
+            for (K key : replaced) {
+                scheduleExpiration(key, expireAfterWriteNanos);
+                recordWrite(key, expireAfterWriteNanos);
+            }
+            // Новые ключи могут вытеснять другие объекты, поэтому размещаются по одному
+            for (Map.Entry<K, V> entry : newValues.entrySet()) {
+                place(entry.getKey(), entry.getValue(), expireAfterWriteNanos);
+            }
+            evictOverweight(null);
+        } catch (Exception e) {
+            LOGGER.error("Failed to put {} elements into the cache", values.size(), e);
+            throw e;
+        } finally {
+            unlockAll(locks);
+        }
+        LOGGER.info("{} objects were successfully cached", values.size());
+    }
+
+    /**
+     * Removing several items from the cache. Every tier removes its keys at once
+     * @param keys item keys used for searching elements in cache
+     * @throws Exception if any error is occurred
+     */
+    @Override
+    public void removeAll(Collection<? extends K> keys) throws Exception {
+        List<Lock> locks = lockAll(keys);
+        try {
+            List<K> memoryKeys = new ArrayList<>();
+            List<K> fileSystemKeys = new ArrayList<>();
+            for (K key : keys) {
+                if (memoryCache.containsKey(key)) {
+                    memoryKeys.add(key);
+                }
+                if (fileSystemCache.containsKey(key)) {
+                    fileSystemKeys.add(key);
+                }
+            }
+            memoryCache.removeAll(memoryKeys);
+            fileSystemCache.removeAll(fileSystemKeys);
+            cacheProcessor.removeAll(keys);
+            writes.keySet().removeAll(keys);
+            if (expirationUsed) {
+                for (K key : keys) {
+                    timerWheel.remove(key);
+                }
+            }
+        } catch (Exception e) {
+            LOGGER.error("Failed to remove {} elements from cache", keys.size(), e);
+            throw e;
+        } finally {
+            unlockAll(locks);
+        }
+        LOGGER.info("{} objects were successfully removed from cache", keys.size());
+    }
+
     @Override
     public boolean containsKey(K key) {
         return (memoryCache.containsKey(key) || fileSystemCache.containsKey(key));
@@ -180,13 +773,20 @@ public class CacheHolder<K extends Serializable, V extends Serializable> impleme
     @Override
     public void clear() {
         // Тут просто чистим кэш оперативной памяти, файловой систем и таблицу приоритетов кэш-процессора
+        placementLock.lock();
+        keyLocks.lockAll();
         try {
             memoryCache.clear();
             fileSystemCache.clear();
             cacheProcessor.clearPriorityTable();
+            timerWheel.clear();
+            writes.clear();
             LOGGER.info("Cache was successfully cleared");
         } catch (Exception e) {
             LOGGER.error("Failed to clear cache", e);
+        } finally {
+            keyLocks.unlockAll();
+            placementLock.unlock();
         }
     }
 
@@ -202,69 +802,857 @@ public class CacheHolder<K extends Serializable, V extends Serializable> impleme
     }
 
     /**
-     * Ыwaps two objects. An object that was in the memory cache is transferred to the file system cache.
-     * An object that was in the file system cache is transferred to memory
-     * @param memoryKey key of memory cache object
-     * @param fileSystemKey key of file system cache object
-     * @throws Exception if any exception is caught
+     * Closes the file system cache. Persistent file system cache saves its index and priorities of its keys
+     * @throws IOException if any input or output error is occurred
      */
-    private void swap(K memoryKey, K fileSystemKey) throws Exception {
-        // Сперва достаем объекты из оперативной памяти
-        V memoryObject = memoryCache.get(memoryKey);
-        // И из файловой системы
-        V fileSystemObject = fileSystemCache.get(fileSystemKey);
-        // Дальше удаляем оттуда и оттуда
-        memoryCache.remove(memoryKey);
-        fileSystemCache.remove(fileSystemKey);
-        // В конце записываем по новой, просто меняя местами =))
-        memoryCache.put(fileSystemKey, fileSystemObject);
-        fileSystemCache.put(memoryKey, memoryObject);
+    @Override
+    public void close() throws IOException {
+        synchronized (timerWheel) {
+            if (expirationExecutor != null) {
+                expirationExecutor.shutdownNow();
+            }
+        }
+        synchronized (writes) {
+            if (refreshExecutor != null) {
+                refreshExecutor.shutdownNow();
+            }
+        }
+        if (promoter != null) {
+            promoter.close();
+        }
+        if (fileSystemCache instanceof Closeable) {
+            ((Closeable) fileSystemCache).close();
+        }
     }
 
     /**
-     * Transfer object between to cache levels
-     * @param key key
-     * @param val value
-     * @throws IOException if any input or output error is occurred
-     * @throws ClassNotFoundException  if the requested class is not in classpath
+     * Serializes priorities of the file system cache keys. Saved with every checkpoint of the persistent storage
+     * @param storage storage of the file system cache
+     * @return serialized map of key-priority pairs
      */
-    private void recache(K key,  V val) throws Exception {
-        // Тут мы получаем ключ с наименьшим приоритетом.
-        // Таких ключей может быть несколько - мы берем последний из отсортированного списка
-        K keyForReplace = cacheProcessor.getKeyForReplace();
-        if (memoryCache.containsKey(keyForReplace)) {
-            memoryCache.remove(keyForReplace);
-            cacheProcessor.remove(keyForReplace);
-            memoryCache.put(key, val);
-        } else {
-            fileSystemCache.remove(keyForReplace);
-            cacheProcessor.remove(keyForReplace);
-            fileSystemCache.put(key, val);
+    private byte[] savePriorities(SegmentLogStorage<K> storage) {
+        Map<K, Long> priorities = cacheProcessor.snapshot();
+        priorities.keySet().retainAll(storage.keys());
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (ObjectOutputStream objectOutputStream = new ObjectOutputStream(out)) {
+            objectOutputStream.writeObject(new HashMap<>(priorities));
+        } catch (IOException e) {
+            LOGGER.error("Failed to save priorities of file system cache keys", e);
+            return null;
         }
+        return out.toByteArray();
     }
 
     /**
-     * Returns collection of most rarely used keys in cache processor priority system
-     * @return Set of {@link K} objects
+     * Adds keys recovered by the persistent file system cache to the priority system.
+     * Keys without saved priority are added as new ones
+     * @param storage recovered storage
      */
-    private Set<K> getRarelyUsedFromMemoryCache() {
-        Set<K> result = new HashSet<>();
-        Set<K> rarelyUsed = cacheProcessor.getRarelyUsed();
-        for (K key: rarelyUsed) {
-            if (memoryCache.containsKey(key)) {
-                result.add(key);
+    private void restorePriorities(SegmentLogStorage<K> storage) {
+        Map<K, Long> saved = new HashMap<>();
+        byte[] attachment = storage.getRecoveredAttachment();
+        if (attachment != null) {
+            try (ObjectInputStream objectInputStream = new ObjectInputStream(new ByteArrayInputStream(attachment))) {
+                saved = (Map<K, Long>) objectInputStream.readObject();
+            } catch (IOException | ClassNotFoundException e) {
+                LOGGER.warn("Failed to restore priorities of file system cache keys", e);
+            }
+        }
+        Map<K, Long> priorities = new HashMap<>();
+        for (K key : storage.keys()) {
+            Long priority = saved.get(key);
+            if (priority != null) {
+                priorities.put(key, priority);
+            }
+        }
+        cacheProcessor.restore(priorities);
+        for (K key : storage.keys()) {
+            if (!priorities.containsKey(key)) {
+                cacheProcessor.put(key);
             }
         }
-        return result;
+        LOGGER.info("File system cache was restored with {} objects", storage.size());
     }
 
     /**
-     * Cache builder class. Return instance of {@link CacheHolder} object
+     * Acquires the placement lock and the stripes of all keys. Several stripes are taken only while holding
+     * the placement lock, so bulk operations don't deadlock with each other or with placement of single keys
+     * @param keys keys
+     * @return acquired stripe locks
      */
-    public static final class CacheBuilder {
-        private CacheHolder cacheHolder = new CacheHolder();
+    private List<Lock> lockAll(Collection<? extends K> keys) {
+        placementLock.lock();
+        List<Lock> locks = keyLocks.getAll(keys);
+        for (Lock lock : locks) {
+            lock.lock();
+        }
+        return locks;
+    }
 
-        /**
+    /**
+     * Releases locks acquired by {@link #lockAll(Collection)}
+     * @param locks acquired stripe locks
+     */
+    private void unlockAll(List<Lock> locks) {
+        for (Lock lock : locks) {
+            lock.unlock();
+        }
+        placementLock.unlock();
+    }
+
+    /**
+     * Removes the key from the priority system and cancels its expiration and refresh
+     * @param key key
+     */
+    private void forget(K key) {
+        forget(key, false);
+    }
+
+    /**
+     * Removes the key from the priority system and cancels its expiration and refresh
+     * @param key key
+     * @param evicted <code>true</code> if the object was evicted to free space for other objects
+     */
+    private void forget(K key, boolean evicted) {
+        if (evicted) {
+            cacheProcessor.evict(key);
+        } else {
+            cacheProcessor.remove(key);
+        }
+        writes.remove(key);
+        if (expirationUsed) {
+            timerWheel.remove(key);
+        }
+    }
+
+    /**
+     * Schedules expiration of the object that was put. Caller should hold the key stripe lock
+     * @param key key
+     * @param timeToLive time to live in nanoseconds, zero if the object doesn't expire after write
+     */
+    private void scheduleExpiration(K key, long timeToLive) {
+        if (timeToLive <= 0 && expireAfterAccessNanos <= 0) {
+            // Новое значение без срока жизни заменяет и срок жизни прежнего
+            if (expirationUsed) {
+                timerWheel.remove(key);
+            }
+            return;
+        }
+        startExpiration();
+        long now = System.nanoTime();
+        long limit = timeToLive > 0 ? now + timeToLive : Long.MAX_VALUE;
+        long time = expireAfterAccessNanos > 0 ? now + expireAfterAccessNanos : limit;
+        timerWheel.schedule(key, time, limit);
+    }
+
+    /**
+     * Starts the background removal of expired objects
+     */
+    private void startExpiration() {
+        if (expirationUsed) {
+            return;
+        }
+        synchronized (timerWheel) {
+            if (expirationExecutor == null) {
+                expirationExecutor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                    Thread thread = new Thread(runnable, "cache-expiration");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+                expirationExecutor.scheduleWithFixedDelay(
+                        this::removeExpired, EXPIRATION_PERIOD_MILLIS, EXPIRATION_PERIOD_MILLIS, TimeUnit.MILLISECONDS
+                );
+                expirationUsed = true;
+            }
+        }
+    }
+
+    /**
+     * Removes objects whose expiration time has passed from the tiers
+     */
+    private void removeExpired() {
+        long now = System.nanoTime();
+        for (K key : timerWheel.advance(now)) {
+            Lock keyLock = keyLocks.get(key);
+            keyLock.lock();
+            try {
+                // Пока ждали блокировку, объект могли обновить или удалить
+                if (timerWheel.removeIfExpired(key, now)) {
+                    dropExpired(key);
+                }
+            } catch (Exception e) {
+                LOGGER.error("Failed to remove expired object with key {} from cache", key.toString(), e);
+            } finally {
+                keyLock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Removes expired object from the tiers. Caller should hold the key stripe lock
+     * @param key key
+     * @throws Exception if any exception is caught
+     */
+    private void dropExpired(K key) throws Exception {
+        if (memoryCache.containsKey(key)) {
+            memoryCache.remove(key);
+        }
+        if (fileSystemCache.containsKey(key)) {
+            fileSystemCache.remove(key);
+        }
+        cacheProcessor.remove(key);
+        writes.remove(key);
+        stats.recordExpiration();
+        LOGGER.info("Object with key {} expired and was removed from cache", key.toString());
+    }
+
+    /**
+     * Updates value of the key if it is already stored in one of the tiers.
+     * If the new value doesn't fit into the memory cache, the key is removed and should be placed as a new one.
+     * Acquires the key stripe lock
+     * @param key key
+     * @param value new value
+     * @param timeToLive time to live of the new value in nanoseconds
+     * @return  <code>true</code> - if the key was found and its value was replaced.<br>
+     *          <code>false</code> - otherwise
+     * @throws Exception if any exception is caught
+     */
+    private boolean replaceIfPresent(K key, V value, long timeToLive) throws Exception {
+        Lock keyLock = keyLocks.get(key);
+        keyLock.lock();
+        try {
+            if (memoryCache.containsKey(key)) {
+                if (!tryPutToMemory(key, value)) {
+                    memoryCache.remove(key);
+                    forget(key);
+                    return false;
+                }
+            } else if (fileSystemCache.containsKey(key)) {
+                putToFileSystem(key, value);
+            } else {
+                return false;
+            }
+            if (!cacheProcessor.containsKey(key)) {
+                cacheProcessor.put(key);
+            }
+            scheduleExpiration(key, timeToLive);
+            recordWrite(key, timeToLive);
+            return true;
+        } finally {
+            keyLock.unlock();
+        }
+    }
+
+    /**
+     * Places new key into one of the tiers. Caller should hold the placement lock and the key stripe lock
+     * @param key key
+     * @param value value
+     * @param timeToLive time to live of the value in nanoseconds
+     * @throws Exception if any exception is caught
+     */
+    private void place(K key, V value, long timeToLive) throws Exception {
+        if (reserve(key, value)) {
+            writeReserved(key, value);
+        }
+        register(key, timeToLive);
+        // Вес нового объекта становится известен только при записи, поэтому лишнее вытесняем уже после нее
+        evictOverweight(key);
+    }
+
+    /**
+     * Chooses the tier of the new key, evicting other objects if both tiers are full.
+     * The object is written to the memory cache at once, for the file system cache only the slot is reserved:
+     * the caller writes the object by {@link #writeReserved(Serializable, Serializable)} and may release
+     * the placement lock before it. Caller should hold the placement lock and the key stripe lock
+     * @param key key
+     * @param value value
+     * @return  <code>true</code> - if the slot of the file system cache is reserved for the object.<br>
+     *          <code>false</code> - if the object is written to the memory cache
+     * @throws Exception if any exception is caught
+     */
+    private boolean reserve(K key, V value) throws Exception {
+        // Если есть место в  кэше оперативной памяти - пихаем объект туда
+        if (memoryCache.isNotFull() && tryPutToMemory(key, value)) {
+            return false;
+        }
+        // Иначе если есть место в кэше файловой системы - пихаем туда
+        if (fileSystemHasRoom()) {
+            reservedFileSystemSlots.incrementAndGet();
+            return true;
+        }
+        // Если места нет ни там ни там - заменяем, в соответствии с выбранной стратегией
+        return recache(key, value);
+    }
+
+    /**
+     * Writes the object to the reserved slot of the file system cache and releases the reservation.
+     * Caller should hold the key stripe lock
+     * @param key key
+     * @param value value
+     * @throws Exception if any exception is caught
+     */
+    private void writeReserved(K key, V value) throws Exception {
+        try {
+            putToFileSystem(key, value);
+        } finally {
+            // Резерв снимается после записи, поэтому объект не учитывается как свободное место ни в один момент
+            reservedFileSystemSlots.decrementAndGet();
+        }
+    }
+
+    /**
+     * Adds the new key to the priority system and schedules its expiration. Caller should hold the key stripe lock
+     * @param key key
+     * @param timeToLive time to live of the value in nanoseconds
+     */
+    private void register(K key, long timeToLive) {
+        // Ключ попадает в систему приоритетов только после записи, поэтому его нельзя выбрать для вытеснения раньше
+        cacheProcessor.put(key);
+        scheduleExpiration(key, timeToLive);
+        recordWrite(key, timeToLive);
+    }
+
+    /**
+     * Checks whether the file system cache has room for one more object besides the reserved ones
+     */
+    private boolean fileSystemHasRoom() {
+        return fileSystemCache.isNotFull(reservedFileSystemSlots.get());
+    }
+
+    /**
+     * Evicts the rarest used objects from the tiers that exceed their byte budgets.
+     * Caller should hold the placement lock
+     * @param keep key of the object that should stay in the cache, <code>null</code> if any object may be evicted
+     * @throws Exception if any exception is caught
+     */
+    private void evictOverweight(K keep) throws Exception {
+        evictOverweight(memoryCache, keep);
+        evictOverweight(fileSystemCache, keep);
+    }
+
+    private void evictOverweight(Cache<K, V> tier, K keep) throws Exception {
+        while (tier.isOverweight()) {
+            if (!evictRarelyUsed(tier, keep)) {
+                // Объект тяжелее всего бюджета уровня - вытеснять больше нечего
+                LOGGER.warn("Object with key {} exceeds byte budget of the cache tier", keep);
+                return;
+            }
+        }
+    }
+
+    /**
+     * Evicts the rarest used object from the tier. Keys are checked in the order of the extrusion strategy,
+     * so rarer objects of the other tier don't stop the eviction. Caller should hold the placement lock
+     * @param tier cache tier
+     * @param keep key of the object that should stay in the cache, <code>null</code> if any object may be evicted
+     * @return  <code>true</code> - if an object was evicted.<br>
+     *          <code>false</code> - if there is no object to evict
+     * @throws Exception if any exception is caught
+     */
+    private boolean evictRarelyUsed(Cache<K, V> tier, K keep) throws Exception {
+        K victim = cacheProcessor.getRarelyUsed(key -> !key.equals(keep) && tier.containsKey(key));
+        if (victim == null) {
+            return false;
+        }
+        Lock victimLock = keyLocks.get(victim);
+        victimLock.lock();
+        try {
+            if (tier.containsKey(victim)) {
+                tier.remove(victim);
+            }
+            forget(victim, true);
+            stats.recordEviction();
+        } finally {
+            victimLock.unlock();
+        }
+        LOGGER.info("Object with key {} was evicted to free space for the object with key {}", victim.toString(), keep);
+        return true;
+    }
+
+    /**
+     * Loads missing object by the {@link CacheLoader} and puts it into the cache.
+     * Only one thread loads the key, other threads that missed the same key wait for its result
+     * @param key key
+     * @return loaded object or <code>null</code> if the loader has no object with such key
+     * @throws Exception if the loader failed
+     */
+    private V load(K key) throws Exception {
+        CompletableFuture<V> load = new CompletableFuture<>();
+        CompletableFuture<V> inFlight = loads.putIfAbsent(key, load);
+        if (inFlight != null) {
+            try {
+                return inFlight.get();
+            } catch (ExecutionException e) {
+                throw e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+            }
+        }
+        try {
+            // Предыдущая загрузка могла завершиться между промахом и регистрацией этой
+            V object = containsKey(key) ? getIfPresent(key) : null;
+            if (object == null) {
+                object = loader.load(key);
+                if (object != null) {
+                    put(key, object);
+                }
+                LOGGER.info("Object with key {} was loaded into cache", key.toString());
+            }
+            load.complete(object);
+            return object;
+        } catch (Exception e) {
+            LOGGER.error("Failed to load object with key {}", key.toString(), e);
+            load.completeExceptionally(e);
+            throw e;
+        } finally {
+            loads.remove(key, load);
+        }
+    }
+
+    /**
+     * Reads object from the memory cache and records the read latency
+     */
+    private V getFromMemory(K key) throws Exception {
+        long start = System.nanoTime();
+        V object = memoryCache.get(key);
+        stats.getMemoryGetLatency().record(System.nanoTime() - start);
+        return object;
+    }
+
+    /**
+     * Reads object from the file system cache and records the read latency
+     */
+    private V getFromFileSystem(K key) throws Exception {
+        long start = System.nanoTime();
+        V object = fileSystemCache.get(key);
+        stats.getFileSystemGetLatency().record(System.nanoTime() - start);
+        return object;
+    }
+
+    /**
+     * Writes object to the memory cache and records the write latency
+     */
+    private void putToMemory(K key, V value) throws Exception {
+        long start = System.nanoTime();
+        memoryCache.put(key, value);
+        stats.getMemoryPutLatency().record(System.nanoTime() - start);
+    }
+
+    /**
+     * Writes object to the memory cache if the cache has room for it
+     * @return  <code>true</code> - if the object was written.<br>
+     *          <code>false</code> - if the memory cache has no room for the object
+     */
+    private boolean tryPutToMemory(K key, V value) throws Exception {
+        try {
+            putToMemory(key, value);
+            return true;
+        } catch (CacheFullException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Writes object to the file system cache and records the write latency
+     */
+    private void putToFileSystem(K key, V value) throws Exception {
+        long start = System.nanoTime();
+        fileSystemCache.put(key, value);
+        stats.getFileSystemPutLatency().record(System.nanoTime() - start);
+    }
+
+    /**
+     * Counts read of the single key as hit or miss of the tiers
+     * @param found shows whether the object was found
+     * @param fromFileSystem shows whether the object was found in the file system cache
+     */
+    private void recordLookup(boolean found, boolean fromFileSystem) {
+        if (found && !fromFileSystem) {
+            stats.recordMemoryHits(1);
+            return;
+        }
+        stats.recordMemoryMisses(1);
+        if (found) {
+            stats.recordFileSystemHits(1);
+        } else {
+            stats.recordFileSystemMisses(1);
+        }
+    }
+
+    /**
+     * Returns storage of the file system cache
+     * @return {@link SegmentLogStorage} object or <code>null</code> if the file system cache doesn't use it
+     */
+    private SegmentLogStorage<K> fileSystemStorage() {
+        Cache<K, V> cache = fileSystemCache instanceof WriteBehindCache
+                ? ((WriteBehindCache<K, V>) fileSystemCache).getCache()
+                : fileSystemCache;
+        return cache instanceof FIleSystemCacheImpl ? ((FIleSystemCacheImpl<K, V>) cache).getStorage() : null;
+    }
+
+    /**
+     * Remembers when the object was put and its time to live, if objects are refreshed.
+     * Caller should hold the key stripe lock
+     * @param key key
+     * @param timeToLive time to live in nanoseconds, zero if the object doesn't expire after write
+     */
+    private void recordWrite(K key, long timeToLive) {
+        if (refreshAfterWriteNanos > 0) {
+            writes.put(key, new Write(System.nanoTime(), timeToLive));
+        }
+    }
+
+    /**
+     * Reloads the object in the background if it was put long ago and is read often enough.
+     * The reader doesn't wait for the reload. Caller shouldn't hold the key stripe lock
+     * @param key key
+     * @param current object returned to the reader
+     */
+    private void refreshIfStale(K key, V current) {
+        if (refreshAfterWriteNanos <= 0 || loader == null) {
+            return;
+        }
+        Write written = writes.get(key);
+        if (written == null || System.nanoTime() - written.nanos < refreshAfterWriteNanos
+                || cacheProcessor.getFrequency(key) < refreshMinFrequency) {
+            return;
+        }
+        // Перезагрузка регистрируется как обычная загрузка: повторные чтения и промахи по ключу ее не дублируют
+        CompletableFuture<V> refresh = new CompletableFuture<>();
+        if (loads.putIfAbsent(key, refresh) != null) {
+            return;
+        }
+        try {
+            startRefresh().execute(() -> refresh(key, written, refresh));
+        } catch (RejectedExecutionException e) {
+            // Очередь переполнена - ключ будет обновлен при одном из следующих чтений
+            loads.remove(key, refresh);
+            refresh.complete(current);
+        }
+    }
+
+    /**
+     * Reloads the object by the {@link CacheLoader}. The loaded object replaces the current one only if the key
+     * wasn't put or removed during the reload
+     * @param key key
+     * @param written write of the current object
+     * @param refresh future of the reload, completed with the loaded object
+     */
+    private void refresh(K key, Write written, CompletableFuture<V> refresh) {
+        try {
+            V object = loader.load(key);
+            boolean replaced = false;
+            Lock keyLock = keyLocks.get(key);
+            keyLock.lock();
+            try {
+                // Каждая запись создает новый объект, поэтому сравнение ссылок находит любую запись за время загрузки
+                if (written == writes.get(key)) {
+                    if (object != null) {
+                        // Перезагруженный объект живет столько же, сколько было задано при его записи
+                        replaced = replaceIfPresent(key, object, written.timeToLive);
+                    } else {
+                        // Источник больше не содержит объект - не отдаем его устаревшую копию
+                        remove(key);
+                    }
+                }
+            } finally {
+                keyLock.unlock();
+            }
+            if (replaced) {
+                evictIfOverweight(key);
+            }
+            refresh.complete(object);
+            LOGGER.info("Object with key {} was refreshed", key.toString());
+        } catch (Exception e) {
+            LOGGER.error("Failed to refresh object with key {}", key.toString(), e);
+            refresh.completeExceptionally(e);
+        } finally {
+            loads.remove(key, refresh);
+        }
+    }
+
+    /**
+     * Starts the background reloads of objects
+     * @return executor of the reloads
+     */
+    private ExecutorService startRefresh() {
+        synchronized (writes) {
+            if (refreshExecutor == null) {
+                AtomicInteger number = new AtomicInteger();
+                refreshExecutor = new ThreadPoolExecutor(
+                        refreshThreads, refreshThreads, 0, TimeUnit.MILLISECONDS,
+                        new ArrayBlockingQueue<>(REFRESH_QUEUE_SIZE),
+                        runnable -> {
+                            Thread thread = new Thread(runnable, "cache-refresh-" + number.incrementAndGet());
+                            thread.setDaemon(true);
+                            return thread;
+                        }
+                );
+            }
+            return refreshExecutor;
+        }
+    }
+
+    /**
+     * Evicts objects from the tiers that exceed their byte budgets after the value of the key was replaced.
+     * Caller shouldn't hold the key stripe lock
+     * @param key key of the replaced object
+     * @throws Exception if any exception is caught
+     */
+    private void evictIfOverweight(K key) throws Exception {
+        // Новое значение может оказаться тяжелее старого
+        if (memoryCache.isOverweight() || fileSystemCache.isOverweight()) {
+            placementLock.lock();
+            try {
+                evictOverweight(key);
+            } finally {
+                placementLock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Promotes object found in the file system cache by the reader. Caller shouldn't hold the key stripe lock
+     * @param key key of file system cache object
+     * @throws Exception if any exception is caught
+     */
+    private void promoteHit(K key) throws Exception {
+        if (promoter != null) {
+            // Решение о переносе принимает фоновый поток, чтение его не ждет
+            promoter.submit(key);
+        } else {
+            // Перенос между уровнями затрагивает два ключа, поэтому выполняется уже после освобождения блокировки ключа
+            promote(key);
+        }
+    }
+
+    /**
+     * Checks whether the object of the file system cache is requested more often than one of the rarest used objects
+     * of the memory cache. Takes only the key stripe lock, so the result should be checked again before the swap.
+     * Caller shouldn't hold the key stripe lock
+     * @param key key of file system cache object
+     * @return  <code>true</code> - if the object is worth promoting.<br>
+     *          <code>false</code> - otherwise
+     */
+    private boolean isWorthPromoting(K key) {
+        Lock keyLock = keyLocks.get(key);
+        keyLock.lock();
+        try {
+            if (!fileSystemCache.containsKey(key)) {
+                return false;
+            }
+            Long priority = cacheProcessor.getPriority(key);
+            K memoryKey = cacheProcessor.getRarelyUsed(memoryCache::containsKey, PROMOTION_CANDIDATES);
+            if (priority == null || memoryKey == null) {
+                return false;
+            }
+            Long memoryKeyPriority = cacheProcessor.getPriority(memoryKey);
+            return memoryKeyPriority != null && priority > memoryKeyPriority;
+        } finally {
+            keyLock.unlock();
+        }
+    }
+
+    /**
+     * Promotes batch of keys submitted to the {@link AsyncPromoter}. The placement lock is taken once for the batch
+     * @param keys keys of file system cache objects
+     */
+    private void promoteAll(List<K> keys) {
+        placementLock.lock();
+        try {
+            for (K key : keys) {
+                try {
+                    promote(key);
+                } catch (Exception e) {
+                    // Ошибка уже залогирована, остальные ключи пакета переносим как обычно
+                }
+            }
+        } finally {
+            placementLock.unlock();
+        }
+    }
+
+    /**
+     * Moves object from the file system cache to the memory cache if it is requested more often
+     * than the most rarely used object of the memory cache
+     * @param key key of file system cache object
+     * @throws Exception if any exception is caught
+     */
+    private void promote(K key) throws Exception {
+        // Большинство чтений из файловой системы ничего не переносят - решаем это без общей блокировки размещения
+        if (!isWorthPromoting(key)) {
+            return;
+        }
+        placementLock.lock();
+        try {
+            Lock keyLock = keyLocks.get(key);
+            keyLock.lock();
+            try {
+                // Пока блокировка была отпущена, объект мог быть удален или уже перемещен другим потоком
+                if (!fileSystemCache.containsKey(key)) {
+                    return;
+                }
+                // Если объекты из файловой системы запрашиваются слишком часто - имеет смысл переместить их в оперативную память
+                // Для этого сравниваем приоритет текущего ключа из файловой системы с наименьшим из оперативной памяти
+                Long priority = cacheProcessor.getPriority(key);
+                K memoryKey = cacheProcessor.getRarelyUsed(memoryCache::containsKey, PROMOTION_CANDIDATES);
+                if (memoryKey == null) {
+                    return;
+                }
+                Lock memoryKeyLock = keyLocks.get(memoryKey);
+                memoryKeyLock.lock();
+                try {
+                    Long memoryKeyPriority = cacheProcessor.getPriority(memoryKey);
+                    // Если приоритет ключа из файловой системы выше - меням его местами с любым ключом из списка ключей
+                    // с низким приоритетом из оперативной памяти.
+                    if (!memoryCache.containsKey(memoryKey) || memoryKeyPriority == null || priority <= memoryKeyPriority) {
+                        return;
+                    }
+                    if (!swap(memoryKey, key)) {
+                        return;
+                    }
+                    evictOverweight(key);
+                    LOGGER.info(
+                            "Object with key {} was transferred from file system cache to memory cache. " +
+                                    "It replaced object with key {}",
+                            key.toString(),
+                            memoryKey.toString()
+                    );
+                } finally {
+                    memoryKeyLock.unlock();
+                }
+            } finally {
+                keyLock.unlock();
+            }
+        } catch (Exception e) {
+            LOGGER.error(
+                    "Failed to transfer object with key {} from file system cache to memory cache",
+                    key.toString(),
+                    e
+            );
+            throw e;
+        } finally {
+            placementLock.unlock();
+        }
+    }
+
+    /**
+     * Swaps two objects. An object that was in the memory cache is transferred to the file system cache.
+     * An object that was in the file system cache is transferred to memory.
+     * Caller should hold the placement lock and stripe locks of both keys
+     * @param memoryKey key of memory cache object
+     * @param fileSystemKey key of file system cache object
+     * @return  <code>true</code> - if the objects were swapped.<br>
+     *          <code>false</code> - if the memory cache has no room for the object of the file system cache
+     * @throws Exception if any exception is caught
+     */
+    private boolean swap(K memoryKey, K fileSystemKey) throws Exception {
+        // Сперва достаем объекты из оперативной памяти
+        V memoryObject = getFromMemory(memoryKey);
+        // И из файловой системы
+        V fileSystemObject = getFromFileSystem(fileSystemKey);
+        // Записываем по новой, просто меняя местами =))
+        // Сначала освобождаем место в памяти: заполненный по объему уровень иначе не принял бы переносимый объект.
+        // Оба ключа заблокированы, поэтому промежуточное состояние никто не увидит
+        memoryCache.remove(memoryKey);
+        if (!tryPutToMemory(fileSystemKey, fileSystemObject)) {
+            // Переносимый объект не поместился и на освобожденное место - возвращаем вытесненный обратно
+            if (!tryPutToMemory(memoryKey, memoryObject)) {
+                putToFileSystem(memoryKey, memoryObject);
+                stats.recordDemotion();
+            }
+            return false;
+        }
+        putToFileSystem(memoryKey, memoryObject);
+        fileSystemCache.remove(fileSystemKey);
+        stats.recordPromotion();
+        stats.recordDemotion();
+        return true;
+    }
+
+    /**
+     * Transfer object between to cache levels.
+     * Caller should hold the placement lock and the key stripe lock
+     * @param key key
+     * @param val value
+     * @return  <code>true</code> - if the slot of the file system cache is reserved for the object, see {@link #reserve}.<br>
+     *          <code>false</code> - if the object is written to the memory cache
+     * @throws IOException if any input or output error is occurred
+     * @throws ClassNotFoundException  if the requested class is not in classpath
+     */
+    private boolean recache(K key,  V val) throws Exception {
+        while (true) {
+            // Тут мы получаем ключ с наименьшим приоритетом.
+            // Таких ключей может быть несколько - мы берем тот, чей приоритет обновлялся раньше остальных
+            K keyForReplace = cacheProcessor.getKeyForReplace();
+            if (keyForReplace == null) {
+                // Вытеснять больше нечего, а объект так и не поместился ни в один из уровней
+                throw new CacheFullException(String.format("Object with key %1$s doesn't fit into the cache", key));
+            }
+            Lock replaceLock = keyLocks.get(keyForReplace);
+            replaceLock.lock();
+            try {
+                if (memoryCache.containsKey(keyForReplace)) {
+                    memoryCache.remove(keyForReplace);
+                    forget(keyForReplace, true);
+                    stats.recordEviction();
+                    // Освобожденного места может не хватить крупному объекту - тогда вытесняем дальше
+                    if (tryPutToMemory(key, val)) {
+                        return false;
+                    }
+                } else if (fileSystemCache.containsKey(keyForReplace)) {
+                    fileSystemCache.remove(keyForReplace);
+                    forget(keyForReplace, true);
+                    stats.recordEviction();
+                    reservedFileSystemSlots.incrementAndGet();
+                    return true;
+                } else {
+                    // Ключ был удален другим потоком, пока мы ждали его блокировку - место могло освободиться
+                    forget(keyForReplace);
+                }
+            } finally {
+                replaceLock.unlock();
+            }
+            if (memoryCache.isNotFull() && tryPutToMemory(key, val)) {
+                return false;
+            } else if (fileSystemHasRoom()) {
+                reservedFileSystemSlots.incrementAndGet();
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Write of the object remembered for its refresh
+     */
+    private static final class Write {
+
+        /**
+         * Time when the object was put
+         */
+        private final long nanos;
+
+        /**
+         * Time to live of the object in nanoseconds, zero if the object doesn't expire after write
+         */
+        private final long timeToLive;
+
+        private Write(long nanos, long timeToLive) {
+            this.nanos = nanos;
+            this.timeToLive = timeToLive;
+        }
+    }
+
+    /**
+     * Cache builder class. Return instance of {@link CacheHolder} object
+     */
+    public static final class CacheBuilder {
+        private CacheHolder cacheHolder = new CacheHolder();
+
+        /**
+         * Serializer of keys and objects of the tiers created from configuration
+         */
+        private Serializer serializer;
+
+        /**
          * Set value to the {@link CacheHolder#memoryCache} field
          * @param memoryCache memory cache object. Should implement {@link Cache} interface
          * @return instance of {@link CacheBuilder} object used for building
@@ -292,11 +1680,117 @@ public class CacheHolder<K extends Serializable, V extends Serializable> impleme
             return this;
         }
 
+        /**
+         * Set number of stripes used for locking keys
+         * @param concurrencyLevel expected number of concurrently updating threads
+         * @return instance of {@link CacheBuilder} object used for building
+         */
+        public CacheBuilder setConcurrencyLevel(int concurrencyLevel) {
+            cacheHolder.keyLocks = new StripedLock(concurrencyLevel);
+            return this;
+        }
+
+        /**
+         * Set time to live of the objects put without explicit time to live
+         * @param duration time since the object was put when it expires
+         * @param unit time unit of the duration
+         * @return instance of {@link CacheBuilder} object used for building
+         */
+        public CacheBuilder setExpireAfterWrite(long duration, TimeUnit unit) {
+            cacheHolder.expireAfterWriteNanos = Math.min(unit.toNanos(duration), MAX_EXPIRATION_NANOS);
+            return this;
+        }
+
+        /**
+         * Set time after the last access when the object expires
+         * @param duration time since the last access when the object expires
+         * @param unit time unit of the duration
+         * @return instance of {@link CacheBuilder} object used for building
+         */
+        public CacheBuilder setExpireAfterAccess(long duration, TimeUnit unit) {
+            cacheHolder.expireAfterAccessNanos = Math.min(unit.toNanos(duration), MAX_EXPIRATION_NANOS);
+            return this;
+        }
+
+        /**
+         * Enable promotion of objects from the file system cache to the memory cache in the background.
+         * Readers don't wait for the promotion
+         * @param queueSize maximum number of keys waiting for the promotion
+         * @param promotionsPerSecond maximum number of promoted objects per second
+         * @return instance of {@link CacheBuilder} object used for building
+         */
+        public CacheBuilder setAsyncPromotion(int queueSize, double promotionsPerSecond) {
+            CacheHolder holder = cacheHolder;
+            holder.promoter = new AsyncPromoter<>(holder::promoteAll, queueSize, promotionsPerSecond);
+            return this;
+        }
+
+        /**
+         * Set source of the objects missing in the cache. Makes the cache read-through: a miss loads the object,
+         * puts it into the cache and returns it. Concurrent misses of the same key share single load
+         * @param loader cache loader
+         * @return instance of {@link CacheBuilder} object used for building
+         */
+        public CacheBuilder setCacheLoader(CacheLoader loader) {
+            cacheHolder.loader = loader;
+            return this;
+        }
+
+        /**
+         * Set time since the object was put when it is refreshed. A read of the older object returns it at once
+         * and reloads it by the {@link CacheLoader} in the background. Only objects read often enough are
+         * refreshed, see {@link #setRefreshMinFrequency(int)}. Has no effect without the cache loader
+         * @param duration time since the object was put when it is refreshed
+         * @param unit time unit of the duration
+         * @return instance of {@link CacheBuilder} object used for building
+         */
+        public CacheBuilder setRefreshAfterWrite(long duration, TimeUnit unit) {
+            cacheHolder.refreshAfterWriteNanos = unit.toNanos(duration);
+            return this;
+        }
+
+        /**
+         * Set minimum number of recent accesses of the object that is worth refreshing.
+         * Accesses are estimated by the {@link CacheProcessor} and count the put of the object
+         * @param minFrequency number of accesses between 1 and 15
+         * @return instance of {@link CacheBuilder} object used for building
+         */
+        public CacheBuilder setRefreshMinFrequency(int minFrequency) {
+            cacheHolder.refreshMinFrequency = minFrequency;
+            return this;
+        }
+
+        /**
+         * Set number of threads reloading objects in the background
+         * @param threads number of threads
+         * @return instance of {@link CacheBuilder} object used for building
+         */
+        public CacheBuilder setRefreshThreads(int threads) {
+            cacheHolder.refreshThreads = threads;
+            return this;
+        }
+
+        /**
+         * Set serializer used by the tiers created in {@link #buildFromConfig(Config)}.
+         * Overrides the <code>serializer</code> configuration property
+         * @param serializer serializer of keys and cached objects
+         * @return instance of {@link CacheBuilder} object used for building
+         */
+        public CacheBuilder setSerializer(Serializer serializer) {
+            this.serializer = serializer;
+            return this;
+        }
+
         /**
          * Build cache holder
          * @return {@link CacheHolder} object
          */
         public CacheHolder build() {
+            // Частоты обращений нужны только для отбора обновляемых объектов - иначе не тратим на них время
+            if (cacheHolder.cacheProcessor != null) {
+                cacheHolder.cacheProcessor.setFrequencyCounting(
+                        cacheHolder.refreshAfterWriteNanos > 0 && cacheHolder.loader != null);
+            }
             return cacheHolder;
         }
 
@@ -314,18 +1808,180 @@ public class CacheHolder<K extends Serializable, V extends Serializable> impleme
          *     <ul>
          *         <li><code>size.memory</code> - maximum number of items that memory cache can store </li>
          *         <li><code>size.file-system</code> - maximum number of items that file system cache can store</li>
-         *         <li><code>strategy</code> - implemented cache erasure strategy (Should be "LFU" or "LRU")</li>
+         *         <li><code>strategy</code> - implemented cache erasure strategy ("LFU", "LRU", "TINY_LFU", "ARC" or name of the strategy
+         *         registered by {@link in.neolab.configurable.cache.processor.EvictionPolicyProvider})</li>
+         *     </ul>
+         * Optional properties:<br>
+         *     <ul>
+         *         <li><code>serializer</code> - serializer of objects stored outside of the java heap: "compact" (default)
+         *         or "java" for the standard java serialization</li>
+         *         <li><code>concurrency-level</code> - expected number of concurrently updating threads</li>
+         *         <li><code>expire-after-write</code> - time to live of objects put without explicit time to live</li>
+         *         <li><code>expire-after-access</code> - time since the last access when the object expires</li>
+         *         <li><code>refresh.after-write</code> - time since the object was put when it is reloaded
+         *         in the background on read. Used only if the cache loader is set</li>
+         *         <li><code>refresh.min-frequency</code> - minimum number of recent accesses of the object
+         *         that is worth refreshing</li>
+         *         <li><code>refresh.threads</code> - number of threads reloading objects</li>
+         *         <li><code>promotion.async</code> - promote objects to the memory cache in the background</li>
+         *         <li><code>promotion.queue-size</code> - maximum number of keys waiting for the background promotion</li>
+         *         <li><code>promotion.rate</code> - maximum number of objects promoted in the background per second</li>
+         *         <li><code>aging-period</code> - number of accesses between two agings of LFU access counters</li>
+         *         <li><code>memory.type</code> - memory cache implementation: "heap" (default) stores objects
+         *         in the java heap, "off-heap" stores serialized objects in direct memory</li>
+         *         <li><code>memory.max-bytes</code> - byte budget of the memory cache. Sizes of objects of "heap" memory cache
+         *         are estimated, "off-heap" memory cache counts direct memory allocated for objects</li>
+         *         <li><code>memory.slab-size</code> - size of one direct memory slab, limits the size of a single object</li>
+         *         <li><code>file-system.directory</code> - folder for storing file system cache segments</li>
+         *         <li><code>file-system.max-bytes</code> - byte budget of the file system cache, counts sizes of stored records</li>
+         *         <li><code>file-system.segment-size</code> - maximum size of one segment file</li>
+         *         <li><code>file-system.mmap.max-bytes</code> - maximum total size of memory-mapped segment regions
+         *         used for reads. Memory-mapped reads are disabled if not set</li>
+         *         <li><code>file-system.compression.codec</code> - compression of file system cache objects:
+         *         "none" (default), "deflate" or "lz"</li>
+         *         <li><code>file-system.compression.threshold</code> - minimum size of serialized object that is compressed</li>
+         *         <li><code>file-system.write-behind.enabled</code> - write objects to the file system cache
+         *         in the background</li>
+         *         <li><code>file-system.write-behind.queue-size</code> - maximum number of keys waiting to be written.
+         *         When the queue is full, the caller waits for free space for a few milliseconds
+         *         and then writes its change itself</li>
+         *         <li><code>file-system.write-behind.writers</code> - number of background writers</li>
+         *         <li><code>file-system.persistent</code> - keep file system cache objects between restarts</li>
+         *         <li><code>file-system.checkpoint-interval</code> - interval between checkpoints of the persistent
+         *         file system cache index. Checkpoint is saved only on compaction and on close if not set</li>
          *     </ul>
          * @param config configuration object implements {@link Config} interface
          * @return {@link CacheBuilder} object
          */
         public CacheHolder buildFromConfig(Config config) {
-            cacheHolder.memoryCache = new MemoryCacheImpl(config.getInt("size.memory"));
-            cacheHolder.fileSystemCache = new FIleSystemCacheImpl(config.getInt("size.file-system"));
+            if (serializer == null) {
+                serializer = createSerializer(config);
+            }
+            cacheHolder.memoryCache = createMemoryCache(config);
+            FIleSystemCacheImpl fileSystemCache = createFileSystemCache(config);
+            cacheHolder.fileSystemCache = writeBehind(fileSystemCache, config);
             cacheHolder.cacheProcessor = new CacheProcessor(
                     new CacheStrategiesSelector(config.getString("strategy"))
             );
-            return cacheHolder;
+            cacheHolder.cacheProcessor.setCapacity(config.getLong("size.memory") + config.getLong("size.file-system"));
+            if (config.hasPath("aging-period")) {
+                cacheHolder.cacheProcessor.setAgingPeriod(config.getLong("aging-period"));
+            }
+            if (config.hasPath("concurrency-level")) {
+                setConcurrencyLevel(config.getInt("concurrency-level"));
+            }
+            if (config.hasPath("promotion.async") && config.getBoolean("promotion.async")) {
+                setAsyncPromotion(
+                        config.hasPath("promotion.queue-size") ? config.getInt("promotion.queue-size") : DEFAULT_PROMOTION_QUEUE_SIZE,
+                        config.hasPath("promotion.rate") ? config.getDouble("promotion.rate") : DEFAULT_PROMOTION_RATE
+                );
+            }
+            if (config.hasPath("expire-after-write")) {
+                setExpireAfterWrite(config.getDuration("expire-after-write", TimeUnit.NANOSECONDS), TimeUnit.NANOSECONDS);
+            }
+            if (config.hasPath("expire-after-access")) {
+                setExpireAfterAccess(config.getDuration("expire-after-access", TimeUnit.NANOSECONDS), TimeUnit.NANOSECONDS);
+            }
+            if (config.hasPath("refresh.after-write")) {
+                setRefreshAfterWrite(config.getDuration("refresh.after-write", TimeUnit.NANOSECONDS), TimeUnit.NANOSECONDS);
+            }
+            if (config.hasPath("refresh.min-frequency")) {
+                setRefreshMinFrequency(config.getInt("refresh.min-frequency"));
+            }
+            if (config.hasPath("refresh.threads")) {
+                setRefreshThreads(config.getInt("refresh.threads"));
+            }
+            SegmentLogStorage storage = fileSystemCache.getStorage();
+            if (storage.isPersistent()) {
+                cacheHolder.restorePriorities(storage);
+                storage.setCheckpointAttachment(() -> cacheHolder.savePriorities(storage));
+                if (config.hasPath("file-system.checkpoint-interval")) {
+                    long interval = config.getDuration("file-system.checkpoint-interval", TimeUnit.MILLISECONDS);
+                    storage.scheduleCheckpoints(interval, TimeUnit.MILLISECONDS);
+                }
+            }
+            return build();
+        }
+
+        private Serializer createSerializer(Config config) {
+            if (config.hasPath("serializer") && "java".equals(config.getString("serializer"))) {
+                return new JavaSerializer();
+            }
+            return new CompactSerializer();
+        }
+
+        private Serializer compressing(Serializer serializer, Config config) {
+            Codec codec = config.hasPath("file-system.compression.codec")
+                    ? Codecs.byName(config.getString("file-system.compression.codec"))
+                    : null;
+            if (codec == null) {
+                return serializer;
+            }
+            return new CompressingSerializer(
+                    serializer,
+                    codec,
+                    config.hasPath("file-system.compression.threshold")
+                            ? config.getBytes("file-system.compression.threshold").intValue()
+                            : CompressingSerializer.DEFAULT_THRESHOLD
+            );
+        }
+
+        private Cache createMemoryCache(Config config) {
+            int size = config.getInt("size.memory");
+            if (config.hasPath("memory.type") && "off-heap".equals(config.getString("memory.type"))) {
+                return new OffHeapCacheImpl(
+                        size,
+                        config.getBytes("memory.max-bytes"),
+                        config.hasPath("memory.slab-size")
+                                ? config.getBytes("memory.slab-size").intValue()
+                                : SlabAllocator.DEFAULT_SLAB_SIZE,
+                        serializer
+                );
+            }
+            if (config.hasPath("memory.max-bytes")) {
+                return new MemoryCacheImpl(size, config.getBytes("memory.max-bytes"), new HeapSizeEstimator());
+            }
+            return new MemoryCacheImpl(size);
+        }
+
+        private Cache writeBehind(FIleSystemCacheImpl fileSystemCache, Config config) {
+            if (!config.hasPath("file-system.write-behind.enabled") || !config.getBoolean("file-system.write-behind.enabled")) {
+                return fileSystemCache;
+            }
+            return new WriteBehindCache(
+                    fileSystemCache,
+                    config.getInt("size.file-system"),
+                    config.hasPath("file-system.write-behind.queue-size")
+                            ? config.getInt("file-system.write-behind.queue-size")
+                            : WriteBehindCache.DEFAULT_QUEUE_SIZE,
+                    config.hasPath("file-system.write-behind.writers")
+                            ? config.getInt("file-system.write-behind.writers")
+                            : 1,
+                    // Вес ожидающих изменений нужен, только если у кэша файловой системы есть бюджет
+                    config.hasPath("file-system.max-bytes") ? new HeapSizeEstimator() : null
+            );
+        }
+
+        private FIleSystemCacheImpl createFileSystemCache(Config config) {
+            FIleSystemCacheImpl fileSystemCache = new FIleSystemCacheImpl(
+                    config.getInt("size.file-system"),
+                    new File(config.hasPath("file-system.directory")
+                            ? config.getString("file-system.directory")
+                            : FIleSystemCacheImpl.DEFAULT_DIRECTORY),
+                    config.hasPath("file-system.segment-size")
+                            ? config.getBytes("file-system.segment-size")
+                            : SegmentLogStorage.DEFAULT_SEGMENT_SIZE,
+                    config.hasPath("file-system.persistent") && config.getBoolean("file-system.persistent"),
+                    serializer,
+                    compressing(serializer, config)
+            );
+            if (config.hasPath("file-system.max-bytes")) {
+                fileSystemCache.setMaxBytes(config.getBytes("file-system.max-bytes"));
+            }
+            if (config.hasPath("file-system.mmap.max-bytes")) {
+                fileSystemCache.getStorage().setMaxMappedBytes(config.getBytes("file-system.mmap.max-bytes"));
+            }
+            return fileSystemCache;
         }
     }
 }
@@ -0,0 +1,19 @@
+package in.neolab.configurable.cache;
+
+/**
+ * Source of the objects missing in the cache. Used by the {@link CacheHolder} in read-through mode
+ * @param <K> Type of the key object
+ * @param <V> Type of the value object
+ * @author Nikita Parygin
+ */
+@FunctionalInterface
+public interface CacheLoader<K, V> {
+
+    /**
+     * Loads object by key, e.g. from the backend the cache is put in front of
+     * @param key item key
+     * @return loaded object or <code>null</code> if there is no object with such key
+     * @throws Exception if any error is occurred
+     */
+    V load(K key) throws Exception;
+}
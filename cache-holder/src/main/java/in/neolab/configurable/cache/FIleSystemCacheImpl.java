@@ -1,116 +1,247 @@
 package in.neolab.configurable.cache;
 
+import in.neolab.configurable.cache.serialization.CompactSerializer;
+import in.neolab.configurable.cache.serialization.Serializer;
+import in.neolab.configurable.cache.storage.SegmentLogStorage;
+
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.io.BufferedInputStream;
-import java.io.BufferedOutputStream;
+import java.io.Closeable;
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
-import java.io.OutputStream;
 import java.io.Serializable;
-
-import java.util.Arrays;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.Collection;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.Map;
-import java.util.Objects;
-import java.util.UUID;
 
 /**
- * Class that implements {@link Cache} interface at tle file system level
+ * Class that implements {@link Cache} interface at tle file system level.
+ * Objects are converted to bytes by the {@link Serializer} and stored in the append-only {@link SegmentLogStorage}.
+ * Capacity is limited by count of elements and optionally by the byte budget: weight of the element is the size
+ * of its record in the storage. Byte array values bypass the serializer and are stored as raw records,
+ * so they can be streamed by {@link #getBinary(Serializable)}.
+ * Safe for concurrent access
  * @param <K> Type of the key object should implement {@link Serializable} interface
  * @param <V> Type of the value object should implement {@link Serializable} interface
  * @author Nikita Parygin
  */
-public class FIleSystemCacheImpl<K extends Serializable, V extends Serializable> implements Cache<K, V> {
+public class FIleSystemCacheImpl<K extends Serializable, V extends Serializable> implements Cache<K, V>, BinaryCache<K>, Closeable {
 
     /**
      * Logger
      */
     private static Logger LOGGER = LoggerFactory.getLogger(FIleSystemCacheImpl.class);
 
+    /**
+     * Default folder for storing cached objects
+     */
+    public static final String DEFAULT_DIRECTORY = "./temp";
+
     /**
      * Maximum count of cache elements
      */
     private int size;
 
     /**
-     * Folder for storing cached objects
+     * Maximum total size of records of cache elements
      */
-    private File tempDir;
+    private volatile long maxBytes = Long.MAX_VALUE;
 
     /**
-     * File system cache
+     * Storage of cached objects
      */
-    private Map<K, String> cache;
+    private SegmentLogStorage<K> storage;
+
+    /**
+     * Serializer of cached objects
+     */
+    private Serializer<V> serializer;
 
     /**
      * The Constructor
      * @param size maximum count of cache elements
      */
     public FIleSystemCacheImpl(int size) {
+        this(size, new File(DEFAULT_DIRECTORY), SegmentLogStorage.DEFAULT_SEGMENT_SIZE);
+    }
+
+    /**
+     * The Constructor
+     * @param size maximum count of cache elements
+     * @param directory folder for storing cached objects
+     * @param segmentSize maximum size of one segment file in bytes
+     */
+    public FIleSystemCacheImpl(int size, File directory, long segmentSize) {
+        this(size, directory, segmentSize, false);
+    }
+
+    /**
+     * The Constructor
+     * @param size maximum count of cache elements
+     * @param directory folder for storing cached objects
+     * @param segmentSize maximum size of one segment file in bytes
+     * @param persistent <code>true</code> - cached objects survive restarts
+     */
+    public FIleSystemCacheImpl(int size, File directory, long segmentSize, boolean persistent) {
+        this(size, directory, segmentSize, persistent, new CompactSerializer<>(), new CompactSerializer<>());
+    }
+
+    /**
+     * The Constructor
+     * @param size maximum count of cache elements
+     * @param directory folder for storing cached objects
+     * @param segmentSize maximum size of one segment file in bytes
+     * @param persistent <code>true</code> - cached objects survive restarts
+     * @param keySerializer serializer of keys
+     * @param serializer serializer of cached objects
+     */
+    public FIleSystemCacheImpl(int size, File directory, long segmentSize, boolean persistent,
+                               Serializer<K> keySerializer, Serializer<V> serializer) {
+        this(size, openStorage(directory, segmentSize, persistent, keySerializer), serializer);
+    }
+
+    /**
+     * The Constructor
+     * @param size maximum count of cache elements
+     * @param storage configured storage of cached objects
+     */
+    public FIleSystemCacheImpl(int size, SegmentLogStorage<K> storage) {
+        this(size, storage, new CompactSerializer<>());
+    }
+
+    /**
+     * The Constructor
+     * @param size maximum count of cache elements
+     * @param storage configured storage of cached objects
+     * @param serializer serializer of cached objects
+     */
+    public FIleSystemCacheImpl(int size, SegmentLogStorage<K> storage, Serializer<V> serializer) {
         this.size = size;
-        this.cache = new HashMap<K, String>(size);
-        this.tempDir = new File("./temp");
-        tempDir.mkdirs();
+        this.storage = storage;
+        this.serializer = serializer;
+    }
+
+    /**
+     * Set byte budget of the cache
+     * @param maxBytes maximum total size of records of cache elements
+     */
+    public void setMaxBytes(long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    public SegmentLogStorage<K> getStorage() {
+        return storage;
     }
 
     @Override
     public void put(K key, V value) throws IOException {
-        String fileName = UUID.randomUUID().toString() + ".temp";
-        File tempFile = new File(tempDir, fileName);
-        try (OutputStream out = new BufferedOutputStream(new FileOutputStream(tempFile))) {
-            ObjectOutputStream objectOutputStream = new ObjectOutputStream(out);
-            objectOutputStream.writeObject(value);
-            cache.put(key, fileName);
+        if (value instanceof byte[]) {
+            storage.writeRaw(key, (byte[]) value);
+        } else {
+            storage.write(key, serializer.serialize(value));
         }
     }
 
     @Override
-    public V get(K key) throws IOException, ClassNotFoundException {
-        if (containsKey(key)) {
-            String filename = cache.get(key);
-            File file = new File(tempDir + "/" +  filename);
-            try (InputStream in = new BufferedInputStream(new FileInputStream(file))){
-                ObjectInputStream objectInputStream = new ObjectInputStream(in);
-                return (V) objectInputStream.readObject();
+    public void putBinary(K key, FileChannel source, long length) throws IOException {
+        storage.writeRaw(key, source, length);
+    }
+
+    /**
+     * Adding several items to the cache. Records of all items are appended to the storage at once
+     * @param values key-value pairs
+     * @throws IOException if any input or output error is occurred
+     */
+    @Override
+    public void putAll(Map<? extends K, ? extends V> values) throws IOException {
+        Map<K, byte[]> serialized = new LinkedHashMap<>(values.size() * 4 / 3 + 1);
+        for (Map.Entry<? extends K, ? extends V> entry : values.entrySet()) {
+            if (entry.getValue() instanceof byte[]) {
+                storage.writeRaw(entry.getKey(), (byte[]) entry.getValue());
+            } else {
+                serialized.put(entry.getKey(), serializer.serialize(entry.getValue()));
             }
-        } else {
+        }
+        storage.writeAll(serialized);
+    }
+
+    @Override
+    public V get(K key) throws IOException, ClassNotFoundException {
+        SegmentLogStorage<K>.RawValue raw = storage.openRaw(key);
+        if (raw != null) {
+            return (V) raw.read();
+        }
+        byte[] bytes = storage.read(key);
+        if (bytes == null) {
             return null;
         }
+        return serializer.deserialize(bytes);
     }
 
     @Override
-    public void remove(K key) {
-        try {
-            if (containsKey(key)) {
-                String filename = cache.get(key);
-                File file = new File(tempDir + "/" +  filename);
-                if(file.delete()) {
-                    LOGGER.info("File {} successfully deleted from storage", file.getName());
-                } else {
-                    LOGGER.warn("Failed to delete file {} it is probably does not exist", file.getName());
-                }
-                cache.remove(key);
+    public BinaryValue getBinary(K key) throws IOException, ClassNotFoundException {
+        SegmentLogStorage<K>.RawValue raw = storage.openRaw(key);
+        if (raw == null) {
+            V value = get(key);
+            return value instanceof byte[] ? BinaryValue.of((byte[]) value) : null;
+        }
+        return new BinaryValue() {
+            @Override
+            public long length() {
+                return raw.length();
+            }
+
+            @Override
+            public long transferTo(long position, long count, WritableByteChannel target) throws IOException {
+                return raw.transferTo(position, count, target);
+            }
+        };
+    }
+
+    /**
+     * Retrieving several items from the cache. Records are read in the order of their location in the storage
+     * @param keys item keys used for searching elements in cache
+     * @return key-value pairs of the items found in the cache
+     * @throws IOException if any input or output error is occurred
+     * @throws ClassNotFoundException if the requested class is not in classpath
+     */
+    @Override
+    public Map<K, V> getAll(Collection<? extends K> keys) throws IOException, ClassNotFoundException {
+        Map<K, byte[]> serialized = storage.readAll(keys);
+        Map<K, V> values = new HashMap<>(serialized.size() * 4 / 3 + 1);
+        for (Map.Entry<K, byte[]> entry : serialized.entrySet()) {
+            if (storage.isRaw(entry.getKey())) {
+                values.put(entry.getKey(), (V) entry.getValue());
             } else {
-                LOGGER.error("Could not find the item with the specified key {}", key.toString());
+                values.put(entry.getKey(), serializer.deserialize(entry.getValue()));
             }
-        } catch (Exception e) {
-            LOGGER.error("Failed to remove item from file system cache", e);
-            throw e;
         }
+        return values;
+    }
+
+    @Override
+    public void remove(K key) throws IOException {
+        if (containsKey(key)) {
+            storage.delete(key);
+        } else {
+            LOGGER.error("Could not find the item with the specified key {}", key.toString());
+        }
+    }
 
+    @Override
+    public void removeAll(Collection<? extends K> keys) throws IOException {
+        storage.deleteAll(keys);
     }
 
     @Override
     public boolean containsKey(K key) {
         try {
-            return cache.containsKey(key);
+            return storage.contains(key);
         } catch (Exception e) {
             LOGGER.error(
                     "Unexpected exception is caught while searching item by key {} in file system cache",
@@ -123,27 +254,61 @@ public class FIleSystemCacheImpl<K extends Serializable, V extends Serializable>
 
     @Override
     public void clear() {
-        Arrays.stream(Objects.requireNonNull(tempDir.listFiles())).forEach(file -> {
-            try {
-                if(file.delete()) {
-                    LOGGER.info("File {} successfully deleted from storage", file.getName());
-                } else {
-                    LOGGER.warn("Failed to delete file {} it is probably does not exist", file.getName());
-                }
-            } catch (Exception e) {
-                LOGGER.error("Failed to delete file {}", file.getName(), e);
-            }
-        });
-        cache.clear();
+        try {
+            storage.clear();
+        } catch (IOException e) {
+            LOGGER.error("Failed to clear file system cache storage", e);
+        }
     }
 
     @Override
     public int size() {
-        return cache.size();
+        return storage.size();
     }
 
     @Override
     public boolean isNotFull() {
-        return (size() < this.size);
+        return isNotFull(0);
+    }
+
+    @Override
+    public boolean isNotFull(int reserved) {
+        return (size() + reserved < this.size && storage.getLiveBytes() < maxBytes);
+    }
+
+    @Override
+    public boolean isOverweight() {
+        return storage.getLiveBytes() > maxBytes;
+    }
+
+    @Override
+    public boolean isOverweight(long delta) {
+        return storage.getLiveBytes() + delta > maxBytes;
+    }
+
+    @Override
+    public long weightOf(K key) {
+        return storage.sizeOf(key);
+    }
+
+    /**
+     * Closes the storage. Persistent storage saves its checkpoint
+     * @throws IOException if any input or output error is occurred
+     */
+    @Override
+    public void close() throws IOException {
+        storage.close();
+    }
+
+    private static <K extends Serializable> SegmentLogStorage<K> openStorage(File directory, long segmentSize, boolean persistent,
+                                                                           Serializer<K> keySerializer) {
+        try {
+            return new SegmentLogStorage<>(
+                    directory, segmentSize, SegmentLogStorage.DEFAULT_COMPACTION_THRESHOLD, persistent, keySerializer
+            );
+        } catch (IOException e) {
+            LOGGER.error("Failed to open file system cache storage in {}", directory.getPath(), e);
+            throw new UncheckedIOException(e);
+        }
     }
 }
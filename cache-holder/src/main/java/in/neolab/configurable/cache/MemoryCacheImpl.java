@@ -1,14 +1,20 @@
 package in.neolab.configurable.cache;
 
+import in.neolab.configurable.cache.weigher.Weigher;
+
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.Serializable;
-import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
- * Class that implements {@link Cache} interface at tle RAM level
+ * Class that implements {@link Cache} interface at tle RAM level.
+ * Capacity is limited by count of elements and optionally by the byte budget: weight of every element
+ * is calculated by the {@link Weigher} when the element is put.
+ * Safe for concurrent access
  * @param <K> Type of the key object should implement {@link Serializable} interface
  * @param <V> Type of the value object should implement {@link Serializable} interface
  * @author Nikita Parygin
@@ -30,18 +36,56 @@ public class MemoryCacheImpl<K extends Serializable, V extends Serializable> imp
      */
     private final int size;
 
+    /**
+     * Maximum total weight of cache elements
+     */
+    private final long maxBytes;
+
+    /**
+     * Weigher of cache elements, <code>null</code> if the cache is limited by count of elements only
+     */
+    private final Weigher<? super K, ? super V> weigher;
+
+    /**
+     * Weights of cache elements
+     */
+    private final Map<K, Long> weights;
+
+    /**
+     * Total weight of cache elements
+     */
+    private final AtomicLong weight = new AtomicLong();
+
     /**
      * The Constructor
      * @param size maximum count of cache elements
      */
     public MemoryCacheImpl(int size) {
+        this(size, Long.MAX_VALUE, null);
+    }
+
+    /**
+     * The Constructor
+     * @param size maximum count of cache elements
+     * @param maxBytes maximum total weight of cache elements
+     * @param weigher weigher of cache elements
+     */
+    public MemoryCacheImpl(int size, long maxBytes, Weigher<? super K, ? super V> weigher) {
         this.size = size;
-        cache = new HashMap<>(size);
+        this.maxBytes = maxBytes;
+        this.weigher = weigher;
+        cache = new ConcurrentHashMap<>(size);
+        weights = weigher == null ? null : new ConcurrentHashMap<>(size);
     }
 
     @Override
     public void put(K key, V value) {
         cache.put(key, value);
+        if (weigher != null) {
+            long elementWeight = weigher.weigh(key, value);
+            Long previous = weights.put(key, elementWeight);
+            weight.addAndGet(elementWeight - (previous == null ? 0 : previous));
+        }
     }
 
     @Override
@@ -51,7 +95,13 @@ public class MemoryCacheImpl<K extends Serializable, V extends Serializable> imp
 
     @Override
     public void remove(K key) {
-      cache.remove(key);
+        cache.remove(key);
+        if (weigher != null) {
+            Long previous = weights.remove(key);
+            if (previous != null) {
+                weight.addAndGet(-previous);
+            }
+        }
     }
 
     @Override
@@ -71,6 +121,10 @@ public class MemoryCacheImpl<K extends Serializable, V extends Serializable> imp
     @Override
     public void clear() {
         cache.clear();
+        if (weigher != null) {
+            weights.clear();
+            weight.set(0);
+        }
     }
 
     @Override
@@ -80,6 +134,38 @@ public class MemoryCacheImpl<K extends Serializable, V extends Serializable> imp
 
     @Override
     public boolean isNotFull() {
-        return (size() < this.size);
+        return isNotFull(0);
+    }
+
+    @Override
+    public boolean isNotFull(int reserved) {
+        return (size() + reserved < this.size && weight.get() < maxBytes);
+    }
+
+    @Override
+    public boolean isOverweight() {
+        return weight.get() > maxBytes;
+    }
+
+    @Override
+    public boolean isOverweight(long delta) {
+        return weight.get() + delta > maxBytes;
+    }
+
+    @Override
+    public long weightOf(K key) {
+        if (weigher == null) {
+            return 0;
+        }
+        Long elementWeight = weights.get(key);
+        return elementWeight == null ? 0 : elementWeight;
+    }
+
+    /**
+     * Returns total weight of cache elements
+     * @return weight or zero if the cache is limited by count of elements only
+     */
+    public long getWeight() {
+        return weight.get();
     }
 }
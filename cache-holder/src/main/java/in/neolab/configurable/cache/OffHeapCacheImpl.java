@@ -0,0 +1,159 @@
+package in.neolab.configurable.cache;
+
+import in.neolab.configurable.cache.offheap.SlabAllocator;
+import in.neolab.configurable.cache.serialization.CompactSerializer;
+import in.neolab.configurable.cache.serialization.Serializer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Class that implements {@link Cache} interface at tle RAM level outside of the java heap.
+ * Objects are converted to bytes by the {@link Serializer} and stored in direct memory chunks provided by {@link SlabAllocator},
+ * so the cache can hold large amount of data without growing the heap and garbage collection pauses.
+ * Safe for concurrent access
+ * @param <K> Type of the key object should implement {@link Serializable} interface
+ * @param <V> Type of the value object should implement {@link Serializable} interface
+ * @author Nikita Parygin
+ */
+public class OffHeapCacheImpl<K extends Serializable, V extends Serializable> implements Cache<K, V> {
+
+    /**
+     * Logger
+     */
+    private static Logger LOGGER = LoggerFactory.getLogger(OffHeapCacheImpl.class);
+
+    /**
+     * Location of the serialized object in direct memory
+     */
+    private static final class Chunk {
+        private final long handle;
+        private final int length;
+
+        private Chunk(long handle, int length) {
+            this.handle = handle;
+            this.length = length;
+        }
+    }
+
+    /**
+     * Off-heap cache index
+     */
+    private Map<K, Chunk> cache;
+
+    /**
+     * Direct memory allocator
+     */
+    private final SlabAllocator allocator;
+
+    /**
+     * Maximum count of cache elements
+     */
+    private final int size;
+
+    /**
+     * Serializer of cached objects
+     */
+    private final Serializer<V> serializer;
+
+    /**
+     * The Constructor
+     * @param size maximum count of cache elements
+     * @param maxBytes maximum amount of direct memory used by the cache
+     * @param slabSize size of one slab of direct memory. Larger objects are stored in dedicated buffers
+     */
+    public OffHeapCacheImpl(int size, long maxBytes, int slabSize) {
+        this(size, maxBytes, slabSize, new CompactSerializer<>());
+    }
+
+    /**
+     * The Constructor
+     * @param size maximum count of cache elements
+     * @param maxBytes maximum amount of direct memory used by the cache
+     * @param slabSize size of one slab of direct memory. Larger objects are stored in dedicated buffers
+     * @param serializer serializer of cached objects
+     */
+    public OffHeapCacheImpl(int size, long maxBytes, int slabSize, Serializer<V> serializer) {
+        this.size = size;
+        this.serializer = serializer;
+        this.cache = new ConcurrentHashMap<>(size);
+        this.allocator = new SlabAllocator(maxBytes, slabSize);
+    }
+
+    @Override
+    public void put(K key, V value) throws IOException {
+        byte[] bytes = serializer.serialize(value);
+        long handle = allocator.allocate(bytes.length);
+        if (handle < 0) {
+            throw new CacheFullException(
+                    String.format("Off-heap memory is exhausted, failed to store object with key %1$s", key)
+            );
+        }
+        allocator.write(handle, bytes);
+        Chunk previous = cache.put(key, new Chunk(handle, bytes.length));
+        if (previous != null) {
+            allocator.free(previous.handle, previous.length);
+        }
+    }
+
+    @Override
+    public V get(K key) throws IOException, ClassNotFoundException {
+        Chunk chunk = cache.get(key);
+        if (chunk == null) {
+            return null;
+        }
+        return serializer.deserialize(allocator.read(chunk.handle, chunk.length));
+    }
+
+    @Override
+    public void remove(K key) {
+        Chunk chunk = cache.remove(key);
+        if (chunk != null) {
+            allocator.free(chunk.handle, chunk.length);
+        }
+    }
+
+    @Override
+    public boolean containsKey(K key) {
+        try {
+            return cache.containsKey(key);
+        } catch (Exception e) {
+            LOGGER.error(
+                    "Unexpected exception is caught while searching item by key {} in off-heap cache",
+                    key.toString(),
+                    e
+            );
+            return false;
+        }
+    }
+
+    @Override
+    public void clear() {
+        cache.clear();
+        allocator.clear();
+    }
+
+    @Override
+    public int size() {
+        return cache.size();
+    }
+
+    @Override
+    public boolean isNotFull() {
+        // Место есть, если аллокатор может выделить хотя бы минимальный участок - крупному объекту его может не хватить
+        return (size() < this.size && allocator.canAllocate(SlabAllocator.MIN_CHUNK_SIZE));
+    }
+
+    /**
+     * Returns direct memory allocator of the cache
+     * @return {@link SlabAllocator} object
+     */
+    public SlabAllocator getAllocator() {
+        return allocator;
+    }
+}
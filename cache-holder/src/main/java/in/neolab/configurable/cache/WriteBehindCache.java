@@ -0,0 +1,553 @@
+package in.neolab.configurable.cache;
+
+import in.neolab.configurable.cache.lock.StripedLock;
+import in.neolab.configurable.cache.weigher.HeapSizeEstimator;
+import in.neolab.configurable.cache.weigher.Weigher;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Serializable;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Lock;
+
+/**
+ * Decorator of the {@link Cache} that writes changes in the background.<br>
+ * Puts and removals are kept as pending changes and the keys are added to the bounded queue.
+ * Background writers take keys from the queue by batches and apply the latest pending change of every key,
+ * so several changes of the same key are coalesced into one write. Reads see pending changes.
+ * When the queue stays full for a short time, the caller writes its change itself instead of waiting for the writers.
+ * A change that failed to be written stays pending and is written again after a growing delay.
+ * Weight of pending changes is estimated by the {@link Weigher} and counted against the byte budget of the cache.<br>
+ * Changes of the same key should be serialized by the caller, as {@link CacheHolder} does
+ * @param <K> Type of the key object should implement {@link Serializable} interface
+ * @param <V> Type of the value object should implement {@link Serializable} interface
+ * @author Nikita Parygin
+ */
+public class WriteBehindCache<K extends Serializable, V extends Serializable> implements Cache<K, V>, BinaryCache<K>, Closeable {
+
+    /**
+     * Logger
+     */
+    private static Logger LOGGER = LoggerFactory.getLogger(WriteBehindCache.class);
+
+    /**
+     * Default capacity of the queue
+     */
+    public static final int DEFAULT_QUEUE_SIZE = 1024;
+
+    /**
+     * Maximum number of keys written by the writer at once
+     */
+    private static final int BATCH_SIZE = 64;
+
+    /**
+     * Time to wait for free space in the queue before the caller writes the change itself
+     */
+    private static final long OFFER_TIMEOUT_MILLIS = 10;
+
+    /**
+     * Delay before the first retry of the failed write
+     */
+    private static final long MIN_RETRY_DELAY_MILLIS = 100;
+
+    /**
+     * Maximum delay between retries of the failed write
+     */
+    private static final long MAX_RETRY_DELAY_MILLIS = 10000;
+
+    /**
+     * Time to wait for the writers to finish on close
+     */
+    private static final long CLOSE_TIMEOUT_SECONDS = 30;
+
+    /**
+     * Pending change of the key. Value <code>null</code> means removal
+     */
+    private static final class Change<V> {
+        private final V value;
+        /**
+         * Change of the cache weight when the change is written
+         */
+        private final long weight;
+
+        private Change(V value, long weight) {
+            this.value = value;
+            this.weight = weight;
+        }
+    }
+
+    /**
+     * Cache the changes are written to
+     */
+    private final Cache<K, V> cache;
+
+    /**
+     * Maximum count of cache elements
+     */
+    private final int size;
+
+    /**
+     * Pending changes
+     */
+    private final Map<K, Change<V>> pending = new ConcurrentHashMap<>();
+
+    /**
+     * Keys waiting for the writers
+     */
+    private final BlockingQueue<K> queue;
+
+    /**
+     * Keys that are in the queue. A key is added to the queue only once until the writer takes it
+     */
+    private final Set<K> queued = ConcurrentHashMap.newKeySet();
+
+    /**
+     * Keys whose changes failed to be written. They stay in {@link #queued} until they are retried
+     */
+    private final Queue<K> failed = new ConcurrentLinkedQueue<>();
+
+    /**
+     * Number of writes failed in a row
+     */
+    private final AtomicInteger failures = new AtomicInteger();
+
+    /**
+     * Time of {@link System#nanoTime()} when the failed changes are retried
+     */
+    private volatile long retryTime;
+
+    /**
+     * Locks serializing writes of the same key by different writers
+     */
+    private final StripedLock writeLocks = new StripedLock(StripedLock.DEFAULT_CONCURRENCY_LEVEL);
+
+    /**
+     * Count of elements including pending changes
+     */
+    private final AtomicInteger count;
+
+    /**
+     * Count of changes that are not written yet
+     */
+    private final AtomicInteger unwritten = new AtomicInteger();
+
+    /**
+     * Monitor notified when all changes are written
+     */
+    private final Object flushMonitor = new Object();
+
+    /**
+     * Total weight of pending changes
+     */
+    private final AtomicLong pendingWeight = new AtomicLong();
+
+    /**
+     * Weigher of pending values, <code>null</code> if pending changes are not weighed
+     */
+    private final Weigher<? super K, ? super V> weigher;
+
+    /**
+     * Background writers
+     */
+    private final ExecutorService writers;
+
+    /**
+     * Shows whether the cache is closed
+     */
+    private volatile boolean closed;
+
+    /**
+     * The Constructor
+     * @param cache cache the changes are written to
+     * @param size maximum count of cache elements
+     * @param queueSize capacity of the queue of changed keys
+     * @param writerCount number of background writers
+     */
+    public WriteBehindCache(Cache<K, V> cache, int size, int queueSize, int writerCount) {
+        this(cache, size, queueSize, writerCount, new HeapSizeEstimator<>());
+    }
+
+    /**
+     * The Constructor
+     * @param cache cache the changes are written to
+     * @param size maximum count of cache elements
+     * @param queueSize capacity of the queue of changed keys
+     * @param writerCount number of background writers
+     * @param weigher weigher of pending values, <code>null</code> if the cache is limited by count of elements only
+     */
+    public WriteBehindCache(Cache<K, V> cache, int size, int queueSize, int writerCount,
+                            Weigher<? super K, ? super V> weigher) {
+        this.cache = cache;
+        this.weigher = weigher;
+        this.size = size;
+        this.queue = new ArrayBlockingQueue<>(queueSize);
+        this.count = new AtomicInteger(cache.size());
+        AtomicInteger number = new AtomicInteger();
+        this.writers = Executors.newFixedThreadPool(writerCount, runnable -> {
+            Thread thread = new Thread(runnable, "cache-write-behind-" + number.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        for (int i = 0; i < writerCount; i++) {
+            writers.execute(this::write);
+        }
+    }
+
+    @Override
+    public void put(K key, V value) throws Exception {
+        enqueue(key, value);
+    }
+
+    @Override
+    public V get(K key) throws Exception {
+        Change<V> change = pending.get(key);
+        if (change != null) {
+            return change.value;
+        }
+        return cache.get(key);
+    }
+
+    @Override
+    public Map<K, V> getAll(Collection<? extends K> keys) throws Exception {
+        Map<K, V> values = new HashMap<>(keys.size() * 4 / 3 + 1);
+        List<K> written = new ArrayList<>(keys.size());
+        for (K key : keys) {
+            Change<V> change = pending.get(key);
+            if (change == null) {
+                written.add(key);
+            } else if (change.value != null) {
+                values.put(key, change.value);
+            }
+        }
+        // Ключи без ожидающих изменений читаем из кэша одним пакетом
+        values.putAll(cache.getAll(written));
+        return values;
+    }
+
+    /**
+     * Adding binary item to the cache. Unlike other changes the value is written at once, because it is already
+     * in the file. Pending change of the key is dropped
+     * @param key item key used for searching elements in cache
+     * @param source file with the value
+     * @param length length of the value
+     * @throws Exception if any error is occurred
+     */
+    @Override
+    public void putBinary(K key, FileChannel source, long length) throws Exception {
+        if (!(cache instanceof BinaryCache)) {
+            throw new UnsupportedOperationException("Cache doesn't support binary values");
+        }
+        if (closed) {
+            throw new IllegalStateException("Write-behind cache is closed");
+        }
+        Lock lock = writeLocks.get(key);
+        lock.lock();
+        try {
+            boolean present = containsKey(key);
+            ((BinaryCache<K>) cache).putBinary(key, source, length);
+            // Писатель, взявший ключ из очереди позже, не найдет изменения и ничего не запишет
+            Change<V> dropped = pending.remove(key);
+            if (dropped != null) {
+                written(dropped);
+            }
+            if (!present) {
+                count.incrementAndGet();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public BinaryValue getBinary(K key) throws Exception {
+        Change<V> change = pending.get(key);
+        if (change != null) {
+            return change.value instanceof byte[] ? BinaryValue.of((byte[]) change.value) : null;
+        }
+        if (cache instanceof BinaryCache) {
+            return ((BinaryCache<K>) cache).getBinary(key);
+        }
+        V value = cache.get(key);
+        return value instanceof byte[] ? BinaryValue.of((byte[]) value) : null;
+    }
+
+    @Override
+    public void remove(K key) throws Exception {
+        enqueue(key, null);
+    }
+
+    @Override
+    public boolean containsKey(K key) {
+        Change<V> change = pending.get(key);
+        if (change != null) {
+            return change.value != null;
+        }
+        return cache.containsKey(key);
+    }
+
+    @Override
+    public void clear() {
+        writeLocks.lockAll();
+        try {
+            queue.clear();
+            failed.clear();
+            queued.clear();
+            pending.clear();
+            unwritten.set(0);
+            pendingWeight.set(0);
+            cache.clear();
+            count.set(cache.size());
+        } finally {
+            writeLocks.unlockAll();
+        }
+        synchronized (flushMonitor) {
+            flushMonitor.notifyAll();
+        }
+    }
+
+    @Override
+    public int size() {
+        return count.get();
+    }
+
+    @Override
+    public boolean isNotFull() {
+        return isNotFull(0);
+    }
+
+    @Override
+    public boolean isNotFull(int reserved) {
+        // Ожидающие записи изменения уже учтены в размере, поэтому резерв передается кэшу как есть
+        return size() + reserved < this.size && cache.isNotFull(reserved);
+    }
+
+    @Override
+    public boolean isOverweight() {
+        return cache.isOverweight(pendingWeight.get());
+    }
+
+    @Override
+    public boolean isOverweight(long delta) {
+        return cache.isOverweight(pendingWeight.get() + delta);
+    }
+
+    /**
+     * Waits until all pending changes are written
+     * @throws InterruptedException if the thread is interrupted while waiting
+     */
+    public void flush() throws InterruptedException {
+        synchronized (flushMonitor) {
+            while (unwritten.get() > 0 && !closed) {
+                flushMonitor.wait();
+            }
+        }
+    }
+
+    /**
+     * Writes pending changes and closes the cache the changes are written to.
+     * Changes that can't be written in {@link #CLOSE_TIMEOUT_SECONDS} are lost
+     * @throws IOException if any input or output error is occurred
+     */
+    @Override
+    public void close() throws IOException {
+        long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(CLOSE_TIMEOUT_SECONDS);
+        try {
+            synchronized (flushMonitor) {
+                // Запись может не удаваться долго - не ждем ее бесконечно
+                long remaining;
+                while (unwritten.get() > 0 && (remaining = deadline - System.currentTimeMillis()) > 0) {
+                    flushMonitor.wait(remaining);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (unwritten.get() > 0) {
+            LOGGER.error("Write-behind cache is closed with {} unwritten changes", unwritten.get());
+        }
+        closed = true;
+        synchronized (flushMonitor) {
+            flushMonitor.notifyAll();
+        }
+        writers.shutdownNow();
+        try {
+            writers.awaitTermination(CLOSE_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (cache instanceof Closeable) {
+            ((Closeable) cache).close();
+        }
+    }
+
+    /**
+     * Returns the cache the changes are written to
+     * @return {@link Cache} object
+     */
+    public Cache<K, V> getCache() {
+        return cache;
+    }
+
+    private void enqueue(K key, V value) throws Exception {
+        if (closed) {
+            throw new IllegalStateException("Write-behind cache is closed");
+        }
+        boolean present = containsKey(key);
+        // Записанное значение ключа будет заменено или удалено, поэтому его вес вычитается
+        long weight = weigher == null ? 0 : (value == null ? 0 : weigher.weigh(key, value)) - cache.weightOf(key);
+        Change<V> previous = pending.put(key, new Change<>(value, weight));
+        if (previous == null) {
+            unwritten.incrementAndGet();
+            pendingWeight.addAndGet(weight);
+        } else {
+            pendingWeight.addAndGet(weight - previous.weight);
+        }
+        if (!present && value != null) {
+            count.incrementAndGet();
+        } else if (present && value == null) {
+            count.decrementAndGet();
+        }
+        // Ключ, уже стоящий в очереди, повторно не добавляем: писатель запишет последнее изменение
+        if (queued.add(key) && !queue.offer(key, OFFER_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS)) {
+            // Писатели не успевают - записываем изменение сами, чтобы не ждать места в очереди под блокировками вызывающего
+            LOGGER.warn("Write-behind queue is full, change of key {} is written by the caller", key.toString());
+            try {
+                writeBatch(Collections.singletonList(key));
+            } catch (Exception e) {
+                // Изменение осталось ожидающим и будет записано писателями повторно
+                LOGGER.error("Failed to write change of key {}, it will be retried", key.toString(), e);
+            }
+        }
+    }
+
+    /**
+     * Accounts the change that left the pending changes
+     */
+    private void written(Change<V> change) {
+        pendingWeight.addAndGet(-change.weight);
+        if (unwritten.decrementAndGet() == 0) {
+            synchronized (flushMonitor) {
+                flushMonitor.notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Loop of the background writer
+     */
+    private void write() {
+        List<K> batch = new ArrayList<>(BATCH_SIZE);
+        while (!Thread.currentThread().isInterrupted()) {
+            try {
+                // Пока есть неудачно записанные ключи, писатель ждет новых ключей не дольше, чем до их повтора
+                K key = failed.isEmpty()
+                        ? queue.take()
+                        : queue.poll(Math.max(0, retryTime - System.nanoTime()), TimeUnit.NANOSECONDS);
+                if (key != null) {
+                    batch.add(key);
+                    queue.drainTo(batch, BATCH_SIZE - 1);
+                }
+                if (retryTime - System.nanoTime() <= 0) {
+                    K failedKey;
+                    while (batch.size() < BATCH_SIZE && (failedKey = failed.poll()) != null) {
+                        batch.add(failedKey);
+                    }
+                }
+                if (!batch.isEmpty()) {
+                    writeBatch(batch);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (Exception e) {
+                LOGGER.error("Failed to write pending changes of {} keys, they will be retried", batch.size(), e);
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    /**
+     * Writes the latest pending changes of the keys. If the write fails, the changes stay pending
+     * and the keys are retried later
+     */
+    private void writeBatch(List<K> batch) throws Exception {
+        List<Lock> locks = new ArrayList<>(batch.size());
+        Map<K, Change<V>> changes = new LinkedHashMap<>();
+        Map<K, V> values = new LinkedHashMap<>();
+        boolean success = false;
+        try {
+            // Блокировки берутся по возрастанию номера полосы, поэтому писатели не блокируют друг друга навсегда
+            for (Lock lock : writeLocks.getAll(batch)) {
+                lock.lock();
+                locks.add(lock);
+            }
+            for (K key : batch) {
+                // Ключ снимается с очереди до чтения изменения: более позднее изменение снова поставит его в очередь
+                queued.remove(key);
+                Change<V> change = pending.get(key);
+                if (change == null) {
+                    continue;
+                }
+                changes.put(key, change);
+                if (change.value != null) {
+                    values.put(key, change.value);
+                } else if (cache.containsKey(key)) {
+                    cache.remove(key);
+                }
+            }
+            cache.putAll(values);
+            success = true;
+        } finally {
+            if (success) {
+                failures.set(0);
+                // Изменение снимается, только если его не заменили во время записи
+                for (Map.Entry<K, Change<V>> entry : changes.entrySet()) {
+                    if (pending.remove(entry.getKey(), entry.getValue())) {
+                        written(entry.getValue());
+                    }
+                }
+            } else {
+                retry(changes.keySet());
+            }
+            for (Lock lock : locks) {
+                lock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Schedules retry of the keys whose changes failed to be written. Delay doubles with every failure in a row
+     */
+    private void retry(Collection<K> keys) {
+        int count = Math.min(failures.incrementAndGet(), 32);
+        long delay = Math.min(MIN_RETRY_DELAY_MILLIS << (count - 1), MAX_RETRY_DELAY_MILLIS);
+        retryTime = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(delay);
+        for (K key : keys) {
+            // Ключ, снова поставленный в очередь более поздним изменением, запишется и без повтора
+            if (queued.add(key)) {
+                failed.add(key);
+            }
+        }
+    }
+}
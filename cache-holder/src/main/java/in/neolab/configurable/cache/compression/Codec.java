@@ -0,0 +1,36 @@
+package in.neolab.configurable.cache.compression;
+
+import java.io.IOException;
+
+/**
+ * Compression algorithm. Implementations should be safe for concurrent use
+ * @author Nikita Parygin
+ */
+public interface Codec {
+
+    /**
+     * Returns identifier of the codec written to the header of every compressed record
+     * @return identifier, unique among codecs of {@link Codecs}
+     */
+    byte id();
+
+    /**
+     * Compresses part of the array
+     * @param source array
+     * @param offset offset of the first byte
+     * @param length number of bytes
+     * @return compressed bytes
+     */
+    byte[] compress(byte[] source, int offset, int length);
+
+    /**
+     * Restores compressed bytes
+     * @param source array
+     * @param offset offset of the first compressed byte
+     * @param length number of compressed bytes
+     * @param originalLength number of bytes before compression
+     * @return restored bytes
+     * @throws IOException if compressed bytes are damaged
+     */
+    byte[] decompress(byte[] source, int offset, int length, int originalLength) throws IOException;
+}
@@ -0,0 +1,58 @@
+package in.neolab.configurable.cache.compression;
+
+/**
+ * Registry of the built-in codecs
+ * @author Nikita Parygin
+ */
+public final class Codecs {
+
+    /**
+     * Identifier of the records stored without compression
+     */
+    public static final byte NONE = 0;
+
+    private static final Codec DEFLATE = new DeflateCodec();
+    private static final Codec LZ = new LzCodec();
+
+    /**
+     * Default empty constructor
+     */
+    private Codecs() {
+
+    }
+
+    /**
+     * Returns codec by its configuration name
+     * @param name "deflate" or "lz"
+     * @return {@link Codec} object or <code>null</code> for "none"
+     * @throws IllegalArgumentException if the name is unknown
+     */
+    public static Codec byName(String name) {
+        switch (name) {
+            case "none":
+                return null;
+            case "deflate":
+                return DEFLATE;
+            case "lz":
+                return LZ;
+            default:
+                throw new IllegalArgumentException(
+                        String.format("Unknown compression codec %1$s. Value should be \"none\", \"deflate\" or \"lz\"", name)
+                );
+        }
+    }
+
+    /**
+     * Returns codec by identifier from the record header
+     * @param id codec identifier
+     * @return {@link Codec} object or <code>null</code> if the identifier is unknown
+     */
+    static Codec byId(byte id) {
+        if (id == DEFLATE.id()) {
+            return DEFLATE;
+        } else if (id == LZ.id()) {
+            return LZ;
+        }
+        return null;
+    }
+}
@@ -0,0 +1,111 @@
+package in.neolab.configurable.cache.compression;
+
+import in.neolab.configurable.cache.serialization.Serializer;
+
+import java.io.IOException;
+import java.io.StreamCorruptedException;
+
+/**
+ * Serializer that compresses bytes produced by another serializer.<br>
+ * Every record starts with a header: codec identifier and, for compressed records, length of the original bytes.
+ * Records smaller than the threshold and records that don't become smaller are stored without compression,
+ * so compressed and uncompressed records coexist. Records are restored by the codec from their header,
+ * even if the serializer was created with another codec.
+ * @param <T> Type of the serialized object
+ * @author Nikita Parygin
+ */
+public class CompressingSerializer<T> implements Serializer<T> {
+
+    /**
+     * Default minimum size of serialized object that is compressed
+     */
+    public static final int DEFAULT_THRESHOLD = 512;
+
+    /**
+     * Size of the header of compressed record
+     */
+    private static final int COMPRESSED_HEADER_SIZE = 5;
+
+    /**
+     * Serializer of objects
+     */
+    private final Serializer<T> serializer;
+
+    /**
+     * Compression codec
+     */
+    private final Codec codec;
+
+    /**
+     * Minimum size of serialized object that is compressed
+     */
+    private final int threshold;
+
+    /**
+     * The Constructor
+     * @param serializer serializer of objects
+     * @param codec compression codec
+     * @param threshold minimum size of serialized object that is compressed
+     */
+    public CompressingSerializer(Serializer<T> serializer, Codec codec, int threshold) {
+        this.serializer = serializer;
+        this.codec = codec;
+        this.threshold = threshold;
+    }
+
+    @Override
+    public byte[] serialize(T object) throws IOException {
+        byte[] bytes = serializer.serialize(object);
+        if (bytes.length >= threshold) {
+            byte[] compressed = codec.compress(bytes, 0, bytes.length);
+            if (compressed.length + COMPRESSED_HEADER_SIZE < bytes.length) {
+                byte[] record = new byte[COMPRESSED_HEADER_SIZE + compressed.length];
+                record[0] = codec.id();
+                writeInt(record, 1, bytes.length);
+                System.arraycopy(compressed, 0, record, COMPRESSED_HEADER_SIZE, compressed.length);
+                return record;
+            }
+        }
+        byte[] record = new byte[bytes.length + 1];
+        record[0] = Codecs.NONE;
+        System.arraycopy(bytes, 0, record, 1, bytes.length);
+        return record;
+    }
+
+    @Override
+    public T deserialize(byte[] bytes, int offset, int length) throws IOException, ClassNotFoundException {
+        if (length < 1) {
+            throw new StreamCorruptedException("Record header is missing");
+        }
+        byte id = bytes[offset];
+        if (id == Codecs.NONE) {
+            return serializer.deserialize(bytes, offset + 1, length - 1);
+        }
+        Codec recordCodec = id == codec.id() ? codec : Codecs.byId(id);
+        if (recordCodec == null || length < COMPRESSED_HEADER_SIZE) {
+            throw new StreamCorruptedException("Unknown compression codec " + id);
+        }
+        int originalLength = readInt(bytes, offset + 1);
+        if (originalLength < 0) {
+            throw new StreamCorruptedException("Malformed record length " + originalLength);
+        }
+        byte[] original = recordCodec.decompress(
+                bytes, offset + COMPRESSED_HEADER_SIZE, length - COMPRESSED_HEADER_SIZE, originalLength
+        );
+        return serializer.deserialize(original);
+    }
+
+    private static void writeInt(byte[] bytes, int offset, int value) {
+        bytes[offset] = (byte) (value >>> 24);
+        bytes[offset + 1] = (byte) (value >>> 16);
+        bytes[offset + 2] = (byte) (value >>> 8);
+        bytes[offset + 3] = (byte) value;
+    }
+
+    private static int readInt(byte[] bytes, int offset) {
+        return (bytes[offset] & 0xFF) << 24
+                | (bytes[offset + 1] & 0xFF) << 16
+                | (bytes[offset + 2] & 0xFF) << 8
+                | (bytes[offset + 3] & 0xFF);
+    }
+}
@@ -0,0 +1,64 @@
+package in.neolab.configurable.cache.compression;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Codec based on the Deflate algorithm of {@link Deflater}. Compresses better than {@link LzCodec}, but works slower.
+ * Deflaters and inflaters are kept per thread, since creating them allocates native memory
+ * @author Nikita Parygin
+ */
+public class DeflateCodec implements Codec {
+
+    private static final ThreadLocal<Deflater> DEFLATERS = ThreadLocal.withInitial(() -> new Deflater(Deflater.BEST_SPEED, true));
+    private static final ThreadLocal<Inflater> INFLATERS = ThreadLocal.withInitial(() -> new Inflater(true));
+
+    @Override
+    public byte id() {
+        return 1;
+    }
+
+    @Override
+    public byte[] compress(byte[] source, int offset, int length) {
+        Deflater deflater = DEFLATERS.get();
+        deflater.reset();
+        deflater.setInput(source, offset, length);
+        deflater.finish();
+        byte[] result = new byte[length / 2 + 64];
+        int size = 0;
+        while (!deflater.finished()) {
+            if (size == result.length) {
+                result = Arrays.copyOf(result, result.length << 1);
+            }
+            size += deflater.deflate(result, size, result.length - size);
+        }
+        return Arrays.copyOf(result, size);
+    }
+
+    @Override
+    public byte[] decompress(byte[] source, int offset, int length, int originalLength) throws IOException {
+        Inflater inflater = INFLATERS.get();
+        inflater.reset();
+        inflater.setInput(source, offset, length);
+        byte[] result = new byte[originalLength];
+        try {
+            int size = 0;
+            while (size < originalLength && !inflater.finished()) {
+                int inflated = inflater.inflate(result, size, originalLength - size);
+                if (inflated == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    break;
+                }
+                size += inflated;
+            }
+            if (size != originalLength) {
+                throw new IOException("Compressed record is damaged");
+            }
+        } catch (DataFormatException e) {
+            throw new IOException("Compressed record is damaged", e);
+        }
+        return result;
+    }
+}
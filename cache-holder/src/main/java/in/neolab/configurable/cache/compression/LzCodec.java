@@ -0,0 +1,157 @@
+package in.neolab.configurable.cache.compression;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Fast LZ77 codec with the block format close to LZ4.<br>
+ * Compressed data is a sequence of <code>[token][literal length][literals][match offset][match length]</code>,
+ * where the token keeps lengths of literals and of the match in its upper and lower four bits.
+ * Lengths that don't fit into four bits are continued by bytes of 255 and the remainder.
+ * Matches are found by a hash table of four byte sequences and may be located up to 64 KB behind.
+ * The last sequence contains only literals.
+ * @author Nikita Parygin
+ */
+public class LzCodec implements Codec {
+
+    private static final int MIN_MATCH = 4;
+    private static final int MAX_OFFSET = 0xFFFF;
+    private static final int HASH_BITS = 12;
+
+    /**
+     * Number of trailing bytes always stored as literals, so searching for matches never reads past the input
+     */
+    private static final int LAST_LITERALS = 5;
+
+    /**
+     * Hash tables of the threads
+     */
+    private static final ThreadLocal<int[]> TABLES = ThreadLocal.withInitial(() -> new int[1 << HASH_BITS]);
+
+    @Override
+    public byte id() {
+        return 2;
+    }
+
+    @Override
+    public byte[] compress(byte[] source, int offset, int length) {
+        byte[] result = new byte[length + length / 255 + 16];
+        int size = 0;
+        int end = offset + length;
+        int matchLimit = end - LAST_LITERALS;
+        int anchor = offset;
+        int position = offset;
+        int[] table = TABLES.get();
+        Arrays.fill(table, -1);
+        while (position + MIN_MATCH <= matchLimit) {
+            int sequence = readInt(source, position);
+            int hash = (sequence * -1640531535) >>> (32 - HASH_BITS);
+            int reference = table[hash];
+            table[hash] = position;
+            if (reference < 0 || position - reference > MAX_OFFSET || readInt(source, reference) != sequence) {
+                position++;
+                continue;
+            }
+            int matchLength = MIN_MATCH;
+            while (position + matchLength < matchLimit && source[reference + matchLength] == source[position + matchLength]) {
+                matchLength++;
+            }
+            size = writeSequence(result, size, source, anchor, position - anchor, position - reference, matchLength);
+            position += matchLength;
+            anchor = position;
+        }
+        size = writeSequence(result, size, source, anchor, end - anchor, 0, 0);
+        return Arrays.copyOf(result, size);
+    }
+
+    @Override
+    public byte[] decompress(byte[] source, int offset, int length, int originalLength) throws IOException {
+        byte[] result = new byte[originalLength];
+        int end = offset + length;
+        int position = offset;
+        int size = 0;
+        try {
+            while (position < end) {
+                int token = source[position++] & 0xFF;
+                int literals = token >>> 4;
+                if (literals == 15) {
+                    int b;
+                    do {
+                        b = source[position++] & 0xFF;
+                        literals += b;
+                    } while (b == 255);
+                }
+                System.arraycopy(source, position, result, size, literals);
+                position += literals;
+                size += literals;
+                if (position >= end) {
+                    break;
+                }
+                int matchOffset = (source[position++] & 0xFF) | ((source[position++] & 0xFF) << 8);
+                int matchLength = token & 0x0F;
+                if (matchLength == 15) {
+                    int b;
+                    do {
+                        b = source[position++] & 0xFF;
+                        matchLength += b;
+                    } while (b == 255);
+                }
+                matchLength += MIN_MATCH;
+                int reference = size - matchOffset;
+                if (matchOffset == 0 || reference < 0 || size + matchLength > originalLength) {
+                    throw new IOException("Compressed record is damaged");
+                }
+                // Совпадение может перекрывать копируемую область, поэтому копируем побайтно
+                for (int i = 0; i < matchLength; i++) {
+                    result[size++] = result[reference + i];
+                }
+            }
+        } catch (IndexOutOfBoundsException e) {
+            throw new IOException("Compressed record is damaged", e);
+        }
+        if (size != originalLength) {
+            throw new IOException("Compressed record is damaged");
+        }
+        return result;
+    }
+
+    private static int writeSequence(byte[] result, int size, byte[] source, int literalsOffset, int literals,
+                                     int matchOffset, int matchLength) {
+        int tokenPosition = size++;
+        int token = Math.min(literals, 15) << 4;
+        size = writeLength(result, size, literals);
+        System.arraycopy(source, literalsOffset, result, size, literals);
+        size += literals;
+        if (matchLength > 0) {
+            result[size++] = (byte) matchOffset;
+            result[size++] = (byte) (matchOffset >>> 8);
+            int length = matchLength - MIN_MATCH;
+            token |= Math.min(length, 15);
+            size = writeLength(result, size, length);
+        }
+        result[tokenPosition] = (byte) token;
+        return size;
+    }
+
+    /**
+     * Writes continuation of the length that doesn't fit into four bits of the token
+     */
+    private static int writeLength(byte[] result, int size, int length) {
+        if (length >= 15) {
+            length -= 15;
+            while (length >= 255) {
+                result[size++] = (byte) 255;
+                length -= 255;
+            }
+            result[size++] = (byte) length;
+        }
+        return size;
+    }
+
+    private static int readInt(byte[] source, int position) {
+        return (source[position] & 0xFF)
+                | (source[position + 1] & 0xFF) << 8
+                | (source[position + 2] & 0xFF) << 16
+                | (source[position + 3] & 0xFF) << 24;
+    }
+}
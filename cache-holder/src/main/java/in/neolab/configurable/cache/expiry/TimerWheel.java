@@ -0,0 +1,275 @@
+package in.neolab.configurable.cache.expiry;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Hierarchical timer wheel of key expiration times.<br>
+ * Keys are kept in buckets of several wheels. Every next wheel has coarser buckets: about a second, a minute,
+ * an hour, a day and a week. Advancing the time visits only the buckets whose time has passed. Keys of the visited
+ * bucket either expire or move to a finer wheel, so scheduling, rescheduling and expiration of a key
+ * take amortized constant time regardless of the number of keys.<br>
+ * Every key has an expiration time and a limit: expiration time may be moved forward (e.g. on access),
+ * but never beyond the limit. Times are in nanoseconds of {@link System#nanoTime()}.
+ * All methods are synchronized, so single wheel can be shared between threads.
+ * @param <K> Type of the key object
+ * @author Nikita Parygin
+ */
+public class TimerWheel<K> {
+
+    /**
+     * Number of buckets of every wheel
+     */
+    private static final int[] BUCKETS = {64, 64, 32, 4, 1};
+
+    /**
+     * Time spans of the bucket of every wheel, rounded up to powers of two
+     */
+    private static final long[] SPANS = {
+            ceilingPowerOfTwo(TimeUnit.SECONDS.toNanos(1)),
+            ceilingPowerOfTwo(TimeUnit.MINUTES.toNanos(1)),
+            ceilingPowerOfTwo(TimeUnit.HOURS.toNanos(1)),
+            ceilingPowerOfTwo(TimeUnit.DAYS.toNanos(1)),
+            BUCKETS[3] * ceilingPowerOfTwo(TimeUnit.DAYS.toNanos(1)),
+            BUCKETS[3] * ceilingPowerOfTwo(TimeUnit.DAYS.toNanos(1))
+    };
+
+    /**
+     * Shifts turning time into ticks of every wheel
+     */
+    private static final long[] SHIFTS = new long[BUCKETS.length];
+
+    static {
+        for (int i = 0; i < BUCKETS.length; i++) {
+            SHIFTS[i] = Long.numberOfTrailingZeros(SPANS[i]);
+        }
+    }
+
+    /**
+     * Key of the wheel. Node is linked into the bucket list while it is waiting for its time
+     */
+    private static final class Node<K> {
+        private final K key;
+        private long time;
+        private long limit;
+        private Node<K> previous;
+        private Node<K> next;
+
+        private Node(K key) {
+            this.key = key;
+        }
+    }
+
+    /**
+     * Buckets of the wheels. Every bucket is a sentinel of the circular list of nodes
+     */
+    private final Node<K>[][] wheels;
+
+    /**
+     * Nodes of the scheduled keys
+     */
+    private final Map<K, Node<K>> nodes = new HashMap<>();
+
+    /**
+     * Time the wheel was advanced to
+     */
+    private long nanos;
+
+    /**
+     * The Constructor
+     * @param now current time
+     */
+    public TimerWheel(long now) {
+        this.nanos = now;
+        this.wheels = new Node[BUCKETS.length][];
+        for (int i = 0; i < BUCKETS.length; i++) {
+            wheels[i] = new Node[BUCKETS[i]];
+            for (int j = 0; j < BUCKETS[i]; j++) {
+                Node<K> sentinel = new Node<>(null);
+                sentinel.previous = sentinel;
+                sentinel.next = sentinel;
+                wheels[i][j] = sentinel;
+            }
+        }
+    }
+
+    /**
+     * Schedules expiration of the key. Replaces the previous schedule of the key
+     * @param key key
+     * @param time expiration time
+     * @param limit time the expiration can't be moved beyond by {@link #extend(Object, long)}
+     */
+    public synchronized void schedule(K key, long time, long limit) {
+        Node<K> node = nodes.computeIfAbsent(key, Node::new);
+        node.limit = limit;
+        node.time = Math.min(time, limit);
+        link(node);
+    }
+
+    /**
+     * Moves expiration time of the scheduled key forward, but not beyond its limit
+     * @param key key
+     * @param time new expiration time
+     */
+    public synchronized void extend(K key, long time) {
+        Node<K> node = nodes.get(key);
+        if (node != null) {
+            node.time = Math.min(time, node.limit);
+            link(node);
+        }
+    }
+
+    /**
+     * Cancels expiration of the key
+     * @param key key
+     */
+    public synchronized void remove(K key) {
+        Node<K> node = nodes.remove(key);
+        if (node != null) {
+            unlink(node);
+        }
+    }
+
+    /**
+     * Shows whether the time of the key has passed
+     * @param key key
+     * @param now current time
+     * @return  <code>true</code> - if the key is scheduled and its time has passed.<br>
+     *          <code>false</code> - otherwise
+     */
+    public synchronized boolean isExpired(K key, long now) {
+        Node<K> node = nodes.get(key);
+        return node != null && node.time - now <= 0;
+    }
+
+    /**
+     * Cancels expiration of the key if its time has passed. Lets the caller remove the expired key exactly once,
+     * even if the key was rescheduled after it was returned by {@link #advance(long)}
+     * @param key key
+     * @param now current time
+     * @return  <code>true</code> - if the key was expired and now is removed from the wheel.<br>
+     *          <code>false</code> - otherwise
+     */
+    public synchronized boolean removeIfExpired(K key, long now) {
+        Node<K> node = nodes.get(key);
+        if (node == null || node.time - now > 0) {
+            return false;
+        }
+        nodes.remove(key);
+        unlink(node);
+        return true;
+    }
+
+    /**
+     * Advances the wheel to the current time. Keys whose time has passed are taken out of the buckets,
+     * but stay scheduled until they are removed by {@link #removeIfExpired(Object, long)}
+     * @param now current time
+     * @return keys whose time has passed
+     */
+    public synchronized List<K> advance(long now) {
+        List<K> expired = new ArrayList<>();
+        long previous = nanos;
+        nanos = now;
+        for (int i = 0; i < SHIFTS.length; i++) {
+            long previousTicks = previous >>> SHIFTS[i];
+            long currentTicks = now >>> SHIFTS[i];
+            if (currentTicks - previousTicks <= 0) {
+                break;
+            }
+            expire(i, previousTicks, currentTicks - previousTicks, expired);
+        }
+        return expired;
+    }
+
+    /**
+     * Returns number of scheduled keys
+     * @return count of keys
+     */
+    public synchronized int size() {
+        return nodes.size();
+    }
+
+    /**
+     * Cancels expiration of all keys
+     */
+    public synchronized void clear() {
+        for (Node<K>[] wheel : wheels) {
+            for (Node<K> sentinel : wheel) {
+                sentinel.previous = sentinel;
+                sentinel.next = sentinel;
+            }
+        }
+        nodes.clear();
+    }
+
+    /**
+     * Visits buckets of the wheel that the time has passed
+     */
+    private void expire(int index, long previousTicks, long delta, List<K> expired) {
+        Node<K>[] wheel = wheels[index];
+        int mask = wheel.length - 1;
+        int steps = (int) Math.min(1 + delta, wheel.length);
+        int start = (int) (previousTicks & mask);
+        for (int i = start; i < start + steps; i++) {
+            Node<K> sentinel = wheel[i & mask];
+            Node<K> node = sentinel.next;
+            sentinel.previous = sentinel;
+            sentinel.next = sentinel;
+            while (node != sentinel) {
+                Node<K> next = node.next;
+                node.previous = null;
+                node.next = null;
+                if (node.time - nanos <= 0) {
+                    expired.add(node.key);
+                } else {
+                    // Время ключа еще не наступило - переносим его в более точное колесо
+                    link(node);
+                }
+                node = next;
+            }
+        }
+    }
+
+    private void link(Node<K> node) {
+        unlink(node);
+        Node<K> sentinel = findBucket(node.time);
+        node.previous = sentinel.previous;
+        node.next = sentinel;
+        sentinel.previous.next = node;
+        sentinel.previous = node;
+    }
+
+    private void unlink(Node<K> node) {
+        if (node.next != null) {
+            node.previous.next = node.next;
+            node.next.previous = node.previous;
+            node.previous = null;
+            node.next = null;
+        }
+    }
+
+    private Node<K> findBucket(long time) {
+        long duration = time - nanos;
+        if (duration < 0) {
+            // Время уже прошло - корзина этого времени позади курсора и была бы посещена только через полный оборот колеса,
+            // поэтому ключ попадает в текущую корзину и истекает при следующем продвижении
+            time = nanos;
+            duration = 0;
+        }
+        int last = wheels.length - 1;
+        for (int i = 0; i < last; i++) {
+            if (duration < SPANS[i + 1]) {
+                long ticks = time >>> SHIFTS[i];
+                return wheels[i][(int) (ticks & (wheels[i].length - 1))];
+            }
+        }
+        return wheels[last][0];
+    }
+
+    private static long ceilingPowerOfTwo(long value) {
+        return 1L << (64 - Long.numberOfLeadingZeros(value - 1));
+    }
+}
@@ -0,0 +1,110 @@
+package in.neolab.configurable.cache.lock;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Fixed set of locks shared between keys. Every key is mapped to one stripe by its hash code,
+ * so operations on different keys can run in parallel while operations on the same key are serialized.
+ * @author Nikita Parygin
+ */
+public class StripedLock {
+
+    /**
+     * Default number of stripes
+     */
+    public static final int DEFAULT_CONCURRENCY_LEVEL = 16;
+
+    /**
+     * Stripes
+     */
+    private final ReentrantLock[] stripes;
+
+    /**
+     * Mask used for mapping hash code to the stripe index
+     */
+    private final int mask;
+
+    /**
+     * The Constructor
+     * @param concurrencyLevel expected number of concurrently updating threads. Rounded up to the power of two
+     */
+    public StripedLock(int concurrencyLevel) {
+        int count = 1;
+        while (count < concurrencyLevel) {
+            count <<= 1;
+        }
+        this.stripes = new ReentrantLock[count];
+        for (int i = 0; i < count; i++) {
+            stripes[i] = new ReentrantLock();
+        }
+        this.mask = count - 1;
+    }
+
+    /**
+     * Returns lock guarding the specified key
+     * @param key key
+     * @return {@link Lock} object
+     */
+    public Lock get(Object key) {
+        return stripes[indexOf(key)];
+    }
+
+    /**
+     * Returns locks guarding the specified keys. Every stripe is returned once, stripes are ordered the same way
+     * as in {@link #lockAll()}, so callers acquiring them in the returned order can't deadlock
+     * @param keys keys
+     * @return list of {@link Lock} objects
+     */
+    public List<Lock> getAll(Collection<?> keys) {
+        boolean[] used = new boolean[stripes.length];
+        for (Object key : keys) {
+            used[indexOf(key)] = true;
+        }
+        List<Lock> locks = new ArrayList<>();
+        for (int i = 0; i < stripes.length; i++) {
+            if (used[i]) {
+                locks.add(stripes[i]);
+            }
+        }
+        return locks;
+    }
+
+    /**
+     * Acquires every stripe. Stripes are always taken in the same order so two callers can't deadlock
+     */
+    public void lockAll() {
+        for (ReentrantLock stripe : stripes) {
+            stripe.lock();
+        }
+    }
+
+    /**
+     * Releases every stripe acquired by {@link #lockAll()}
+     */
+    public void unlockAll() {
+        for (int i = stripes.length - 1; i >= 0; i--) {
+            stripes[i].unlock();
+        }
+    }
+
+    /**
+     * Returns number of stripes
+     * @return stripes count
+     */
+    public int size() {
+        return stripes.length;
+    }
+
+    private int indexOf(Object key) {
+        // Перемешиваем биты хэша, чтобы ключи с похожими хэшами не попадали в одну и ту же блокировку
+        int h = key.hashCode();
+        h ^= (h >>> 16);
+        h *= 0x85ebca6b;
+        h ^= (h >>> 13);
+        return h & mask;
+    }
+}
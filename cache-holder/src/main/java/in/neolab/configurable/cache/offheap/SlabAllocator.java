@@ -0,0 +1,379 @@
+package in.neolab.configurable.cache.offheap;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Allocator of off-heap memory chunks.<br>
+ * Memory is reserved by slabs - direct {@link ByteBuffer}s of equal size. Slabs are split into chunks by the buddy system:
+ * chunk sizes are powers of two from {@link #MIN_CHUNK_SIZE} up to the slab size, a larger free chunk is halved
+ * until it fits the requested length, and a freed chunk is merged with its free neighbour of the same size.
+ * So a slab that became empty is a single free chunk again and can be reused for values of any size.
+ * Values larger than the slab are stored in dedicated direct buffers that are released when the value is freed.
+ * Slabs are never returned to the system, so the amount of direct memory is bounded by the allocator budget.<br>
+ * Chunk is identified by the handle: buffer number in the upper 32 bits and offset inside the buffer in the lower ones.
+ * @author Nikita Parygin
+ */
+public class SlabAllocator {
+
+    /**
+     * Size of the smallest chunk
+     */
+    public static final int MIN_CHUNK_SIZE = 64;
+
+    /**
+     * Default size of one slab
+     */
+    public static final int DEFAULT_SLAB_SIZE = 4 * 1024 * 1024;
+
+    /**
+     * Flag of the handle that points to a dedicated buffer of the large value
+     */
+    private static final long LARGE = 1L << 62;
+
+    /**
+     * Marker of the empty free list
+     */
+    private static final long NONE = -1;
+
+    /**
+     * Offsets of the free chunk header fields. The header is stored in the free chunk itself
+     */
+    private static final int ORDER_OFFSET = 0;
+    private static final int PREV_OFFSET = 8;
+    private static final int NEXT_OFFSET = 16;
+
+    /**
+     * Growable stack of buffer numbers
+     */
+    private static final class IndexStack {
+        private int[] indexes = new int[16];
+        private int size;
+
+        void push(int index) {
+            if (size == indexes.length) {
+                indexes = Arrays.copyOf(indexes, size << 1);
+            }
+            indexes[size++] = index;
+        }
+
+        int pop() {
+            return indexes[--size];
+        }
+
+        boolean isEmpty() {
+            return size == 0;
+        }
+    }
+
+    /**
+     * Size of one slab
+     */
+    private final int slabSize;
+
+    /**
+     * Order of the whole slab: the slab is {@link #MIN_CHUNK_SIZE} shifted left by the order
+     */
+    private final int maxOrder;
+
+    /**
+     * Maximum amount of direct memory reserved by slabs and large values
+     */
+    private final long maxBytes;
+
+    /**
+     * Slabs. Readers access them without locking, new slabs are added rarely
+     */
+    private final CopyOnWriteArrayList<ByteBuffer> slabs = new CopyOnWriteArrayList<>();
+
+    /**
+     * Bitmaps of every slab. Bit is set if a free chunk starts at the corresponding minimal chunk
+     */
+    private final CopyOnWriteArrayList<long[]> freeBits = new CopyOnWriteArrayList<>();
+
+    /**
+     * Heads of the free chunk lists of every order
+     */
+    private final long[] freeLists;
+
+    /**
+     * Dedicated buffers of values larger than the slab. Freed buffers leave <code>null</code> in their place
+     */
+    private final CopyOnWriteArrayList<ByteBuffer> largeBuffers = new CopyOnWriteArrayList<>();
+
+    /**
+     * Numbers of freed places in the list of large buffers
+     */
+    private final IndexStack freeLargeIndexes = new IndexStack();
+
+    /**
+     * Bytes reserved by large buffers
+     */
+    private long largeBytes;
+
+    /**
+     * Bytes occupied by allocated chunks and large buffers
+     */
+    private long usedBytes;
+
+    /**
+     * The Constructor
+     * @param maxBytes maximum amount of direct memory reserved by slabs and large values
+     * @param slabSize size of one slab. Should be a power of two not less than {@link #MIN_CHUNK_SIZE}.
+     *                 A slab larger than the budget is reduced to fit into it
+     */
+    public SlabAllocator(long maxBytes, int slabSize) {
+        if (Integer.bitCount(slabSize) != 1 || slabSize < MIN_CHUNK_SIZE) {
+            throw new IllegalArgumentException("Slab size should be a power of two not less than " + MIN_CHUNK_SIZE);
+        }
+        this.maxBytes = maxBytes;
+        // Если бюджет меньше слаба, ни один слаб не поместился бы в него - уменьшаем слаб до бюджета
+        this.slabSize = (int) Math.max(MIN_CHUNK_SIZE, Math.min(slabSize, Long.highestOneBit(Math.max(maxBytes, 0))));
+        this.maxOrder = order(this.slabSize);
+        this.freeLists = new long[maxOrder + 1];
+        Arrays.fill(freeLists, NONE);
+    }
+
+    /**
+     * Allocates chunk able to hold the specified number of bytes
+     * @param length number of bytes
+     * @return chunk handle or <code>-1</code> if there is no free chunk of the required size and the budget is exhausted
+     */
+    public synchronized long allocate(int length) {
+        if (length > slabSize) {
+            return allocateLarge(length);
+        }
+        int order = order(length);
+        int current = order;
+        while (current <= maxOrder && freeLists[current] == NONE) {
+            current++;
+        }
+        if (current > maxOrder) {
+            if (getReservedBytes() + slabSize > maxBytes) {
+                return -1;
+            }
+            addSlab();
+            current = maxOrder;
+        }
+        long handle = freeLists[current];
+        unlinkFree(handle, current);
+        // Делим найденный участок пополам, пока он больше необходимого - вторые половины уходят в свободные списки
+        while (current > order) {
+            current--;
+            linkFree(handle + (MIN_CHUNK_SIZE << current), current);
+        }
+        usedBytes += MIN_CHUNK_SIZE << order;
+        return handle;
+    }
+
+    /**
+     * Returns chunk to the allocator
+     * @param handle chunk handle
+     * @param length number of bytes the chunk was allocated for
+     */
+    public synchronized void free(long handle, int length) {
+        if ((handle & LARGE) != 0) {
+            int index = index(handle);
+            ByteBuffer buffer = largeBuffers.set(index, null);
+            freeLargeIndexes.push(index);
+            largeBytes -= buffer.capacity();
+            usedBytes -= buffer.capacity();
+            return;
+        }
+        int order = order(length);
+        usedBytes -= MIN_CHUNK_SIZE << order;
+        // Сливаем участок со свободным соседом того же размера, пока это возможно
+        while (order < maxOrder) {
+            long buddy = handle ^ (MIN_CHUNK_SIZE << order);
+            if (!isFree(buddy) || orderOf(buddy) != order) {
+                break;
+            }
+            unlinkFree(buddy, order);
+            handle = Math.min(handle, buddy);
+            order++;
+        }
+        linkFree(handle, order);
+    }
+
+    /**
+     * Checks whether a chunk of the specified number of bytes can be allocated right now
+     * @param length number of bytes
+     * @return  <code>true</code> - if the allocation would succeed.<br>
+     *          <code>false</code> - otherwise
+     */
+    public synchronized boolean canAllocate(int length) {
+        if (length > slabSize) {
+            return getReservedBytes() + length <= maxBytes;
+        }
+        for (int order = order(length); order <= maxOrder; order++) {
+            if (freeLists[order] != NONE) {
+                return true;
+            }
+        }
+        return getReservedBytes() + slabSize <= maxBytes;
+    }
+
+    /**
+     * Copies bytes into the chunk
+     * @param handle chunk handle
+     * @param data bytes
+     */
+    public void write(long handle, byte[] data) {
+        ByteBuffer buffer = buffer(handle).duplicate();
+        buffer.position((int) handle);
+        buffer.put(data);
+    }
+
+    /**
+     * Copies bytes from the chunk
+     * @param handle chunk handle
+     * @param length number of bytes to read
+     * @return bytes
+     */
+    public byte[] read(long handle, int length) {
+        ByteBuffer buffer = buffer(handle).duplicate();
+        buffer.position((int) handle);
+        byte[] data = new byte[length];
+        buffer.get(data);
+        return data;
+    }
+
+    /**
+     * Releases all chunks. Reserved slabs are kept for reuse, large buffers are released
+     */
+    public synchronized void clear() {
+        Arrays.fill(freeLists, NONE);
+        for (int i = 0; i < slabs.size(); i++) {
+            Arrays.fill(freeBits.get(i), 0);
+            linkFree((long) i << 32, maxOrder);
+        }
+        for (int i = 0; i < largeBuffers.size(); i++) {
+            if (largeBuffers.get(i) != null) {
+                largeBuffers.set(i, null);
+                freeLargeIndexes.push(i);
+            }
+        }
+        largeBytes = 0;
+        usedBytes = 0;
+    }
+
+    /**
+     * Returns number of bytes occupied by allocated chunks
+     * @return bytes
+     */
+    public synchronized long getUsedBytes() {
+        return usedBytes;
+    }
+
+    /**
+     * Returns amount of direct memory reserved by slabs and large values
+     * @return bytes
+     */
+    public synchronized long getReservedBytes() {
+        return (long) slabs.size() * slabSize + largeBytes;
+    }
+
+    /**
+     * Returns size of one slab. It can be less than requested in the constructor if the budget is smaller
+     * @return bytes
+     */
+    public int getSlabSize() {
+        return slabSize;
+    }
+
+    private long allocateLarge(int length) {
+        if (getReservedBytes() + length > maxBytes) {
+            return -1;
+        }
+        ByteBuffer buffer = ByteBuffer.allocateDirect(length);
+        int index;
+        if (freeLargeIndexes.isEmpty()) {
+            index = largeBuffers.size();
+            largeBuffers.add(buffer);
+        } else {
+            index = freeLargeIndexes.pop();
+            largeBuffers.set(index, buffer);
+        }
+        largeBytes += length;
+        usedBytes += length;
+        return LARGE | ((long) index << 32);
+    }
+
+    private void addSlab() {
+        slabs.add(ByteBuffer.allocateDirect(slabSize));
+        freeBits.add(new long[Math.max(1, (slabSize / MIN_CHUNK_SIZE) >>> 6)]);
+        linkFree((long) (slabs.size() - 1) << 32, maxOrder);
+    }
+
+    private ByteBuffer buffer(long handle) {
+        if ((handle & LARGE) != 0) {
+            return largeBuffers.get(index(handle));
+        }
+        return slabs.get((int) (handle >>> 32));
+    }
+
+    /**
+     * Adds chunk to the head of the free list and writes its header
+     */
+    private void linkFree(long handle, int order) {
+        ByteBuffer slab = slabs.get((int) (handle >>> 32));
+        int offset = (int) handle;
+        long next = freeLists[order];
+        slab.putInt(offset + ORDER_OFFSET, order);
+        slab.putLong(offset + PREV_OFFSET, NONE);
+        slab.putLong(offset + NEXT_OFFSET, next);
+        if (next != NONE) {
+            slabs.get((int) (next >>> 32)).putLong((int) next + PREV_OFFSET, handle);
+        }
+        freeLists[order] = handle;
+        setFree(handle, true);
+    }
+
+    /**
+     * Removes chunk from its free list
+     */
+    private void unlinkFree(long handle, int order) {
+        ByteBuffer slab = slabs.get((int) (handle >>> 32));
+        int offset = (int) handle;
+        long prev = slab.getLong(offset + PREV_OFFSET);
+        long next = slab.getLong(offset + NEXT_OFFSET);
+        if (prev == NONE) {
+            freeLists[order] = next;
+        } else {
+            slabs.get((int) (prev >>> 32)).putLong((int) prev + NEXT_OFFSET, next);
+        }
+        if (next != NONE) {
+            slabs.get((int) (next >>> 32)).putLong((int) next + PREV_OFFSET, prev);
+        }
+        setFree(handle, false);
+    }
+
+    private boolean isFree(long handle) {
+        int unit = (int) handle / MIN_CHUNK_SIZE;
+        return (freeBits.get((int) (handle >>> 32))[unit >>> 6] & (1L << unit)) != 0;
+    }
+
+    private void setFree(long handle, boolean free) {
+        int unit = (int) handle / MIN_CHUNK_SIZE;
+        long[] bits = freeBits.get((int) (handle >>> 32));
+        if (free) {
+            bits[unit >>> 6] |= 1L << unit;
+        } else {
+            bits[unit >>> 6] &= ~(1L << unit);
+        }
+    }
+
+    private int orderOf(long handle) {
+        return slabs.get((int) (handle >>> 32)).getInt((int) handle + ORDER_OFFSET);
+    }
+
+    private static int index(long handle) {
+        return (int) ((handle & ~LARGE) >>> 32);
+    }
+
+    private static int order(int length) {
+        int size = Math.max(length, MIN_CHUNK_SIZE);
+        return 32 - Integer.numberOfLeadingZeros(size - 1) - 6;
+    }
+}
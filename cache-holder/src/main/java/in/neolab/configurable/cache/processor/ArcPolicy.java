@@ -0,0 +1,238 @@
+package in.neolab.configurable.cache.processor;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * ARC (Adaptive Replacement Cache) strategy.<br>
+ * Keys used once are kept in the recency list, keys used more than once are moved to the frequency list.
+ * Keys evicted from the lists are remembered in the ghost lists without their values, keys removed by the user
+ * or expired are just forgotten. A new key found in the recency ghost list means the recency list is too short,
+ * a key found in the frequency ghost list means the opposite, so the target size of the recency list is adjusted by every ghost hit and the strategy balances itself between
+ * LRU and LFU behaviour.<br>
+ * Capacity of the cache is learned as the greatest number of keys the policy has kept at once.
+ * Ghost lists together never hold more keys than the capacity.<br>
+ * Priority of the key is the value of the logical clock at its last access. Keys of the frequency list have
+ * the {@link #FREQUENT} bit set, so they are considered more valuable than keys of the recency list
+ * @param <K> Type of the key object
+ * @author Nikita Parygin
+ */
+public class ArcPolicy<K> implements EvictionPolicy<K> {
+
+    /**
+     * Bit of the priority marking keys of the frequency list
+     */
+    private static final long FREQUENT = 1L << 62;
+
+    /**
+     * Keys used once and their access times, from the least recently used one
+     */
+    private final LinkedHashMap<K, Long> recent = new LinkedHashMap<>();
+
+    /**
+     * Keys used more than once and their access times, from the least recently used one
+     */
+    private final LinkedHashMap<K, Long> frequent = new LinkedHashMap<>();
+
+    /**
+     * Keys recently removed from the recency list
+     */
+    private final LinkedHashSet<K> recentGhosts = new LinkedHashSet<>();
+
+    /**
+     * Keys recently removed from the frequency list
+     */
+    private final LinkedHashSet<K> frequentGhosts = new LinkedHashSet<>();
+
+    /**
+     * Greatest number of keys kept at once
+     */
+    private int capacity;
+
+    /**
+     * Target size of the recency list
+     */
+    private int target;
+
+    /**
+     * Logical clock. Each access gets a greater value than all previous ones
+     */
+    private long clock;
+
+    @Override
+    public void onInsert(K key) {
+        if (recentGhosts.contains(key)) {
+            // Ключ вытеснен из списка недавних слишком рано - увеличиваем его долю.
+            // Шаг считается по размерам списков-призраков до удаления из них ключа
+            target = Math.min(capacity, target + Math.max(frequentGhosts.size() / recentGhosts.size(), 1));
+            recentGhosts.remove(key);
+            frequent.put(key, ++clock);
+        } else if (frequentGhosts.contains(key)) {
+            target = Math.max(0, target - Math.max(recentGhosts.size() / frequentGhosts.size(), 1));
+            frequentGhosts.remove(key);
+            frequent.put(key, ++clock);
+        } else {
+            recent.put(key, ++clock);
+        }
+        capacity = Math.max(capacity, size());
+        trimGhosts();
+    }
+
+    @Override
+    public void onAccess(K key) {
+        // Повторное обращение переносит ключ в конец списка частых
+        if (recent.remove(key) != null || frequent.remove(key) != null) {
+            frequent.put(key, ++clock);
+        }
+    }
+
+    @Override
+    public void onRemove(K key) {
+        // Удаленный пользователем или устаревший ключ не говорит о нехватке места - призрак не нужен
+        recent.remove(key);
+        frequent.remove(key);
+        recentGhosts.remove(key);
+        frequentGhosts.remove(key);
+    }
+
+    @Override
+    public void onEvict(K key) {
+        if (recent.remove(key) != null) {
+            recentGhosts.add(key);
+        } else if (frequent.remove(key) != null) {
+            frequentGhosts.add(key);
+        }
+        trimGhosts();
+    }
+
+    @Override
+    public K selectVictim() {
+        if (preferRecent()) {
+            return first(recent);
+        }
+        return frequent.isEmpty() ? first(recent) : first(frequent);
+    }
+
+    @Override
+    public Iterator<K> victimOrder() {
+        // Сначала ключи списка, из которого ARC вытесняет сейчас, затем ключи другого списка
+        boolean preferRecent = preferRecent();
+        return new ConcatIterator<>(
+                (preferRecent ? recent : frequent).keySet().iterator(),
+                (preferRecent ? frequent : recent).keySet().iterator()
+        );
+    }
+
+    @Override
+    public Set<K> selectVictims() {
+        Set<K> victims = new LinkedHashSet<>();
+        K preferred = preferRecent() ? first(recent) : first(frequent);
+        K other = preferRecent() ? first(frequent) : first(recent);
+        if (preferred != null) {
+            victims.add(preferred);
+        }
+        if (other != null) {
+            victims.add(other);
+        }
+        return victims;
+    }
+
+    @Override
+    public Long getPriority(K key) {
+        Long time = recent.get(key);
+        if (time != null) {
+            return time;
+        }
+        time = frequent.get(key);
+        return time == null ? null : time | FREQUENT;
+    }
+
+    @Override
+    public Map<K, Long> getPriorities() {
+        Map<K, Long> priorities = new HashMap<>(recent);
+        for (Map.Entry<K, Long> entry : frequent.entrySet()) {
+            priorities.put(entry.getKey(), entry.getValue() | FREQUENT);
+        }
+        return priorities;
+    }
+
+    @Override
+    public void restore(K key, long priority) {
+        long time = priority & ~FREQUENT;
+        recent.remove(key);
+        frequent.remove(key);
+        if ((priority & FREQUENT) != 0) {
+            frequent.put(key, time);
+        } else {
+            recent.put(key, time);
+        }
+        clock = Math.max(clock, time);
+        capacity = Math.max(capacity, size());
+    }
+
+    @Override
+    public void clear() {
+        recent.clear();
+        frequent.clear();
+        recentGhosts.clear();
+        frequentGhosts.clear();
+        capacity = 0;
+        target = 0;
+    }
+
+    @Override
+    public int size() {
+        return recent.size() + frequent.size();
+    }
+
+    /**
+     * Shows whether the next victim should be taken from the recency list
+     */
+    private boolean preferRecent() {
+        return !recent.isEmpty() && (recent.size() > target || frequent.isEmpty());
+    }
+
+    /**
+     * Forgets the oldest ghosts, so the recency list with its ghosts doesn't exceed the capacity
+     * and all ghosts together don't exceed the capacity either
+     */
+    private void trimGhosts() {
+        while (recent.size() + recentGhosts.size() > capacity && !recentGhosts.isEmpty()) {
+            removeFirst(recentGhosts);
+        }
+        while (recentGhosts.size() + frequentGhosts.size() > capacity) {
+            removeFirst(frequentGhosts.isEmpty() ? recentGhosts : frequentGhosts);
+        }
+    }
+
+    private static <K> K first(Map<K, Long> list) {
+        Iterator<K> keys = list.keySet().iterator();
+        return keys.hasNext() ? keys.next() : null;
+    }
+
+    private static <K> void removeFirst(Set<K> ghosts) {
+        Iterator<K> keys = ghosts.iterator();
+        keys.next();
+        keys.remove();
+    }
+
+    /**
+     * Provider of the "ARC" strategy
+     */
+    public static final class Provider implements EvictionPolicyProvider {
+
+        @Override
+        public String getName() {
+            return "ARC";
+        }
+
+        @Override
+        public <K> EvictionPolicy<K> create() {
+            return new ArcPolicy<>();
+        }
+    }
+}
@@ -1,48 +1,105 @@
 package in.neolab.configurable.cache.processor;
 
 import java.io.Serializable;
-import java.util.HashMap;
-import java.util.HashSet;
-import java.util.LinkedHashSet;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.util.function.BiConsumer;
-import java.util.stream.Collectors;
+import java.util.function.Predicate;
 
 /**
  * The cache processor adjusts the key priority system depending on the extrusion strategy being implemented.
- * It decides which keys to remove from the cache when it is full.
+ * It decides which keys to remove from the cache when it is full. The strategy itself is implemented by the {@link EvictionPolicy}.
+ * All methods are synchronized, so single processor can be shared between threads.
  * @param <K> Type of the key object should implement {@link Serializable} interface
  * @author Nikita Parygin
  */
 public class CacheProcessor<K> {
 
     /**
-     * Map that contains key-priority pair
+     * Policy that implements extrusion strategy
      */
-    private Map<K, Long> priorityTable;
+    private final EvictionPolicy<K> policy;
     /**
-     * Function that implements extrusion strategy
+     * Recent access frequencies of the keys, <code>null</code> if they are not counted.
+     * Unlike priorities, they mean the same for every strategy
      */
-    private BiConsumer<K, Map> implStrategy;
+    private FrequencySketch<K> sketch;
+    /**
+     * Maximum number of keys in both tiers of the cache, zero if unknown
+     */
+    private long capacity;
+
+    /**
+     * The Constructor
+     * @param policy Policy that implements extrusion strategy. Shouldn't be shared with other processors
+     */
+    public CacheProcessor(EvictionPolicy<K> policy) {
+        this.policy = policy;
+    }
 
     /**
      * The Constructor
-     * @param implStrategy Function that implements extrusion strategy
+     * @param selector Selector of the extrusion strategy
+     */
+    public CacheProcessor(CacheStrategiesSelector<K> selector) {
+        this(selector.createPolicy());
+    }
+
+    /**
+     * Set number of accesses between two agings of access counters.
+     * Aging halves every counter, so keys that were popular long ago can't stay in the cache forever.
+     * Strategies that don't count accesses (LRU) ignore the period
+     * @param agingPeriod number of accesses. Zero means the period is ten accesses per key of the priority table
+     */
+    public synchronized void setAgingPeriod(long agingPeriod) {
+        policy.setAgingPeriod(agingPeriod);
+    }
+
+    /**
+     * Set maximum number of keys in both tiers of the cache. The strategy and the frequency sketch are sized by it once,
+     * otherwise they grow while the cache fills and lose collected frequencies on every growth
+     * @param capacity maximum number of keys
+     */
+    public synchronized void setCapacity(long capacity) {
+        this.capacity = capacity;
+        policy.setCapacity(capacity);
+        if (sketch != null) {
+            sketch.ensureCapacity(capacity);
+        }
+    }
+
+    /**
+     * Turns counting of recent access frequencies on or off. Counting is off by default:
+     * it updates the sketch on every access, so it is turned on only by users of {@link #getFrequency(Object)}
+     * @param counting <code>true</code> to count frequencies
      */
-    public CacheProcessor(BiConsumer<K, Map> implStrategy) {
-        this.priorityTable = new HashMap<>();
-        this.implStrategy = implStrategy;
+    public synchronized void setFrequencyCounting(boolean counting) {
+        if (!counting) {
+            sketch = null;
+        } else if (sketch == null) {
+            sketch = new FrequencySketch<>(Math.max(capacity, policy.size()));
+        }
     }
 
     /**
      * Add key to the priority system or update priority value if key is already exists
      * @param key key
      */
-    public void put(K key) {
-        // Реализация процесса обновления таблицы приоритетов представлена в классе
-        // CacheStrategiesSelector. Этот класс содержит функцию-консьюмер, осуществляющую добавление или обновление ключей
-        implStrategy.accept(key, priorityTable);
+    public synchronized void put(K key) {
+        touch(key);
+    }
+
+    /**
+     * Add several keys to the priority system or update their priority values in one pass
+     * @param keys keys
+     */
+    public synchronized void putAll(Collection<? extends K> keys) {
+        for (K key : keys) {
+            touch(key);
+        }
     }
     /**
      * Searches for key in the priority system
@@ -50,65 +107,91 @@ public class CacheProcessor<K> {
      * @return  <code>true</code> - if key is in the system.<br>
      *          <code>false</code> - otherwise
      */
-    public boolean containsKey(K key) {
-        return priorityTable.containsKey(key);
+    public synchronized boolean containsKey(K key) {
+        return policy.getPriority(key) != null;
     }
 
     /**
      * Remove key from the priority system
      * @param key key
      */
-    public void remove(K key) {
-        priorityTable.remove(key);
+    public synchronized void remove(K key) {
+        policy.onRemove(key);
+    }
+
+    /**
+     * Remove key evicted from the cache to free space for other keys
+     * @param key key
+     */
+    public synchronized void evict(K key) {
+        policy.onEvict(key);
+    }
+
+    /**
+     * Remove several keys from the priority system
+     * @param keys keys
+     */
+    public synchronized void removeAll(Collection<? extends K> keys) {
+        for (K key : keys) {
+            policy.onRemove(key);
+        }
     }
 
     /**
      * Delete all keys from priority system
      */
-    public void clearPriorityTable() {
-        priorityTable.clear();
+    public synchronized void clearPriorityTable() {
+        policy.clear();
+        if (sketch != null) {
+            sketch.clear();
+        }
     }
 
     /**
-     * Return one rarest used key
+     * Return one rarest used key.<br>
+     * Should be called only when the cache is full and a new key is going to be added:
+     * admission strategies (W-TinyLFU) move keys between their regions while choosing the key
      * @return {@link K} object
      */
-    public K getKeyForReplace() {
+    public synchronized K getKeyForReplace() {
         // Тут можно не делать никаких проверок, т.к. если в таблице приоритетов отсутствуют элементы мы по коду сюда не должны попасть
-        return priorityTable
-                .entrySet()
-                .stream()
-                .sorted(Map.Entry.comparingByValue())
-                .collect(Collectors.toCollection(LinkedHashSet::new))
-                .stream()
-                .findFirst()
-                .get()
-                .getKey();
+        return policy.selectVictim();
     }
 
     /**
      * Returns collection of rarely used keys in cache processor priority system
      * @return Set of {@link K} objects
      */
-    public Set<K> getRarelyUsed() {
-        // Решение, конечно не очень, но зато работает, более изящное пока не придумал
-        Set<K> result = new HashSet<>();
-        // Получаем список ключей системы приоритетов
-        Set<K> keys = priorityTable.keySet();
-        for (K firstKey: keys) {
-            // Добавляем в результирующий список наименьшие ключи
-            boolean needToAdd = true;
-            for (K secondKey: keys) {
-                if (priorityTable.get(firstKey) > priorityTable.get(secondKey)) {
-                    needToAdd = false;
-                    break;
-                }
-            }
-            if (needToAdd) {
-                result.add(firstKey);
+    public synchronized Set<K> getRarelyUsed() {
+        return policy.selectVictims();
+    }
+
+    /**
+     * Returns the rarest used key accepted by the filter. Keys are checked in the order they would be removed
+     * from the cache, so the key is found even if all rarer keys are rejected, e.g. when they are in another tier
+     * @param filter key filter
+     * @return {@link K} object or <code>null</code> if no key is accepted
+     */
+    public synchronized K getRarelyUsed(Predicate<? super K> filter) {
+        return policy.selectVictim(filter);
+    }
+
+    /**
+     * Returns the rarest used key accepted by the filter among the limited number of the rarest used keys.
+     * Lets callers that look for a victim on every read avoid walking through all keys
+     * @param filter key filter
+     * @param limit maximum number of checked keys
+     * @return {@link K} object or <code>null</code> if none of the checked keys is accepted
+     */
+    public synchronized K getRarelyUsed(Predicate<? super K> filter, int limit) {
+        Iterator<K> keys = policy.victimOrder();
+        for (int i = 0; i < limit && keys.hasNext(); i++) {
+            K key = keys.next();
+            if (filter.test(key)) {
+                return key;
             }
         }
-        return result;
+        return null;
     }
 
     /**
@@ -116,9 +199,54 @@ public class CacheProcessor<K> {
      * @param key requested key
      * @return priority
      */
-    public Long getPriority(K key) {
-        return priorityTable.get(key);
+    public synchronized Long getPriority(K key) {
+        return policy.getPriority(key);
+    }
+
+    /**
+     * Returns estimated number of recent accesses to the key, including the one that added it.
+     * Estimates of all keys decay over time, so only recent popularity is taken into account
+     * @param key requested key
+     * @return frequency between 0 and 15, always 0 if frequencies are not counted
+     * @see #setFrequencyCounting(boolean)
+     */
+    public synchronized int getFrequency(K key) {
+        return sketch == null ? 0 : sketch.frequency(key);
+    }
+
+    /**
+     * Returns copy of the priority table
+     * @return map of key-priority pairs
+     */
+    public synchronized Map<K, Long> snapshot() {
+        return policy.getPriorities();
     }
 
+    /**
+     * Adds keys with known priorities to the priority system, e.g. after restart of the application
+     * @param priorities map of key-priority pairs
+     */
+    public synchronized void restore(Map<K, Long> priorities) {
+        List<Map.Entry<K, Long>> entries = new ArrayList<>(priorities.entrySet());
+        // Добавляем ключи по возрастанию приоритета, чтобы политика заполнялась добавлением в конец
+        entries.sort(Map.Entry.comparingByValue());
+        for (Map.Entry<K, Long> entry : entries) {
+            policy.restore(entry.getKey(), entry.getValue());
+        }
+    }
 
+    /**
+     * Adds or updates priority of the key. Caller should hold the monitor of the processor
+     */
+    private void touch(K key) {
+        if (policy.getPriority(key) == null) {
+            policy.onInsert(key);
+        } else {
+            policy.onAccess(key);
+        }
+        if (sketch != null) {
+            sketch.ensureCapacity(policy.size());
+            sketch.increment(key);
+        }
+    }
 }
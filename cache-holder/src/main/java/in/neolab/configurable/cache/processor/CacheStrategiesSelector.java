@@ -4,28 +4,20 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.Serializable;
-import java.util.HashMap;
-import java.util.function.BiConsumer;
 
 /**
- * Class that implements cache extrusion strategies
+ * Class that selects cache extrusion strategy by its name in the configuration.<br>
+ * Built-in strategies are "LRU" (default), "LFU", "TINY_LFU" and "ARC". Other strategies are found
+ * by the {@link EvictionPolicies} registry among {@link EvictionPolicyProvider} implementations
  * @param <K> Type of the key object should implement {@link Serializable} interface
  * @author Nikita Parygin
  */
-public class CacheStrategiesSelector<K> implements BiConsumer<K, HashMap<K, Long>> {
+public class CacheStrategiesSelector<K> {
+
     /**
-     * Extrusion strategies
+     * Strategy used when the configured one is unknown
      */
-    private enum CacheStrategyType {
-        /**
-         * LFU cache strategy
-         */
-        LFU,
-        /**
-         * LRU cache strategy (default)
-         */
-        LRU
-    }
+    private static final String DEFAULT_STRATEGY = "LRU";
 
     /**
      * Logger
@@ -35,40 +27,36 @@ public class CacheStrategiesSelector<K> implements BiConsumer<K, HashMap<K, Long
     /**
      * Selected extrusion strategy
      */
-    private CacheStrategyType selectedType;
+    private final String selectedType;
 
     /**
      * The Constructor
      * @param selectedType Selected extrusion strategy
      */
     public CacheStrategiesSelector(String selectedType) {
-        try {
-            this.selectedType = CacheStrategyType.valueOf(selectedType);
-        } catch (Exception e) {
+        if (EvictionPolicies.names().contains(selectedType)) {
+            this.selectedType = selectedType;
+        } else {
             LOGGER.error("Failed to get cache erasure strategy from configuration file." +
-                    "Received value is {}. Value should be \"LFU\" or \"LRU\"." +
-                    "Application will use default \"LRU\" value", selectedType, e);
-            this.selectedType = CacheStrategyType.LRU;
+                    "Received value is {}. Value should be one of {}." +
+                    "Application will use default \"LRU\" value", selectedType, EvictionPolicies.names());
+            this.selectedType = DEFAULT_STRATEGY;
         }
+    }
 
+    /**
+     * Returns name of the selected strategy
+     * @return name of the strategy
+     */
+    public String getSelectedType() {
+        return selectedType;
     }
 
-    @Override
-    public void accept(K key, HashMap<K, Long> map) {
-        /* TODO: Если количество имплементируемых стратегий увеличится, желательно создать отдельного консьюмера для каждой */
-        switch (selectedType) {
-            case LFU:
-                long frequency = 1;
-                if (map.containsKey(key)) {
-                    frequency = map.get(key) + 1;
-                }
-                map.put(key, frequency);
-                break;
-            // По умолчанию используем стратегию LRU
-            case LRU:
-            default:
-                map.put(key, System.nanoTime());
-                break;
-        }
+    /**
+     * Creates policy implementing the selected strategy
+     * @return new {@link EvictionPolicy} object
+     */
+    public EvictionPolicy<K> createPolicy() {
+        return EvictionPolicies.byName(selectedType);
     }
 }
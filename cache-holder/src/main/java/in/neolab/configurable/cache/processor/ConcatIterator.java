@@ -0,0 +1,30 @@
+package in.neolab.configurable.cache.processor;
+
+import java.util.Iterator;
+
+/**
+ * Iterator returning keys of the first iterator and then keys of the second one.
+ * Lets policies with several lists of keys report the whole order of victims without copying the lists
+ * @param <K> Type of the key object
+ * @author Nikita Parygin
+ */
+class ConcatIterator<K> implements Iterator<K> {
+
+    private final Iterator<K> first;
+    private final Iterator<K> second;
+
+    ConcatIterator(Iterator<K> first, Iterator<K> second) {
+        this.first = first;
+        this.second = second;
+    }
+
+    @Override
+    public boolean hasNext() {
+        return first.hasNext() || second.hasNext();
+    }
+
+    @Override
+    public K next() {
+        return first.hasNext() ? first.next() : second.next();
+    }
+}
@@ -0,0 +1,82 @@
+package in.neolab.configurable.cache.processor;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.ServiceLoader;
+import java.util.Set;
+
+/**
+ * Registry of the eviction policies found by the {@link ServiceLoader}
+ * @author Nikita Parygin
+ */
+public final class EvictionPolicies {
+
+    /**
+     * Logger
+     */
+    private static Logger LOGGER = LoggerFactory.getLogger(EvictionPolicies.class);
+
+    /**
+     * Providers by names. Loaded on the first request
+     */
+    private static volatile Map<String, EvictionPolicyProvider> providers;
+
+    /**
+     * Default empty constructor
+     */
+    private EvictionPolicies() {
+
+    }
+
+    /**
+     * Creates policy by its configuration name
+     * @param name name of the policy, e.g. "LRU", "LFU" or "TINY_LFU"
+     * @param <K> Type of the key object
+     * @return new {@link EvictionPolicy} object
+     * @throws IllegalArgumentException if there is no policy with such name
+     */
+    public static <K> EvictionPolicy<K> byName(String name) {
+        EvictionPolicyProvider provider = providers().get(name);
+        if (provider == null) {
+            throw new IllegalArgumentException(
+                    String.format("Unknown cache erasure strategy %1$s. Value should be one of %2$s", name, names())
+            );
+        }
+        return provider.create();
+    }
+
+    /**
+     * Returns names of all registered policies
+     * @return Set of names
+     */
+    public static Set<String> names() {
+        return Collections.unmodifiableSet(providers().keySet());
+    }
+
+    private static Map<String, EvictionPolicyProvider> providers() {
+        Map<String, EvictionPolicyProvider> loaded = providers;
+        if (loaded == null) {
+            synchronized (EvictionPolicies.class) {
+                loaded = providers;
+                if (loaded == null) {
+                    loaded = new LinkedHashMap<>();
+                    for (EvictionPolicyProvider provider : ServiceLoader.load(EvictionPolicyProvider.class)) {
+                        // При совпадении имен побеждает провайдер, найденный первым в classpath
+                        EvictionPolicyProvider previous = loaded.putIfAbsent(provider.getName(), provider);
+                        if (previous != null) {
+                            LOGGER.warn("Cache erasure strategy {} is provided by both {} and {}. {} is used",
+                                    provider.getName(), previous.getClass().getName(),
+                                    provider.getClass().getName(), previous.getClass().getName());
+                        }
+                    }
+                    providers = loaded;
+                }
+            }
+        }
+        return loaded;
+    }
+}
@@ -0,0 +1,130 @@
+package in.neolab.configurable.cache.processor;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Predicate;
+
+/**
+ * Cache extrusion strategy. The policy keeps its own structures describing keys of the cache
+ * and decides which of them should be removed when the cache is full.<br>
+ * Every key has a priority: the greater it is, the longer the key should stay in the cache. Priorities are compared
+ * by the cache holder when objects are moved between tiers and are saved with the cache on shutdown.<br>
+ * Policies are used by the {@link CacheProcessor} under its monitor, so they don't need to be thread-safe.
+ * New policies are registered by {@link EvictionPolicyProvider}
+ * @param <K> Type of the key object
+ * @author Nikita Parygin
+ */
+public interface EvictionPolicy<K> {
+
+    /**
+     * Called when the key is added to the cache
+     * @param key key that is not known by the policy
+     */
+    void onInsert(K key);
+
+    /**
+     * Called when the key that is already in the cache is read or replaced
+     * @param key key known by the policy
+     */
+    void onAccess(K key);
+
+    /**
+     * Called when the key is removed from the cache by the user or expires
+     * @param key key, may be unknown by the policy
+     */
+    void onRemove(K key);
+
+    /**
+     * Called when the key is removed from the cache to free space for other keys.
+     * Policies that learn from evicted keys (ARC) remember them, other policies just forget the key
+     * @param key key, may be unknown by the policy
+     */
+    default void onEvict(K key) {
+        onRemove(key);
+    }
+
+    /**
+     * Returns key that should be removed from the cache first.<br>
+     * Called only when the cache is full and a new key is going to be added, so admission policies
+     * may move keys between their regions while choosing the key
+     * @return {@link K} object or <code>null</code> if the policy has no keys
+     */
+    K selectVictim();
+
+    /**
+     * Returns all keys in the order they should be removed from the cache, starting with the rarest used one.
+     * Unlike {@link #selectVictim()} doesn't change the policy. The iterator is valid until the policy is changed
+     * @return iterator of {@link K} objects
+     */
+    Iterator<K> victimOrder();
+
+    /**
+     * Returns the rarest used key accepted by the filter. Keys are checked in the {@link #victimOrder()},
+     * so the key is found even if all rarer keys are rejected. Doesn't change the policy
+     * @param filter key filter
+     * @return {@link K} object or <code>null</code> if no key is accepted
+     */
+    default K selectVictim(Predicate<? super K> filter) {
+        for (Iterator<K> keys = victimOrder(); keys.hasNext(); ) {
+            K key = keys.next();
+            if (filter.test(key)) {
+                return key;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns all keys that are equally good victims
+     * @return Set of {@link K} objects
+     */
+    Set<K> selectVictims();
+
+    /**
+     * Returns priority of the key
+     * @param key key
+     * @return priority or <code>null</code> if the key is unknown by the policy
+     */
+    Long getPriority(K key);
+
+    /**
+     * Returns priorities of all keys
+     * @return map of key-priority pairs
+     */
+    Map<K, Long> getPriorities();
+
+    /**
+     * Adds key with the known priority, e.g. after restart of the application.
+     * Keys are restored in ascending order of priorities
+     * @param key key
+     * @param priority priority returned by {@link #getPriorities()}
+     */
+    void restore(K key, long priority);
+
+    /**
+     * Forgets all keys
+     */
+    void clear();
+
+    /**
+     * Returns number of keys known by the policy
+     * @return count of keys
+     */
+    int size();
+
+    /**
+     * Sets number of accesses between two agings of access counters. Policies that don't count accesses ignore it
+     * @param agingPeriod number of accesses. Zero means the policy chooses the period itself
+     */
+    default void setAgingPeriod(long agingPeriod) {
+    }
+
+    /**
+     * Sets maximum number of keys in both tiers of the cache. Policies sizing their structures by the number of keys (TinyLFU)
+     * allocate them once instead of growing them while the cache fills. Other policies ignore it
+     * @param capacity maximum number of keys
+     */
+    default void setCapacity(long capacity) {
+    }
+}
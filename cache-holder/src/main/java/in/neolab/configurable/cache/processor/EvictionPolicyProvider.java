@@ -0,0 +1,24 @@
+package in.neolab.configurable.cache.processor;
+
+/**
+ * Factory of the {@link EvictionPolicy} registered for the {@link java.util.ServiceLoader}.<br>
+ * To add a policy, implement this interface and list the implementation in the
+ * <code>META-INF/services/in.neolab.configurable.cache.processor.EvictionPolicyProvider</code> file.
+ * The policy is then selected by its name in the <code>strategy</code> property of the cache configuration
+ * @author Nikita Parygin
+ */
+public interface EvictionPolicyProvider {
+
+    /**
+     * Returns name of the policy in the configuration
+     * @return name, e.g. "LRU"
+     */
+    String getName();
+
+    /**
+     * Creates new policy. Every cache processor gets its own policy
+     * @param <K> Type of the key object
+     * @return {@link EvictionPolicy} object
+     */
+    <K> EvictionPolicy<K> create();
+}
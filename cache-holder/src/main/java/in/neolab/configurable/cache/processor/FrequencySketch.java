@@ -0,0 +1,175 @@
+package in.neolab.configurable.cache.processor;
+
+import java.util.Arrays;
+
+/**
+ * Count-Min sketch estimating how often keys were accessed.<br>
+ * Every counter takes 4 bits, sixteen counters are packed into one <code>long</code>. Each key is counted
+ * in four counters chosen by different hash functions, the estimate is the minimum of them.
+ * After the number of recorded accesses reaches the sample size all counters are halved,
+ * so the sketch keeps track of recent popularity only.<br>
+ * The counter layout, the hash seeds and the halving are adapted from <code>FrequencySketch</code> of the Caffeine library
+ * by Ben Manes (https://github.com/ben-manes/caffeine), licensed under the Apache License, Version 2.0
+ * (http://www.apache.org/licenses/LICENSE-2.0)
+ * @param <K> Type of the key object
+ * @author Nikita Parygin
+ */
+class FrequencySketch<K> {
+
+    /**
+     * Seeds of the hash functions
+     */
+    private static final long[] SEEDS = {
+            0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L, 0x9ae16a3b2f90404fL, 0xcbf29ce484222325L
+    };
+
+    /**
+     * Mask clearing the highest bit of every counter after shift
+     */
+    private static final long RESET_MASK = 0x7777777777777777L;
+
+    /**
+     * Mask selecting the lowest bit of every counter
+     */
+    private static final long ONE_MASK = 0x1111111111111111L;
+
+    /**
+     * Maximum value of the 4-bit counter
+     */
+    private static final int MAX_FREQUENCY = 15;
+
+    /**
+     * Number of recorded accesses per expected key before the counters are halved
+     */
+    private static final int SAMPLE_FACTOR = 10;
+
+    /**
+     * Packed counters
+     */
+    private long[] table;
+
+    /**
+     * Mask used for mapping hash to the table index
+     */
+    private int tableMask;
+
+    /**
+     * Number of recorded accesses that triggers halving
+     */
+    private long sampleSize;
+
+    /**
+     * Number of accesses recorded since the last halving
+     */
+    private long additions;
+
+    /**
+     * The Constructor
+     * @param expectedSize expected number of keys
+     */
+    FrequencySketch(long expectedSize) {
+        allocate(expectedSize);
+    }
+
+    /**
+     * Grows the sketch if it is too small for the expected number of keys.
+     * Growing loses all recorded accesses
+     * @param expectedSize expected number of keys
+     */
+    void ensureCapacity(long expectedSize) {
+        if (expectedSize > table.length) {
+            allocate(expectedSize);
+        }
+    }
+
+    /**
+     * Returns estimated number of accesses to the key. Value is between 0 and 15
+     * @param key key
+     * @return estimated frequency
+     */
+    int frequency(K key) {
+        int hash = spread(key.hashCode());
+        int start = (hash & 3) << 2;
+        int frequency = MAX_FREQUENCY;
+        for (int i = 0; i < SEEDS.length; i++) {
+            int index = indexOf(hash, i);
+            int count = (int) ((table[index] >>> ((start + i) << 2)) & 0xfL);
+            frequency = Math.min(frequency, count);
+        }
+        return frequency;
+    }
+
+    /**
+     * Records access to the key
+     * @param key key
+     */
+    void increment(K key) {
+        int hash = spread(key.hashCode());
+        int start = (hash & 3) << 2;
+        boolean added = false;
+        for (int i = 0; i < SEEDS.length; i++) {
+            added |= incrementAt(indexOf(hash, i), start + i);
+        }
+        if (added && ++additions >= sampleSize) {
+            reset();
+        }
+    }
+
+    /**
+     * Forgets all recorded accesses
+     */
+    void clear() {
+        Arrays.fill(table, 0L);
+        additions = 0;
+    }
+
+    private void allocate(long expectedSize) {
+        int size = (int) Math.min(Math.max(expectedSize, 16), 1 << 30);
+        int length = Integer.highestOneBit(size - 1) << 1;
+        table = new long[length];
+        tableMask = length - 1;
+        sampleSize = (long) SAMPLE_FACTOR * size;
+        additions = 0;
+    }
+
+    /**
+     * Increments the counter unless it reached the maximum value
+     * @param index index of the long holding the counter
+     * @param counter number of the counter inside the long
+     * @return <code>true</code> - if the counter was incremented
+     */
+    private boolean incrementAt(int index, int counter) {
+        int offset = counter << 2;
+        long mask = 0xfL << offset;
+        if ((table[index] & mask) != mask) {
+            table[index] += 1L << offset;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Halves every counter
+     */
+    private void reset() {
+        long odd = 0;
+        for (int i = 0; i < table.length; i++) {
+            odd += Long.bitCount(table[i] & ONE_MASK);
+            table[i] = (table[i] >>> 1) & RESET_MASK;
+        }
+        // Каждое обращение учитывается в четырех счетчиках, при делении нечетных счетчиков теряется по половине
+        additions = (additions >>> 1) - (odd >>> 2);
+    }
+
+    private int indexOf(int hash, int i) {
+        long h = (hash + SEEDS[i]) * SEEDS[i];
+        h += h >>> 32;
+        return ((int) h) & tableMask;
+    }
+
+    private static int spread(int x) {
+        x = ((x >>> 16) ^ x) * 0x45d9f3b;
+        x = ((x >>> 16) ^ x) * 0x45d9f3b;
+        return (x >>> 16) ^ x;
+    }
+}
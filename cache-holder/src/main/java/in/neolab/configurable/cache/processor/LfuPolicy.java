@@ -0,0 +1,138 @@
+package in.neolab.configurable.cache.processor;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * LFU cache strategy. The least frequently used key is removed first.<br>
+ * Priority of the key is its access counter. Counters are periodically halved (aged),
+ * so keys that were popular long ago can't stay in the cache forever
+ * @param <K> Type of the key object
+ * @author Nikita Parygin
+ */
+public class LfuPolicy<K> implements EvictionPolicy<K> {
+
+    /**
+     * When aging period is not set, counters are aged after this many accesses per key
+     */
+    private static final int DEFAULT_AGING_FACTOR = 10;
+
+    /**
+     * Keys ordered by access counters
+     */
+    private final PriorityList<K> counters = new PriorityList<>();
+
+    /**
+     * Number of accesses between two agings. Zero means the period depends on the number of keys
+     */
+    private long agingPeriod;
+
+    /**
+     * Number of accesses since the last aging
+     */
+    private long accessesSinceAging;
+
+    @Override
+    public void onInsert(K key) {
+        counters.update(key, 1);
+        countAccess();
+    }
+
+    @Override
+    public void onAccess(K key) {
+        counters.update(key, counters.contains(key) ? counters.priorityOf(key) + 1 : 1);
+        countAccess();
+    }
+
+    @Override
+    public void onRemove(K key) {
+        counters.remove(key);
+    }
+
+    @Override
+    public K selectVictim() {
+        return counters.first();
+    }
+
+    @Override
+    public Iterator<K> victimOrder() {
+        return counters.iterator();
+    }
+
+    @Override
+    public Set<K> selectVictims() {
+        return counters.firstGroup();
+    }
+
+    @Override
+    public Long getPriority(K key) {
+        return counters.contains(key) ? counters.priorityOf(key) : null;
+    }
+
+    @Override
+    public Map<K, Long> getPriorities() {
+        return counters.priorities();
+    }
+
+    @Override
+    public void restore(K key, long priority) {
+        counters.update(key, priority);
+    }
+
+    @Override
+    public void clear() {
+        counters.clear();
+        accessesSinceAging = 0;
+    }
+
+    @Override
+    public int size() {
+        return counters.size();
+    }
+
+    /**
+     * Aging halves every counter, so keys that were popular long ago can't stay in the cache forever
+     * @param agingPeriod number of accesses. Zero means the period is ten accesses per key
+     */
+    @Override
+    public void setAgingPeriod(long agingPeriod) {
+        this.agingPeriod = agingPeriod;
+    }
+
+    private void countAccess() {
+        accessesSinceAging++;
+        long period = agingPeriod > 0 ? agingPeriod : (long) DEFAULT_AGING_FACTOR * counters.size();
+        if (accessesSinceAging >= period) {
+            age();
+        }
+    }
+
+    /**
+     * Halves all access counters. Keeps counters at least equal to one, so aged keys are not less used than new ones
+     */
+    private void age() {
+        counters.transform(LfuPolicy::halve);
+        accessesSinceAging = 0;
+    }
+
+    private static long halve(long priority) {
+        return Math.max(1, priority >> 1);
+    }
+
+    /**
+     * Provider of the "LFU" strategy
+     */
+    public static final class Provider implements EvictionPolicyProvider {
+
+        @Override
+        public String getName() {
+            return "LFU";
+        }
+
+        @Override
+        public <K> EvictionPolicy<K> create() {
+            return new LfuPolicy<>();
+        }
+    }
+}
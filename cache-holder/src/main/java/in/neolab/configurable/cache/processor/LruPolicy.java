@@ -0,0 +1,106 @@
+package in.neolab.configurable.cache.processor;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * LRU cache strategy (default). The least recently used key is removed first.<br>
+ * Keys are kept in the order of accesses, so every operation takes constant time.
+ * Priority of the key is the value of the logical clock at its last access
+ * @param <K> Type of the key object
+ * @author Nikita Parygin
+ */
+public class LruPolicy<K> implements EvictionPolicy<K> {
+
+    /**
+     * Access times of keys in ascending order
+     */
+    private final LinkedHashMap<K, Long> accessTimes = new LinkedHashMap<>();
+
+    /**
+     * Logical clock. Each access gets a greater value than all previous ones,
+     * so the most recently used key always has the highest priority
+     */
+    private long clock;
+
+    @Override
+    public void onInsert(K key) {
+        accessTimes.put(key, ++clock);
+    }
+
+    @Override
+    public void onAccess(K key) {
+        // Порядок вставки не меняется при замене значения, поэтому ключ переносится в конец удалением
+        accessTimes.remove(key);
+        accessTimes.put(key, ++clock);
+    }
+
+    @Override
+    public void onRemove(K key) {
+        accessTimes.remove(key);
+    }
+
+    @Override
+    public K selectVictim() {
+        Iterator<K> keys = accessTimes.keySet().iterator();
+        return keys.hasNext() ? keys.next() : null;
+    }
+
+    @Override
+    public Iterator<K> victimOrder() {
+        return accessTimes.keySet().iterator();
+    }
+
+    @Override
+    public Set<K> selectVictims() {
+        K victim = selectVictim();
+        return victim == null ? Collections.emptySet() : Collections.singleton(victim);
+    }
+
+    @Override
+    public Long getPriority(K key) {
+        return accessTimes.get(key);
+    }
+
+    @Override
+    public Map<K, Long> getPriorities() {
+        return new HashMap<>(accessTimes);
+    }
+
+    @Override
+    public void restore(K key, long priority) {
+        accessTimes.remove(key);
+        accessTimes.put(key, priority);
+        clock = Math.max(clock, priority);
+    }
+
+    @Override
+    public void clear() {
+        accessTimes.clear();
+    }
+
+    @Override
+    public int size() {
+        return accessTimes.size();
+    }
+
+    /**
+     * Provider of the "LRU" strategy
+     */
+    public static final class Provider implements EvictionPolicyProvider {
+
+        @Override
+        public String getName() {
+            return "LRU";
+        }
+
+        @Override
+        public <K> EvictionPolicy<K> create() {
+            return new LruPolicy<>();
+        }
+    }
+}
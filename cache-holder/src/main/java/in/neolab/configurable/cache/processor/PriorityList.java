@@ -0,0 +1,261 @@
+package in.neolab.configurable.cache.processor;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.function.LongUnaryOperator;
+
+/**
+ * Doubly-linked list of priority buckets kept in ascending order. Each bucket holds all keys sharing one priority.<br>
+ * The list is tuned for the way strategies change priorities, so the common updates take constant time:
+ *     <ul>
+ *         <li>a priority that becomes the greatest one (e.g. LRU access time) is appended to the tail</li>
+ *         <li>a priority incremented by one (e.g. LFU access counter) moves the key to the neighbouring bucket</li>
+ *     </ul>
+ * Keys inside a bucket are kept in the order they were updated, so the rarest used key is the first key of the head bucket.
+ * @param <K> Type of the key object
+ * @author Nikita Parygin
+ */
+class PriorityList<K> {
+
+    /**
+     * Bucket of keys sharing one priority
+     */
+    private static final class Bucket<K> {
+        private long priority;
+        private final LinkedHashSet<K> keys = new LinkedHashSet<>();
+        private Bucket<K> prev;
+        private Bucket<K> next;
+
+        private Bucket(long priority) {
+            this.priority = priority;
+        }
+    }
+
+    /**
+     * Map that contains key-bucket pair
+     */
+    private final Map<K, Bucket<K>> buckets = new HashMap<>();
+
+    /**
+     * Bucket with the lowest priority
+     */
+    private Bucket<K> head;
+
+    /**
+     * Bucket with the highest priority
+     */
+    private Bucket<K> tail;
+
+    /**
+     * Add key to the list or update its position according to the new priority
+     * @param key key
+     * @param priority new priority of the key
+     */
+    void update(K key, long priority) {
+        Bucket<K> current = buckets.get(key);
+        if (current != null && current.priority == priority) {
+            // Приоритет не изменился - просто переносим ключ в конец корзины
+            current.keys.remove(key);
+            current.keys.add(key);
+            return;
+        }
+        Bucket<K> target = findBucket(current, priority);
+        target.keys.add(key);
+        buckets.put(key, target);
+        if (current != null) {
+            current.keys.remove(key);
+            if (current.keys.isEmpty()) {
+                unlink(current);
+            }
+        }
+    }
+
+    /**
+     * Remove key from the list
+     * @param key key
+     */
+    void remove(K key) {
+        Bucket<K> bucket = buckets.remove(key);
+        if (bucket != null) {
+            bucket.keys.remove(key);
+            if (bucket.keys.isEmpty()) {
+                unlink(bucket);
+            }
+        }
+    }
+
+    /**
+     * Remove all keys from the list
+     */
+    void clear() {
+        buckets.clear();
+        head = null;
+        tail = null;
+    }
+
+    /**
+     * Returns the rarest used key
+     * @return {@link K} object or <code>null</code> if the list is empty
+     */
+    K first() {
+        return head == null ? null : head.keys.iterator().next();
+    }
+
+    /**
+     * Returns keys in ascending order of priorities. Keys sharing one priority are returned in the order they were updated.
+     * The iterator is valid until the list is changed
+     * @return iterator of {@link K} objects
+     */
+    Iterator<K> iterator() {
+        return new Iterator<K>() {
+            private Bucket<K> bucket = head;
+            private Iterator<K> keys = head == null ? null : head.keys.iterator();
+
+            @Override
+            public boolean hasNext() {
+                // Пустых корзин в списке нет, поэтому достаточно перейти к следующей
+                if (keys != null && !keys.hasNext() && bucket.next != null) {
+                    bucket = bucket.next;
+                    keys = bucket.keys.iterator();
+                }
+                return keys != null && keys.hasNext();
+            }
+
+            @Override
+            public K next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                return keys.next();
+            }
+        };
+    }
+
+    /**
+     * Returns all keys sharing the lowest priority
+     * @return Set of {@link K} objects
+     */
+    Set<K> firstGroup() {
+        return head == null ? new LinkedHashSet<>() : new LinkedHashSet<>(head.keys);
+    }
+
+    /**
+     * Recalculates priorities of all keys. The function should be monotonic
+     * @param function function that calculates new priority from the old one
+     */
+    void transform(LongUnaryOperator function) {
+        for (Bucket<K> bucket = head; bucket != null; bucket = bucket.next) {
+            bucket.priority = function.applyAsLong(bucket.priority);
+            Bucket<K> prev = bucket.prev;
+            if (prev != null && prev.priority == bucket.priority) {
+                for (K key : bucket.keys) {
+                    prev.keys.add(key);
+                    buckets.put(key, prev);
+                }
+                unlink(bucket);
+                bucket = prev;
+            }
+        }
+    }
+
+    /**
+     * Searches for key in the list
+     * @param key key
+     * @return  <code>true</code> - if key is in the list.<br>
+     *          <code>false</code> - otherwise
+     */
+    boolean contains(K key) {
+        return buckets.containsKey(key);
+    }
+
+    /**
+     * Returns priority of the key
+     * @param key key that is in the list
+     * @return priority
+     */
+    long priorityOf(K key) {
+        return buckets.get(key).priority;
+    }
+
+    /**
+     * Returns number of keys in the list
+     * @return count of keys
+     */
+    int size() {
+        return buckets.size();
+    }
+
+    /**
+     * Returns priorities of all keys
+     * @return map of key-priority pairs in ascending order of priorities
+     */
+    Map<K, Long> priorities() {
+        Map<K, Long> priorities = new LinkedHashMap<>(buckets.size());
+        for (Bucket<K> bucket = head; bucket != null; bucket = bucket.next) {
+            for (K key : bucket.keys) {
+                priorities.put(key, bucket.priority);
+            }
+        }
+        return priorities;
+    }
+
+    /**
+     * Finds bucket with the requested priority or creates a new one at the right place
+     * @param current bucket the key currently belongs to, may be <code>null</code>
+     * @param priority requested priority
+     * @return bucket
+     */
+    private Bucket<K> findBucket(Bucket<K> current, long priority) {
+        if (tail == null || priority > tail.priority) {
+            return linkAfter(new Bucket<>(priority), tail);
+        }
+        if (priority == tail.priority) {
+            return tail;
+        }
+        // Если приоритет вырос - новое место ключа находится после текущей корзины, искать с начала не нужно
+        Bucket<K> prev = (current != null && priority > current.priority) ? current : null;
+        Bucket<K> next = prev == null ? head : prev.next;
+        while (next != null && next.priority < priority) {
+            prev = next;
+            next = next.next;
+        }
+        if (next != null && next.priority == priority) {
+            return next;
+        }
+        return linkAfter(new Bucket<>(priority), prev);
+    }
+
+    private Bucket<K> linkAfter(Bucket<K> bucket, Bucket<K> predecessor) {
+        bucket.prev = predecessor;
+        bucket.next = predecessor == null ? head : predecessor.next;
+        if (predecessor == null) {
+            head = bucket;
+        } else {
+            predecessor.next = bucket;
+        }
+        if (bucket.next == null) {
+            tail = bucket;
+        } else {
+            bucket.next.prev = bucket;
+        }
+        return bucket;
+    }
+
+    private void unlink(Bucket<K> bucket) {
+        if (bucket.prev == null) {
+            head = bucket.next;
+        } else {
+            bucket.prev.next = bucket.next;
+        }
+        if (bucket.next == null) {
+            tail = bucket.prev;
+        } else {
+            bucket.next.prev = bucket.prev;
+        }
+    }
+}
@@ -0,0 +1,171 @@
+package in.neolab.configurable.cache.processor;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * W-TinyLFU cache strategy. Keys are ordered by access time like in LRU strategy,
+ * but a new key pushes out an old one only if it is estimated as more popular.<br>
+ * New keys get into the small admission window (about one percent of all keys). When the cache is full
+ * the oldest key of the window becomes a candidate for the main region. The candidate is admitted only
+ * if the {@link FrequencySketch} estimates it as more popular than the oldest key of the main region,
+ * otherwise the candidate itself is removed. So one-off keys of scans can't flush frequently used keys.<br>
+ * Both regions are ordered by access time, priority of the key is the value of the logical clock at its last access
+ * or at its admission to the main region.<br>
+ * The sketch should be sized by {@link #setCapacity(long)}, otherwise it is grown with the cache and forgets the frequencies on every growth.
+ * @param <K> Type of the key object
+ * @author Nikita Parygin
+ */
+public class TinyLfuPolicy<K> implements EvictionPolicy<K> {
+
+    /**
+     * Percentage of keys kept in the admission window
+     */
+    private static final int WINDOW_PERCENT = 1;
+
+    /**
+     * Admission window
+     */
+    private final PriorityList<K> window = new PriorityList<>();
+
+    /**
+     * Main region
+     */
+    private final PriorityList<K> main = new PriorityList<>();
+
+    /**
+     * Popularity of keys, including keys that are not in the cache anymore
+     */
+    private final FrequencySketch<K> sketch = new FrequencySketch<>(0);
+
+    /**
+     * Logical clock. Each access gets a greater value than all previous ones
+     */
+    private long clock;
+
+    @Override
+    public void onInsert(K key) {
+        update(key, ++clock);
+    }
+
+    @Override
+    public void onAccess(K key) {
+        update(key, ++clock);
+    }
+
+    @Override
+    public void onRemove(K key) {
+        window.remove(key);
+        main.remove(key);
+    }
+
+    @Override
+    public void setCapacity(long capacity) {
+        sketch.ensureCapacity(capacity);
+    }
+
+    @Override
+    public void clear() {
+        window.clear();
+        main.clear();
+        sketch.clear();
+    }
+
+    @Override
+    public int size() {
+        return window.size() + main.size();
+    }
+
+    @Override
+    public K selectVictim() {
+        // Если емкость кэша не задана, эскиз растет вместе с ним, теряя накопленные частоты при каждом росте
+        sketch.ensureCapacity(size());
+        if (main.size() == 0) {
+            return window.first();
+        }
+        // Новый ключ попадет в окно. Если окно уже заполнено - его самый старый ключ претендует на место в основной области
+        if (window.size() < maxWindowSize()) {
+            return main.first();
+        }
+        K candidate = window.first();
+        K victim = main.first();
+        if (sketch.frequency(candidate) > sketch.frequency(victim)) {
+            moveToMain(candidate);
+            return victim;
+        }
+        return candidate;
+    }
+
+    @Override
+    public Iterator<K> victimOrder() {
+        // Сначала ключи основной области, затем окна допуска - как при выборе жертвы без фильтра
+        return new ConcatIterator<>(main.iterator(), window.iterator());
+    }
+
+    @Override
+    public Set<K> selectVictims() {
+        return main.size() > 0 ? main.firstGroup() : window.firstGroup();
+    }
+
+    @Override
+    public Long getPriority(K key) {
+        if (main.contains(key)) {
+            return main.priorityOf(key);
+        }
+        return window.contains(key) ? window.priorityOf(key) : null;
+    }
+
+    @Override
+    public Map<K, Long> getPriorities() {
+        Map<K, Long> priorities = main.priorities();
+        priorities.putAll(window.priorities());
+        return priorities;
+    }
+
+    @Override
+    public void restore(K key, long priority) {
+        update(key, priority);
+        clock = Math.max(clock, priority);
+    }
+
+    private void update(K key, long priority) {
+        sketch.increment(key);
+        if (main.contains(key)) {
+            main.update(key, priority);
+            return;
+        }
+        window.update(key, priority);
+        // Пока кэш не заполнен, лишние ключи окна переходят в основную область без отбора
+        while (window.size() > maxWindowSize()) {
+            moveToMain(window.first());
+        }
+    }
+
+    private int maxWindowSize() {
+        return Math.max(1, size() * WINDOW_PERCENT / 100);
+    }
+
+    private void moveToMain(K key) {
+        window.remove(key);
+        // Допущенный ключ встает в конец основной области, как только что использованный.
+        // Со старым приоритетом его пришлось бы искать место в середине списка, проходя по всем корзинам
+        main.update(key, ++clock);
+    }
+
+    /**
+     * Provider of the "TINY_LFU" strategy
+     */
+    public static final class Provider implements EvictionPolicyProvider {
+
+        @Override
+        public String getName() {
+            return "TINY_LFU";
+        }
+
+        @Override
+        public <K> EvictionPolicy<K> create() {
+            return new TinyLfuPolicy<>();
+        }
+    }
+}
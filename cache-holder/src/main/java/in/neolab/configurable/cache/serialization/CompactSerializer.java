@@ -0,0 +1,371 @@
+package in.neolab.configurable.cache.serialization;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.io.StreamCorruptedException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compact binary serializer.<br>
+ * Every value is written as a one byte type tag followed by the value itself. Strings, numbers, booleans,
+ * byte arrays and maps and lists of them (as produced by JSON parsers) are written by the serializer itself:
+ * integers as variable length numbers, strings as UTF-8. Objects of other types fall back to the java serialization.<br>
+ * Only {@link HashMap}, {@link LinkedHashMap} and <code>LinkedTreeMap</code> of Gson are written as maps and restored
+ * as {@link LinkedHashMap}, only {@link ArrayList} is written as list. Other collections, including subclasses of these ones,
+ * fall back to the java serialization to keep their class, comparators, defaults and so on.
+ * Serialization buffers are kept per thread and reused between calls.
+ * @param <T> Type of the serialized object
+ * @author Nikita Parygin
+ */
+public class CompactSerializer<T> implements Serializer<T> {
+
+    private static final byte NULL = 0;
+    private static final byte STRING = 1;
+    private static final byte INT = 2;
+    private static final byte LONG = 3;
+    private static final byte DOUBLE = 4;
+    private static final byte FLOAT = 5;
+    private static final byte SHORT = 6;
+    private static final byte BYTE = 7;
+    private static final byte CHAR = 8;
+    private static final byte TRUE = 9;
+    private static final byte FALSE = 10;
+    private static final byte BYTES = 11;
+    private static final byte MAP = 12;
+    private static final byte LIST = 13;
+    private static final byte JAVA = 14;
+
+    /**
+     * Class of the maps produced by Gson
+     */
+    private static final String GSON_MAP = "com.google.gson.internal.LinkedTreeMap";
+
+    /**
+     * Initial size of the thread buffer
+     */
+    private static final int INITIAL_BUFFER_SIZE = 256;
+
+    /**
+     * Buffers that grew larger are not kept by the thread, so a single huge object doesn't hold memory forever
+     */
+    private static final int MAX_RETAINED_BUFFER_SIZE = 1024 * 1024;
+
+    /**
+     * Growable output buffer
+     */
+    private static final class Buffer extends OutputStream {
+        private byte[] data = new byte[INITIAL_BUFFER_SIZE];
+        private int size;
+
+        private void ensure(int count) {
+            if (size + count > data.length) {
+                data = Arrays.copyOf(data, Math.max(data.length << 1, size + count));
+            }
+        }
+
+        @Override
+        public void write(int value) {
+            ensure(1);
+            data[size++] = (byte) value;
+        }
+
+        @Override
+        public void write(byte[] bytes, int offset, int length) {
+            ensure(length);
+            System.arraycopy(bytes, offset, data, size, length);
+            size += length;
+        }
+
+        private void writeVarLong(long value) {
+            ensure(10);
+            while ((value & ~0x7FL) != 0) {
+                data[size++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            data[size++] = (byte) value;
+        }
+
+        private void writeFixed(long value, int bytes) {
+            ensure(bytes);
+            for (int shift = (bytes - 1) << 3; shift >= 0; shift -= 8) {
+                data[size++] = (byte) (value >>> shift);
+            }
+        }
+    }
+
+    /**
+     * Reader of the serialized bytes
+     */
+    private static final class Reader {
+        private final byte[] data;
+        private int position;
+        private final int limit;
+
+        private Reader(byte[] data, int offset, int length) {
+            this.data = data;
+            this.position = offset;
+            this.limit = offset + length;
+        }
+
+        private byte readByte() throws IOException {
+            if (position >= limit) {
+                throw new StreamCorruptedException("Unexpected end of serialized object");
+            }
+            return data[position++];
+        }
+
+        private long readVarLong() throws IOException {
+            long value = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                byte b = readByte();
+                value |= (long) (b & 0x7F) << shift;
+                if (b >= 0) {
+                    return value;
+                }
+            }
+            throw new StreamCorruptedException("Malformed variable length number");
+        }
+
+        private long readFixed(int bytes) throws IOException {
+            long value = 0;
+            for (int i = 0; i < bytes; i++) {
+                value = (value << 8) | (readByte() & 0xFF);
+            }
+            return value;
+        }
+
+        private int readLength() throws IOException {
+            long length = readVarLong();
+            if (length < 0 || length > limit - position) {
+                throw new StreamCorruptedException("Malformed length " + length);
+            }
+            return (int) length;
+        }
+    }
+
+    /**
+     * Buffers of the threads
+     */
+    private static final ThreadLocal<Buffer> BUFFERS = ThreadLocal.withInitial(Buffer::new);
+
+    @Override
+    public byte[] serialize(T object) throws IOException {
+        Buffer buffer = BUFFERS.get();
+        buffer.size = 0;
+        try {
+            write(buffer, object);
+            return Arrays.copyOf(buffer.data, buffer.size);
+        } finally {
+            if (buffer.data.length > MAX_RETAINED_BUFFER_SIZE) {
+                BUFFERS.remove();
+            }
+        }
+    }
+
+    @Override
+    public T deserialize(byte[] bytes, int offset, int length) throws IOException, ClassNotFoundException {
+        Reader reader = new Reader(bytes, offset, length);
+        return (T) read(reader);
+    }
+
+    private static void write(Buffer buffer, Object value) throws IOException {
+        if (value == null) {
+            buffer.write(NULL);
+        } else if (value instanceof String) {
+            buffer.write(STRING);
+            writeString(buffer, (String) value);
+        } else if (value instanceof Integer) {
+            buffer.write(INT);
+            int number = (Integer) value;
+            buffer.writeVarLong(((number << 1) ^ (number >> 31)) & 0xFFFFFFFFL);
+        } else if (value instanceof Long) {
+            buffer.write(LONG);
+            long number = (Long) value;
+            buffer.writeVarLong((number << 1) ^ (number >> 63));
+        } else if (value instanceof Double) {
+            buffer.write(DOUBLE);
+            buffer.writeFixed(Double.doubleToRawLongBits((Double) value), 8);
+        } else if (value instanceof Float) {
+            buffer.write(FLOAT);
+            buffer.writeFixed(Float.floatToRawIntBits((Float) value), 4);
+        } else if (value instanceof Short) {
+            buffer.write(SHORT);
+            buffer.writeFixed((Short) value, 2);
+        } else if (value instanceof Byte) {
+            buffer.write(BYTE);
+            buffer.write((Byte) value);
+        } else if (value instanceof Character) {
+            buffer.write(CHAR);
+            buffer.writeFixed((Character) value, 2);
+        } else if (value instanceof Boolean) {
+            buffer.write((Boolean) value ? TRUE : FALSE);
+        } else if (value instanceof byte[]) {
+            byte[] bytes = (byte[]) value;
+            buffer.write(BYTES);
+            buffer.writeVarLong(bytes.length);
+            buffer.write(bytes, 0, bytes.length);
+        } else if (isPlainMap(value.getClass())) {
+            Map<?, ?> map = (Map<?, ?>) value;
+            buffer.write(MAP);
+            buffer.writeVarLong(map.size());
+            for (Map.Entry<?, ?> entry : map.entrySet()) {
+                write(buffer, entry.getKey());
+                write(buffer, entry.getValue());
+            }
+        } else if (value.getClass() == ArrayList.class) {
+            List<?> list = (List<?>) value;
+            buffer.write(LIST);
+            buffer.writeVarLong(list.size());
+            for (Object element : list) {
+                write(buffer, element);
+            }
+        } else {
+            buffer.write(JAVA);
+            // Длина заранее неизвестна, поэтому резервируем под нее место и заполняем после записи объекта
+            buffer.ensure(4);
+            int lengthPosition = buffer.size;
+            buffer.size += 4;
+            try (ObjectOutputStream objectOutputStream = new ObjectOutputStream(buffer)) {
+                objectOutputStream.writeObject(value);
+            }
+            int length = buffer.size - lengthPosition - 4;
+            buffer.size = lengthPosition;
+            buffer.writeFixed(length, 4);
+            buffer.size += length;
+        }
+    }
+
+    /**
+     * Shows whether the map restored as {@link LinkedHashMap} is equivalent to the original one.
+     * Gson isn't a dependency of the cache, so its map is recognized by the class name
+     */
+    private static boolean isPlainMap(Class<?> type) {
+        return type == HashMap.class || type == LinkedHashMap.class || GSON_MAP.equals(type.getName());
+    }
+
+    private static Object read(Reader reader) throws IOException, ClassNotFoundException {
+        byte tag = reader.readByte();
+        switch (tag) {
+            case NULL:
+                return null;
+            case STRING:
+                return readString(reader);
+            case INT:
+                int zigzagInt = (int) reader.readVarLong();
+                return (zigzagInt >>> 1) ^ -(zigzagInt & 1);
+            case LONG:
+                long zigzagLong = reader.readVarLong();
+                return (zigzagLong >>> 1) ^ -(zigzagLong & 1);
+            case DOUBLE:
+                return Double.longBitsToDouble(reader.readFixed(8));
+            case FLOAT:
+                return Float.intBitsToFloat((int) reader.readFixed(4));
+            case SHORT:
+                return (short) reader.readFixed(2);
+            case BYTE:
+                return reader.readByte();
+            case CHAR:
+                return (char) reader.readFixed(2);
+            case TRUE:
+                return Boolean.TRUE;
+            case FALSE:
+                return Boolean.FALSE;
+            case BYTES:
+                int bytesLength = reader.readLength();
+                byte[] bytes = Arrays.copyOfRange(reader.data, reader.position, reader.position + bytesLength);
+                reader.position += bytesLength;
+                return bytes;
+            case MAP:
+                int mapSize = reader.readLength();
+                Map<Object, Object> map = new LinkedHashMap<>(mapSize * 4 / 3 + 1);
+                for (int i = 0; i < mapSize; i++) {
+                    map.put(read(reader), read(reader));
+                }
+                return map;
+            case LIST:
+                int listSize = reader.readLength();
+                List<Object> list = new ArrayList<>(listSize);
+                for (int i = 0; i < listSize; i++) {
+                    list.add(read(reader));
+                }
+                return list;
+            case JAVA:
+                int javaLength = (int) reader.readFixed(4);
+                if (javaLength < 0 || javaLength > reader.limit - reader.position) {
+                    throw new StreamCorruptedException("Malformed length " + javaLength);
+                }
+                try (ObjectInputStream objectInputStream = new ObjectInputStream(
+                        new ByteArrayInputStream(reader.data, reader.position, javaLength))) {
+                    reader.position += javaLength;
+                    return objectInputStream.readObject();
+                }
+            default:
+                throw new StreamCorruptedException("Unknown type tag " + tag);
+        }
+    }
+
+    /**
+     * Writes string as UTF-8 bytes. Surrogate chars are encoded one by one, so any string survives serialization
+     */
+    private static void writeString(Buffer buffer, String value) {
+        int length = value.length();
+        int encodedLength = length;
+        for (int i = 0; i < length; i++) {
+            char c = value.charAt(i);
+            if (c >= 0x800) {
+                encodedLength += 2;
+            } else if (c >= 0x80) {
+                encodedLength++;
+            }
+        }
+        buffer.writeVarLong(encodedLength);
+        buffer.ensure(encodedLength);
+        byte[] data = buffer.data;
+        int position = buffer.size;
+        for (int i = 0; i < length; i++) {
+            char c = value.charAt(i);
+            if (c < 0x80) {
+                data[position++] = (byte) c;
+            } else if (c < 0x800) {
+                data[position++] = (byte) (0xC0 | (c >> 6));
+                data[position++] = (byte) (0x80 | (c & 0x3F));
+            } else {
+                data[position++] = (byte) (0xE0 | (c >> 12));
+                data[position++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+                data[position++] = (byte) (0x80 | (c & 0x3F));
+            }
+        }
+        buffer.size = position;
+    }
+
+    private static String readString(Reader reader) throws IOException {
+        int length = reader.readLength();
+        byte[] data = reader.data;
+        int position = reader.position;
+        int end = position + length;
+        char[] chars = new char[length];
+        int count = 0;
+        while (position < end) {
+            int b = data[position++] & 0xFF;
+            if (b < 0x80) {
+                chars[count++] = (char) b;
+            } else if ((b & 0xE0) == 0xC0 && position < end) {
+                chars[count++] = (char) (((b & 0x1F) << 6) | (data[position++] & 0x3F));
+            } else if ((b & 0xF0) == 0xE0 && position + 1 < end) {
+                chars[count++] = (char) (((b & 0x0F) << 12) | ((data[position++] & 0x3F) << 6) | (data[position++] & 0x3F));
+            } else {
+                throw new StreamCorruptedException("Malformed string");
+            }
+        }
+        reader.position = end;
+        return new String(chars, 0, count);
+    }
+}
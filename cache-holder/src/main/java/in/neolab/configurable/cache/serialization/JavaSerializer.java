@@ -0,0 +1,31 @@
+package in.neolab.configurable.cache.serialization;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+
+/**
+ * Serializer based on the standard java serialization. Supports any {@link java.io.Serializable} object
+ * @param <T> Type of the serialized object
+ * @author Nikita Parygin
+ */
+public class JavaSerializer<T> implements Serializer<T> {
+
+    @Override
+    public byte[] serialize(T object) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (ObjectOutputStream objectOutputStream = new ObjectOutputStream(out)) {
+            objectOutputStream.writeObject(object);
+        }
+        return out.toByteArray();
+    }
+
+    @Override
+    public T deserialize(byte[] bytes, int offset, int length) throws IOException, ClassNotFoundException {
+        try (ObjectInputStream objectInputStream = new ObjectInputStream(new ByteArrayInputStream(bytes, offset, length))) {
+            return (T) objectInputStream.readObject();
+        }
+    }
+}
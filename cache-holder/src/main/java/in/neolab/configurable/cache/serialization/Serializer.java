@@ -0,0 +1,42 @@
+package in.neolab.configurable.cache.serialization;
+
+import java.io.IOException;
+
+/**
+ * Converter of objects to bytes and back. Used by the cache tiers that store objects outside of the java heap.
+ * Implementations should be safe for concurrent use
+ * @param <T> Type of the serialized object
+ * @author Nikita Parygin
+ */
+public interface Serializer<T> {
+
+    /**
+     * Converts object to bytes
+     * @param object object, may be <code>null</code>
+     * @return bytes
+     * @throws IOException if the object can't be serialized
+     */
+    byte[] serialize(T object) throws IOException;
+
+    /**
+     * Restores object from the part of the array
+     * @param bytes array
+     * @param offset offset of the first byte of the object
+     * @param length number of bytes of the object
+     * @return object
+     * @throws IOException if the bytes are damaged
+     * @throws ClassNotFoundException if the class of the object is not in classpath
+     */
+    T deserialize(byte[] bytes, int offset, int length) throws IOException, ClassNotFoundException;
+
+    /**
+     * Restores object from the array
+     * @param bytes array
+     * @return object
+     * @throws IOException if the bytes are damaged
+     * @throws ClassNotFoundException if the class of the object is not in classpath
+     */
+    default T deserialize(byte[] bytes) throws IOException, ClassNotFoundException {
+        return deserialize(bytes, 0, bytes.length);
+    }
+}
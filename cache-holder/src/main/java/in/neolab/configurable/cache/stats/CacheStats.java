@@ -0,0 +1,214 @@
+package in.neolab.configurable.cache.stats;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * Statistics of the cache holder tiers: hits and misses per tier, evictions, expirations,
+ * transfers between tiers, bytes read and written by the file system cache and latencies of tier reads and writes.<br>
+ * Counters are {@link LongAdder} objects, so threads recording statistics don't contend with each other.
+ * A read missed by the memory cache is counted as memory miss and then as file system hit or miss
+ * @author Nikita Parygin
+ */
+public class CacheStats implements CacheStatsMXBean {
+
+    private final LongAdder memoryHits = new LongAdder();
+    private final LongAdder memoryMisses = new LongAdder();
+    private final LongAdder fileSystemHits = new LongAdder();
+    private final LongAdder fileSystemMisses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder expirations = new LongAdder();
+    private final LongAdder promotions = new LongAdder();
+    private final LongAdder demotions = new LongAdder();
+
+    private final LatencyHistogram memoryGetLatency = new LatencyHistogram();
+    private final LatencyHistogram memoryPutLatency = new LatencyHistogram();
+    private final LatencyHistogram fileSystemGetLatency = new LatencyHistogram();
+    private final LatencyHistogram fileSystemPutLatency = new LatencyHistogram();
+
+    /**
+     * Total numbers of bytes read and written by the file system cache
+     */
+    private final LongSupplier fileSystemBytesRead;
+    private final LongSupplier fileSystemBytesWritten;
+
+    /**
+     * Numbers of bytes read and written by the file system cache before the last reset
+     */
+    private volatile long fileSystemBytesReadBefore;
+    private volatile long fileSystemBytesWrittenBefore;
+
+    /**
+     * The Constructor
+     * @param fileSystemBytesRead total number of bytes read by the file system cache
+     * @param fileSystemBytesWritten total number of bytes written by the file system cache
+     */
+    public CacheStats(LongSupplier fileSystemBytesRead, LongSupplier fileSystemBytesWritten) {
+        this.fileSystemBytesRead = fileSystemBytesRead;
+        this.fileSystemBytesWritten = fileSystemBytesWritten;
+    }
+
+    public void recordMemoryHits(long count) {
+        memoryHits.add(count);
+    }
+
+    public void recordMemoryMisses(long count) {
+        memoryMisses.add(count);
+    }
+
+    public void recordFileSystemHits(long count) {
+        fileSystemHits.add(count);
+    }
+
+    public void recordFileSystemMisses(long count) {
+        fileSystemMisses.add(count);
+    }
+
+    public void recordEviction() {
+        evictions.increment();
+    }
+
+    public void recordExpiration() {
+        expirations.increment();
+    }
+
+    /**
+     * Records transfer of an object from the file system cache to the memory cache
+     */
+    public void recordPromotion() {
+        promotions.increment();
+    }
+
+    /**
+     * Records transfer of an object from the memory cache to the file system cache
+     */
+    public void recordDemotion() {
+        demotions.increment();
+    }
+
+    @Override
+    public long getMemoryHits() {
+        return memoryHits.sum();
+    }
+
+    @Override
+    public long getMemoryMisses() {
+        return memoryMisses.sum();
+    }
+
+    @Override
+    public long getFileSystemHits() {
+        return fileSystemHits.sum();
+    }
+
+    @Override
+    public long getFileSystemMisses() {
+        return fileSystemMisses.sum();
+    }
+
+    /**
+     * Returns share of reads found in any tier
+     * @return ratio between 0 and 1, zero if there were no reads
+     */
+    @Override
+    public double getHitRatio() {
+        long hits = memoryHits.sum() + fileSystemHits.sum();
+        long requests = hits + fileSystemMisses.sum();
+        return requests == 0 ? 0 : (double) hits / requests;
+    }
+
+    @Override
+    public long getEvictions() {
+        return evictions.sum();
+    }
+
+    @Override
+    public long getExpirations() {
+        return expirations.sum();
+    }
+
+    @Override
+    public long getPromotions() {
+        return promotions.sum();
+    }
+
+    @Override
+    public long getDemotions() {
+        return demotions.sum();
+    }
+
+    @Override
+    public long getFileSystemBytesRead() {
+        return fileSystemBytesRead.getAsLong() - fileSystemBytesReadBefore;
+    }
+
+    @Override
+    public long getFileSystemBytesWritten() {
+        return fileSystemBytesWritten.getAsLong() - fileSystemBytesWrittenBefore;
+    }
+
+    @Override
+    public LatencyHistogram getMemoryGetLatency() {
+        return memoryGetLatency;
+    }
+
+    @Override
+    public LatencyHistogram getMemoryPutLatency() {
+        return memoryPutLatency;
+    }
+
+    @Override
+    public LatencyHistogram getFileSystemGetLatency() {
+        return fileSystemGetLatency;
+    }
+
+    @Override
+    public LatencyHistogram getFileSystemPutLatency() {
+        return fileSystemPutLatency;
+    }
+
+    @Override
+    public void reset() {
+        memoryHits.reset();
+        memoryMisses.reset();
+        fileSystemHits.reset();
+        fileSystemMisses.reset();
+        evictions.reset();
+        expirations.reset();
+        promotions.reset();
+        demotions.reset();
+        memoryGetLatency.reset();
+        memoryPutLatency.reset();
+        fileSystemGetLatency.reset();
+        fileSystemPutLatency.reset();
+        // Счетчики байтов принадлежат хранилищу, поэтому запоминаем их значения на момент сброса
+        fileSystemBytesReadBefore = fileSystemBytesRead.getAsLong();
+        fileSystemBytesWrittenBefore = fileSystemBytesWritten.getAsLong();
+    }
+
+    /**
+     * Returns all statistics
+     * @return map of statistic names and values. Latencies are nested maps
+     */
+    public Map<String, Object> toMap() {
+        Map<String, Object> map = new LinkedHashMap<>();
+        map.put("memoryHits", getMemoryHits());
+        map.put("memoryMisses", getMemoryMisses());
+        map.put("fileSystemHits", getFileSystemHits());
+        map.put("fileSystemMisses", getFileSystemMisses());
+        map.put("hitRatio", getHitRatio());
+        map.put("evictions", getEvictions());
+        map.put("expirations", getExpirations());
+        map.put("promotions", getPromotions());
+        map.put("demotions", getDemotions());
+        map.put("fileSystemBytesRead", getFileSystemBytesRead());
+        map.put("fileSystemBytesWritten", getFileSystemBytesWritten());
+        map.put("memoryGetLatency", memoryGetLatency.toMap());
+        map.put("memoryPutLatency", memoryPutLatency.toMap());
+        map.put("fileSystemGetLatency", fileSystemGetLatency.toMap());
+        map.put("fileSystemPutLatency", fileSystemPutLatency.toMap());
+        return map;
+    }
+}
@@ -0,0 +1,43 @@
+package in.neolab.configurable.cache.stats;
+
+/**
+ * Management interface of the {@link CacheStats}, lets the statistics be read through JMX
+ * @author Nikita Parygin
+ */
+public interface CacheStatsMXBean {
+
+    long getMemoryHits();
+
+    long getMemoryMisses();
+
+    long getFileSystemHits();
+
+    long getFileSystemMisses();
+
+    double getHitRatio();
+
+    long getEvictions();
+
+    long getExpirations();
+
+    long getPromotions();
+
+    long getDemotions();
+
+    long getFileSystemBytesRead();
+
+    long getFileSystemBytesWritten();
+
+    LatencyHistogram getMemoryGetLatency();
+
+    LatencyHistogram getMemoryPutLatency();
+
+    LatencyHistogram getFileSystemGetLatency();
+
+    LatencyHistogram getFileSystemPutLatency();
+
+    /**
+     * Resets all counters and histograms
+     */
+    void reset();
+}
@@ -0,0 +1,184 @@
+package in.neolab.configurable.cache.stats;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Histogram of operation latencies in nanoseconds.<br>
+ * Values are counted in log-linear buckets: values below 64 have their own buckets, greater values share
+ * 32 buckets per power of two, so the relative error of the reported value is about 3% for any latency.
+ * Recording doesn't allocate and doesn't lock, so the histogram may be updated on every operation
+ * by many threads. Reported values are read without stopping writers and may be slightly inconsistent.
+ * @author Nikita Parygin
+ */
+public class LatencyHistogram {
+
+    /**
+     * Number of bits of the value kept exactly in its bucket
+     */
+    private static final int SUB_BUCKET_BITS = 5;
+
+    /**
+     * Number of buckets per power of two
+     */
+    private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+
+    /**
+     * Number of buckets covering all non-negative long values
+     */
+    private static final int BUCKET_COUNT = (64 - SUB_BUCKET_BITS) * SUB_BUCKET_COUNT;
+
+    /**
+     * Counts of recorded values per bucket
+     */
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKET_COUNT);
+
+    /**
+     * Number of recorded values
+     */
+    private final LongAdder count = new LongAdder();
+
+    /**
+     * Sum of recorded values
+     */
+    private final LongAdder sum = new LongAdder();
+
+    /**
+     * Maximum recorded value
+     */
+    private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+    /**
+     * Records latency of one operation
+     * @param nanos latency in nanoseconds. Negative values are recorded as zero
+     */
+    public void record(long nanos) {
+        long value = Math.max(0, nanos);
+        counts.incrementAndGet(indexOf(value));
+        count.increment();
+        sum.add(value);
+        max.accumulate(value);
+    }
+
+    /**
+     * Returns number of recorded values
+     * @return count of values
+     */
+    public long getCount() {
+        return count.sum();
+    }
+
+    /**
+     * Returns mean of recorded values
+     * @return mean latency in nanoseconds, zero if nothing is recorded
+     */
+    public long getMeanNanos() {
+        long recorded = count.sum();
+        return recorded == 0 ? 0 : sum.sum() / recorded;
+    }
+
+    /**
+     * Returns maximum recorded value
+     * @return maximum latency in nanoseconds
+     */
+    public long getMaxNanos() {
+        return max.get();
+    }
+
+    /**
+     * Returns median of recorded values
+     * @return latency in nanoseconds
+     */
+    public long getP50Nanos() {
+        return getPercentile(50);
+    }
+
+    /**
+     * Returns 99th percentile of recorded values
+     * @return latency in nanoseconds
+     */
+    public long getP99Nanos() {
+        return getPercentile(99);
+    }
+
+    /**
+     * Returns 99.9th percentile of recorded values
+     * @return latency in nanoseconds
+     */
+    public long getP999Nanos() {
+        return getPercentile(99.9);
+    }
+
+    /**
+     * Returns value that the specified percentage of recorded values doesn't exceed
+     * @param percentile percentage between 0 and 100
+     * @return latency in nanoseconds, zero if nothing is recorded
+     */
+    public long getPercentile(double percentile) {
+        long total = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            total += counts.get(i);
+        }
+        if (total == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(total * Math.min(percentile, 100) / 100));
+        long seen = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            seen += counts.get(i);
+            if (seen >= rank) {
+                // Верхняя граница корзины не может превышать реально записанный максимум
+                return Math.min(highestValueOf(i), max.get());
+            }
+        }
+        return max.get();
+    }
+
+    /**
+     * Returns count, mean, maximum and percentiles of recorded values
+     * @return map of statistic names and values in nanoseconds
+     */
+    public Map<String, Long> toMap() {
+        Map<String, Long> map = new LinkedHashMap<>();
+        map.put("count", getCount());
+        map.put("meanNanos", getMeanNanos());
+        map.put("p50Nanos", getP50Nanos());
+        map.put("p99Nanos", getP99Nanos());
+        map.put("p999Nanos", getP999Nanos());
+        map.put("maxNanos", getMaxNanos());
+        return map;
+    }
+
+    /**
+     * Forgets all recorded values
+     */
+    public void reset() {
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            counts.set(i, 0);
+        }
+        count.reset();
+        sum.reset();
+        max.reset();
+    }
+
+    private static int indexOf(long value) {
+        if (value < 2 * SUB_BUCKET_COUNT) {
+            return (int) value;
+        }
+        // Старшие биты значения выбирают корзину внутри степени двойки, младшие отбрасываются
+        int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+        return (shift + 1) * SUB_BUCKET_COUNT + (int) ((value >>> shift) - SUB_BUCKET_COUNT);
+    }
+
+    private static long highestValueOf(int index) {
+        if (index < 2 * SUB_BUCKET_COUNT) {
+            return index;
+        }
+        int shift = index / SUB_BUCKET_COUNT - 1;
+        long lowest = (long) (index % SUB_BUCKET_COUNT + SUB_BUCKET_COUNT) << shift;
+        return lowest + (1L << shift) - 1;
+    }
+}
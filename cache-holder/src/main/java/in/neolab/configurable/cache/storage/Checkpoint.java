@@ -0,0 +1,169 @@
+package in.neolab.configurable.cache.storage;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * Snapshot of the {@link SegmentLogStorage} index.<br>
+ * Contains locations of all live records and the log position the snapshot corresponds to.
+ * Records appended after that position form the journal that is replayed on top of the checkpoint during recovery.
+ * The checkpoint may carry an attachment - opaque bytes saved and restored together with the index.
+ * @author Nikita Parygin
+ */
+final class Checkpoint {
+
+    /**
+     * File format marker
+     */
+    private static final int MAGIC = 0x43434b50;
+
+    /**
+     * File format version
+     */
+    private static final int VERSION = 1;
+
+    /**
+     * Index entry
+     */
+    static final class Entry {
+        final byte[] key;
+        final SegmentLogStorage.Location location;
+
+        Entry(byte[] key, SegmentLogStorage.Location location) {
+            this.key = key;
+            this.location = location;
+        }
+    }
+
+    /**
+     * Segment of the log position
+     */
+    final int segment;
+
+    /**
+     * Offset of the log position
+     */
+    final long offset;
+
+    /**
+     * Index entries
+     */
+    final List<Entry> entries;
+
+    /**
+     * Attachment, may be <code>null</code>
+     */
+    final byte[] attachment;
+
+    Checkpoint(int segment, long offset, List<Entry> entries, byte[] attachment) {
+        this.segment = segment;
+        this.offset = offset;
+        this.entries = entries;
+        this.attachment = attachment;
+    }
+
+    /**
+     * Writes the checkpoint to a temporary file and atomically replaces the previous checkpoint with it
+     * @param file checkpoint file
+     * @throws IOException if any input or output error is occurred
+     */
+    void write(File file) throws IOException {
+        File temp = new File(file.getPath() + ".tmp");
+        CRC32 crc = new CRC32();
+        try (FileOutputStream fileOut = new FileOutputStream(temp)) {
+            DataOutputStream out = new DataOutputStream(new CheckedOutputStream(new BufferedOutputStream(fileOut), crc));
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(segment);
+            out.writeLong(offset);
+            out.writeInt(entries.size());
+            for (Entry entry : entries) {
+                out.writeInt(entry.key.length);
+                out.write(entry.key);
+                out.writeInt(entry.location.segment);
+                out.writeLong(entry.location.offset);
+                out.writeInt(entry.location.recordSize);
+                out.writeInt(entry.location.valueOffset);
+                out.writeByte(entry.location.flags);
+            }
+            out.writeInt(attachment == null ? -1 : attachment.length);
+            if (attachment != null) {
+                out.write(attachment);
+            }
+            out.flush();
+            // Контрольная сумма не входит в саму себя, поэтому пишется мимо CheckedOutputStream
+            DataOutputStream tail = new DataOutputStream(fileOut);
+            tail.writeLong(crc.getValue());
+            tail.flush();
+            fileOut.getFD().sync();
+        }
+        Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        // Переименование переживет сбой только после синхронизации каталога
+        try (FileChannel directory = FileChannel.open(file.getAbsoluteFile().getParentFile().toPath(), StandardOpenOption.READ)) {
+            directory.force(true);
+        } catch (IOException e) {
+            // Некоторые системы (Windows) не позволяют открыть каталог, там переименование надежно и без синхронизации
+        }
+    }
+
+    /**
+     * Reads the checkpoint
+     * @param file checkpoint file
+     * @return {@link Checkpoint} object or <code>null</code> if the file doesn't exist
+     * @throws IOException if the file is damaged or any input or output error is occurred
+     */
+    static Checkpoint read(File file) throws IOException {
+        if (!file.exists()) {
+            return null;
+        }
+        CRC32 crc = new CRC32();
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            DataInputStream checked = new DataInputStream(new CheckedInputStream(in, crc));
+            if (checked.readInt() != MAGIC) {
+                throw new IOException("Unknown checkpoint format " + file.getName());
+            }
+            if (checked.readInt() != VERSION) {
+                throw new IOException("Unknown checkpoint format " + file.getName());
+            }
+            int segment = checked.readInt();
+            long offset = checked.readLong();
+            int count = checked.readInt();
+            List<Entry> entries = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                byte[] key = new byte[checked.readInt()];
+                checked.readFully(key);
+                int entrySegment = checked.readInt();
+                long entryOffset = checked.readLong();
+                int recordSize = checked.readInt();
+                int valueOffset = checked.readInt();
+                byte flags = checked.readByte();
+                entries.add(new Entry(key, new SegmentLogStorage.Location(entrySegment, entryOffset, recordSize, valueOffset, flags)));
+            }
+            int attachmentLength = checked.readInt();
+            byte[] attachment = null;
+            if (attachmentLength >= 0) {
+                attachment = new byte[attachmentLength];
+                checked.readFully(attachment);
+            }
+            if (in.readLong() != crc.getValue()) {
+                throw new IOException("Checkpoint " + file.getName() + " is damaged");
+            }
+            return new Checkpoint(segment, offset, entries, attachment);
+        }
+    }
+}
@@ -0,0 +1,1283 @@
+package in.neolab.configurable.cache.storage;
+
+import in.neolab.configurable.cache.serialization.CompactSerializer;
+import in.neolab.configurable.cache.serialization.Serializer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.zip.CRC32;
+
+/**
+ * Storage engine appending records to large segment files.<br>
+ * Every write is appended to the end of the active segment, when the segment reaches its maximum size a new one is started.
+ * Location of the latest record of every key is kept in the in-memory index, values are read by position.
+ * Overwritten and removed records stay in segments until compaction copies live records of a sparse segment
+ * to the active one and deletes the old file.<br>
+ * Sealed segments may be served through read-only {@link MappedByteBuffer} regions, see {@link #setMaxMappedBytes(long)}.<br>
+ * Record format: <code>[int length][int crc][byte flags][int key length][key][value]</code>,
+ * where length is the size of everything after the crc field. Records with raw values are marked by a flag,
+ * their values may be streamed to a channel, see {@link #openRaw(Serializable)}.<br>
+ * Persistent storage survives restarts: removals are recorded as tombstone records, the index is periodically saved
+ * to the {@link Checkpoint} and records appended after the checkpoint are replayed as a journal when the storage is opened.
+ * @param <K> Type of the key object should implement {@link Serializable} interface
+ * @author Nikita Parygin
+ */
+public class SegmentLogStorage<K extends Serializable> implements Closeable {
+
+    /**
+     * Logger
+     */
+    private static Logger LOGGER = LoggerFactory.getLogger(SegmentLogStorage.class);
+
+    /**
+     * Default maximum size of one segment
+     */
+    public static final long DEFAULT_SEGMENT_SIZE = 64L * 1024 * 1024;
+
+    /**
+     * Default share of dead records that makes segment eligible for compaction
+     */
+    public static final double DEFAULT_COMPACTION_THRESHOLD = 0.5;
+
+    /**
+     * Size of <code>length</code> and <code>crc</code> fields
+     */
+    static final int HEADER_SIZE = 8;
+
+    /**
+     * Size of <code>flags</code> and <code>key length</code> fields
+     */
+    static final int KEY_HEADER_SIZE = 5;
+
+    /**
+     * Flag of the record marking removal of the key
+     */
+    static final byte TOMBSTONE = 1;
+
+    /**
+     * Flag of the record whose value is raw bytes rather than serialized object
+     */
+    static final byte RAW = 2;
+
+    /**
+     * Maximum number of bytes transferred from the segment at once by {@link RawValue#transferTo(long, long, WritableByteChannel)}
+     */
+    private static final long TRANSFER_CHUNK_SIZE = 1024 * 1024;
+
+    /**
+     * Size of the buffer used to calculate checksum of the appended file
+     */
+    private static final int CHECKSUM_BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * Time to wait for the running compaction on close
+     */
+    private static final long CLOSE_TIMEOUT_SECONDS = 30;
+
+    /**
+     * Checkpoint file name
+     */
+    private static final String CHECKPOINT_FILE = "index.checkpoint";
+
+    /**
+     * Segment file name prefix
+     */
+    private static final String SEGMENT_PREFIX = "segment-";
+
+    /**
+     * Segment file name suffix
+     */
+    private static final String SEGMENT_SUFFIX = ".log";
+
+    /**
+     * Location of the record in the log
+     */
+    static final class Location {
+        /**
+         * Segment id
+         */
+        final int segment;
+        /**
+         * Offset of the record start in the segment
+         */
+        final long offset;
+        /**
+         * Size of the whole record
+         */
+        final int recordSize;
+        /**
+         * Offset of the value from the record start
+         */
+        final int valueOffset;
+        /**
+         * Flags of the record
+         */
+        final byte flags;
+
+        Location(int segment, long offset, int recordSize, int valueOffset, byte flags) {
+            this.segment = segment;
+            this.offset = offset;
+            this.recordSize = recordSize;
+            this.valueOffset = valueOffset;
+            this.flags = flags;
+        }
+
+        int valueLength() {
+            return recordSize - valueOffset;
+        }
+    }
+
+    /**
+     * Raw value of the key opened for reading.<br>
+     * The value is read from its record without copying the whole value to the heap. If the record of the key is
+     * replaced or moved by compaction while the value is being read, reading fails instead of returning mixed bytes
+     */
+    public final class RawValue {
+        private final K key;
+        private final Location location;
+
+        private RawValue(K key, Location location) {
+            this.key = key;
+            this.location = location;
+        }
+
+        /**
+         * Returns length of the value
+         * @return number of bytes
+         */
+        public long length() {
+            return location.valueLength();
+        }
+
+        /**
+         * Reads the whole value
+         * @return raw bytes
+         * @throws IOException if the record was replaced or any input or output error is occurred
+         */
+        public byte[] read() throws IOException {
+            segmentsLock.readLock().lock();
+            try {
+                checkCurrent();
+                return readValue(location);
+            } finally {
+                segmentsLock.readLock().unlock();
+            }
+        }
+
+        /**
+         * Transfers part of the value to the channel by {@link FileChannel#transferTo(long, long, WritableByteChannel)}.
+         * The value is transferred by chunks, so a slow receiver doesn't hold the segments lock
+         * @param position position in the value to start from
+         * @param count maximum number of bytes to transfer
+         * @param target target channel
+         * @return number of transferred bytes
+         * @throws IOException if the record was replaced or any input or output error is occurred
+         */
+        public long transferTo(long position, long count, WritableByteChannel target) throws IOException {
+            long end = Math.min(length(), position + count);
+            long transferred = 0;
+            while (position < end) {
+                long chunk;
+                segmentsLock.readLock().lock();
+                try {
+                    checkCurrent();
+                    Segment segment = segments.get(location.segment);
+                    chunk = segment.channel.transferTo(
+                            location.offset + location.valueOffset + position, Math.min(TRANSFER_CHUNK_SIZE, end - position), target
+                    );
+                } finally {
+                    segmentsLock.readLock().unlock();
+                }
+                if (chunk <= 0) {
+                    throw new EOFException("Record of the key " + key + " is truncated");
+                }
+                bytesRead.add(chunk);
+                position += chunk;
+                transferred += chunk;
+            }
+            return transferred;
+        }
+
+        /**
+         * Checks that the key still points to the opened record. Caller should hold the read lock of the segments:
+         * segment of the current record can't be deleted while it is held
+         */
+        private void checkCurrent() throws IOException {
+            if (index.get(key) != location) {
+                throw new IOException("Record of the key " + key + " was replaced while it was being read");
+            }
+        }
+    }
+
+    /**
+     * Segment file
+     */
+    static final class Segment {
+        final int id;
+        final File file;
+        final FileChannel channel;
+        /**
+         * Number of bytes written to the segment
+         */
+        volatile long size;
+        /**
+         * Number of bytes occupied by overwritten and removed records
+         */
+        volatile long deadBytes;
+
+        Segment(int id, File file) throws IOException {
+            this.id = id;
+            this.file = file;
+            this.channel = new RandomAccessFile(file, "rw").getChannel();
+            this.size = channel.size();
+        }
+    }
+
+    /**
+     * Memory-mapped region of the sealed segment
+     */
+    static final class MappedSegment {
+        final MappedByteBuffer buffer;
+        /**
+         * Time of the last read, used to choose which region to drop when the mapping budget is exceeded
+         */
+        volatile long lastAccess;
+        /**
+         * Number of running reads plus one while the region is in the table of mapped regions.
+         * The region is unmapped when the count drops to zero, so a dropped region is never unmapped under a reader
+         */
+        private final AtomicInteger references = new AtomicInteger(1);
+
+        MappedSegment(MappedByteBuffer buffer) {
+            this.buffer = buffer;
+            this.lastAccess = System.nanoTime();
+        }
+
+        /**
+         * Takes the region for reading
+         * @return  <code>true</code> - if the region may be read until {@link #release()}.<br>
+         *          <code>false</code> - if the region is already unmapped
+         */
+        boolean retain() {
+            int count;
+            do {
+                count = references.get();
+                if (count == 0) {
+                    return false;
+                }
+            } while (!references.compareAndSet(count, count + 1));
+            return true;
+        }
+
+        /**
+         * Returns the region after reading or drops it from the table. The last release unmaps the region
+         */
+        void release() {
+            if (references.decrementAndGet() == 0) {
+                Unmapper.unmap(buffer);
+            }
+        }
+    }
+
+    /**
+     * Folder for storing segments
+     */
+    private final File directory;
+
+    /**
+     * Maximum size of one segment
+     */
+    private final long maxSegmentSize;
+
+    /**
+     * Share of dead records that makes segment eligible for compaction
+     */
+    private final double compactionThreshold;
+
+    /**
+     * Location of the latest record of every key
+     */
+    private final Map<K, Location> index = new ConcurrentHashMap<>();
+
+    /**
+     * Segments by id
+     */
+    private final ConcurrentSkipListMap<Integer, Segment> segments = new ConcurrentSkipListMap<>();
+
+    /**
+     * Segment receiving new records
+     */
+    private volatile Segment active;
+
+    /**
+     * Lock serializing appends.<br>
+     * Locks are always taken in one order: the monitor of the storage (checkpoints and compactions),
+     * the append lock, the segments lock
+     */
+    private final ReentrantLock appendLock = new ReentrantLock();
+
+    /**
+     * Lock protecting segments from being deleted while they are read
+     */
+    private final ReentrantReadWriteLock segmentsLock = new ReentrantReadWriteLock();
+
+    /**
+     * Memory-mapped regions of sealed segments by segment id
+     */
+    private final Map<Integer, MappedSegment> mapped = new ConcurrentHashMap<>();
+
+    /**
+     * Maximum total size of memory-mapped regions. Zero disables memory-mapped reads
+     */
+    private volatile long maxMappedBytes;
+
+    /**
+     * Total size of memory-mapped regions
+     */
+    private long mappedBytes;
+
+    /**
+     * Shows whether the storage keeps its content between restarts
+     */
+    private final boolean persistent;
+
+    /**
+     * Size of the records of all stored keys
+     */
+    private final AtomicLong liveBytes = new AtomicLong();
+
+    /**
+     * Number of value bytes read from the segments
+     */
+    private final LongAdder bytesRead = new LongAdder();
+
+    /**
+     * Number of record bytes written to the segments, including tombstones and records moved by compaction
+     */
+    private final LongAdder bytesWritten = new LongAdder();
+
+    /**
+     * Serializer of keys
+     */
+    private final Serializer<K> keySerializer;
+
+    /**
+     * Supplier of the attachment saved with every checkpoint
+     */
+    private volatile Supplier<byte[]> checkpointAttachment;
+
+    /**
+     * Attachment of the checkpoint the storage was recovered from
+     */
+    private byte[] recoveredAttachment;
+
+    /**
+     * Background compaction and checkpoint thread
+     */
+    private final ScheduledExecutorService compactor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "segment-log-compactor");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * Shows whether compaction is already scheduled
+     */
+    private final AtomicBoolean compactionScheduled = new AtomicBoolean();
+
+    /**
+     * The Constructor. Leftover segments of the previous run are removed
+     * @param directory folder for storing segments
+     * @param maxSegmentSize maximum size of one segment
+     * @param compactionThreshold share of dead records (from 0 to 1) that makes segment eligible for compaction
+     * @throws IOException if the first segment can't be created
+     */
+    public SegmentLogStorage(File directory, long maxSegmentSize, double compactionThreshold) throws IOException {
+        this(directory, maxSegmentSize, compactionThreshold, false);
+    }
+
+    /**
+     * The Constructor
+     * @param directory folder for storing segments
+     * @param maxSegmentSize maximum size of one segment
+     * @param compactionThreshold share of dead records (from 0 to 1) that makes segment eligible for compaction
+     * @param persistent <code>true</code> - content of the previous run is recovered from the checkpoint and the journal.<br>
+     *                   <code>false</code> - leftover segments of the previous run are removed
+     * @throws IOException if the storage can't be opened
+     */
+    public SegmentLogStorage(File directory, long maxSegmentSize, double compactionThreshold, boolean persistent) throws IOException {
+        this(directory, maxSegmentSize, compactionThreshold, persistent, new CompactSerializer<>());
+    }
+
+    /**
+     * The Constructor
+     * @param directory folder for storing segments
+     * @param maxSegmentSize maximum size of one segment
+     * @param compactionThreshold share of dead records (from 0 to 1) that makes segment eligible for compaction
+     * @param persistent <code>true</code> - content of the previous run is recovered from the checkpoint and the journal.<br>
+     *                   <code>false</code> - leftover segments of the previous run are removed
+     * @param keySerializer serializer of keys. Persistent storage should be reopened with the same serializer
+     * @throws IOException if the storage can't be opened
+     */
+    public SegmentLogStorage(File directory, long maxSegmentSize, double compactionThreshold, boolean persistent,
+                             Serializer<K> keySerializer) throws IOException {
+        this.keySerializer = keySerializer;
+        this.directory = directory;
+        this.maxSegmentSize = maxSegmentSize;
+        this.compactionThreshold = compactionThreshold;
+        this.persistent = persistent;
+        directory.mkdirs();
+        if (persistent) {
+            recover();
+        } else {
+            deleteSegmentFiles();
+            this.active = createSegment(1);
+        }
+    }
+
+    /**
+     * Set supplier of the attachment saved with every checkpoint, e.g. priorities of the stored keys
+     * @param checkpointAttachment attachment supplier
+     */
+    public void setCheckpointAttachment(Supplier<byte[]> checkpointAttachment) {
+        this.checkpointAttachment = checkpointAttachment;
+    }
+
+    /**
+     * Returns attachment of the checkpoint the storage was recovered from
+     * @return attachment or <code>null</code> if there was no checkpoint or it had no attachment
+     */
+    public byte[] getRecoveredAttachment() {
+        return recoveredAttachment;
+    }
+
+    /**
+     * Starts saving checkpoints periodically. Makes sense only for persistent storage
+     * @param interval interval between checkpoints
+     * @param unit interval time unit
+     */
+    public void scheduleCheckpoints(long interval, TimeUnit unit) {
+        compactor.scheduleWithFixedDelay(() -> {
+            try {
+                checkpoint();
+            } catch (Exception e) {
+                LOGGER.error("Failed to save checkpoint of {}", directory.getPath(), e);
+            }
+        }, interval, interval, unit);
+    }
+
+    /**
+     * Shows whether the storage keeps its content between restarts
+     * @return  <code>true</code> - if the storage is persistent.<br>
+     *          <code>false</code> - otherwise
+     */
+    public boolean isPersistent() {
+        return persistent;
+    }
+
+    /**
+     * Enables reading sealed segments through memory-mapped regions, so hot values are served from the page cache
+     * without a system call per read. Regions are released in least recently used order when their total size exceeds the budget.
+     * A released region is unmapped as soon as its running reads finish. If the JDK doesn't allow explicit unmapping,
+     * the address space is returned only after the region is garbage collected, so the budget is kept on a best-effort basis
+     * @param maxMappedBytes maximum total size of mapped regions. Zero disables memory-mapped reads
+     */
+    public void setMaxMappedBytes(long maxMappedBytes) {
+        this.maxMappedBytes = maxMappedBytes;
+        synchronized (mapped) {
+            releaseMappings(maxMappedBytes);
+        }
+    }
+
+    /**
+     * Appends value of the key to the log
+     * @param key key
+     * @param value serialized value
+     * @throws IOException if any input or output error is occurred
+     */
+    public void write(K key, byte[] value) throws IOException {
+        write(key, value, (byte) 0);
+    }
+
+    /**
+     * Appends raw value of the key to the log. Raw values are served as is by {@link #openRaw(Serializable)}
+     * @param key key
+     * @param value raw bytes
+     * @throws IOException if any input or output error is occurred
+     */
+    public void writeRaw(K key, byte[] value) throws IOException {
+        write(key, value, RAW);
+    }
+
+    /**
+     * Appends contents of the file as raw value of the key. The checksum is calculated before the append lock is taken,
+     * then the file is copied to the segment by {@link FileChannel#transferFrom(ReadableByteChannel, long, long)},
+     * so the value never passes through the heap. The file shouldn't change while it is appended
+     * @param key key
+     * @param source file with the value
+     * @param length length of the value
+     * @throws IOException if any input or output error is occurred
+     */
+    public void writeRaw(K key, FileChannel source, long length) throws IOException {
+        byte[] keyBytes = serializeKey(key);
+        int valueOffset = HEADER_SIZE + KEY_HEADER_SIZE + keyBytes.length;
+        if (length < 0 || length > Integer.MAX_VALUE - valueOffset) {
+            throw new IllegalArgumentException("Value of " + length + " bytes doesn't fit the record");
+        }
+        int recordSize = valueOffset + (int) length;
+        ByteBuffer head = ByteBuffer.allocate(valueOffset);
+        head.putInt(recordSize - HEADER_SIZE);
+        head.putInt(0);
+        head.put(RAW);
+        head.putInt(keyBytes.length);
+        head.put(keyBytes);
+        CRC32 crc = new CRC32();
+        crc.update(head.array(), HEADER_SIZE, valueOffset - HEADER_SIZE);
+        ByteBuffer buffer = ByteBuffer.allocate(CHECKSUM_BUFFER_SIZE);
+        for (long position = 0; position < length; ) {
+            buffer.clear();
+            buffer.limit((int) Math.min(buffer.capacity(), length - position));
+            int read = source.read(buffer, position);
+            if (read < 0) {
+                throw new EOFException("File is shorter than " + length + " bytes");
+            }
+            crc.update(buffer.array(), 0, read);
+            position += read;
+        }
+        head.putInt(4, (int) crc.getValue());
+        head.flip();
+        appendLock.lock();
+        try {
+            rollIfNeeded(recordSize);
+            long offset = active.size;
+            long position = offset;
+            while (head.hasRemaining()) {
+                position += active.channel.write(head, position);
+            }
+            source.position(0);
+            for (long copied = 0; copied < length; ) {
+                long transferred = active.channel.transferFrom(source, position + copied, length - copied);
+                if (transferred <= 0) {
+                    throw new EOFException("File is shorter than " + length + " bytes");
+                }
+                copied += transferred;
+            }
+            // Размер сегмента сдвигается только после полной записи: недописанная запись будет затерта следующей
+            active.size = offset + recordSize;
+            bytesWritten.add(recordSize);
+            index(key, new Location(active.id, offset, recordSize, valueOffset, RAW));
+        } finally {
+            appendLock.unlock();
+        }
+        scheduleCompactionIfNeeded();
+    }
+
+    private void write(K key, byte[] value, byte flags) throws IOException {
+        byte[] keyBytes = serializeKey(key);
+        appendLock.lock();
+        try {
+            index(key, append(flags, keyBytes, value));
+        } finally {
+            appendLock.unlock();
+        }
+        scheduleCompactionIfNeeded();
+    }
+
+    /**
+     * Appends values of several keys to the log under single acquisition of the append lock
+     * @param values serialized values of keys
+     * @throws IOException if any input or output error is occurred
+     */
+    public void writeAll(Map<K, byte[]> values) throws IOException {
+        List<byte[]> keys = new ArrayList<>(values.size());
+        for (K key : values.keySet()) {
+            keys.add(serializeKey(key));
+        }
+        appendLock.lock();
+        try {
+            int i = 0;
+            for (Map.Entry<K, byte[]> entry : values.entrySet()) {
+                index(entry.getKey(), append((byte) 0, keys.get(i++), entry.getValue()));
+            }
+        } finally {
+            appendLock.unlock();
+        }
+        scheduleCompactionIfNeeded();
+    }
+
+    /**
+     * Reads value of the key
+     * @param key key
+     * @return serialized value or <code>null</code> if there is no such key in the storage
+     * @throws IOException if any input or output error is occurred
+     */
+    public byte[] read(K key) throws IOException {
+        segmentsLock.readLock().lock();
+        try {
+            Location location = index.get(key);
+            if (location == null) {
+                return null;
+            }
+            return readValue(location);
+        } finally {
+            segmentsLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Reads values of several keys. Records are read in the order of their location in the segments,
+     * so the disk is read sequentially rather than in the order of the keys
+     * @param keys keys
+     * @return serialized values of the keys found in the storage
+     * @throws IOException if any input or output error is occurred
+     */
+    public Map<K, byte[]> readAll(Collection<? extends K> keys) throws IOException {
+        segmentsLock.readLock().lock();
+        try {
+            List<Map.Entry<K, Location>> locations = new ArrayList<>(keys.size());
+            for (K key : keys) {
+                Location location = index.get(key);
+                if (location != null) {
+                    locations.add(new AbstractMap.SimpleImmutableEntry<>(key, location));
+                }
+            }
+            locations.sort((first, second) -> {
+                Location a = first.getValue();
+                Location b = second.getValue();
+                return a.segment != b.segment ? Integer.compare(a.segment, b.segment) : Long.compare(a.offset, b.offset);
+            });
+            Map<K, byte[]> values = new HashMap<>(locations.size() * 4 / 3 + 1);
+            for (Map.Entry<K, Location> entry : locations) {
+                values.put(entry.getKey(), readValue(entry.getValue()));
+            }
+            return values;
+        } finally {
+            segmentsLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Shows whether the value of the key was written as raw bytes
+     * @param key key
+     * @return  <code>true</code> - if the key is in the storage and its value is raw.<br>
+     *          <code>false</code> - otherwise
+     */
+    public boolean isRaw(K key) {
+        Location location = index.get(key);
+        return location != null && (location.flags & RAW) != 0;
+    }
+
+    /**
+     * Opens raw value of the key for reading
+     * @param key key
+     * @return {@link RawValue} object or <code>null</code> if there is no such key or its value is not raw
+     */
+    public RawValue openRaw(K key) {
+        Location location = index.get(key);
+        if (location == null || (location.flags & RAW) == 0) {
+            return null;
+        }
+        return new RawValue(key, location);
+    }
+
+    /**
+     * Reads value of the record. Caller should hold the read lock of the segments
+     */
+    private byte[] readValue(Location location) throws IOException {
+        Segment segment = segments.get(location.segment);
+        byte[] value = new byte[location.valueLength()];
+        MappedSegment region = segment == active ? null : mapping(segment);
+        if (region != null) {
+            try {
+                ByteBuffer buffer = region.buffer.duplicate();
+                buffer.position((int) (location.offset + location.valueOffset));
+                buffer.get(value);
+            } finally {
+                region.release();
+            }
+        } else {
+            readFully(segment.channel, ByteBuffer.wrap(value), location.offset + location.valueOffset);
+        }
+        bytesRead.add(value.length);
+        return value;
+    }
+
+    /**
+     * Removes key from the storage. Space occupied by its record is reclaimed by compaction
+     * @param key key
+     * @throws IOException if the tombstone record of the persistent storage can't be written
+     */
+    public void delete(K key) throws IOException {
+        byte[] keyBytes = persistent ? serializeKey(key) : null;
+        appendLock.lock();
+        try {
+            Location location = index.remove(key);
+            if (location != null) {
+                liveBytes.addAndGet(-location.recordSize);
+            }
+            if (location != null && persistent) {
+                // Запись-надгробие нужна только для восстановления после перезапуска, сама по себе она сразу мертвая
+                Location tombstone = append(TOMBSTONE, keyBytes, new byte[0]);
+                markDead(tombstone);
+            }
+            markDead(location);
+        } finally {
+            appendLock.unlock();
+        }
+        scheduleCompactionIfNeeded();
+    }
+
+    /**
+     * Removes several keys from the storage under single acquisition of the append lock
+     * @param keys keys. Keys that are not in the storage are skipped
+     * @throws IOException if the tombstone records of the persistent storage can't be written
+     */
+    public void deleteAll(Collection<? extends K> keys) throws IOException {
+        Map<K, byte[]> keyBytes = new HashMap<>();
+        if (persistent) {
+            for (K key : keys) {
+                keyBytes.put(key, serializeKey(key));
+            }
+        }
+        appendLock.lock();
+        try {
+            for (K key : keys) {
+                Location location = index.remove(key);
+                if (location == null) {
+                    continue;
+                }
+                liveBytes.addAndGet(-location.recordSize);
+                if (persistent) {
+                    markDead(append(TOMBSTONE, keyBytes.get(key), new byte[0]));
+                }
+                markDead(location);
+            }
+        } finally {
+            appendLock.unlock();
+        }
+        scheduleCompactionIfNeeded();
+    }
+
+    /**
+     * Searches for key in the storage
+     * @param key key
+     * @return  <code>true</code> - if key is in the storage.<br>
+     *          <code>false</code> - otherwise
+     */
+    public boolean contains(K key) {
+        return index.containsKey(key);
+    }
+
+    /**
+     * Returns size of the record of the key
+     * @param key key
+     * @return bytes or zero if key is not in the storage
+     */
+    public long sizeOf(K key) {
+        Location location = index.get(key);
+        return location == null ? 0 : location.recordSize;
+    }
+
+    /**
+     * Returns keys of the storage
+     * @return unmodifiable view of stored keys
+     */
+    public Set<K> keys() {
+        return Collections.unmodifiableSet(index.keySet());
+    }
+
+    /**
+     * Returns size of the records of all stored keys
+     * @return bytes
+     */
+    public long getLiveBytes() {
+        return liveBytes.get();
+    }
+
+    /**
+     * Returns number of value bytes read from the storage since it was opened
+     * @return bytes
+     */
+    public long getBytesRead() {
+        return bytesRead.sum();
+    }
+
+    /**
+     * Returns number of bytes written to the storage since it was opened
+     * @return bytes
+     */
+    public long getBytesWritten() {
+        return bytesWritten.sum();
+    }
+
+    /**
+     * Returns count of keys in the storage
+     * @return count of keys
+     */
+    public int size() {
+        return index.size();
+    }
+
+    /**
+     * Removes all keys and segment files.
+     * Waits for the running checkpoint or compaction, so a checkpoint of the old index can't be written after the clear
+     * @throws IOException if the new segment can't be created
+     */
+    public synchronized void clear() throws IOException {
+        appendLock.lock();
+        segmentsLock.writeLock().lock();
+        try {
+            index.clear();
+            liveBytes.set(0);
+            for (Segment segment : segments.values()) {
+                deleteSegment(segment);
+            }
+            segments.clear();
+            deleteSegmentFiles();
+            File checkpoint = new File(directory, CHECKPOINT_FILE);
+            if (checkpoint.exists() && !checkpoint.delete()) {
+                LOGGER.warn("Failed to delete checkpoint {}", checkpoint.getPath());
+            }
+            active = createSegment(1);
+        } finally {
+            segmentsLock.writeLock().unlock();
+            appendLock.unlock();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        // Прерывать сжатие нельзя: прерывание операции ввода-вывода закрывает канал сегмента
+        compactor.shutdown();
+        try {
+            compactor.awaitTermination(CLOSE_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (persistent) {
+            checkpoint();
+        }
+        appendLock.lock();
+        segmentsLock.writeLock().lock();
+        try {
+            synchronized (mapped) {
+                releaseMappings(0);
+            }
+            for (Segment segment : segments.values()) {
+                segment.channel.close();
+            }
+        } finally {
+            segmentsLock.writeLock().unlock();
+            appendLock.unlock();
+        }
+    }
+
+    /**
+     * Copies live records of sparse segments to the active segment and deletes sparse segment files
+     * @throws IOException if any input or output error is occurred
+     */
+    public void compact() throws IOException {
+        for (Segment segment : segments.values()) {
+            if (segment != active && isSparse(segment)) {
+                compact(segment);
+            }
+        }
+    }
+
+    private synchronized void compact(Segment segment) throws IOException {
+        // Сегмент мог быть уже сжат фоновым потоком. Очистка и другие сжатия ждут монитор, поэтому сегмент не исчезнет до конца сжатия
+        if (segments.get(segment.id) != segment) {
+            return;
+        }
+        long reclaimed = segment.size;
+        // Запечатанный сегмент больше не пополняется, поэтому его живые записи собираются без блокировки записи
+        List<Map.Entry<K, Location>> live = new ArrayList<>();
+        for (Map.Entry<K, Location> entry : index.entrySet()) {
+            if (entry.getValue().segment == segment.id) {
+                live.add(new AbstractMap.SimpleImmutableEntry<>(entry.getKey(), entry.getValue()));
+            }
+        }
+        for (Map.Entry<K, Location> entry : live) {
+            Location location = entry.getValue();
+            // Переписываем запись целиком, не разбирая ее. Чтение не блокирует запись новых значений
+            ByteBuffer record = ByteBuffer.allocate(location.recordSize);
+            readFully(segment.channel, record, location.offset);
+            record.flip();
+            appendLock.lock();
+            try {
+                // Пока запись читалась, ключ мог быть перезаписан или удален. Его копия не пишется,
+                // иначе при восстановлении она оказалась бы в журнале после надгробия и вернула бы удаленный ключ
+                if (index.get(entry.getKey()) != location) {
+                    continue;
+                }
+                index.replace(entry.getKey(), location, appendRecord(record, location.valueOffset, location.flags));
+                reclaimed -= location.recordSize;
+            } finally {
+                appendLock.unlock();
+            }
+        }
+        if (persistent) {
+            // Надгробия из сжимаемого сегмента не переносятся, поэтому до его удаления индекс должен попасть в контрольную точку.
+            // Контрольная точка пишется без блокировки записи: индекс копируется под ней, а файл пишется уже после
+            checkpoint();
+        }
+        segmentsLock.writeLock().lock();
+        try {
+            // Пока блокировки не было, хранилище могло быть очищено
+            if (!segments.remove(segment.id, segment)) {
+                return;
+            }
+            deleteSegment(segment);
+        } finally {
+            segmentsLock.writeLock().unlock();
+        }
+        LOGGER.info("Segment {} compacted, {} bytes reclaimed", segment.file.getName(), reclaimed);
+    }
+
+    /**
+     * Saves the index and the current log position to the checkpoint.
+     * Records appended after this position will be replayed on top of the checkpoint during recovery.
+     * Appends are blocked only while the index is copied, the file is written without blocking them
+     * @throws IOException if any input or output error is occurred
+     */
+    public synchronized void checkpoint() throws IOException {
+        Supplier<byte[]> attachmentSupplier = checkpointAttachment;
+        byte[] attachment = attachmentSupplier == null ? null : attachmentSupplier.get();
+        List<Map.Entry<K, Location>> snapshot;
+        int segment;
+        long offset;
+        appendLock.lock();
+        try {
+            active.channel.force(false);
+            snapshot = new ArrayList<>(index.entrySet());
+            segment = active.id;
+            offset = active.size;
+        } finally {
+            appendLock.unlock();
+        }
+        List<Checkpoint.Entry> entries = new ArrayList<>(snapshot.size());
+        for (Map.Entry<K, Location> entry : snapshot) {
+            entries.add(new Checkpoint.Entry(serializeKey(entry.getKey()), entry.getValue()));
+        }
+        new Checkpoint(segment, offset, entries, attachment).write(new File(directory, CHECKPOINT_FILE));
+        LOGGER.info("Checkpoint of {} saved with {} keys", directory.getPath(), entries.size());
+    }
+
+    /**
+     * Restores the index from the checkpoint and replays records appended after it
+     */
+    private void recover() throws IOException {
+        File[] files = directory.listFiles((dir, name) -> name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX));
+        if (files != null) {
+            for (File file : files) {
+                String name = file.getName();
+                int id = Integer.parseInt(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+                segments.put(id, new Segment(id, file));
+            }
+        }
+        Checkpoint checkpoint = null;
+        try {
+            checkpoint = Checkpoint.read(new File(directory, CHECKPOINT_FILE));
+        } catch (IOException e) {
+            LOGGER.warn("Failed to read checkpoint of {}, the whole log will be replayed", directory.getPath(), e);
+        }
+        int fromSegment = 0;
+        long fromOffset = 0;
+        if (checkpoint != null) {
+            for (Checkpoint.Entry entry : checkpoint.entries) {
+                if (segments.containsKey(entry.location.segment)) {
+                    index.put(deserializeKey(entry.key, 0, entry.key.length), entry.location);
+                }
+            }
+            recoveredAttachment = checkpoint.attachment;
+            fromSegment = checkpoint.segment;
+            fromOffset = checkpoint.offset;
+        }
+        int replayed = 0;
+        for (Segment segment : segments.values()) {
+            if (segment.id >= fromSegment) {
+                replayed += replay(segment, segment.id == fromSegment ? fromOffset : 0);
+            }
+        }
+        // Объем мертвых записей считаем по индексу: все, что не принадлежит живым ключам, может быть сжато
+        for (Segment segment : segments.values()) {
+            segment.deadBytes = segment.size;
+        }
+        for (Location location : index.values()) {
+            segments.get(location.segment).deadBytes -= location.recordSize;
+            liveBytes.addAndGet(location.recordSize);
+        }
+        active = segments.isEmpty() ? createSegment(1) : segments.lastEntry().getValue();
+        LOGGER.info("Storage {} recovered with {} keys, {} journal records replayed", directory.getPath(), index.size(), replayed);
+    }
+
+    /**
+     * Applies records of the segment to the index starting from the offset.
+     * Damaged tail of the segment (e.g. a record that was being written during a crash) is truncated
+     * @return number of replayed records
+     */
+    private int replay(Segment segment, long offset) throws IOException {
+        int replayed = 0;
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        while (offset + HEADER_SIZE <= segment.size) {
+            header.clear();
+            readFully(segment.channel, header, offset);
+            int bodySize = header.getInt(0);
+            int crc = header.getInt(4);
+            if (bodySize < KEY_HEADER_SIZE || offset + HEADER_SIZE + bodySize > segment.size) {
+                break;
+            }
+            ByteBuffer body = ByteBuffer.allocate(bodySize);
+            readFully(segment.channel, body, offset + HEADER_SIZE);
+            CRC32 actual = new CRC32();
+            actual.update(body.array(), 0, bodySize);
+            int keyLength = body.getInt(1);
+            if ((int) actual.getValue() != crc || keyLength < 0 || KEY_HEADER_SIZE + keyLength > bodySize) {
+                break;
+            }
+            K key = deserializeKey(body.array(), KEY_HEADER_SIZE, keyLength);
+            if ((body.get(0) & TOMBSTONE) != 0) {
+                index.remove(key);
+            } else {
+                index.put(key, new Location(
+                        segment.id, offset, HEADER_SIZE + bodySize, HEADER_SIZE + KEY_HEADER_SIZE + keyLength, body.get(0)
+                ));
+            }
+            offset += HEADER_SIZE + bodySize;
+            replayed++;
+        }
+        if (offset < segment.size) {
+            LOGGER.warn("Damaged tail of segment {} is truncated at {}", segment.file.getName(), offset);
+            segment.channel.truncate(offset);
+            segment.size = offset;
+        }
+        return replayed;
+    }
+
+    /**
+     * Builds record and appends it to the active segment. Caller should hold the append lock
+     */
+    private Location append(byte flags, byte[] keyBytes, byte[] value) throws IOException {
+        int bodySize = KEY_HEADER_SIZE + keyBytes.length + value.length;
+        ByteBuffer record = ByteBuffer.allocate(HEADER_SIZE + bodySize);
+        record.putInt(bodySize);
+        record.putInt(0);
+        record.put(flags);
+        record.putInt(keyBytes.length);
+        record.put(keyBytes);
+        record.put(value);
+        CRC32 crc = new CRC32();
+        crc.update(record.array(), HEADER_SIZE, bodySize);
+        record.putInt(4, (int) crc.getValue());
+        record.flip();
+        return appendRecord(record, HEADER_SIZE + KEY_HEADER_SIZE + keyBytes.length, flags);
+    }
+
+    /**
+     * Appends prepared record to the active segment. Caller should hold the append lock
+     */
+    private Location appendRecord(ByteBuffer record, int valueOffset, byte flags) throws IOException {
+        int recordSize = record.remaining();
+        rollIfNeeded(recordSize);
+        long offset = active.size;
+        long position = offset;
+        while (record.hasRemaining()) {
+            position += active.channel.write(record, position);
+        }
+        active.size = position;
+        bytesWritten.add(recordSize);
+        return new Location(active.id, offset, recordSize, valueOffset, flags);
+    }
+
+    /**
+     * Starts new active segment if the record doesn't fit the current one. Caller should hold the append lock
+     */
+    private void rollIfNeeded(long recordSize) throws IOException {
+        if (active.size > 0 && active.size + recordSize > maxSegmentSize) {
+            active = createSegment(active.id + 1);
+        }
+    }
+
+    /**
+     * Points the key to its new record. Caller should hold the append lock
+     */
+    private void index(K key, Location location) {
+        Location previous = index.put(key, location);
+        liveBytes.addAndGet(location.recordSize - (previous == null ? 0 : previous.recordSize));
+        markDead(previous);
+    }
+
+    private void markDead(Location location) {
+        if (location != null) {
+            Segment segment = segments.get(location.segment);
+            if (segment != null) {
+                segment.deadBytes += location.recordSize;
+            }
+        }
+    }
+
+    private boolean isSparse(Segment segment) {
+        return segment.size > 0 && segment.deadBytes >= segment.size * compactionThreshold;
+    }
+
+    private void scheduleCompactionIfNeeded() {
+        boolean needed = false;
+        for (Segment segment : segments.values()) {
+            if (segment != active && isSparse(segment)) {
+                needed = true;
+                break;
+            }
+        }
+        if (needed && compactionScheduled.compareAndSet(false, true)) {
+            compactor.execute(() -> {
+                compactionScheduled.set(false);
+                try {
+                    compact();
+                } catch (Exception e) {
+                    LOGGER.error("Failed to compact segments in {}", directory.getPath(), e);
+                }
+            });
+        }
+    }
+
+    private Segment createSegment(int id) throws IOException {
+        Segment segment = new Segment(id, new File(directory, String.format("%1$s%2$06d%3$s", SEGMENT_PREFIX, id, SEGMENT_SUFFIX)));
+        segments.put(id, segment);
+        return segment;
+    }
+
+    /**
+     * Returns memory-mapped region of the sealed segment, mapping it if the budget allows.
+     * The region is retained for reading, the caller should {@link MappedSegment#release()} it
+     * @param segment sealed segment
+     * @return {@link MappedSegment} object or <code>null</code> if memory-mapped reads are disabled, the segment doesn't fit the budget
+     * or its region has just been dropped
+     */
+    private MappedSegment mapping(Segment segment) throws IOException {
+        long budget = maxMappedBytes;
+        if (budget <= 0 || segment.size > budget || segment.size > Integer.MAX_VALUE) {
+            return null;
+        }
+        MappedSegment region = mapped.get(segment.id);
+        if (region == null) {
+            synchronized (mapped) {
+                region = mapped.get(segment.id);
+                if (region == null) {
+                    releaseMappings(budget - segment.size);
+                    region = new MappedSegment(segment.channel.map(FileChannel.MapMode.READ_ONLY, 0, segment.size));
+                    mapped.put(segment.id, region);
+                    mappedBytes += segment.size;
+                }
+            }
+        }
+        if (!region.retain()) {
+            // Отображение только что вытеснено другим потоком - читаем из канала
+            return null;
+        }
+        region.lastAccess = System.nanoTime();
+        return region;
+    }
+
+    /**
+     * Drops least recently used regions until their total size fits the limit. Caller should hold the monitor of {@link #mapped}
+     */
+    private void releaseMappings(long limit) {
+        while (mappedBytes > limit && !mapped.isEmpty()) {
+            Map.Entry<Integer, MappedSegment> oldest = null;
+            for (Map.Entry<Integer, MappedSegment> entry : mapped.entrySet()) {
+                if (oldest == null || entry.getValue().lastAccess < oldest.getValue().lastAccess) {
+                    oldest = entry;
+                }
+            }
+            mapped.remove(oldest.getKey());
+            mappedBytes -= oldest.getValue().buffer.capacity();
+            oldest.getValue().release();
+        }
+    }
+
+    private void deleteSegment(Segment segment) throws IOException {
+        synchronized (mapped) {
+            MappedSegment region = mapped.remove(segment.id);
+            if (region != null) {
+                mappedBytes -= region.buffer.capacity();
+                // Сегмент удаляется под блокировкой записи сегментов, поэтому читателей у отображения нет и оно освобождается сразу.
+                // Иначе Windows не даст удалить файл
+                region.release();
+            }
+        }
+        segment.channel.close();
+        if (!segment.file.delete()) {
+            LOGGER.warn("Failed to delete segment {} it is probably does not exist", segment.file.getName());
+        }
+    }
+
+    private void deleteSegmentFiles() {
+        File[] files = directory.listFiles((dir, name) -> name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX));
+        if (files == null) {
+            return;
+        }
+        List<File> failed = new ArrayList<>();
+        for (File file : files) {
+            if (!file.delete()) {
+                failed.add(file);
+            }
+        }
+        if (!failed.isEmpty()) {
+            LOGGER.warn("Failed to delete leftover segments {}", failed);
+        }
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position);
+            if (read < 0) {
+                throw new IOException("Unexpected end of segment");
+            }
+            position += read;
+        }
+    }
+
+    private K deserializeKey(byte[] bytes, int offset, int length) throws IOException {
+        try {
+            return keySerializer.deserialize(bytes, offset, length);
+        } catch (ClassNotFoundException e) {
+            throw new IOException("Failed to restore key", e);
+        }
+    }
+
+    private byte[] serializeKey(K key) throws IOException {
+        return keySerializer.serialize(key);
+    }
+}
@@ -0,0 +1,83 @@
+package in.neolab.configurable.cache.storage;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+
+/**
+ * Releases memory-mapped regions explicitly instead of waiting for the garbage collector.<br>
+ * The JDK has no public API for it: Java 8 exposes the cleaner of the direct buffer, Java 9+ -
+ * <code>sun.misc.Unsafe.invokeCleaner</code>. Both are reached by reflection, if neither is available
+ * regions are released by the garbage collector
+ * @author Nikita Parygin
+ */
+final class Unmapper {
+
+    /**
+     * Logger
+     */
+    private static Logger LOGGER = LoggerFactory.getLogger(Unmapper.class);
+
+    /**
+     * Releases the buffer
+     */
+    private interface Cleaner {
+        void clean(ByteBuffer buffer) throws ReflectiveOperationException;
+    }
+
+    /**
+     * Cleaner of the running JDK or <code>null</code> if explicit unmapping is not available
+     */
+    private static final Cleaner CLEANER = findCleaner();
+
+    private Unmapper() {
+    }
+
+    /**
+     * Unmaps the region. The region shouldn't be accessed afterwards: reading of unmapped memory crashes the JVM
+     * @param buffer memory-mapped region
+     * @return  <code>true</code> - if the region is unmapped.<br>
+     *          <code>false</code> - if it is left to the garbage collector
+     */
+    static boolean unmap(ByteBuffer buffer) {
+        if (CLEANER == null) {
+            return false;
+        }
+        try {
+            CLEANER.clean(buffer);
+            return true;
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            LOGGER.warn("Failed to unmap region, it will be released by the garbage collector", e);
+            return false;
+        }
+    }
+
+    private static Cleaner findCleaner() {
+        try {
+            if (System.getProperty("java.specification.version").startsWith("1.")) {
+                // Java 8: очиститель доступен у самого отображенного буфера
+                Method cleaner = Class.forName("sun.nio.ch.DirectBuffer").getMethod("cleaner");
+                Method clean = Class.forName("sun.misc.Cleaner").getMethod("clean");
+                return buffer -> {
+                    Object bufferCleaner = cleaner.invoke(buffer);
+                    if (bufferCleaner != null) {
+                        clean.invoke(bufferCleaner);
+                    }
+                };
+            }
+            // Java 9+: очиститель буфера закрыт модулями, освободить буфер можно только через Unsafe
+            Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            Field field = unsafeClass.getDeclaredField("theUnsafe");
+            field.setAccessible(true);
+            Object unsafe = field.get(null);
+            Method invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+            return buffer -> invokeCleaner.invoke(unsafe, buffer);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            LOGGER.info("Explicit unmapping is not available, mapped regions will be released by the garbage collector", e);
+            return null;
+        }
+    }
+}
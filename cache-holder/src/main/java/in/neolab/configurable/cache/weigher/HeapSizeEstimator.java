@@ -0,0 +1,89 @@
+package in.neolab.configurable.cache.weigher;
+
+import in.neolab.configurable.cache.serialization.JavaSerializer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.Collection;
+import java.util.Map;
+
+/**
+ * Weigher estimating number of bytes the cache element occupies in the java heap.<br>
+ * Sizes of strings, boxed primitives, arrays, maps and collections (as produced by JSON parsers) are calculated
+ * from the usual layout of objects in the 64-bit JVM with compressed references. Size of other objects is estimated
+ * by the length of their java serialization
+ * @param <K> Type of the key object
+ * @param <V> Type of the value object
+ * @author Nikita Parygin
+ */
+public class HeapSizeEstimator<K, V> implements Weigher<K, V> {
+
+    /**
+     * Logger
+     */
+    private static Logger LOGGER = LoggerFactory.getLogger(HeapSizeEstimator.class);
+
+    private static final int OBJECT_HEADER = 12;
+    private static final int ARRAY_HEADER = 16;
+    private static final int REFERENCE = 4;
+
+    /**
+     * Size of the map entry object
+     */
+    private static final int MAP_ENTRY = 32;
+
+    /**
+     * Size of the element of the map that can't be serialized
+     */
+    private static final int UNKNOWN_OBJECT = 64;
+
+    private final JavaSerializer<Object> serializer = new JavaSerializer<>();
+
+    @Override
+    public long weigh(K key, V value) {
+        return estimate(key) + estimate(value);
+    }
+
+    private long estimate(Object object) {
+        if (object == null) {
+            return 0;
+        } else if (object instanceof String) {
+            // Объект строки и массив ее символов
+            return align(OBJECT_HEADER + REFERENCE + 8) + align(ARRAY_HEADER + 2L * ((String) object).length());
+        } else if (object instanceof Long || object instanceof Double) {
+            return align(OBJECT_HEADER + 8);
+        } else if (object instanceof Number || object instanceof Boolean || object instanceof Character) {
+            return align(OBJECT_HEADER + 4);
+        } else if (object instanceof byte[]) {
+            return align(ARRAY_HEADER + ((byte[]) object).length);
+        } else if (object instanceof Map) {
+            Map<?, ?> map = (Map<?, ?>) object;
+            long size = align(OBJECT_HEADER + 6 * REFERENCE) + align(ARRAY_HEADER + (long) REFERENCE * map.size() * 4 / 3);
+            for (Map.Entry<?, ?> entry : map.entrySet()) {
+                size += MAP_ENTRY + estimate(entry.getKey()) + estimate(entry.getValue());
+            }
+            return size;
+        } else if (object instanceof Collection) {
+            Collection<?> collection = (Collection<?>) object;
+            long size = align(OBJECT_HEADER + 3 * REFERENCE) + align(ARRAY_HEADER + (long) REFERENCE * collection.size());
+            for (Object element : collection) {
+                size += estimate(element);
+            }
+            return size;
+        } else if (object instanceof Serializable) {
+            try {
+                return serializer.serialize(object).length;
+            } catch (IOException e) {
+                LOGGER.warn("Failed to estimate size of object of {}", object.getClass().getName(), e);
+            }
+        }
+        return UNKNOWN_OBJECT;
+    }
+
+    private static long align(long size) {
+        return (size + 7) & ~7L;
+    }
+}
@@ -0,0 +1,19 @@
+package in.neolab.configurable.cache.weigher;
+
+/**
+ * Calculates weight of the cache element - approximate number of bytes it occupies in the cache tier
+ * @param <K> Type of the key object
+ * @param <V> Type of the value object
+ * @author Nikita Parygin
+ */
+@FunctionalInterface
+public interface Weigher<K, V> {
+
+    /**
+     * Returns weight of the cache element
+     * @param key key
+     * @param value value
+     * @return weight, not negative
+     */
+    long weigh(K key, V value);
+}
@@ -0,0 +1,103 @@
+package in.neolab.configurable.cache;
+
+import in.neolab.configurable.cache.processor.ArcPolicy;
+import in.neolab.configurable.cache.processor.CacheProcessor;
+import in.neolab.configurable.cache.processor.CacheStrategiesSelector;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ArcStrategyTest {
+    private CacheHolder cacheHolder;
+
+    @Before
+    public void init() {
+        cacheHolder = CacheHolder.CacheBuilder.get()
+                .addMemoryCacheHolder(new MemoryCacheImpl(2))
+                .addFileSystemCacheHolder(new FIleSystemCacheImpl(2))
+                .addCacheProcessor(new CacheProcessor(new CacheStrategiesSelector<>("ARC")))
+                .build();
+    }
+
+    @After
+    public void clearCache() {
+        cacheHolder.clear();
+    }
+
+    @Test
+    public void testScanResistance() throws Exception {
+        for (int i = 1; i <= 4; i++) {
+            cacheHolder.put(String.format("Key%1$s", i), String.format("Value%1$s", i));
+        }
+        for (int i = 1; i <= 3; i++) {
+            cacheHolder.get(String.format("Key%1$s", i));
+        }
+        // Ключи сканирования используются один раз и вытесняют друг друга из списка недавних
+        for (int i = 1; i <= 10; i++) {
+            cacheHolder.put(String.format("Scan%1$s", i), String.format("Scan%1$s", i));
+        }
+
+        assertTrue(cacheHolder.containsKey("Key1"));
+        assertTrue(cacheHolder.containsKey("Key2"));
+        assertTrue(cacheHolder.containsKey("Key3"));
+        assertTrue(cacheHolder.containsKey("Scan10"));
+        assertFalse(cacheHolder.containsKey("Key4"));
+        assertFalse(cacheHolder.containsKey("Scan9"));
+    }
+
+    @Test
+    public void testGhostLists() {
+        CacheProcessor<String> processor = new CacheProcessor<>(new ArcPolicy<>());
+        processor.put("Key1");
+        processor.put("Key2");
+        processor.put("Key3");
+        processor.put("Key1");
+        // Ключ 1 использован дважды, поэтому вытесняется самый старый из ключей, использованных один раз
+        assertEquals("Key2", processor.getKeyForReplace());
+        processor.evict("Key2");
+        processor.put("Key4");
+
+        // Ключ 2 найден в списке-призраке: он возвращается сразу в список частых
+        processor.evict(processor.getKeyForReplace());
+        processor.put("Key2");
+        assertTrue(processor.getPriority("Key2") > processor.getPriority("Key4"));
+        assertTrue(processor.getPriority("Key1") > processor.getPriority("Key4"));
+
+        // Доля списка недавних выросла до одного ключа, поэтому первый новый ключ вытесняет самый старый из частых.
+        // Дальше ключи сканирования вытесняют друг друга, а списки-призраки ограничены емкостью кэша
+        for (int i = 0; i < 100; i++) {
+            String key = String.format("Scan%1$s", i);
+            processor.evict(processor.getKeyForReplace());
+            processor.put(key);
+        }
+        processor.evict(processor.getKeyForReplace());
+        processor.put("Scan0");
+        assertFalse(processor.containsKey("Key1"));
+        // Давно вытесненный ключ забыт и добавляется как новый
+        assertTrue(processor.getPriority("Scan0") < processor.getPriority("Key2"));
+        assertEquals(3, processor.snapshot().size());
+    }
+
+    @Test
+    public void testRemovalAndFilteredVictim() {
+        CacheProcessor<String> processor = new CacheProcessor<>(new ArcPolicy<>());
+        for (int i = 1; i <= 4; i++) {
+            processor.put(String.format("Key%1$s", i));
+        }
+        processor.put("Key1");
+        processor.put("Key4");
+        // Удаленный пользователем ключ не становится призраком и после возврата считается новым
+        processor.remove("Key2");
+        processor.put("Key2");
+        assertTrue(processor.getPriority("Key2") < processor.getPriority("Key1"));
+        assertEquals("Key3", processor.getKeyForReplace());
+
+        // Поиск с фильтром проходит дальше первых ключей обоих списков
+        assertEquals("Key4", processor.getRarelyUsed(key -> key.equals("Key4")));
+        assertEquals("Key2", processor.getRarelyUsed(key -> !key.equals("Key3")));
+    }
+}
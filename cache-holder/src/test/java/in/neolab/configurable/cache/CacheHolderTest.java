@@ -7,6 +7,24 @@ import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
 import static junit.framework.TestCase.assertEquals;
 import static junit.framework.TestCase.assertFalse;
 import static junit.framework.TestCase.assertTrue;
@@ -104,4 +122,387 @@ public class CacheHolderTest {
         assertTrue(cacheHolder.getFileSystemCache().containsKey("Key2"));
 
     }
+
+    @Test
+    public void concurrentAccessTest() throws Exception {
+        cacheHolder = CacheHolder.CacheBuilder.get()
+                .addMemoryCacheHolder(new MemoryCacheImpl(8))
+                .addFileSystemCacheHolder(new FIleSystemCacheImpl(8))
+                .addCacheProcessor(new CacheProcessor(new CacheStrategiesSelector<>("LRU")))
+                .setConcurrencyLevel(4)
+                .build();
+
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int t = 0; t < 8; t++) {
+            final int thread = t;
+            futures.add(executor.submit(() -> {
+                for (int i = 0; i < 200; i++) {
+                    String key = String.format("Key%1$s", (i * 7 + thread) % 40);
+                    cacheHolder.put(key, key);
+                    Object value = cacheHolder.get(key);
+                    // Значение может быть вытеснено другим потоком, но никогда не должно подменяться чужим
+                    if (value != null) {
+                        assertEquals(key, value);
+                    }
+                }
+                return null;
+            }));
+        }
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        executor.shutdown();
+
+        // Ни один из уровней не должен переполниться, а таблица приоритетов - разойтись с содержимым кэша
+        assertTrue(cacheHolder.getMemoryCache().size() <= 8);
+        assertTrue(cacheHolder.getFileSystemCache().size() <= 8);
+        assertEquals(16, cacheHolder.size());
+    }
+
+    @Test
+    public void bulkOperationsTest() throws Exception {
+        cacheHolder = CacheHolder.CacheBuilder.get()
+                .addMemoryCacheHolder(new MemoryCacheImpl(2))
+                .addFileSystemCacheHolder(new FIleSystemCacheImpl(4))
+                .addCacheProcessor(new CacheProcessor(new CacheStrategiesSelector<>("LFU")))
+                .build();
+
+        Map<String, String> values = new LinkedHashMap<>();
+        for (int i = 0; i < 5; i++) {
+            values.put(String.format("Key%1$s", i), String.format("Value%1$s", i));
+        }
+        cacheHolder.putAll(values);
+        assertEquals(5, cacheHolder.size());
+        assertEquals(2, cacheHolder.getMemoryCache().size());
+
+        // Отсутствующий ключ в результат не попадает
+        Map<String, String> found = cacheHolder.getAll(Arrays.asList("Key0", "Key3", "Key4", "Key9"));
+        assertEquals(3, found.size());
+        assertEquals("Value3", found.get("Key3"));
+        assertEquals("Value4", found.get("Key4"));
+
+        // Уже сохраненные ключи обновляются на своих уровнях
+        values.replaceAll((key, value) -> value + "-new");
+        cacheHolder.putAll(values);
+        assertEquals(5, cacheHolder.size());
+        assertEquals("Value2-new", cacheHolder.get("Key2"));
+
+        cacheHolder.removeAll(Arrays.asList("Key0", "Key3", "Key9"));
+        assertEquals(3, cacheHolder.size());
+        assertFalse(cacheHolder.containsKey("Key0"));
+        assertFalse(cacheHolder.containsKey("Key3"));
+        assertFalse(cacheHolder.getCacheProcessor().containsKey("Key0"));
+    }
+
+    @Test
+    public void slowFileSystemWriteTest() throws Exception {
+        CountDownLatch writing = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        FIleSystemCacheImpl<String, String> fileSystemCache = new FIleSystemCacheImpl<String, String>(10) {
+            @Override
+            public void put(String key, String value) throws IOException {
+                if ("Slow".equals(value)) {
+                    writing.countDown();
+                    try {
+                        release.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+                super.put(key, value);
+            }
+        };
+        CacheHolder<String, String> holder = CacheHolder.CacheBuilder.get()
+                .addMemoryCacheHolder(new MemoryCacheImpl(1))
+                .addFileSystemCacheHolder(fileSystemCache)
+                .addCacheProcessor(new CacheProcessor(new CacheStrategiesSelector<>("LRU")))
+                .build();
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            holder.put("Key1", "Value1");
+            Future<?> slow = executor.submit(() -> {
+                holder.put("Key2", "Slow");
+                return null;
+            });
+            writing.await();
+            // Запись на диск идет без общей блокировки размещения - другие новые ключи размещаются, не дожидаясь ее
+            executor.submit(() -> {
+                holder.put("Key3", "Value3");
+                return null;
+            }).get(5, TimeUnit.SECONDS);
+            assertEquals("Value3", holder.get("Key3"));
+
+            release.countDown();
+            slow.get(5, TimeUnit.SECONDS);
+            assertEquals("Slow", holder.get("Key2"));
+            assertEquals(3, holder.size());
+        } finally {
+            release.countDown();
+            executor.shutdownNow();
+            holder.clear();
+        }
+    }
+
+    @Test
+    public void binaryValueTest() throws Exception {
+        cacheHolder = CacheHolder.CacheBuilder.get()
+                .addMemoryCacheHolder(new MemoryCacheImpl(1))
+                .addFileSystemCacheHolder(new FIleSystemCacheImpl(2))
+                .addCacheProcessor(new CacheProcessor(new CacheStrategiesSelector<>("LFU")))
+                .build();
+
+        byte[] value = new byte[100000];
+        new Random(1).nextBytes(value);
+        cacheHolder.putBinary("Key1", Channels.newChannel(new ByteArrayInputStream(value)));
+        // Двоичные значения сразу попадают в кэш файловой системы
+        assertTrue(cacheHolder.getFileSystemCache().containsKey("Key1"));
+
+        BinaryValue binary = cacheHolder.getBinary("Key1");
+        assertEquals(value.length, binary.length());
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        binary.transferTo(1000, 500, Channels.newChannel(out));
+        Assert.assertArrayEquals(Arrays.copyOfRange(value, 1000, 1500), out.toByteArray());
+        Assert.assertArrayEquals(value, (byte[]) cacheHolder.get("Key1"));
+
+        cacheHolder.put("Key2", "Value2");
+        Assert.assertNull(cacheHolder.getBinary("Key2"));
+    }
+
+    @Test
+    public void asyncGetTest() throws Exception {
+        cacheHolder.put("Key1", "Value1");
+        cacheHolder.put("Key2", "Value2");
+        // Попадание в оперативную память завершается сразу, исполнитель не нужен
+        CompletableFuture<String> memoryHit = cacheHolder.getAsync("Key1", task -> {
+            throw new IllegalStateException("Memory hit should not be executed asynchronously");
+        });
+        assertTrue(memoryHit.isDone());
+        assertEquals("Value1", memoryHit.get());
+
+        List<Runnable> tasks = new ArrayList<>();
+        CompletableFuture<String> fileSystemHit = cacheHolder.getAsync("Key2", tasks::add);
+        assertFalse(fileSystemHit.isDone());
+        tasks.forEach(Runnable::run);
+        assertEquals("Value2", fileSystemHit.get());
+
+    }
+
+    @Test
+    public void asyncGetLockedTest() throws Exception {
+        CountDownLatch writing = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        // Запись второго значения ключа зависает, удерживая блокировку ключа
+        MemoryCacheImpl<String, String> memory = new MemoryCacheImpl<String, String>(2) {
+            @Override
+            public void put(String key, String value) {
+                super.put(key, value);
+                if ("Value2".equals(value)) {
+                    writing.countDown();
+                    try {
+                        release.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+            }
+        };
+        CacheHolder<String, String> holder = CacheHolder.CacheBuilder.get()
+                .addMemoryCacheHolder(memory)
+                .addFileSystemCacheHolder(new FIleSystemCacheImpl(2))
+                .addCacheProcessor(new CacheProcessor(new CacheStrategiesSelector<>("LRU")))
+                .build();
+        try {
+            holder.put("Key1", "Value1");
+            Thread writer = new Thread(() -> {
+                try {
+                    holder.put("Key1", "Value2");
+                } catch (Exception e) {
+                    throw new IllegalStateException(e);
+                }
+            });
+            writer.start();
+            writing.await();
+            // Попадание в память не ждет блокировку в вызывающем потоке, чтение уходит в исполнитель
+            List<Runnable> tasks = new ArrayList<>();
+            CompletableFuture<String> lockedHit = holder.getAsync("Key1", tasks::add);
+            assertFalse(lockedHit.isDone());
+            release.countDown();
+            writer.join();
+            tasks.forEach(Runnable::run);
+            assertEquals("Value2", lockedHit.get());
+        } finally {
+            release.countDown();
+            holder.clear();
+        }
+    }
+
+    @Test
+    public void asyncGetExpiredTest() throws Exception {
+        cacheHolder.put("Key1", "Value1", 1, TimeUnit.MILLISECONDS);
+        Thread.sleep(5);
+        // Устаревший объект удаляется обычным чтением в исполнителе
+        List<Runnable> tasks = new ArrayList<>();
+        CompletableFuture<String> expired = cacheHolder.getAsync("Key1", tasks::add);
+        assertFalse(expired.isDone());
+        tasks.forEach(Runnable::run);
+        Assert.assertNull(expired.get());
+        assertFalse(cacheHolder.containsKey("Key1"));
+    }
+
+    @Test
+    public void loaderTest() throws Exception {
+        AtomicInteger loads = new AtomicInteger();
+        CountDownLatch release = new CountDownLatch(1);
+        CacheHolder<String, String> loading = CacheHolder.CacheBuilder.get()
+                .addMemoryCacheHolder(new MemoryCacheImpl(2))
+                .addFileSystemCacheHolder(new FIleSystemCacheImpl(2))
+                .addCacheProcessor(new CacheProcessor(new CacheStrategiesSelector<>("LFU")))
+                .setCacheLoader(key -> {
+                    loads.incrementAndGet();
+                    release.await();
+                    return "Loaded" + key;
+                })
+                .build();
+
+        // Одновременные промахи по одному ключу ждут единственной загрузки
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        List<Future<String>> futures = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            futures.add(executor.submit(() -> loading.get("Key1")));
+        }
+        Thread.sleep(100);
+        release.countDown();
+        for (Future<String> future : futures) {
+            assertEquals("LoadedKey1", future.get());
+        }
+        executor.shutdown();
+        assertEquals(1, loads.get());
+
+        // Загруженный объект размещен в кэше как обычный
+        assertTrue(loading.getMemoryCache().containsKey("Key1"));
+        assertEquals("LoadedKey1", loading.get("Key1"));
+        assertEquals(1, loads.get());
+        loading.clear();
+    }
+
+    @Test
+    public void refreshAheadTest() throws Exception {
+        AtomicInteger loads = new AtomicInteger();
+        CacheHolder<String, String> refreshing = CacheHolder.CacheBuilder.get()
+                .addMemoryCacheHolder(new MemoryCacheImpl(2))
+                .addFileSystemCacheHolder(new FIleSystemCacheImpl(2))
+                .addCacheProcessor(new CacheProcessor(new CacheStrategiesSelector<>("LRU")))
+                .setCacheLoader(key -> key.toString() + loads.incrementAndGet())
+                .setRefreshAfterWrite(50, TimeUnit.MILLISECONDS)
+                .setRefreshMinFrequency(3)
+                .build();
+        refreshing.put("Hot", "Hot0");
+        refreshing.put("Cold", "Cold0");
+        refreshing.get("Hot");
+        refreshing.get("Hot");
+        Thread.sleep(100);
+
+        // Устаревший объект возвращается сразу, а перезагружается в фоне
+        assertEquals("Hot0", refreshing.get("Hot"));
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!"Hot1".equals(refreshing.getIfPresent("Hot")) && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals("Hot1", refreshing.getIfPresent("Hot"));
+        assertEquals(1, loads.get());
+
+        // Редко читаемый объект не перезагружается
+        assertEquals("Cold0", refreshing.get("Cold"));
+        Thread.sleep(100);
+        assertEquals("Cold0", refreshing.getMemoryCache().get("Cold"));
+        assertEquals(1, loads.get());
+        refreshing.close();
+        refreshing.clear();
+    }
+
+    @Test
+    public void byteBudgetTest() throws Exception {
+        // Бюджет по весу вмещает четыре маленьких объекта, хотя по количеству поместилось бы десять
+        MemoryCacheImpl<String, String> memoryCache = new MemoryCacheImpl<>(10, 4 * weight("Key0", "Value0"), (key, value) -> weight(key, value));
+        CacheHolder<String, String> weighted = CacheHolder.CacheBuilder.get()
+                .addMemoryCacheHolder(memoryCache)
+                .addFileSystemCacheHolder(new FIleSystemCacheImpl(0))
+                .addCacheProcessor(new CacheProcessor(new CacheStrategiesSelector<>("LRU")))
+                .build();
+        try {
+            for (int i = 0; i < 4; i++) {
+                weighted.put(String.format("Key%1$s", i), String.format("Value%1$s", i));
+            }
+            assertEquals(4, weighted.size());
+            // Большой объект вытесняет сразу несколько самых старых
+            String large = "Value4-Value4-Value4";
+            weighted.put("Key4", large);
+            assertEquals(large, weighted.get("Key4"));
+            assertFalse(weighted.containsKey("Key0"));
+            assertFalse(weighted.containsKey("Key1"));
+            assertTrue(weighted.containsKey("Key3"));
+            assertTrue(memoryCache.getWeight() <= 4 * weight("Key0", "Value0"));
+        } finally {
+            weighted.clear();
+        }
+    }
+
+    @Test
+    public void twoTierByteBudgetTest() throws Exception {
+        // Бюджет памяти - три объекта по десять байт, четвертый объект попадает в файловую систему
+        MemoryCacheImpl<String, String> memoryCache = new MemoryCacheImpl<>(3, 30, (key, value) -> value.length());
+        CacheHolder<String, String> weighted = CacheHolder.CacheBuilder.get()
+                .addMemoryCacheHolder(memoryCache)
+                .addFileSystemCacheHolder(new FIleSystemCacheImpl(2))
+                .addCacheProcessor(new CacheProcessor(new CacheStrategiesSelector<>("LRU")))
+                .build();
+        try {
+            for (String key : Arrays.asList("A", "B", "C", "D")) {
+                weighted.put(key, "0123456789");
+            }
+            assertTrue(weighted.getFileSystemCache().containsKey("D"));
+            weighted.get("A");
+            weighted.get("B");
+            weighted.get("C");
+            // Самый старый ключ D находится в файловой системе, поэтому из памяти вытесняются следующие за ним B и C
+            weighted.put("A", "012345678901234567890123456789");
+            assertFalse(memoryCache.isOverweight());
+            assertEquals(30, memoryCache.getWeight());
+            assertTrue(weighted.containsKey("A"));
+            assertTrue(weighted.containsKey("D"));
+            assertFalse(weighted.containsKey("B"));
+            assertFalse(weighted.containsKey("C"));
+        } finally {
+            weighted.clear();
+        }
+    }
+
+    @Test
+    public void asyncPromotionTest() throws Exception {
+        CacheHolder<String, String> async = CacheHolder.CacheBuilder.get()
+                .addMemoryCacheHolder(new MemoryCacheImpl(1))
+                .addFileSystemCacheHolder(new FIleSystemCacheImpl(1))
+                .addCacheProcessor(new CacheProcessor(new CacheStrategiesSelector<>("LRU")))
+                .setAsyncPromotion(16, 1000)
+                .build();
+        try {
+            async.put("Key1", "Value1");
+            async.put("Key2", "Value2");
+            // Чтение сразу возвращает объект из файловой системы, перенос выполняется в фоне
+            assertEquals("Value2", async.get("Key2"));
+            for (int i = 0; i < 100 && !async.getMemoryCache().containsKey("Key2"); i++) {
+                Thread.sleep(10);
+            }
+            assertTrue(async.getMemoryCache().containsKey("Key2"));
+            assertTrue(async.getFileSystemCache().containsKey("Key1"));
+        } finally {
+            async.clear();
+            async.close();
+        }
+    }
+
+    private static long weight(String key, String value) {
+        return key.length() + value.length();
+    }
 }
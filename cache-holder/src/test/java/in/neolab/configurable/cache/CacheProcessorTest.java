@@ -2,14 +2,19 @@ package in.neolab.configurable.cache;
 
 import in.neolab.configurable.cache.processor.CacheProcessor;
 import in.neolab.configurable.cache.processor.CacheStrategiesSelector;
+import in.neolab.configurable.cache.processor.EvictionPolicies;
+import in.neolab.configurable.cache.processor.LruPolicy;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 
+import java.util.Arrays;
 import java.util.HashSet;
 import java.util.Set;
 
 import static junit.framework.TestCase.assertEquals;
+import static junit.framework.TestCase.assertFalse;
+import static junit.framework.TestCase.assertNull;
 import static junit.framework.TestCase.assertTrue;
 
 public class CacheProcessorTest {
@@ -76,4 +81,65 @@ public class CacheProcessorTest {
         expectedSet.add("Key4");
         assertEquals(expectedSet, cacheHolder.getCacheProcessor().getRarelyUsed());
     }
+
+    @Test
+    public void evictionPolicyTest() throws Exception {
+        // Встроенные стратегии находятся через ServiceLoader, неизвестная заменяется на LRU
+        assertTrue(EvictionPolicies.names().containsAll(Arrays.asList("LRU", "LFU", "TINY_LFU")));
+        assertEquals("LRU", new CacheStrategiesSelector<>("MRU").getSelectedType());
+
+        // Политику можно передать процессору напрямую. Эта политика вытесняет ключи в порядке добавления
+        cacheHolder = CacheHolder.CacheBuilder.get()
+                .addMemoryCacheHolder(new MemoryCacheImpl(1))
+                .addFileSystemCacheHolder(new FIleSystemCacheImpl(1))
+                .addCacheProcessor(new CacheProcessor<>(new LruPolicy<String>() {
+                    @Override
+                    public void onAccess(String key) {
+                    }
+                }))
+                .build();
+        cacheHolder.put("Key1", "Value1");
+        cacheHolder.put("Key2", "Value2");
+        cacheHolder.get("Key1");
+        cacheHolder.put("Key3", "Value3");
+        assertFalse(cacheHolder.containsKey("Key1"));
+        assertTrue(cacheHolder.containsKey("Key2"));
+        assertTrue(cacheHolder.containsKey("Key3"));
+    }
+
+    @Test
+    public void filteredVictimTest() {
+        for (String strategy : Arrays.asList("LRU", "LFU", "TINY_LFU")) {
+            CacheProcessor<String> processor = new CacheProcessor<>(new CacheStrategiesSelector<>(strategy));
+            for (int i = 1; i <= 4; i++) {
+                processor.put("Key" + i);
+            }
+            processor.put("Key1");
+            processor.put("Key2");
+            // Самый редко используемый ключ отклонен фильтром - находится следующий за ним ключ.
+            // W-TinyLFU проверяет основную область раньше окна допуска, где находится новый ключ 4
+            String next = strategy.equals("TINY_LFU") ? "Key1" : "Key4";
+            assertEquals(strategy, "Key3", processor.getRarelyUsed(key -> true));
+            assertEquals(strategy, next, processor.getRarelyUsed(key -> !key.equals("Key3")));
+            assertEquals(strategy, "Key2", processor.getRarelyUsed(key -> key.equals("Key2")));
+            assertNull(strategy, processor.getRarelyUsed(key -> key.equals("Key5")));
+            // Ограниченный поиск проверяет только самые редко используемые ключи
+            assertNull(strategy, processor.getRarelyUsed(key -> key.equals("Key2"), 2));
+        }
+    }
+
+    @Test
+    public void frequencyCountingTest() {
+        CacheProcessor<String> processor = new CacheProcessor<>(new CacheStrategiesSelector<>("LRU"));
+        processor.put("Key1");
+        processor.put("Key1");
+        // Частоты не считаются, пока их не включили
+        assertEquals(0, processor.getFrequency("Key1"));
+        processor.setFrequencyCounting(true);
+        processor.put("Key1");
+        processor.put("Key1");
+        assertEquals(2, processor.getFrequency("Key1"));
+        processor.setFrequencyCounting(false);
+        assertEquals(0, processor.getFrequency("Key1"));
+    }
 }
@@ -0,0 +1,84 @@
+package in.neolab.configurable.cache;
+
+import in.neolab.configurable.cache.processor.CacheProcessor;
+import in.neolab.configurable.cache.processor.CacheStrategiesSelector;
+import in.neolab.configurable.cache.stats.CacheStats;
+import in.neolab.configurable.cache.stats.LatencyHistogram;
+import org.junit.Test;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.openmbean.CompositeData;
+import java.lang.management.ManagementFactory;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class CacheStatsTest {
+
+    @Test
+    public void histogramTest() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        assertEquals(0, histogram.getP99Nanos());
+        for (long i = 1; i <= 100000; i++) {
+            histogram.record(i * 1000);
+        }
+        assertEquals(100000, histogram.getCount());
+        assertEquals(100000000, histogram.getMaxNanos());
+        // Погрешность значения корзины не больше 1/32
+        assertEquals(50000000, histogram.getP50Nanos(), 50000000 / 32.0);
+        assertEquals(99000000, histogram.getP99Nanos(), 99000000 / 32.0);
+        assertEquals(50000500, histogram.getMeanNanos());
+        // Малые значения считаются точно
+        histogram.reset();
+        histogram.record(7);
+        histogram.record(-5);
+        assertEquals(7, histogram.getPercentile(100));
+        assertEquals(0, histogram.getPercentile(50));
+    }
+
+    @Test
+    public void tierStatsTest() throws Exception {
+        CacheHolder<String, String> cache = CacheHolder.CacheBuilder.get()
+                .addMemoryCacheHolder(new MemoryCacheImpl(1))
+                .addFileSystemCacheHolder(new FIleSystemCacheImpl(1))
+                .addCacheProcessor(new CacheProcessor(new CacheStrategiesSelector<>("LRU")))
+                .build();
+        cache.put("Key1", "Value1");
+        cache.put("Key2", "Value2");
+        CacheStats stats = cache.getStats();
+        stats.reset();
+
+        assertEquals("Value1", cache.get("Key1"));
+        // Объект из файловой системы читается чаще объекта в памяти - уровни меняются местами
+        assertEquals("Value2", cache.get("Key2"));
+        assertEquals(null, cache.get("Key3"));
+        cache.put("Key3", "Value3");
+
+        assertEquals(1, stats.getMemoryHits());
+        assertEquals(2, stats.getMemoryMisses());
+        assertEquals(1, stats.getFileSystemHits());
+        assertEquals(1, stats.getFileSystemMisses());
+        assertEquals(2 / 3.0, stats.getHitRatio(), 0.001);
+        assertEquals(1, stats.getPromotions());
+        assertEquals(1, stats.getDemotions());
+        assertEquals(1, stats.getEvictions());
+        assertTrue(stats.getFileSystemBytesRead() > 0);
+        assertTrue(stats.getFileSystemBytesWritten() > 0);
+        assertEquals(2, stats.getFileSystemGetLatency().getCount());
+        assertTrue(stats.getMemoryPutLatency().getCount() > 0);
+
+        // Статистика доступна через JMX
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName name = new ObjectName("in.neolab.configurable.cache:type=CacheStats,name=test");
+        server.registerMBean(stats, name);
+        try {
+            assertEquals(1L, server.getAttribute(name, "MemoryHits"));
+            CompositeData latency = (CompositeData) server.getAttribute(name, "FileSystemGetLatency");
+            assertEquals(2L, latency.get("count"));
+        } finally {
+            server.unregisterMBean(name);
+        }
+        cache.clear();
+    }
+}
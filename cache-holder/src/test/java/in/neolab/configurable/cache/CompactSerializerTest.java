@@ -0,0 +1,92 @@
+package in.neolab.configurable.cache;
+
+import in.neolab.configurable.cache.serialization.CompactSerializer;
+import in.neolab.configurable.cache.serialization.JavaSerializer;
+import in.neolab.configurable.cache.serialization.Serializer;
+import org.junit.Test;
+import org.springframework.boot.json.GsonJsonParser;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class CompactSerializerTest {
+    private Serializer<Serializable> serializer = new CompactSerializer<>();
+
+    @Test
+    public void jsonMapTest() throws Exception {
+        // Карта стандартных коллекций со значениями всех типов JSON
+        Map<String, Object> nested = new LinkedHashMap<>();
+        nested.put("flag", true);
+        nested.put("nothing", null);
+        LinkedHashMap<String, Object> map = new LinkedHashMap<>();
+        map.put("name", "Кэш 😀");
+        map.put("count", 42.0);
+        map.put("items", new ArrayList<>(Arrays.asList("a", 1.5, nested)));
+        byte[] bytes = serializer.serialize(map);
+        assertEquals(map, serializer.deserialize(bytes));
+        assertTrue(bytes.length < new JavaSerializer<Serializable>().serialize(map).length);
+    }
+
+    @Test
+    public void gsonMapTest() throws Exception {
+        // Так выглядит объект, полученный REST-контроллером из JSON: карты Gson - LinkedTreeMap, числа - Double
+        Map<String, Object> map = new GsonJsonParser().parseMap(
+                "{\"name\": \"Кэш\", \"count\": 42, \"items\": [\"a\", 1.5, {\"flag\": true, \"nothing\": null}]}"
+        );
+        byte[] bytes = serializer.serialize((Serializable) map);
+        Serializable restored = serializer.deserialize(bytes);
+        assertEquals(LinkedHashMap.class, restored.getClass());
+        assertEquals(map, restored);
+        assertTrue(bytes.length < new JavaSerializer<Serializable>().serialize((Serializable) map).length);
+    }
+
+    @Test
+    public void primitivesTest() throws Exception {
+        Serializable[] values = {Integer.MIN_VALUE, -1, Long.MAX_VALUE, 3.5f, (short) -7, (byte) 5, 'ж', false, ""};
+        for (Serializable value : values) {
+            assertEquals(value, serializer.deserialize(serializer.serialize(value)));
+        }
+        assertNull(serializer.deserialize(serializer.serialize(null)));
+        assertArrayEquals(new byte[]{1, 2, 3}, (byte[]) serializer.deserialize(serializer.serialize(new byte[]{1, 2, 3})));
+    }
+
+    @Test
+    public void javaFallbackTest() throws Exception {
+        TreeMap<String, Object> map = new TreeMap<>();
+        map.put("b", 2);
+        map.put("a", 1L);
+        Serializable restored = serializer.deserialize(serializer.serialize(map));
+        assertEquals(TreeMap.class, restored.getClass());
+        assertEquals(map, restored);
+    }
+
+    @Test
+    public void collectionFallbackTest() throws Exception {
+        // Коллекции, которые нельзя восстановить как LinkedHashMap или ArrayList без потери поведения, пишет java
+        LinkedList<Object> linkedList = new LinkedList<>(Arrays.asList("a", 1));
+        Properties defaults = new Properties();
+        defaults.setProperty("timeout", "10");
+        Properties properties = new Properties(defaults);
+        properties.setProperty("name", "cache");
+        Serializable[] values = {linkedList, new CopyOnWriteArrayList<>(linkedList), properties};
+        for (Serializable value : values) {
+            Serializable restored = serializer.deserialize(serializer.serialize(value));
+            assertEquals(value.getClass(), restored.getClass());
+            assertEquals(value, restored);
+        }
+        Properties restored = (Properties) serializer.deserialize(serializer.serialize(properties));
+        assertEquals("10", restored.getProperty("timeout"));
+    }
+}
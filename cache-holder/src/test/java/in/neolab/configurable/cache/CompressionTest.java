@@ -0,0 +1,58 @@
+package in.neolab.configurable.cache;
+
+import in.neolab.configurable.cache.compression.Codecs;
+import in.neolab.configurable.cache.compression.CompressingSerializer;
+import in.neolab.configurable.cache.serialization.CompactSerializer;
+import in.neolab.configurable.cache.serialization.Serializer;
+import org.junit.Test;
+
+import java.io.Serializable;
+import java.util.LinkedHashMap;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class CompressionTest {
+    private Serializer<Serializable> plain = new CompactSerializer<>();
+
+    @Test
+    public void lzTest() throws Exception {
+        checkCodec("lz");
+    }
+
+    @Test
+    public void deflateTest() throws Exception {
+        checkCodec("deflate");
+    }
+
+    @Test
+    public void mixedRecordsTest() throws Exception {
+        Serializer<Serializable> lz = new CompressingSerializer<>(plain, Codecs.byName("lz"), 512);
+        Serializer<Serializable> deflate = new CompressingSerializer<>(plain, Codecs.byName("deflate"), 512);
+        // Маленькие объекты не сжимаются, а сжатые другим кодеком читаются по заголовку записи
+        assertEquals("small", lz.deserialize(lz.serialize("small")));
+        LinkedHashMap<String, Object> map = jsonMap();
+        assertEquals(map, lz.deserialize(deflate.serialize(map)));
+        // Случайные данные не сжимаются и сохраняются как есть
+        byte[] random = new byte[2048];
+        new Random(1).nextBytes(random);
+        assertTrue(lz.serialize(random).length <= plain.serialize(random).length + 1);
+    }
+
+    private void checkCodec(String name) throws Exception {
+        Serializer<Serializable> serializer = new CompressingSerializer<>(plain, Codecs.byName(name), 512);
+        LinkedHashMap<String, Object> map = jsonMap();
+        byte[] compressed = serializer.serialize(map);
+        assertTrue(compressed.length * 3 < plain.serialize(map).length);
+        assertEquals(map, serializer.deserialize(compressed));
+    }
+
+    private static LinkedHashMap<String, Object> jsonMap() {
+        LinkedHashMap<String, Object> map = new LinkedHashMap<>();
+        for (int i = 0; i < 100; i++) {
+            map.put(String.format("field%1$s", i), String.format("value of the field number %1$s", i % 7));
+        }
+        return map;
+    }
+}
@@ -0,0 +1,107 @@
+package in.neolab.configurable.cache;
+
+import in.neolab.configurable.cache.expiry.TimerWheel;
+import in.neolab.configurable.cache.processor.CacheProcessor;
+import in.neolab.configurable.cache.processor.CacheStrategiesSelector;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class ExpirationTest {
+
+    @Test
+    public void timerWheelTest() {
+        long start = 0;
+        TimerWheel<String> wheel = new TimerWheel<>(start);
+        wheel.schedule("second", start + TimeUnit.SECONDS.toNanos(3), Long.MAX_VALUE);
+        wheel.schedule("hour", start + TimeUnit.MINUTES.toNanos(90), Long.MAX_VALUE);
+        wheel.schedule("week", start + TimeUnit.DAYS.toNanos(10), Long.MAX_VALUE);
+        assertEquals(Collections.emptyList(), wheel.advance(start + TimeUnit.SECONDS.toNanos(1)));
+        assertEquals(Collections.singletonList("second"), wheel.advance(start + TimeUnit.SECONDS.toNanos(5)));
+        // Ключ переходит из грубого колеса в точное и истекает только когда наступит его время
+        assertEquals(Collections.emptyList(), wheel.advance(start + TimeUnit.MINUTES.toNanos(80)));
+        assertEquals(Collections.singletonList("hour"), wheel.advance(start + TimeUnit.MINUTES.toNanos(91)));
+        assertEquals(Collections.singletonList("week"), wheel.advance(start + TimeUnit.DAYS.toNanos(11)));
+        assertTrue(wheel.removeIfExpired("second", start + TimeUnit.DAYS.toNanos(11)));
+        assertEquals(2, wheel.size());
+    }
+
+    @Test
+    public void extendTest() {
+        TimerWheel<String> wheel = new TimerWheel<>(0);
+        long limit = TimeUnit.SECONDS.toNanos(10);
+        wheel.schedule("key", TimeUnit.SECONDS.toNanos(2), limit);
+        wheel.extend("key", TimeUnit.SECONDS.toNanos(8));
+        assertEquals(Collections.emptyList(), wheel.advance(TimeUnit.SECONDS.toNanos(5)));
+        // Продлить срок можно только до предела
+        wheel.extend("key", TimeUnit.SECONDS.toNanos(30));
+        assertEquals(Arrays.asList("key"), wheel.advance(TimeUnit.SECONDS.toNanos(12)));
+    }
+
+    @Test
+    public void pastTimeTest() {
+        TimerWheel<String> wheel = new TimerWheel<>(0);
+        assertEquals(Collections.emptyList(), wheel.advance(TimeUnit.SECONDS.toNanos(10)));
+        // Ключ, чье время уже прошло, истекает при следующем продвижении, а не через оборот колеса
+        wheel.schedule("key", TimeUnit.SECONDS.toNanos(5), Long.MAX_VALUE);
+        assertEquals(Collections.singletonList("key"), wheel.advance(TimeUnit.SECONDS.toNanos(11)));
+    }
+
+    @Test
+    public void expiredObjectTest() throws Exception {
+        CacheHolder<String, String> cacheHolder = CacheHolder.CacheBuilder.get()
+                .addMemoryCacheHolder(new MemoryCacheImpl(1))
+                .addFileSystemCacheHolder(new FIleSystemCacheImpl(1))
+                .addCacheProcessor(new CacheProcessor(new CacheStrategiesSelector<>("LRU")))
+                .build();
+        try {
+            cacheHolder.put("Key1", "Value1", 50, TimeUnit.MILLISECONDS);
+            cacheHolder.put("Key2", "Value2");
+            assertEquals("Value1", cacheHolder.get("Key1"));
+            Thread.sleep(100);
+            assertNull(cacheHolder.get("Key1"));
+            assertFalse(cacheHolder.containsKey("Key1"));
+            assertEquals("Value2", cacheHolder.get("Key2"));
+        } finally {
+            cacheHolder.clear();
+            cacheHolder.close();
+        }
+    }
+
+    @Test
+    public void refreshTimeToLiveTest() throws Exception {
+        AtomicInteger loads = new AtomicInteger();
+        CacheHolder<String, String> cacheHolder = CacheHolder.CacheBuilder.get()
+                .addMemoryCacheHolder(new MemoryCacheImpl(1))
+                .addFileSystemCacheHolder(new FIleSystemCacheImpl(1))
+                .addCacheProcessor(new CacheProcessor(new CacheStrategiesSelector<>("LRU")))
+                .setCacheLoader(key -> key.toString() + loads.incrementAndGet())
+                .setRefreshAfterWrite(50, TimeUnit.MILLISECONDS)
+                .setRefreshMinFrequency(1)
+                .build();
+        try {
+            cacheHolder.put("Key1", "Value1", 300, TimeUnit.MILLISECONDS);
+            Thread.sleep(100);
+            assertEquals("Value1", cacheHolder.getIfPresent("Key1"));
+            long deadline = System.currentTimeMillis() + 5000;
+            while (!"Key11".equals(cacheHolder.getIfPresent("Key1")) && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            assertEquals("Key11", cacheHolder.getIfPresent("Key1"));
+            // Перезагруженный объект сохраняет срок жизни, заданный при записи, хотя срока по умолчанию нет
+            Thread.sleep(400);
+            assertNull(cacheHolder.getIfPresent("Key1"));
+        } finally {
+            cacheHolder.clear();
+            cacheHolder.close();
+        }
+    }
+}
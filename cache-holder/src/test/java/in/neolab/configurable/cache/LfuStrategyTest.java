@@ -6,6 +6,7 @@ import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
@@ -50,4 +51,26 @@ public class LfuStrategyTest {
         assertFalse(cacheHolder.containsKey("Key3"));
 
     }
+
+    @Test
+    public void testAging() {
+        CacheProcessor<String> processor = new CacheProcessor(new CacheStrategiesSelector<>("LFU"));
+        processor.setAgingPeriod(8);
+        // Ключ 1 был популярен давно
+        for (int i = 0; i < 6; i++) {
+            processor.put("Key1");
+        }
+        processor.put("Key2");
+        assertEquals(6, (long) processor.getPriority("Key1"));
+        assertEquals("Key2", processor.getKeyForReplace());
+        // После восьмого обращения счетчики уменьшаются вдвое
+        processor.put("Key2");
+        assertEquals(3, (long) processor.getPriority("Key1"));
+        assertEquals(1, (long) processor.getPriority("Key2"));
+        // Теперь ключ 2 обгоняет ключ 1 за меньшее число обращений
+        processor.put("Key2");
+        processor.put("Key2");
+        processor.put("Key2");
+        assertEquals("Key1", processor.getKeyForReplace());
+    }
 }
@@ -2,11 +2,20 @@ package in.neolab.configurable.cache;
 
 import in.neolab.configurable.cache.processor.CacheProcessor;
 import in.neolab.configurable.cache.processor.CacheStrategiesSelector;
+import in.neolab.configurable.cache.processor.LruPolicy;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 
 public class LruStrategyTest {
@@ -49,4 +58,35 @@ public class LruStrategyTest {
         assertFalse(cacheHolder.containsKey("Key2"));
     }
 
+    @Test
+    public void testLruPolicy() {
+        LruPolicy<String> policy = new LruPolicy<>();
+        policy.onInsert("Key1");
+        policy.onInsert("Key2");
+        policy.onInsert("Key3");
+        policy.onAccess("Key1");
+        assertEquals(Arrays.asList("Key2", "Key3", "Key1"), keys(policy.victimOrder()));
+        assertEquals("Key2", policy.selectVictim());
+        assertTrue(policy.getPriority("Key1") > policy.getPriority("Key3"));
+
+        policy.onRemove("Key2");
+        assertNull(policy.getPriority("Key2"));
+        assertEquals("Key3", policy.selectVictim());
+        assertEquals(2, policy.size());
+
+        // Приоритеты переносятся в новую политику вместе с порядком ключей
+        Map<String, Long> priorities = policy.getPriorities();
+        LruPolicy<String> restored = new LruPolicy<>();
+        restored.restore("Key3", priorities.get("Key3"));
+        restored.restore("Key1", priorities.get("Key1"));
+        restored.onInsert("Key4");
+        assertEquals(Arrays.asList("Key3", "Key1", "Key4"), keys(restored.victimOrder()));
+        assertTrue(restored.getPriority("Key4") > priorities.get("Key1"));
+    }
+
+    private static List<String> keys(Iterator<String> iterator) {
+        List<String> keys = new ArrayList<>();
+        iterator.forEachRemaining(keys::add);
+        return keys;
+    }
 }
@@ -0,0 +1,171 @@
+package in.neolab.configurable.cache;
+
+import in.neolab.configurable.cache.processor.CacheProcessor;
+import in.neolab.configurable.cache.processor.CacheStrategiesSelector;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.HashMap;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class OffHeapCacheTest {
+    private OffHeapCacheImpl<String, HashMap<String, String>> offHeapCache;
+    private CacheHolder cacheHolder;
+
+    @Before
+    public void init() {
+        offHeapCache = new OffHeapCacheImpl<>(2, 1024 * 1024, 64 * 1024);
+        cacheHolder = CacheHolder.CacheBuilder.get()
+                .addMemoryCacheHolder(offHeapCache)
+                .addFileSystemCacheHolder(new FIleSystemCacheImpl(2))
+                .addCacheProcessor(new CacheProcessor(new CacheStrategiesSelector<>("LRU")))
+                .build();
+    }
+
+    @After
+    public void clearCache() {
+        cacheHolder.clear();
+    }
+
+    @Test
+    public void offHeapTest() throws Exception {
+        HashMap<String, String> value = new HashMap<>();
+        value.put("custom_value1", "value1");
+        cacheHolder.put("Key1", value);
+        assertTrue(offHeapCache.containsKey("Key1"));
+        assertEquals(value, cacheHolder.get("Key1"));
+        long used = offHeapCache.getAllocator().getUsedBytes();
+        assertTrue(used > 0);
+
+        // Перезапись освобождает старый участок памяти
+        value.put("custom_value1", "value2");
+        cacheHolder.put("Key1", value);
+        assertEquals(value, cacheHolder.get("Key1"));
+        assertEquals(used, offHeapCache.getAllocator().getUsedBytes());
+
+        cacheHolder.remove("Key1");
+        assertFalse(offHeapCache.containsKey("Key1"));
+        assertNull(offHeapCache.get("Key1"));
+        assertEquals(0, offHeapCache.getAllocator().getUsedBytes());
+    }
+
+    @Test
+    public void mixedSizesTest() throws Exception {
+        OffHeapCacheImpl<String, String> cache = new OffHeapCacheImpl<>(100, 256 * 1024, 64 * 1024);
+        int[] lengths = {100, 300, 700, 1500, 3000, 6000, 12000, 100, 3000};
+        for (int i = 0; i < lengths.length; i++) {
+            cache.put("Key" + i, value(lengths[i]));
+        }
+        // Объекты разных размеров делят между собой один слаб
+        assertEquals(64 * 1024, cache.getAllocator().getReservedBytes());
+        for (int i = 0; i < lengths.length; i++) {
+            assertEquals(value(lengths[i]), cache.get("Key" + i));
+            cache.remove("Key" + i);
+        }
+        assertEquals(0, cache.getAllocator().getUsedBytes());
+
+        // Освободившиеся участки сливаются обратно в целые слабы, пригодные для объектов любого размера
+        for (int i = 0; i < 4; i++) {
+            cache.put("Key" + i, value(60000));
+        }
+        assertFalse(cache.isNotFull());
+        try {
+            cache.put("Key4", value(100));
+            fail("Off-heap memory should be exhausted");
+        } catch (CacheFullException e) {
+            assertFalse(cache.containsKey("Key4"));
+        }
+        cache.remove("Key0");
+        assertTrue(cache.isNotFull());
+        cache.put("Key4", value(3000));
+        assertEquals(value(3000), cache.get("Key4"));
+    }
+
+    @Test
+    public void largeValuesTest() throws Exception {
+        // Слаб больше бюджета уменьшается до бюджета
+        OffHeapCacheImpl<String, String> small = new OffHeapCacheImpl<>(10, 16 * 1024, 64 * 1024);
+        assertEquals(16 * 1024, small.getAllocator().getSlabSize());
+        small.put("Key1", value(1000));
+        assertEquals(value(1000), small.get("Key1"));
+
+        // Объект больше слаба хранится в отдельном буфере
+        OffHeapCacheImpl<String, String> cache = new OffHeapCacheImpl<>(10, 1024 * 1024, 64 * 1024);
+        cache.put("Key1", value(200000));
+        assertEquals(value(200000), cache.get("Key1"));
+        assertTrue(cache.getAllocator().getUsedBytes() >= 200000);
+        cache.remove("Key1");
+        assertEquals(0, cache.getAllocator().getUsedBytes());
+        assertEquals(0, cache.getAllocator().getReservedBytes());
+    }
+
+    @Test
+    public void fallbackTest() throws Exception {
+        OffHeapCacheImpl<String, String> memory = new OffHeapCacheImpl<>(10, 64 * 1024, 64 * 1024);
+        CacheHolder holder = CacheHolder.CacheBuilder.get()
+                .addMemoryCacheHolder(memory)
+                .addFileSystemCacheHolder(new FIleSystemCacheImpl(10))
+                .addCacheProcessor(new CacheProcessor(new CacheStrategiesSelector<>("LRU")))
+                .build();
+        try {
+            holder.put("Key1", value(20000));
+            holder.put("Key2", value(100));
+            // В памяти еще есть место, но не для объекта такого размера - он уходит в файловую систему
+            assertTrue(memory.isNotFull());
+            holder.put("Key3", value(20000));
+            assertFalse(memory.containsKey("Key3"));
+            assertEquals(value(20000), holder.get("Key3"));
+
+            // Новое значение занимает место старого
+            holder.put("Key2", value(20000));
+            assertTrue(memory.containsKey("Key2"));
+            // А не поместившееся значение переносит ключ в файловую систему
+            holder.put("Key1", value(40000));
+            assertFalse(memory.containsKey("Key1"));
+            assertEquals(value(40000), holder.get("Key1"));
+            assertEquals(value(20000), holder.get("Key2"));
+            assertEquals(3, holder.size());
+        } finally {
+            holder.clear();
+        }
+    }
+
+    @Test
+    public void fullTierPromotionTest() throws Exception {
+        OffHeapCacheImpl<String, String> memory = new OffHeapCacheImpl<>(10, 64 * 1024, 64 * 1024);
+        CacheHolder holder = CacheHolder.CacheBuilder.get()
+                .addMemoryCacheHolder(memory)
+                .addFileSystemCacheHolder(new FIleSystemCacheImpl(10))
+                .addCacheProcessor(new CacheProcessor(new CacheStrategiesSelector<>("LRU")))
+                .build();
+        try {
+            holder.put("Key1", value(20000));
+            holder.put("Key2", value(20000));
+            holder.put("Key3", value(20000));
+            // Память заполнена по объему, поэтому третий объект ушел в файловую систему
+            assertFalse(memory.containsKey("Key3"));
+
+            // Часто читаемый объект занимает место самого старого объекта памяти, хотя свободного места в ней нет
+            assertEquals(value(20000), holder.get("Key3"));
+            assertTrue(memory.containsKey("Key3"));
+            assertFalse(memory.containsKey("Key1"));
+            assertEquals(value(20000), holder.get("Key1"));
+            assertEquals(3, holder.size());
+        } finally {
+            holder.clear();
+        }
+    }
+
+    private static String value(int length) {
+        char[] chars = new char[length];
+        Arrays.fill(chars, 'x');
+        return new String(chars);
+    }
+}
@@ -0,0 +1,288 @@
+package in.neolab.configurable.cache;
+
+import in.neolab.configurable.cache.storage.SegmentLogStorage;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class SegmentLogStorageTest {
+    private File directory = new File("./temp/segment-log-test");
+    private SegmentLogStorage<String> storage;
+
+    @Before
+    public void init() throws Exception {
+        // Маленькие сегменты, чтобы запись быстро переходила в новые файлы
+        storage = new SegmentLogStorage<>(directory, 256, 0.5);
+    }
+
+    @After
+    public void clearStorage() throws Exception {
+        storage.clear();
+        storage.close();
+    }
+
+    @Test
+    public void readWriteTest() throws Exception {
+        storage.write("Key1", bytes("Value1"));
+        storage.write("Key2", bytes("Value2"));
+        storage.write("Key1", bytes("Value3"));
+        assertEquals("Value3", string(storage.read("Key1")));
+        assertEquals("Value2", string(storage.read("Key2")));
+        assertEquals(2, storage.size());
+
+        storage.delete("Key2");
+        assertFalse(storage.contains("Key2"));
+        assertNull(storage.read("Key2"));
+        assertEquals(1, storage.size());
+    }
+
+    @Test
+    public void bulkReadDeleteTest() throws Exception {
+        for (int i = 0; i < 20; i++) {
+            storage.write(String.format("Key%1$s", i), bytes(String.format("Value%1$s", i)));
+        }
+        Map<String, byte[]> values = storage.readAll(Arrays.asList("Key15", "Key2", "Key7", "Key30"));
+        assertEquals(3, values.size());
+        assertEquals("Value15", string(values.get("Key15")));
+        assertEquals("Value2", string(values.get("Key2")));
+
+        storage.deleteAll(Arrays.asList("Key2", "Key7", "Key30"));
+        assertEquals(18, storage.size());
+        assertFalse(storage.contains("Key7"));
+    }
+
+    @Test
+    public void rawValueTest() throws Exception {
+        storage.writeRaw("Key1", bytes("0123456789"));
+        SegmentLogStorage<String>.RawValue raw = storage.openRaw("Key1");
+        assertEquals(10, raw.length());
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        assertEquals(4, raw.transferTo(3, 4, Channels.newChannel(out)));
+        assertEquals("3456", string(out.toByteArray()));
+
+        // После перезаписи ключа открытое значение больше не читается
+        storage.write("Key1", bytes("Value1"));
+        assertNull(storage.openRaw("Key1"));
+        try {
+            raw.read();
+            fail("Replaced record should not be read");
+        } catch (IOException e) {
+            // ожидаемо
+        }
+    }
+
+    @Test
+    public void compactionTest() throws Exception {
+        for (int i = 0; i < 100; i++) {
+            storage.write(String.format("Key%1$s", i % 5), bytes(String.format("Value%1$s", i)));
+        }
+        storage.compact();
+        // Из старых сегментов живые записи перенесены в активный, сами сегменты удалены
+        assertTrue(segmentCount() <= 2);
+        for (int i = 95; i < 100; i++) {
+            assertEquals(String.format("Value%1$s", i), string(storage.read(String.format("Key%1$s", i % 5))));
+        }
+    }
+
+    @Test
+    public void mappedReadTest() throws Exception {
+        storage.setMaxMappedBytes(512);
+        for (int i = 0; i < 40; i++) {
+            storage.write(String.format("Key%1$s", i), bytes(String.format("Value%1$s", i)));
+        }
+        // Закрытые сегменты читаются через отображение в память, активный - обычным чтением
+        for (int j = 0; j < 2; j++) {
+            for (int i = 0; i < 40; i++) {
+                assertEquals(String.format("Value%1$s", i), string(storage.read(String.format("Key%1$s", i))));
+            }
+        }
+    }
+
+    @Test
+    public void mappedCompactionTest() throws Exception {
+        storage.setMaxMappedBytes(4096);
+        for (int i = 0; i < 40; i++) {
+            storage.write(String.format("Key%1$s", i), bytes(String.format("Value%1$s", i)));
+        }
+        // Чтение отображает закрытые сегменты в память
+        for (int i = 0; i < 40; i++) {
+            assertEquals(String.format("Value%1$s", i), string(storage.read(String.format("Key%1$s", i))));
+        }
+        for (int i = 0; i < 40; i++) {
+            if (i % 4 != 0) {
+                storage.write(String.format("Key%1$s", i), bytes(String.format("Updated%1$s", i)));
+            }
+        }
+        storage.compact();
+        // Отображение сжатого сегмента освобождено вместе с удалением его файла
+        assertFalse(new File(directory, "segment-000001.log").exists());
+        for (int j = 0; j < 2; j++) {
+            for (int i = 0; i < 40; i++) {
+                String expected = String.format(i % 4 == 0 ? "Value%1$s" : "Updated%1$s", i);
+                assertEquals(expected, string(storage.read(String.format("Key%1$s", i))));
+            }
+        }
+    }
+
+    @Test
+    public void recoveryTest() throws Exception {
+        File persistentDirectory = new File("./temp/segment-log-recovery-test");
+        SegmentLogStorage<String> crashed = new SegmentLogStorage<>(persistentDirectory, 256, 0.5, true);
+        crashed.clear();
+        for (int i = 0; i < 20; i++) {
+            crashed.write(String.format("Key%1$s", i), bytes(String.format("Value%1$s", i)));
+        }
+        crashed.writeRaw("Raw1", bytes("RawValue1"));
+        crashed.checkpoint();
+        // Записи после контрольной точки восстанавливаются из журнала
+        crashed.write("Key0", bytes("Updated"));
+        crashed.delete("Key1");
+        crashed.write("Key20", bytes("Value20"));
+        crashed.writeRaw("Raw2", bytes("RawValue2"));
+
+        SegmentLogStorage<String> recovered = new SegmentLogStorage<>(persistentDirectory, 256, 0.5, true);
+        try {
+            assertEquals(22, recovered.size());
+            assertEquals("Updated", string(recovered.read("Key0")));
+            assertFalse(recovered.contains("Key1"));
+            assertEquals("Value19", string(recovered.read("Key19")));
+            assertEquals("Value20", string(recovered.read("Key20")));
+            // Признак сырого значения восстанавливается и из контрольной точки, и из журнала
+            assertTrue(recovered.isRaw("Raw1"));
+            assertTrue(recovered.isRaw("Raw2"));
+            assertFalse(recovered.isRaw("Key20"));
+        } finally {
+            crashed.close();
+            recovered.clear();
+            recovered.close();
+        }
+    }
+
+    @Test
+    public void concurrentCompactionTest() throws Exception {
+        File persistentDirectory = new File("./temp/segment-log-compaction-test");
+        SegmentLogStorage<String> persistent = new SegmentLogStorage<>(persistentDirectory, 256, 0.5, true);
+        persistent.clear();
+        AtomicReference<Exception> failure = new AtomicReference<>();
+        Thread writer = new Thread(() -> {
+            try {
+                for (int i = 0; i < 2000; i++) {
+                    persistent.write(String.format("Key%1$s", i % 10), bytes(String.format("Value%1$s", i)));
+                    if (i % 50 == 0) {
+                        persistent.compact();
+                    }
+                }
+            } catch (Exception e) {
+                failure.set(e);
+            }
+        });
+        Thread checkpoints = new Thread(() -> {
+            try {
+                for (int i = 0; i < 200; i++) {
+                    persistent.checkpoint();
+                }
+            } catch (Exception e) {
+                failure.set(e);
+            }
+        });
+        writer.start();
+        checkpoints.start();
+        writer.join(10000);
+        checkpoints.join(10000);
+        // Сжатие и контрольные точки берут блокировки в одном порядке, поэтому не могут ждать друг друга вечно
+        assertFalse(writer.isAlive() || checkpoints.isAlive());
+        assertNull(failure.get());
+        persistent.close();
+
+        SegmentLogStorage<String> recovered = new SegmentLogStorage<>(persistentDirectory, 256, 0.5, true);
+        try {
+            assertEquals(10, recovered.size());
+            for (int i = 1990; i < 2000; i++) {
+                assertEquals(String.format("Value%1$s", i), string(recovered.read(String.format("Key%1$s", i % 10))));
+            }
+        } finally {
+            recovered.clear();
+            recovered.close();
+        }
+    }
+
+    @Test
+    public void compactionWithWritesTest() throws Exception {
+        File persistentDirectory = new File("./temp/segment-log-compaction-writes-test");
+        SegmentLogStorage<String> persistent = new SegmentLogStorage<>(persistentDirectory, 256, 0.5, true);
+        persistent.clear();
+        AtomicReference<Exception> failure = new AtomicReference<>();
+        AtomicBoolean writing = new AtomicBoolean(true);
+        Thread compactor = new Thread(() -> {
+            try {
+                while (writing.get()) {
+                    persistent.compact();
+                }
+            } catch (Exception e) {
+                failure.set(e);
+            }
+        });
+        compactor.start();
+        try {
+            // Записи перезаписываются и удаляются, пока сжатие копирует их из старых сегментов
+            for (int i = 0; i < 2000; i++) {
+                String key = String.format("Key%1$s", i % 10);
+                if (i % 7 == 0) {
+                    persistent.delete(key);
+                } else {
+                    persistent.write(key, bytes(String.format("Value%1$s", i)));
+                }
+            }
+        } finally {
+            writing.set(false);
+            compactor.join(10000);
+        }
+        assertFalse(compactor.isAlive());
+        assertNull(failure.get());
+        persistent.compact();
+        persistent.close();
+
+        SegmentLogStorage<String> recovered = new SegmentLogStorage<>(persistentDirectory, 256, 0.5, true);
+        try {
+            for (int i = 1990; i < 2000; i++) {
+                String key = String.format("Key%1$s", i % 10);
+                if (i % 7 == 0) {
+                    assertFalse(recovered.contains(key));
+                } else {
+                    assertEquals(String.format("Value%1$s", i), string(recovered.read(key)));
+                }
+            }
+        } finally {
+            recovered.clear();
+            recovered.close();
+        }
+    }
+
+    private int segmentCount() {
+        return directory.listFiles((dir, name) -> name.endsWith(".log")).length;
+    }
+
+    private static byte[] bytes(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static String string(byte[] value) {
+        return new String(value, StandardCharsets.UTF_8);
+    }
+}
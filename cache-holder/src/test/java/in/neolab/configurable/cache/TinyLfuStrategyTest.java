@@ -0,0 +1,71 @@
+package in.neolab.configurable.cache;
+
+import in.neolab.configurable.cache.processor.CacheProcessor;
+import in.neolab.configurable.cache.processor.CacheStrategiesSelector;
+import in.neolab.configurable.cache.processor.TinyLfuPolicy;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class TinyLfuStrategyTest {
+    private CacheHolder cacheHolder;
+
+    @Before
+    public void init() {
+        cacheHolder = CacheHolder.CacheBuilder.get()
+                .addMemoryCacheHolder(new MemoryCacheImpl(2))
+                .addFileSystemCacheHolder(new FIleSystemCacheImpl(2))
+                .addCacheProcessor(new CacheProcessor(new CacheStrategiesSelector<>("TINY_LFU")))
+                .build();
+    }
+
+    @After
+    public void clearCache() {
+        cacheHolder.clear();
+    }
+
+    @Test
+    public void testScanResistance() throws Exception {
+        for (int i = 1; i <= 4; i++) {
+            cacheHolder.put(String.format("Key%1$s", i), String.format("Value%1$s", i));
+        }
+        for (int j = 0; j < 3; j++) {
+            for (int i = 1; i <= 3; i++) {
+                cacheHolder.get(String.format("Key%1$s", i));
+            }
+        }
+        // Последовательно добавляем ключи, каждый из которых используется только один раз
+        for (int i = 1; i <= 10; i++) {
+            cacheHolder.put(String.format("Scan%1$s", i), String.format("Scan%1$s", i));
+        }
+
+        // Часто используемые ключи остались в кэше, а из ключей сканирования остался только последний,
+        // который находится в окне допуска
+        assertTrue(cacheHolder.containsKey("Key1"));
+        assertTrue(cacheHolder.containsKey("Key2"));
+        assertTrue(cacheHolder.containsKey("Key3"));
+        assertTrue(cacheHolder.containsKey("Scan10"));
+        assertFalse(cacheHolder.containsKey("Scan1"));
+        assertFalse(cacheHolder.containsKey("Scan9"));
+    }
+
+    @Test
+    public void testCapacity() {
+        TinyLfuPolicy<Integer> policy = new TinyLfuPolicy<>();
+        policy.setCapacity(100);
+        for (int i = 0; i < 100; i++) {
+            policy.onInsert(i);
+        }
+        // Последний ключ остается в окне допуска и набирает частоту, пока кэш еще не заполнен
+        for (int j = 0; j < 4; j++) {
+            policy.onAccess(99);
+        }
+        // Эскиз размечен под емкость кэша заранее и не теряет частоты при первом вытеснении,
+        // поэтому популярный кандидат из окна вытесняет самый старый ключ основной области
+        assertEquals(Integer.valueOf(0), policy.selectVictim());
+    }
+}
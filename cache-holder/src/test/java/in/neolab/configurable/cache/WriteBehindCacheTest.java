@@ -0,0 +1,198 @@
+package in.neolab.configurable.cache;
+
+import in.neolab.configurable.cache.processor.CacheProcessor;
+import in.neolab.configurable.cache.processor.CacheStrategiesSelector;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class WriteBehindCacheTest {
+    private FIleSystemCacheImpl<String, String> fileSystemCache;
+    private WriteBehindCache<String, String> writeBehindCache;
+
+    @Before
+    public void init() {
+        fileSystemCache = new FIleSystemCacheImpl<>(100, new File("./temp/write-behind-test"), 4096);
+        // Маленькая очередь, чтобы запись упиралась в ограничение
+        writeBehindCache = new WriteBehindCache<>(fileSystemCache, 100, 4, 2);
+    }
+
+    @After
+    public void clearCache() throws Exception {
+        writeBehindCache.clear();
+        writeBehindCache.close();
+    }
+
+    @Test
+    public void pendingChangesTest() throws Exception {
+        for (int i = 0; i < 50; i++) {
+            writeBehindCache.put(String.format("Key%1$s", i % 10), String.format("Value%1$s", i));
+            // Еще не записанное изменение уже видно при чтении
+            assertEquals(String.format("Value%1$s", i), writeBehindCache.get(String.format("Key%1$s", i % 10)));
+        }
+        writeBehindCache.remove("Key0");
+        assertFalse(writeBehindCache.containsKey("Key0"));
+        assertEquals(9, writeBehindCache.size());
+
+        writeBehindCache.flush();
+        assertEquals(9, fileSystemCache.size());
+        assertNull(fileSystemCache.get("Key0"));
+        for (int i = 1; i < 10; i++) {
+            assertEquals(String.format("Value%1$s", 40 + i), fileSystemCache.get(String.format("Key%1$s", i)));
+        }
+    }
+
+    @Test
+    public void cacheHolderTest() throws Exception {
+        CacheHolder<String, String> cacheHolder = CacheHolder.CacheBuilder.get()
+                .addMemoryCacheHolder(new MemoryCacheImpl(1))
+                .addFileSystemCacheHolder(writeBehindCache)
+                .addCacheProcessor(new CacheProcessor(new CacheStrategiesSelector<>("LRU")))
+                .build();
+        cacheHolder.put("Key1", "Value1");
+        cacheHolder.put("Key2", "Value2");
+        // Перенос между уровнями работает и с еще не записанными объектами
+        assertEquals("Value2", cacheHolder.get("Key2"));
+        assertEquals("Value2", cacheHolder.get("Key2"));
+        assertTrue(cacheHolder.getMemoryCache().containsKey("Key2"));
+        writeBehindCache.flush();
+        assertEquals("Value1", fileSystemCache.get("Key1"));
+        assertFalse(fileSystemCache.containsKey("Key2"));
+    }
+
+    @Test
+    public void queueFullTest() throws Exception {
+        CountDownLatch writing = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        MemoryCacheImpl<String, String> memory = blockingCache(writing, release);
+        WriteBehindCache<String, String> cache = new WriteBehindCache<>(memory, 100, 1, 1);
+        try {
+            cache.put("Key1", "Blocking");
+            writing.await();
+            cache.put("Key2", "Value2");
+            // Очередь заполнена, а писатель занят - вызывающий поток не ждет его и записывает изменение сам
+            cache.put("Key3", "Value3");
+            assertTrue(memory.containsKey("Key3"));
+            assertFalse(memory.containsKey("Key2"));
+
+            release.countDown();
+            cache.flush();
+            assertEquals("Blocking", memory.get("Key1"));
+            assertEquals("Value2", memory.get("Key2"));
+        } finally {
+            release.countDown();
+            cache.close();
+        }
+    }
+
+    @Test
+    public void pendingWeightTest() throws Exception {
+        CountDownLatch writing = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        MemoryCacheImpl<String, String> memory = blockingCache(writing, release);
+        WriteBehindCache<String, String> cache = new WriteBehindCache<>(memory, 100, 16, 1, (key, value) -> value.length());
+        try {
+            cache.put("Key1", "Blocking");
+            writing.await();
+            // Вес еще не записанных значений учитывается в бюджете кэша
+            cache.put("Key2", value(60));
+            assertFalse(cache.isOverweight());
+            cache.put("Key3", value(60));
+            assertTrue(cache.isOverweight());
+            cache.remove("Key3");
+            assertFalse(cache.isOverweight());
+
+            release.countDown();
+            cache.flush();
+            assertEquals(68, memory.getWeight());
+            // Удаление записанного значения сразу уменьшает вес
+            cache.put("Key2", value(100));
+            assertTrue(cache.isOverweight());
+            cache.remove("Key1");
+            assertFalse(cache.isOverweight());
+        } finally {
+            release.countDown();
+            cache.close();
+        }
+    }
+
+    @Test
+    public void failedWriteTest() throws Exception {
+        AtomicBoolean failing = new AtomicBoolean(true);
+        MemoryCacheImpl<String, String> memory = new MemoryCacheImpl<String, String>(100) {
+            @Override
+            public void putAll(Map<? extends String, ? extends String> values) throws Exception {
+                if (failing.get()) {
+                    throw new IllegalStateException("Disk is not available");
+                }
+                super.putAll(values);
+            }
+
+            @Override
+            public void remove(String key) {
+                if (failing.get()) {
+                    throw new IllegalStateException("Disk is not available");
+                }
+                super.remove(key);
+            }
+        };
+        memory.put("Key2", "Value2");
+        WriteBehindCache<String, String> cache = new WriteBehindCache<>(memory, 100, 16, 1);
+        try {
+            cache.put("Key1", "Value1");
+            cache.remove("Key2");
+            Thread.sleep(200);
+            // Незаписанные изменения не теряются: они видны при чтении и учитываются в размере
+            assertEquals("Value1", cache.get("Key1"));
+            assertNull(cache.get("Key2"));
+            assertEquals(1, cache.size());
+            assertFalse(memory.containsKey("Key1"));
+
+            failing.set(false);
+            cache.flush();
+            assertEquals("Value1", memory.get("Key1"));
+            assertFalse(memory.containsKey("Key2"));
+            assertEquals(1, cache.size());
+        } finally {
+            failing.set(false);
+            cache.close();
+        }
+    }
+
+    /**
+     * Returns memory cache with the budget of 100 characters. Write of the value "Blocking" waits for the release
+     */
+    private static MemoryCacheImpl<String, String> blockingCache(CountDownLatch writing, CountDownLatch release) {
+        return new MemoryCacheImpl<String, String>(100, 100, (key, value) -> value.length()) {
+            @Override
+            public void put(String key, String value) {
+                if ("Blocking".equals(value)) {
+                    writing.countDown();
+                    try {
+                        release.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+                super.put(key, value);
+            }
+        };
+    }
+
+    private static String value(int length) {
+        char[] chars = new char[length];
+        Arrays.fill(chars, 'x');
+        return new String(chars);
+    }
+}
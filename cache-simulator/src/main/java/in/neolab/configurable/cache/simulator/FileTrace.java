@@ -0,0 +1,54 @@
+package in.neolab.configurable.cache.simulator;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Recorded trace. Every line of the file is one access, its first word is the key.
+ * Keys are numbered in order of their first access
+ * @author Nikita Parygin
+ */
+class FileTrace implements Trace {
+
+    private final File file;
+    private final int events;
+    private final long offset;
+
+    FileTrace(File file, int events, long offset) {
+        this.file = file;
+        this.events = events;
+        this.offset = offset;
+    }
+
+    @Override
+    public long[] generate() throws IOException {
+        Map<String, Long> numbers = new HashMap<>();
+        long[] trace = new long[1024];
+        int count = 0;
+        try (BufferedReader reader = Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8)) {
+            String line;
+            while (count < events && (line = reader.readLine()) != null) {
+                line = line.trim();
+                if (line.isEmpty()) {
+                    continue;
+                }
+                int end = 0;
+                while (end < line.length() && !Character.isWhitespace(line.charAt(end))) {
+                    end++;
+                }
+                Long number = numbers.computeIfAbsent(line.substring(0, end), key -> offset + numbers.size());
+                if (count == trace.length) {
+                    trace = Arrays.copyOf(trace, trace.length * 2);
+                }
+                trace[count++] = number;
+            }
+        }
+        return count == trace.length ? trace : Arrays.copyOf(trace, count);
+    }
+}
@@ -0,0 +1,27 @@
+package in.neolab.configurable.cache.simulator;
+
+/**
+ * Trace accessing keys in order again and again. A loop of the single pass is a scan
+ * @author Nikita Parygin
+ */
+class LoopTrace implements Trace {
+
+    private final int keys;
+    private final int events;
+    private final long offset;
+
+    LoopTrace(int keys, int events, long offset) {
+        this.keys = keys;
+        this.events = events;
+        this.offset = offset;
+    }
+
+    @Override
+    public long[] generate() {
+        long[] trace = new long[events];
+        for (int i = 0; i < events; i++) {
+            trace[i] = offset + i % keys;
+        }
+        return trace;
+    }
+}
@@ -0,0 +1,44 @@
+package in.neolab.configurable.cache.simulator;
+
+import java.util.Random;
+
+/**
+ * Trace where the specified share of accesses goes to the hot set of keys and the rest goes to any key.
+ * The hot set moves to the next keys after every shift period, so the cache has to forget the old hot keys
+ * @author Nikita Parygin
+ */
+class ShiftingHotSetTrace implements Trace {
+
+    private final int keys;
+    private final int hotKeys;
+    private final double hotShare;
+    private final int shiftPeriod;
+    private final int events;
+    private final long offset;
+    private final long seed;
+
+    ShiftingHotSetTrace(int keys, int hotKeys, double hotShare, int shiftPeriod, int events, long offset, long seed) {
+        this.keys = keys;
+        this.hotKeys = hotKeys;
+        this.hotShare = hotShare;
+        this.shiftPeriod = shiftPeriod;
+        this.events = events;
+        this.offset = offset;
+        this.seed = seed;
+    }
+
+    @Override
+    public long[] generate() {
+        Random random = new Random(seed);
+        long[] trace = new long[events];
+        for (int i = 0; i < events; i++) {
+            if (random.nextDouble() < hotShare) {
+                long hotStart = (long) (i / shiftPeriod) * hotKeys;
+                trace[i] = offset + (hotStart + random.nextInt(hotKeys)) % keys;
+            } else {
+                trace[i] = offset + random.nextInt(keys);
+            }
+        }
+        return trace;
+    }
+}
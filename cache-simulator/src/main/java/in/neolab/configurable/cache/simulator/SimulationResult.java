@@ -0,0 +1,104 @@
+package in.neolab.configurable.cache.simulator;
+
+import java.util.Locale;
+
+/**
+ * Result of the single trace replay: hit ratios of the tiers, transfers between tiers
+ * and simulated disk input and output
+ * @author Nikita Parygin
+ */
+class SimulationResult {
+
+    private static final String ROW_FORMAT = "%-9s %12d %12d %10.4f %10.4f %10.4f %11d %11d %11d %11d %11d %13d %13d %12.0f";
+    private static final String HEADER_FORMAT = "%-9s %12s %12s %10s %10s %10s %11s %11s %11s %11s %11s %13s %13s %12s";
+    private static final String[] COLUMNS = {
+            "strategy", "memory-size", "fs-size", "memory-hit", "fs-hit", "hit",
+            "promotions", "demotions", "evictions", "disk-reads", "disk-writes", "bytes-read", "bytes-written", "events/sec"
+    };
+
+    private final String strategy;
+    private final int memorySize;
+    private final int fileSystemSize;
+    private final long events;
+    private final long memoryHits;
+    private final long fileSystemHits;
+    private final long promotions;
+    private final long demotions;
+    private final long evictions;
+    private final long diskReads;
+    private final long diskWrites;
+    private final long bytesRead;
+    private final long bytesWritten;
+    private final long elapsedNanos;
+
+    SimulationResult(String strategy, int memorySize, int fileSystemSize, long events,
+                     TierModel model, long elapsedNanos) {
+        this.strategy = strategy;
+        this.memorySize = memorySize;
+        this.fileSystemSize = fileSystemSize;
+        this.events = events;
+        this.memoryHits = model.getMemoryHits();
+        this.fileSystemHits = model.getFileSystemHits();
+        this.promotions = model.getPromotions();
+        this.demotions = model.getDemotions();
+        this.evictions = model.getEvictions();
+        this.diskReads = model.getDiskReads();
+        this.diskWrites = model.getDiskWrites();
+        this.bytesRead = model.getBytesRead();
+        this.bytesWritten = model.getBytesWritten();
+        this.elapsedNanos = elapsedNanos;
+    }
+
+    /**
+     * Returns share of accesses served by the memory cache
+     */
+    double getMemoryHitRatio() {
+        return events == 0 ? 0 : (double) memoryHits / events;
+    }
+
+    /**
+     * Returns share of accesses served by the file system cache
+     */
+    double getFileSystemHitRatio() {
+        return events == 0 ? 0 : (double) fileSystemHits / events;
+    }
+
+    double getHitRatio() {
+        return getMemoryHitRatio() + getFileSystemHitRatio();
+    }
+
+    double getEventsPerSecond() {
+        return elapsedNanos == 0 ? 0 : events * 1e9 / elapsedNanos;
+    }
+
+    static String header() {
+        return String.format(Locale.ROOT, HEADER_FORMAT, (Object[]) COLUMNS);
+    }
+
+    String toRow() {
+        return String.format(Locale.ROOT, ROW_FORMAT, values());
+    }
+
+    static String csvHeader() {
+        return String.join(",", COLUMNS);
+    }
+
+    String toCsv() {
+        Object[] values = values();
+        StringBuilder row = new StringBuilder();
+        for (int i = 0; i < values.length; i++) {
+            if (i > 0) {
+                row.append(',');
+            }
+            row.append(values[i] instanceof Double ? String.format(Locale.ROOT, "%.6f", values[i]) : values[i]);
+        }
+        return row.toString();
+    }
+
+    private Object[] values() {
+        return new Object[]{
+                strategy, memorySize, fileSystemSize, getMemoryHitRatio(), getFileSystemHitRatio(), getHitRatio(),
+                promotions, demotions, evictions, diskReads, diskWrites, bytesRead, bytesWritten, getEventsPerSecond()
+        };
+    }
+}
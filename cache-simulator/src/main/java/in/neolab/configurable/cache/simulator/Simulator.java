@@ -0,0 +1,151 @@
+package in.neolab.configurable.cache.simulator;
+
+import in.neolab.configurable.cache.CacheHolder;
+import in.neolab.configurable.cache.processor.CacheStrategiesSelector;
+
+import com.typesafe.config.Config;
+import com.typesafe.config.ConfigFactory;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Trace-driven simulator of the cache holder. Replays the trace for every combination of tier sizes and strategies
+ * and reports hit ratio of every tier, transfers between tiers and disk input and output of the file system cache.
+ * The replay drives the real extrusion strategy through the {@link TierModel}, which follows the placement rules
+ * of the {@link CacheHolder} without its values, locks and logging, so a single replay runs at millions of events per second.
+ * A miss puts the key into the cache, as the read-through cache does.<br>
+ * Run: <code>java -jar cache-simulator.jar simulator.conf</code>. Properties of the <code>simulator</code> section:<br>
+ *     <ul>
+ *         <li><code>trace</code> - list of trace phases, see {@link Trace#fromConfig(Config, long)}</li>
+ *         <li><code>seed</code> - seed of the generated phases</li>
+ *         <li><code>memory-sizes</code> - simulated sizes of the memory cache</li>
+ *         <li><code>file-system-sizes</code> - simulated sizes of the file system cache</li>
+ *         <li><code>strategies</code> - simulated extrusion strategies</li>
+ *         <li><code>value-size</code> - size of every object in bytes, used for counting disk input and output</li>
+ *         <li><code>threads</code> - number of combinations simulated at once</li>
+ *         <li><code>report</code> - optional CSV file the results are written to</li>
+ *     </ul>
+ * @author Nikita Parygin
+ */
+public class Simulator {
+
+    /**
+     * Logger
+     */
+    private static Logger LOGGER = LoggerFactory.getLogger(Simulator.class);
+
+    private static final int DEFAULT_VALUE_SIZE = 1024;
+
+    /**
+     * Configuration of the simulation
+     */
+    private final Config config;
+
+    /**
+     * The Constructor
+     * @param config <code>simulator</code> section of the configuration
+     */
+    public Simulator(Config config) {
+        this.config = config;
+    }
+
+    /**
+     * Runs the simulation
+     * @param args path to the configuration file
+     * @throws Exception if any error is occurred
+     */
+    public static void main(String[] args) throws Exception {
+        if (args.length < 1) {
+            System.err.println("Usage: java -jar cache-simulator.jar <simulator.conf>");
+            System.exit(1);
+        }
+        Config config = ConfigFactory.parseFile(new File(args[0])).getConfig("simulator");
+        new Simulator(config).run();
+    }
+
+    /**
+     * Generates the trace, replays it for every combination of tier sizes and strategies and prints the results
+     * @return results in order of the strategies, memory sizes and file system sizes
+     * @throws Exception if any error is occurred
+     */
+    public List<SimulationResult> run() throws Exception {
+        long seed = config.hasPath("seed") ? config.getLong("seed") : 1;
+        List<Trace> phases = new ArrayList<>();
+        for (Config phase : config.getConfigList("trace")) {
+            // Каждая фаза получает свое зерно, чтобы одинаковые фазы не повторяли друг друга
+            phases.add(Trace.fromConfig(phase, seed++));
+        }
+        long[] keys = Trace.concat(phases).generate();
+        System.out.printf("Trace of %d events%n", keys.length);
+
+        int valueSize = config.hasPath("value-size") ? config.getInt("value-size") : DEFAULT_VALUE_SIZE;
+        int threads = config.hasPath("threads") ? config.getInt("threads") : Runtime.getRuntime().availableProcessors();
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        List<Future<SimulationResult>> futures = new ArrayList<>();
+        try {
+            for (String strategy : config.getStringList("strategies")) {
+                for (int memorySize : config.getIntList("memory-sizes")) {
+                    for (int fileSystemSize : config.getIntList("file-system-sizes")) {
+                        futures.add(executor.submit(() -> simulate(keys, strategy, memorySize, fileSystemSize, valueSize)));
+                    }
+                }
+            }
+            System.out.println(SimulationResult.header());
+            List<SimulationResult> results = new ArrayList<>(futures.size());
+            for (Future<SimulationResult> future : futures) {
+                SimulationResult result = future.get();
+                System.out.println(result.toRow());
+                results.add(result);
+            }
+            if (config.hasPath("report")) {
+                writeReport(new File(config.getString("report")), results);
+            }
+            return results;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Replays the trace through the model of the tiers with the specified sizes and strategy
+     * @param keys trace
+     * @param strategy extrusion strategy
+     * @param memorySize size of the memory cache
+     * @param fileSystemSize size of the file system cache
+     * @param valueSize size of every object in bytes
+     * @return result of the replay
+     */
+    static SimulationResult simulate(long[] keys, String strategy, int memorySize, int fileSystemSize, int valueSize) {
+        TierModel model = new TierModel(
+                new CacheStrategiesSelector<Long>(strategy).createPolicy(), memorySize, fileSystemSize, valueSize);
+        long start = System.nanoTime();
+        for (long key : keys) {
+            model.access(key);
+        }
+        long elapsed = System.nanoTime() - start;
+        LOGGER.debug("Simulation of {} with memory size {} and file system size {} took {} ms",
+                strategy, memorySize, fileSystemSize, elapsed / 1000000);
+        return new SimulationResult(strategy, memorySize, fileSystemSize, keys.length, model, elapsed);
+    }
+
+    private static void writeReport(File file, List<SimulationResult> results) throws IOException {
+        try (PrintWriter writer = new PrintWriter(file, StandardCharsets.UTF_8.name())) {
+            writer.println(SimulationResult.csvHeader());
+            for (SimulationResult result : results) {
+                writer.println(result.toCsv());
+            }
+        }
+        System.out.printf("Results are written to %s%n", file.getAbsolutePath());
+    }
+}
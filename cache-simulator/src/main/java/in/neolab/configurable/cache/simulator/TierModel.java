@@ -0,0 +1,168 @@
+package in.neolab.configurable.cache.simulator;
+
+import in.neolab.configurable.cache.CacheHolder;
+import in.neolab.configurable.cache.processor.EvictionPolicy;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * Model of the two tiers of the {@link CacheHolder}. Places, promotes and evicts keys by the same rules
+ * as the cache holder and drives the real {@link EvictionPolicy}, but keeps only the tier of every key
+ * and counts disk reads and writes instead of performing them. It has no locks, no logging and no values,
+ * so the replay measures the strategy rather than the overhead of the cache holder.
+ * Not thread-safe: every replay uses its own model
+ * @author Nikita Parygin
+ */
+class TierModel {
+
+    /**
+     * Extrusion strategy
+     */
+    private final EvictionPolicy<Long> policy;
+
+    /**
+     * Tier of every cached key: <code>true</code> - memory cache, <code>false</code> - file system cache
+     */
+    private final Map<Long, Boolean> tiers = new HashMap<>();
+
+    private final int memorySize;
+    private final int fileSystemSize;
+    private final int valueSize;
+
+    private int memoryCount;
+    private int fileSystemCount;
+
+    private long memoryHits;
+    private long fileSystemHits;
+    private long promotions;
+    private long demotions;
+    private long evictions;
+    private long diskReads;
+    private long diskWrites;
+
+    /**
+     * The Constructor
+     * @param policy extrusion strategy. Shouldn't be shared with other models
+     * @param memorySize maximum count of objects in the memory cache
+     * @param fileSystemSize maximum count of objects in the file system cache
+     * @param valueSize size of every object in bytes
+     */
+    TierModel(EvictionPolicy<Long> policy, int memorySize, int fileSystemSize, int valueSize) {
+        this.policy = policy;
+        this.memorySize = memorySize;
+        this.fileSystemSize = fileSystemSize;
+        this.valueSize = valueSize;
+        // Как и кэш, собранный из конфигурации, стратегия заранее знает емкость обоих уровней
+        policy.setCapacity((long) memorySize + fileSystemSize);
+    }
+
+    /**
+     * Reads the key through the cache: a miss puts the key into the cache, as the read-through cache does
+     * @param key key
+     */
+    void access(long key) {
+        Long boxed = key;
+        Boolean inMemory = tiers.get(boxed);
+        if (inMemory == null) {
+            place(boxed);
+        } else if (inMemory) {
+            memoryHits++;
+            policy.onAccess(boxed);
+        } else {
+            fileSystemHits++;
+            diskReads++;
+            policy.onAccess(boxed);
+            promote(boxed);
+        }
+    }
+
+    private void place(Long key) {
+        if (memoryCount < memorySize) {
+            tiers.put(key, Boolean.TRUE);
+            memoryCount++;
+        } else if (fileSystemCount < fileSystemSize) {
+            tiers.put(key, Boolean.FALSE);
+            fileSystemCount++;
+            diskWrites++;
+        } else {
+            Long victim = policy.selectVictim();
+            if (victim == null) {
+                // Оба уровня нулевого размера - объект не помещается никуда
+                return;
+            }
+            // Новый объект занимает место вытесненного на том же уровне
+            Boolean inMemory = tiers.remove(victim);
+            policy.onEvict(victim);
+            evictions++;
+            tiers.put(key, inMemory);
+            if (!inMemory) {
+                diskWrites++;
+            }
+        }
+        policy.onInsert(key);
+    }
+
+    /**
+     * Swaps the key of the file system cache with the rarest used key of the memory cache,
+     * if the priority of the first one is higher. Candidates are limited as in {@link CacheHolder}
+     */
+    private void promote(Long key) {
+        Long memoryKey = null;
+        Iterator<Long> keys = policy.victimOrder();
+        for (int i = 0; i < CacheHolder.PROMOTION_CANDIDATES && keys.hasNext(); i++) {
+            Long candidate = keys.next();
+            if (Boolean.TRUE.equals(tiers.get(candidate))) {
+                memoryKey = candidate;
+                break;
+            }
+        }
+        if (memoryKey == null || policy.getPriority(key) <= policy.getPriority(memoryKey)) {
+            return;
+        }
+        tiers.put(key, Boolean.TRUE);
+        tiers.put(memoryKey, Boolean.FALSE);
+        // Перенос заново читает объект с диска и записывает туда вытесненный из памяти
+        diskReads++;
+        diskWrites++;
+        promotions++;
+        demotions++;
+    }
+
+    long getMemoryHits() {
+        return memoryHits;
+    }
+
+    long getFileSystemHits() {
+        return fileSystemHits;
+    }
+
+    long getPromotions() {
+        return promotions;
+    }
+
+    long getDemotions() {
+        return demotions;
+    }
+
+    long getEvictions() {
+        return evictions;
+    }
+
+    long getDiskReads() {
+        return diskReads;
+    }
+
+    long getDiskWrites() {
+        return diskWrites;
+    }
+
+    long getBytesRead() {
+        return diskReads * valueSize;
+    }
+
+    long getBytesWritten() {
+        return diskWrites * valueSize;
+    }
+}
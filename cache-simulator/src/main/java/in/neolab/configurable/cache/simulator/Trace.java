@@ -0,0 +1,91 @@
+package in.neolab.configurable.cache.simulator;
+
+import com.typesafe.config.Config;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Sequence of accessed keys replayed by the {@link Simulator}
+ * @author Nikita Parygin
+ */
+interface Trace {
+
+    /**
+     * Generates keys of the trace
+     * @return accessed keys in the order of access
+     * @throws IOException if the recorded trace can't be read
+     */
+    long[] generate() throws IOException;
+
+    /**
+     * Creates trace from its configuration. Supported types:<br>
+     *     <ul>
+     *         <li><code>zipf</code> - keys are accessed with Zipf distributed popularity</li>
+     *         <li><code>scan</code> - every key is accessed once in order</li>
+     *         <li><code>loop</code> - keys are accessed in order again and again</li>
+     *         <li><code>shifting</code> - most accesses go to the hot set of keys that moves over time</li>
+     *         <li><code>file</code> - keys are read from the recorded key log</li>
+     *     </ul>
+     * Generated keys start at the <code>offset</code> property, so phases of the trace may use different keys
+     * @param config trace configuration
+     * @param seed seed of the random generators
+     * @return {@link Trace} object
+     */
+    static Trace fromConfig(Config config, long seed) {
+        long offset = config.hasPath("offset") ? config.getLong("offset") : 0;
+        String type = config.getString("type");
+        switch (type) {
+            case "zipf":
+                return new ZipfTrace(config.getInt("keys"), config.getDouble("exponent"), config.getInt("events"), offset, seed);
+            case "scan":
+                return new LoopTrace(config.getInt("keys"), config.getInt("keys"), offset);
+            case "loop":
+                return new LoopTrace(config.getInt("keys"), config.getInt("events"), offset);
+            case "shifting":
+                return new ShiftingHotSetTrace(
+                        config.getInt("keys"),
+                        config.getInt("hot-keys"),
+                        config.getDouble("hot-share"),
+                        config.getInt("shift-period"),
+                        config.getInt("events"),
+                        offset,
+                        seed
+                );
+            case "file":
+                return new FileTrace(
+                        new File(config.getString("path")),
+                        config.hasPath("events") ? config.getInt("events") : Integer.MAX_VALUE,
+                        offset
+                );
+            default:
+                throw new IllegalArgumentException("Unknown trace type " + type);
+        }
+    }
+
+    /**
+     * Joins phases into one trace
+     * @param phases traces replayed one after another
+     * @return {@link Trace} object
+     */
+    static Trace concat(List<Trace> phases) {
+        return () -> {
+            List<long[]> parts = new ArrayList<>(phases.size());
+            int length = 0;
+            for (Trace phase : phases) {
+                long[] part = phase.generate();
+                parts.add(part);
+                length += part.length;
+            }
+            long[] keys = new long[length];
+            int position = 0;
+            for (long[] part : parts) {
+                System.arraycopy(part, 0, keys, position, part.length);
+                position += part.length;
+            }
+            return keys;
+        };
+    }
+}
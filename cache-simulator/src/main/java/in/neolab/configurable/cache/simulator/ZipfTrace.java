@@ -0,0 +1,50 @@
+package in.neolab.configurable.cache.simulator;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Trace of keys with Zipf distributed popularity: the key of rank <code>i</code> is accessed
+ * <code>1 / i^exponent</code> times as often as the most popular one. Popular keys are spread over the key range
+ * @author Nikita Parygin
+ */
+class ZipfTrace implements Trace {
+
+    private final int keys;
+    private final double exponent;
+    private final int events;
+    private final long offset;
+    private final long seed;
+
+    ZipfTrace(int keys, double exponent, int events, long offset, long seed) {
+        this.keys = keys;
+        this.exponent = exponent;
+        this.events = events;
+        this.offset = offset;
+        this.seed = seed;
+    }
+
+    @Override
+    public long[] generate() {
+        double[] cumulative = new double[keys];
+        double sum = 0;
+        for (int i = 0; i < keys; i++) {
+            sum += 1 / Math.pow(i + 1, exponent);
+            cumulative[i] = sum;
+        }
+        Random random = new Random(seed);
+        int[] keyOfRank = new int[keys];
+        for (int i = 0; i < keys; i++) {
+            int j = random.nextInt(i + 1);
+            keyOfRank[i] = keyOfRank[j];
+            keyOfRank[j] = i;
+        }
+        long[] trace = new long[events];
+        for (int i = 0; i < events; i++) {
+            int index = Arrays.binarySearch(cumulative, random.nextDouble() * sum);
+            int rank = index >= 0 ? index : Math.min(-index - 1, keys - 1);
+            trace[i] = offset + keyOfRank[rank];
+        }
+        return trace;
+    }
+}
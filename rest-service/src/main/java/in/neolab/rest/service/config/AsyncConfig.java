@@ -0,0 +1,66 @@
+package in.neolab.rest.service.config;
+
+import in.neolab.configurable.cache.config.SystemHolder;
+
+import com.typesafe.config.Config;
+
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.task.AsyncTaskExecutor;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.web.servlet.config.annotation.AsyncSupportConfigurer;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurerAdapter;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Config of the asynchronous request processing.<br>
+ * Streamed response bodies are written by the bounded executor instead of a new thread per response,
+ * and requests that aren't completed in time are finished with an error
+ * @author Nikita Parygin
+ */
+@Configuration
+public class AsyncConfig extends WebMvcConfigurerAdapter {
+
+    /**
+     * Default number of threads writing streamed responses
+     */
+    private static final int DEFAULT_STREAM_THREADS = 16;
+
+    /**
+     * Default maximum number of streamed responses waiting for the threads
+     */
+    private static final int DEFAULT_STREAM_QUEUE_SIZE = 1000;
+
+    /**
+     * Default timeout of the asynchronous request in milliseconds
+     */
+    private static final long DEFAULT_ASYNC_TIMEOUT = 30000;
+
+    /**
+     * Returns executor writing streamed response bodies
+     * @return executor
+     */
+    @Bean
+    public AsyncTaskExecutor streamExecutor() {
+        Config config = SystemHolder.getConfig();
+        int threads = config != null && config.hasPath("rest.stream-threads")
+                ? config.getInt("rest.stream-threads") : DEFAULT_STREAM_THREADS;
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(threads);
+        executor.setMaxPoolSize(threads);
+        executor.setQueueCapacity(config != null && config.hasPath("rest.stream-queue-size")
+                ? config.getInt("rest.stream-queue-size") : DEFAULT_STREAM_QUEUE_SIZE);
+        executor.setThreadNamePrefix("cache-stream-");
+        executor.setDaemon(true);
+        return executor;
+    }
+
+    @Override
+    public void configureAsyncSupport(AsyncSupportConfigurer configurer) {
+        Config config = SystemHolder.getConfig();
+        configurer.setTaskExecutor(streamExecutor());
+        configurer.setDefaultTimeout(config != null && config.hasPath("rest.async-timeout")
+                ? config.getDuration("rest.async-timeout", TimeUnit.MILLISECONDS) : DEFAULT_ASYNC_TIMEOUT);
+    }
+}
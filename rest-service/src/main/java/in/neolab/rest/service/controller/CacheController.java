@@ -1,26 +1,66 @@
 package in.neolab.rest.service.controller;
 
+import in.neolab.configurable.cache.BinaryValue;
 import in.neolab.configurable.cache.CacheHolder;
 import in.neolab.configurable.cache.config.SystemHolder;
 
+import com.google.gson.Gson;
+import com.google.gson.stream.JsonWriter;
+import com.typesafe.config.Config;
+
 import io.swagger.annotations.Api;
 import io.swagger.annotations.ApiOperation;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.boot.json.GsonJsonParser;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.ExceptionHandler;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestMethod;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.management.JMException;
+import javax.management.ObjectName;
+import javax.servlet.http.HttpServletRequest;
 
 import java.io.IOException;
+import java.io.OutputStreamWriter;
 import java.io.Serializable;
+import java.lang.management.ManagementFactory;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
- * REST-controller providing functionality to use {@link in.neolab.configurable.cache.Cache} interface methods
+ * REST-controller providing functionality to use {@link in.neolab.configurable.cache.Cache} interface methods.<br>
+ * Requests are completed asynchronously: operations that may touch the file system are executed by the bounded
+ * I/O executor, so servlet threads don't wait for the disk. Reads of the memory cache complete on the servlet thread.
+ * When the I/O executor queue is full, requests are rejected with <code>503 Service Unavailable</code>
  * @author Nikita Parygin
  */
 @RestController
@@ -33,80 +73,294 @@ public class CacheController<K extends Serializable, V extends Serializable> {
      */
     private static Logger LOGGER = LoggerFactory.getLogger(CacheController.class);
 
+    /**
+     * Default number of I/O threads
+     */
+    private static final int DEFAULT_IO_THREADS = 16;
+
+    /**
+     * Default maximum number of requests waiting for the I/O threads
+     */
+    private static final int DEFAULT_IO_QUEUE_SIZE = 10000;
+
     /**
      * {@link CacheHolder} instance
      */
     private CacheHolder cache = CacheHolder.CacheBuilder.get().buildFromConfig(SystemHolder.getConfig());
 
+    /**
+     * Executor of the operations that may touch the file system
+     */
+    private final ExecutorService ioExecutor = createIoExecutor(SystemHolder.getConfig());
+
+    /**
+     * Name of the cache statistics MBean
+     */
+    private static final String STATS_OBJECT_NAME = "in.neolab.configurable.cache:type=CacheStats";
+
+    /**
+     * Serializer of batch responses
+     */
+    private final Gson gson = new Gson();
+
     /**
      * Adding an item to the cache
      * @param key item key used for searching elements in cache
      * @param value item value
-     * @throws Exception if any error is occurred
+     * @param ttl time to live of the item in seconds. The item doesn't expire if not set
+     * @return future completed when the item is cached
      */
     @ApiOperation(value = "Put key-value pair into cache", tags = {"Cache API"})
     @RequestMapping(value = "/put", method = RequestMethod.POST)
-    public void put(@RequestParam(value = "key") final K key, @RequestBody final Object value) throws Exception {
-        try {
-            GsonJsonParser gson = new GsonJsonParser();
-            cache.put(key, (Serializable) gson.parseMap(String.valueOf(value)));
-        } catch (Exception e) {
-            LOGGER.error("Failed to put received value into cache", e);
-            throw e;
-        }
+    public CompletableFuture<Void> put(@RequestParam(value = "key") final K key, @RequestBody final Object value,
+                                       @RequestParam(value = "ttl", required = false) final Long ttl) {
+        return submit(() -> {
+            try {
+                Serializable parsed = parse(value);
+                if (ttl != null) {
+                    cache.put(key, parsed, ttl, TimeUnit.SECONDS);
+                } else {
+                    cache.put(key, parsed);
+                }
+                return null;
+            } catch (Exception e) {
+                LOGGER.error("Failed to put received value into cache", e);
+                throw e;
+            }
+        });
     }
 
     /**
-     * Retrieving an item from the cache by key
+     * Retrieving an item from the cache by key. Memory cache hits complete on the servlet thread
      * @param key item key used for searching elements in cache
-     * @return item value received from cache
-     * @throws Exception if any error is occurred
+     * @return future of the item value received from cache
      */
     @ApiOperation(value = "Get value from cache by key", tags = {"Cache API"})
     @RequestMapping(value = "/get/{key}", method= RequestMethod.GET)
-    public Object get(@PathVariable("key") K key) throws Exception {
+    public CompletableFuture<Object> get(@PathVariable("key") K key) {
+        CompletableFuture<Object> future = cache.getAsync(key, ioExecutor);
+        return future.whenComplete((value, e) -> {
+            if (e != null) {
+                LOGGER.error("Failed to get value with key {} from cache", key.toString(), e);
+            }
+        });
+    }
+
+    /**
+     * Adding binary item to the cache. The request body is streamed to the file system cache
+     * without being buffered in the heap. The body is read by the servlet thread, since the request stream
+     * can't be handed over to another thread before the asynchronous processing starts
+     * @param key item key used for searching elements in cache
+     * @param request HTTP request with the value in its body
+     * @return result message
+     * @throws Exception if any error is occurred
+     */
+    @ApiOperation(value = "Put binary value into cache", tags = {"Cache API"})
+    @RequestMapping(value = "/binary/{key}", method = RequestMethod.PUT)
+    public String putBinary(@PathVariable("key") K key, HttpServletRequest request) throws Exception {
         try {
-            return cache.get(key);
-        } catch (IOException | ClassNotFoundException e) {
-            LOGGER.error("Failed to get value with key {} from cache", key.toString(), e);
+            cache.putBinary(key, Channels.newChannel(request.getInputStream()));
+            return String.format("Binary object with key %1$s was successfully cached", key);
+        } catch (Exception e) {
+            LOGGER.error("Failed to put received binary value with key {} into cache", key.toString(), e);
             throw e;
         }
     }
 
+    /**
+     * Retrieving binary item from the cache by key. The value is streamed from the file system cache
+     * without deserialization. Single range of the form <code>bytes=first-last</code>, <code>bytes=first-</code>
+     * or <code>bytes=-suffix</code> is supported
+     * @param key item key used for searching elements in cache
+     * @param range value of the <code>Range</code> header
+     * @return future of the streamed response body
+     */
+    @ApiOperation(value = "Get binary value from cache by key", tags = {"Cache API"})
+    @RequestMapping(value = "/binary/{key}", method = RequestMethod.GET)
+    public CompletableFuture<ResponseEntity<StreamingResponseBody>> getBinary(
+            @PathVariable("key") K key, @RequestHeader(value = HttpHeaders.RANGE, required = false) String range) {
+        return submit(() -> {
+            try {
+                return binaryResponse(cache.getBinary(key), range);
+            } catch (Exception e) {
+                LOGGER.error("Failed to get binary value with key {} from cache", key.toString(), e);
+                throw e;
+            }
+        });
+    }
+
+    /**
+     * Retrieving several items from the cache. The response is streamed as JSON array of
+     * <code>{"key": ..., "hit": true|false, "value": ...}</code> objects in the order of the requested keys
+     * @param keys item keys used for searching elements in cache
+     * @return future of the streamed response body
+     */
+    @ApiOperation(value = "Get values from cache by several keys", tags = {"Cache API"})
+    @RequestMapping(value = "/batch/get", method = RequestMethod.POST)
+    public CompletableFuture<ResponseEntity<StreamingResponseBody>> getAll(@RequestBody final List<K> keys) {
+        return submit(() -> {
+            try {
+                Map<K, Object> values = cache.getAll(keys);
+                StreamingResponseBody body = out -> {
+                    JsonWriter writer = new JsonWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+                    writer.beginArray();
+                    for (K key : keys) {
+                        Object value = values.get(key);
+                        writer.beginObject();
+                        writer.name("key").value(key.toString());
+                        writer.name("hit").value(value != null);
+                        if (value != null) {
+                            writer.name("value");
+                            gson.toJson(value, value.getClass(), writer);
+                        }
+                        writer.endObject();
+                    }
+                    writer.endArray();
+                    writer.flush();
+                };
+                return ResponseEntity.ok().contentType(MediaType.APPLICATION_JSON).body(body);
+            } catch (Exception e) {
+                LOGGER.error("Failed to get values of {} keys from cache", keys.size(), e);
+                throw e;
+            }
+        });
+    }
+
+    /**
+     * Adding several items to the cache
+     * @param values key-value pairs
+     * @return future of the count of cached items
+     */
+    @ApiOperation(value = "Put several key-value pairs into cache", tags = {"Cache API"})
+    @RequestMapping(value = "/batch/put", method = RequestMethod.POST)
+    public CompletableFuture<String> putAll(@RequestBody final Map<K, Object> values) {
+        return submit(() -> {
+            try {
+                Map<K, Serializable> parsed = new LinkedHashMap<>();
+                for (Map.Entry<K, Object> entry : values.entrySet()) {
+                    parsed.put(entry.getKey(), parse(entry.getValue()));
+                }
+                cache.putAll(parsed);
+                return String.format("%1$s objects were successfully cached", parsed.size());
+            } catch (Exception e) {
+                LOGGER.error("Failed to put {} received values into cache", values.size(), e);
+                throw e;
+            }
+        });
+    }
+
+    /**
+     * Removing several items from the cache. The response is streamed as JSON array of
+     * <code>{"key": ..., "removed": true|false}</code> objects in the order of the requested keys
+     * @param keys item keys used for searching elements in cache
+     * @return future of the streamed response body
+     */
+    @ApiOperation(value = "Remove objects from cache by several keys", tags = {"Cache API"})
+    @RequestMapping(value = "/batch/remove", method = RequestMethod.POST)
+    public CompletableFuture<ResponseEntity<StreamingResponseBody>> removeAll(@RequestBody final List<K> keys) {
+        return submit(() -> {
+            try {
+                Set<K> present = new HashSet<>();
+                for (K key : keys) {
+                    if (cache.containsKey(key)) {
+                        present.add(key);
+                    }
+                }
+                cache.removeAll(new ArrayList<>(present));
+                StreamingResponseBody body = out -> {
+                    JsonWriter writer = new JsonWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+                    writer.beginArray();
+                    for (K key : keys) {
+                        writer.beginObject();
+                        writer.name("key").value(key.toString());
+                        writer.name("removed").value(present.contains(key));
+                        writer.endObject();
+                    }
+                    writer.endArray();
+                    writer.flush();
+                };
+                return ResponseEntity.ok().contentType(MediaType.APPLICATION_JSON).body(body);
+            } catch (Exception e) {
+                LOGGER.error("Failed to remove objects with {} keys", keys.size(), e);
+                throw e;
+            }
+        });
+    }
+
     /**
      * Removes all items from the cache
+     * @return future of the result message
      */
     @ApiOperation(value = "Clear cache", tags = {"Cache API"})
     @RequestMapping(value = "/clear", method= RequestMethod.DELETE)
-    public String clear() {
-        try {
-            cache.clear();
-            return "Cache cleared";
-        } catch (Exception e) {
-            LOGGER.error("Failed to clear cache", e);
-            throw e;
-        }
+    public CompletableFuture<String> clear() {
+        return submit(() -> {
+            try {
+                cache.clear();
+                return "Cache cleared";
+            } catch (Exception e) {
+                LOGGER.error("Failed to clear cache", e);
+                throw e;
+            }
+        });
     }
 
     /**
      * Removing an item from the cache by key
      * @param key item key used for searching elements in cache
-     * @throws Exception if any error is occurred
+     * @return future of the result message
      */
     @ApiOperation(value = "Remove object from cache by key", tags = {"Cache API"})
     @RequestMapping(value = "/remove/{key}", method= RequestMethod.DELETE)
-    public String remove(@PathVariable("key") K key) throws Exception {
-        try {
-            if (cache.containsKey(key)) {
-                cache.remove(key);
-                return String.format("Object with key %1$s was successfully removed", key);
-            } else {
-                return String.format("Could not find the item with the specified key %1$s", key);
+    public CompletableFuture<String> remove(@PathVariable("key") K key) {
+        return submit(() -> {
+            try {
+                if (cache.containsKey(key)) {
+                    cache.remove(key);
+                    return String.format("Object with key %1$s was successfully removed", key);
+                } else {
+                    return String.format("Could not find the item with the specified key %1$s", key);
+                }
+
+            } catch (Exception e) {
+                LOGGER.error("Failed to remove object with key {}", key.toString(), e);
+                throw e;
             }
+        });
+    }
 
-        } catch (Exception e) {
-            LOGGER.error("Failed to remove object with key {}", key.toString(), e);
-            throw e;
+    /**
+     * Registers statistics of the cache as MBean, so they can be read through JMX
+     */
+    @PostConstruct
+    public void registerStats() {
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(cache.getStats(), new ObjectName(STATS_OBJECT_NAME));
+        } catch (JMException e) {
+            LOGGER.error("Failed to register cache statistics MBean", e);
+        }
+    }
+
+    /**
+     * Stops the I/O executor and closes the cache on application shutdown, so persistent file system cache saves its index
+     */
+    @PreDestroy
+    public void close() {
+        try {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(new ObjectName(STATS_OBJECT_NAME));
+        } catch (JMException e) {
+            LOGGER.warn("Failed to unregister cache statistics MBean", e);
+        }
+        ioExecutor.shutdown();
+        try {
+            ioExecutor.awaitTermination(30, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        try {
+            cache.close();
+        } catch (IOException e) {
+            LOGGER.error("Failed to close cache", e);
         }
     }
 
@@ -124,4 +378,106 @@ public class CacheController<K extends Serializable, V extends Serializable> {
             throw e;
         }
     }
+
+    /**
+     * Return statistics of the cache: hits and misses per tier, evictions, transfers between tiers,
+     * bytes read and written by the file system cache and latencies of the tiers
+     * @return map of statistic names and values
+     */
+    @ApiOperation(value = "Get cache statistics", tags = {"Cache API"})
+    @RequestMapping(value = "/stats", method = RequestMethod.GET)
+    public Map<String, Object> stats() {
+        return cache.getStats().toMap();
+    }
+
+    /**
+     * Answers requests that the I/O executor couldn't accept
+     * @param e rejection
+     * @return <code>503 Service Unavailable</code> response
+     */
+    @ExceptionHandler(RejectedExecutionException.class)
+    public ResponseEntity<String> rejected(RejectedExecutionException e) {
+        LOGGER.warn("Request is rejected: I/O executor is overloaded");
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).body("Cache is overloaded, try again later");
+    }
+
+    /**
+     * Executes the task by the I/O executor
+     */
+    private <T> CompletableFuture<T> submit(Callable<T> task) {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return task.call();
+            } catch (Exception e) {
+                throw new CompletionException(e);
+            }
+        }, ioExecutor);
+    }
+
+    /**
+     * Builds streamed response with the requested range of the binary value
+     */
+    private static ResponseEntity<StreamingResponseBody> binaryResponse(BinaryValue value, String range) {
+        if (value == null) {
+            return ResponseEntity.notFound().build();
+        }
+        long length = value.length();
+        long first = 0;
+        long last = length - 1;
+        HttpStatus status = HttpStatus.OK;
+        if (range != null && range.startsWith("bytes=") && range.indexOf(',') < 0) {
+            String[] bounds = range.substring("bytes=".length()).trim().split("-", -1);
+            try {
+                if (bounds[0].isEmpty()) {
+                    first = Math.max(0, length - Long.parseLong(bounds[1]));
+                } else {
+                    first = Long.parseLong(bounds[0]);
+                    if (!bounds[1].isEmpty()) {
+                        last = Math.min(last, Long.parseLong(bounds[1]));
+                    }
+                }
+            } catch (NumberFormatException | ArrayIndexOutOfBoundsException e) {
+                first = length;
+            }
+            if (first > last) {
+                return ResponseEntity.status(HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE)
+                        .header(HttpHeaders.CONTENT_RANGE, "bytes */" + length).build();
+            }
+            status = HttpStatus.PARTIAL_CONTENT;
+        }
+        long position = first;
+        long count = last - first + 1;
+        StreamingResponseBody body = out -> value.transferTo(position, count, Channels.newChannel(out));
+        ResponseEntity.BodyBuilder builder = ResponseEntity.status(status)
+                .contentType(MediaType.APPLICATION_OCTET_STREAM)
+                .contentLength(count)
+                .header(HttpHeaders.ACCEPT_RANGES, "bytes");
+        if (status == HttpStatus.PARTIAL_CONTENT) {
+            builder.header(HttpHeaders.CONTENT_RANGE, "bytes " + first + "-" + last + "/" + length);
+        }
+        return builder.body(body);
+    }
+
+    /**
+     * Creates bounded executor of the operations that may touch the file system
+     */
+    private static ExecutorService createIoExecutor(Config config) {
+        int threads = config != null && config.hasPath("rest.io-threads") ? config.getInt("rest.io-threads") : DEFAULT_IO_THREADS;
+        int queueSize = config != null && config.hasPath("rest.io-queue-size")
+                ? config.getInt("rest.io-queue-size") : DEFAULT_IO_QUEUE_SIZE;
+        AtomicInteger number = new AtomicInteger();
+        return new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(queueSize), runnable -> {
+            Thread thread = new Thread(runnable, "cache-io-" + number.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Converts received JSON value into the cached object
+     */
+    private static Serializable parse(Object value) {
+        GsonJsonParser gson = new GsonJsonParser();
+        return (Serializable) gson.parseMap(String.valueOf(value));
+    }
 }